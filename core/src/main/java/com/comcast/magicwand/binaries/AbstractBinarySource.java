@@ -0,0 +1,153 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import org.apache.commons.io.IOUtils;
+
+import com.comcast.magicwand.utils.Version;
+
+/**
+ * Base class for sources that keep driver archives laid out according to {@link DriverBinarySpec#getArtifactPattern()}
+ */
+public abstract class AbstractBinarySource implements BinarySource {
+
+    static final String SHA256_SUFFIX = ".sha256";
+
+    /**
+     * Opens a file relative to the root of this source
+     *
+     * @param path Relative path using <code>/</code> as separator
+     * @return Stream with the content of the file; null if there is no such file
+     * @throws IOException If the source could not be read
+     */
+    protected abstract InputStream openPath(String path) throws IOException;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String readLatestVersion(DriverBinarySpec spec) throws IOException {
+        if (null == spec.getLatestPointer()) {
+            return null;
+        }
+
+        InputStream is = openPath(spec.getLatestPointer());
+
+        if (null == is) {
+            return null;
+        }
+
+        try {
+            String rv = IOUtils.toString(is, "UTF-8").trim();
+
+            return rv.isEmpty() ? null : rv;
+        }
+        finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getArtifactName(DriverBinarySpec spec, Version version) {
+        return spec.getArtifactName(version);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream openArtifact(DriverBinarySpec spec, Version version) throws IOException {
+        return openPath(spec.getArtifactPath(version));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Reads a <code>.sha256</code> file next to the archive, as written by <code>sha256sum</code>.
+     * </p>
+     */
+    @Override
+    public Checksum readChecksum(DriverBinarySpec spec, Version version) throws IOException {
+        return readChecksumFile(spec.getArtifactPath(version) + SHA256_SUFFIX, Checksum.SHA256);
+    }
+
+    /**
+     * Reads a checksum file holding a hex encoded digest, optionally followed by a file name
+     *
+     * @param path Location of the checksum file relative to the root of this source
+     * @param algorithm Digest algorithm
+     * @return Checksum; null if there is no such file
+     * @throws IOException If the file could not be read or does not hold a valid digest
+     */
+    protected Checksum readChecksumFile(String path, String algorithm) throws IOException {
+        InputStream is = openPath(path);
+
+        if (null == is) {
+            return null;
+        }
+
+        try {
+            String[] tokens = IOUtils.toString(is, "UTF-8").trim().split("\\s+");
+
+            return new Checksum(algorithm, tokens[0]);
+        }
+        catch (IllegalArgumentException iae) {
+            throw new IOException("Invalid checksum file " + path, iae);
+        }
+        finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream openResource(DriverBinarySpec spec, String path) throws IOException {
+        return openPath(path);
+    }
+
+    /**
+     * Opens a URL using the default {@link HttpDownloader}
+     *
+     * @param url URL to open
+     * @return Stream with the content of the URL; null if the URL does not exist
+     * @throws IOException If the URL could not be read
+     */
+    static InputStream openUrl(URL url) throws IOException {
+        return HttpDownloader.getDefault().open(url);
+    }
+
+    /**
+     * Joins a base URL and a relative path
+     *
+     * @param base Base URL, with or without a trailing <code>/</code>
+     * @param path Relative path
+     * @return Joined URL
+     * @throws IOException If the result is not a valid URL
+     */
+    static URL resolve(String base, String path) throws IOException {
+        return new URL(base.endsWith("/") ? base + path : base + "/" + path);
+    }
+}
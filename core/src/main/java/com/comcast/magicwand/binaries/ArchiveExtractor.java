@@ -0,0 +1,492 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts zip, tar and tar.gz archives
+ *
+ * <p>
+ * Entries are streamed straight to their destination through NIO channels using a small pool of reusable direct
+ * buffers. Only selected entries may be extracted (see {@link #only(String...)}), executable bits are applied while the
+ * entry is written, and entries that would end up outside of the destination directory are rejected.
+ * </p>
+ *
+ * <pre>
+ * new ArchiveExtractor().only("chromedriver").executable("chromedriver").flatten().extract(zip, dir);
+ * </pre>
+ */
+public class ArchiveExtractor {
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveExtractor.class);
+
+    /**
+     * Archive formats understood by the extractor
+     */
+    public enum Format {
+        ZIP(".zip"),
+        TAR(".tar"),
+        TAR_GZ(".tar.gz", ".tgz");
+
+        private final String[] extensions;
+
+        Format(String... extensions) {
+            this.extensions = extensions;
+        }
+
+        /**
+         * Detects the format of an archive from its file name
+         *
+         * @param name File name
+         * @return Format, or null if the name does not look like a supported archive
+         */
+        public static Format fromFileName(String name) {
+            String lower = name.toLowerCase(Locale.ENGLISH);
+
+            for (Format f : values()) {
+                for (String ext : f.extensions) {
+                    if (lower.endsWith(ext)) {
+                        return f;
+                    }
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 8;
+    private static final Queue<ByteBuffer> BUFFERS = new ConcurrentLinkedQueue<>();
+
+    private static final int TAR_BLOCK = 512;
+    private static final int TAR_EXEC_BITS = 0111;
+
+    private final Set<String> selected = new HashSet<>();
+    private final Set<String> executables = new HashSet<>();
+    private boolean flatten = false;
+
+    /**
+     * Restricts extraction to the given entries. An entry is selected if either its full path or its file name matches.
+     * All entries are extracted if this is never called.
+     *
+     * @param names Paths or file names of the entries to extract
+     * @return this extractor
+     */
+    public ArchiveExtractor only(String... names) {
+        this.selected.addAll(Arrays.asList(names));
+
+        return this;
+    }
+
+    /**
+     * Marks entries as executable, in addition to tar entries that carry executable mode bits
+     *
+     * @param names Paths or file names of the entries
+     * @return this extractor
+     */
+    public ArchiveExtractor executable(String... names) {
+        this.executables.addAll(Arrays.asList(names));
+
+        return this;
+    }
+
+    /**
+     * Writes every extracted entry directly into the destination directory, dropping the directories of the archive
+     *
+     * @return this extractor
+     */
+    public ArchiveExtractor flatten() {
+        this.flatten = true;
+
+        return this;
+    }
+
+    /**
+     * Extracts an archive file; zip files are read through their central directory, so unselected entries are never
+     * inflated
+     *
+     * @param archive Archive to extract; its format is detected from its name
+     * @param dstDir Destination directory
+     * @return Extracted files
+     * @throws IOException If the archive is not supported, cannot be read, or has entries outside of
+     *             <code>dstDir</code>
+     */
+    public List<File> extract(File archive, File dstDir) throws IOException {
+        Format format = Format.fromFileName(archive.getName());
+
+        if (null == format) {
+            throw new IOException("Unsupported archive [" + archive + "]");
+        }
+
+        LOG.debug("Extracting [{}] to dir [{}]", archive, dstDir);
+
+        if (Format.ZIP == format) {
+            return extractZipFile(archive, dstDir);
+        }
+
+        InputStream is = FileUtils.openInputStream(archive);
+        try {
+            return extract(is, format, dstDir);
+        }
+        finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * Extracts an archive while it is being read, i.e. straight from a download
+     *
+     * @param is Stream with the archive; it is not closed
+     * @param format Format of the archive
+     * @param dstDir Destination directory
+     * @return Extracted files
+     * @throws IOException If the archive cannot be read or has entries outside of <code>dstDir</code>
+     */
+    public List<File> extract(InputStream is, Format format, File dstDir) throws IOException {
+        FileUtils.forceMkdir(dstDir);
+
+        switch (format) {
+            case ZIP:
+                return extractZipStream(is, dstDir);
+            case TAR_GZ:
+                return extractTar(new GZIPInputStream(is, BUFFER_SIZE), dstDir);
+            default:
+                return extractTar(new BufferedInputStream(is, BUFFER_SIZE), dstDir);
+        }
+    }
+
+    private List<File> extractZipFile(File archive, File dstDir) throws IOException {
+        FileUtils.forceMkdir(dstDir);
+
+        List<File> rv = new ArrayList<>();
+        ZipFile zip = new ZipFile(archive);
+
+        try {
+            for (ZipEntry entry : selectZipEntries(zip)) {
+                InputStream is = zip.getInputStream(entry);
+                try {
+                    rv.add(write(Channels.newChannel(is), -1, entry.getName(), false, dstDir));
+                }
+                finally {
+                    IOUtils.closeQuietly(is);
+                }
+            }
+        }
+        finally {
+            zip.close();
+        }
+
+        return rv;
+    }
+
+    private List<ZipEntry> selectZipEntries(ZipFile zip) {
+        List<ZipEntry> rv = new ArrayList<>();
+
+        for (ZipEntry entry : Collections.list(zip.entries())) {
+            if (!entry.isDirectory() && isSelected(entry.getName())) {
+                rv.add(entry);
+            }
+        }
+
+        return rv;
+    }
+
+    private List<File> extractZipStream(InputStream is, File dstDir) throws IOException {
+        List<File> rv = new ArrayList<>();
+        ZipInputStream zis = new ZipInputStream(is);
+        ReadableByteChannel channel = Channels.newChannel(zis);
+        ZipEntry entry;
+
+        while (null != (entry = zis.getNextEntry())) {
+            if (!entry.isDirectory() && isSelected(entry.getName())) {
+                rv.add(write(channel, -1, entry.getName(), false, dstDir));
+            }
+        }
+
+        return rv;
+    }
+
+    private List<File> extractTar(InputStream is, File dstDir) throws IOException {
+        List<File> rv = new ArrayList<>();
+        ReadableByteChannel channel = Channels.newChannel(is);
+        byte[] header = new byte[TAR_BLOCK];
+        String longName = null;
+
+        while (true) {
+            if (!readBlock(is, header)) {
+                break;
+            }
+
+            if (isZeroBlock(header)) {
+                break;
+            }
+
+            String name = (null != longName) ? longName : tarName(header);
+            long size = parseOctal(header, 124, 12);
+            int mode = (int) parseOctal(header, 100, 8);
+            char type = (char) header[156];
+            long padding = (TAR_BLOCK - (size % TAR_BLOCK)) % TAR_BLOCK;
+
+            longName = null;
+
+            if ('L' == type) {
+                // GNU long name: the data of this entry is the name of the next one
+                byte[] data = new byte[(int) size];
+                IOUtils.readFully(is, data);
+                longName = cString(data, 0, data.length);
+            }
+            else if ('x' == type) {
+                // pax extended header: only the path record is of interest
+                byte[] data = new byte[(int) size];
+                IOUtils.readFully(is, data);
+                longName = paxPath(data);
+            }
+            else if (('0' == type || 0 == type) && isSelected(name)) {
+                rv.add(write(channel, size, name, 0 != (mode & TAR_EXEC_BITS), dstDir));
+            }
+            else {
+                if ('2' == type || '1' == type) {
+                    LOG.debug("Skipping link [{}] in tar archive", name);
+                }
+                skipFully(is, size);
+            }
+
+            skipFully(is, padding);
+        }
+
+        return rv;
+    }
+
+    private boolean isSelected(String name) {
+        return this.selected.isEmpty() || this.selected.contains(name) || this.selected.contains(baseName(name));
+    }
+
+    private File write(ReadableByteChannel src, long size, String name, boolean executable, File dstDir)
+            throws IOException {
+        File dst = destination(dstDir, this.flatten ? baseName(name) : name);
+        FileUtils.forceMkdir(dst.getParentFile());
+
+        ByteBuffer buffer = acquireBuffer();
+        FileChannel out = FileChannel.open(dst.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        try {
+            long remaining = size;
+
+            while (0 != remaining) {
+                buffer.clear();
+                if (remaining > 0 && remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+
+                int read = src.read(buffer);
+                if (read < 0) {
+                    if (remaining > 0) {
+                        throw new EOFException("Archive ended in the middle of [" + name + "]");
+                    }
+                    break;
+                }
+
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+
+                if (remaining > 0) {
+                    remaining -= read;
+                }
+            }
+
+            out.close();
+        }
+        finally {
+            IOUtils.closeQuietly(out);
+            releaseBuffer(buffer);
+        }
+
+        if (executable || this.executables.contains(name) || this.executables.contains(baseName(name))) {
+            dst.setExecutable(true, false);
+        }
+
+        return dst;
+    }
+
+    /**
+     * Resolves the destination of an entry, rejecting entries that would be written outside of the destination
+     * directory (zip-slip)
+     */
+    static File destination(File dstDir, String name) throws IOException {
+        String root = dstDir.getCanonicalPath();
+        File rv = new File(dstDir, name);
+        String path = rv.getCanonicalPath();
+
+        if (name.isEmpty() || new File(name).isAbsolute() || !path.startsWith(root + File.separator)) {
+            throw new IOException("Archive entry [" + name + "] is outside of [" + dstDir + "]");
+        }
+
+        return rv;
+    }
+
+    private static String baseName(String name) {
+        String trimmed = name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+        int slash = Math.max(trimmed.lastIndexOf('/'), trimmed.lastIndexOf('\\'));
+
+        return trimmed.substring(slash + 1);
+    }
+
+    private static ByteBuffer acquireBuffer() {
+        ByteBuffer rv = BUFFERS.poll();
+
+        return (null != rv) ? rv : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private static void releaseBuffer(ByteBuffer buffer) {
+        if (BUFFERS.size() < MAX_POOLED_BUFFERS) {
+            buffer.clear();
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    private static boolean readBlock(InputStream is, byte[] block) throws IOException {
+        int read = IOUtils.read(is, block);
+
+        if (0 == read) {
+            return false;
+        }
+        if (read < block.length) {
+            throw new EOFException("Truncated tar header");
+        }
+
+        return true;
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (0 != b) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void skipFully(InputStream is, long count) throws IOException {
+        if (count > 0) {
+            IOUtils.skipFully(is, count);
+        }
+    }
+
+    private static String tarName(byte[] header) {
+        String name = cString(header, 0, 100);
+
+        // ustar archives keep long paths split into a prefix and a name
+        if ("ustar".equals(cString(header, 257, 5))) {
+            String prefix = cString(header, 345, 155);
+
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+
+        return name;
+    }
+
+    private static String paxPath(byte[] data) {
+        // records are "<length> <key>=<value>\n"
+        String records = new String(data, StandardCharsets.UTF_8);
+
+        for (String record : records.split("\n")) {
+            int space = record.indexOf(' ');
+            if (space > 0 && record.startsWith("path=", space + 1)) {
+                return record.substring(space + 1 + "path=".length());
+            }
+        }
+
+        return null;
+    }
+
+    private static String cString(byte[] data, int offset, int length) {
+        int end = offset;
+
+        while (end < offset + length && 0 != data[end]) {
+            end++;
+        }
+
+        return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long parseOctal(byte[] header, int offset, int length) throws IOException {
+        // GNU base-256 encoding for large values
+        if (0 != (header[offset] & 0x80)) {
+            long rv = header[offset] & 0x7f;
+
+            for (int i = 1; i < length; i++) {
+                rv = (rv << 8) | (header[offset + i] & 0xff);
+            }
+
+            return rv;
+        }
+
+        long rv = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+
+            if (0 == b || ' ' == b) {
+                if (rv > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("Invalid tar header");
+            }
+
+            rv = (rv << 3) + (b - '0');
+        }
+
+        return rv;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import com.comcast.magicwand.utils.Version;
+
+/**
+ * A place driver archives can be retrieved from, such as the upstream storage bucket, a local mirror or a Maven
+ * repository
+ */
+public interface BinarySource {
+
+    /**
+     * Lists versions of a driver that are available from this source for the platform described by the spec
+     *
+     * @param spec Driver to look for
+     * @return Available versions (possibly empty); null if this source cannot enumerate its content
+     * @throws IOException If the source could not be read
+     */
+    List<Version> listVersions(DriverBinarySpec spec) throws IOException;
+
+    /**
+     * Reads the latest version of a driver published by this source
+     *
+     * @param spec Driver to look for
+     * @return Latest version; null if this source does not publish one
+     * @throws IOException If the source could not be read
+     */
+    String readLatestVersion(DriverBinarySpec spec) throws IOException;
+
+    /**
+     * Gets the file name of a driver archive as stored by this source
+     *
+     * @param spec Driver to look for
+     * @param version Version of the driver
+     * @return File name; its extension tells how the archive should be unpacked
+     */
+    String getArtifactName(DriverBinarySpec spec, Version version);
+
+    /**
+     * Opens a driver archive
+     *
+     * @param spec Driver to look for
+     * @param version Version of the driver
+     * @return Stream with the content of the archive; null if this source does not have it
+     * @throws IOException If the source could not be read
+     */
+    InputStream openArtifact(DriverBinarySpec spec, Version version) throws IOException;
+
+    /**
+     * Reads the checksum this source publishes for a driver archive
+     *
+     * @param spec Driver to look for
+     * @param version Version of the driver
+     * @return Checksum of the archive; null if this source does not publish one
+     * @throws IOException If the source could not be read
+     */
+    Checksum readChecksum(DriverBinarySpec spec, Version version) throws IOException;
+
+    /**
+     * Opens an auxiliary file published alongside the driver archives, such as release notes
+     *
+     * @param spec Driver the file belongs to
+     * @param path Location of the file relative to the root of the source
+     * @return Stream with the content of the file; null if this source does not have it
+     * @throws IOException If the source could not be read
+     */
+    InputStream openResource(DriverBinarySpec spec, String path) throws IOException;
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.comcast.magicwand.utils.Version;
+
+/**
+ * Compact index of the driver artifacts found in a bucket listing, mapping <code>(version, os, arch)</code> to the key
+ * and MD5 checksum of the artifact
+ *
+ * <p>
+ * The index only keeps keys that match the artifact pattern of a driver, for every platform at once, and can be turned
+ * into text and back so that it can be cached on disk and shared by every spell reading the same bucket.
+ * </p>
+ */
+public final class BucketIndex {
+
+    private static final String ANY = "*";
+    private static final String NONE = "-";
+
+    private final List<String[]> entries;
+
+    private BucketIndex(List<String[]> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Collects the artifacts of a driver from listing keys
+     */
+    public static final class Builder implements BucketListingReader.KeyHandler {
+        private final DriverBinarySpec spec;
+        private final List<String[]> entries = new ArrayList<>();
+
+        /**
+         * @param spec Driver whose artifact pattern selects the keys; its platform is ignored
+         */
+        public Builder(DriverBinarySpec spec) {
+            this.spec = spec;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void key(String key, String etag) {
+            String[] match = this.spec.matchArtifactPlatform(key);
+
+            if (null != match) {
+                this.entries.add(new String[] { match[0], nullToAny(match[1]), nullToAny(match[2]), key,
+                        toMd5(etag) });
+            }
+        }
+
+        /**
+         * @return Index of the keys seen so far
+         */
+        public BucketIndex build() {
+            return new BucketIndex(new ArrayList<>(this.entries));
+        }
+    }
+
+    private static String nullToAny(String s) {
+        return (null == s) ? ANY : s;
+    }
+
+    //ETags of objects uploaded in one piece are the MD5 of their content; multipart ETags have a -<parts> suffix
+    private static String toMd5(String etag) {
+        return (null != etag && etag.matches("[0-9a-fA-F]{32}")) ? etag.toLowerCase(Locale.ENGLISH) : NONE;
+    }
+
+    /**
+     * Parses an index written by {@link #toText()}
+     *
+     * @param text Text form of the index
+     * @return Index
+     */
+    public static BucketIndex parse(String text) {
+        List<String[]> entries = new ArrayList<>();
+
+        for (String line : text.split("\n")) {
+            String[] fields = line.split("\t");
+
+            if (5 == fields.length) {
+                entries.add(fields);
+            }
+            else if (4 == fields.length) {
+                entries.add(new String[] { fields[0], fields[1], fields[2], fields[3], NONE });
+            }
+        }
+
+        return new BucketIndex(entries);
+    }
+
+    /**
+     * @return Text form of this index, one <code>version os arch key md5</code> line per artifact
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+
+        for (String[] e : this.entries) {
+            sb.append(e[0]).append('\t').append(e[1]).append('\t').append(e[2]).append('\t').append(e[3]).append('\t')
+                    .append(e[4]).append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    private static boolean matches(String indexed, String wanted) {
+        return ANY.equals(indexed) || indexed.equals(wanted);
+    }
+
+    /**
+     * Gets the versions available for a platform
+     *
+     * @param os Operating system
+     * @param arch Architecture
+     * @return Versions in listing order
+     */
+    public List<Version> getVersions(String os, String arch) {
+        List<Version> rv = new ArrayList<>();
+
+        for (String[] e : this.entries) {
+            if (matches(e[1], os) && matches(e[2], arch)) {
+                rv.add(Version.valueOf(e[0]));
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Gets the key of an artifact
+     *
+     * @param version Version of the driver
+     * @param os Operating system
+     * @param arch Architecture
+     * @return Key of the artifact, or null if the index does not have it
+     */
+    public String getArtifact(Version version, String os, String arch) {
+        String[] e = find(version, os, arch);
+
+        return (null == e) ? null : e[3];
+    }
+
+    /**
+     * Gets the checksum of an artifact
+     *
+     * @param version Version of the driver
+     * @param os Operating system
+     * @param arch Architecture
+     * @return MD5 checksum of the artifact, or null if the index does not have it or the bucket did not publish it
+     */
+    public Checksum getChecksum(Version version, String os, String arch) {
+        String[] e = find(version, os, arch);
+
+        return (null == e || NONE.equals(e[4])) ? null : new Checksum(Checksum.MD5, e[4]);
+    }
+
+    private String[] find(Version version, String os, String arch) {
+        for (String[] e : this.entries) {
+            if (matches(e[1], os) && matches(e[2], arch) && version.equals(Version.valueOf(e[0]))) {
+                return e;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Number of artifacts in this index
+     */
+    public int size() {
+        return this.entries.size();
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the keys of a storage bucket using the XML listing API (<code>?prefix=...&amp;marker=...</code>)
+ *
+ * <p>
+ * Pages are parsed with StAX as they are read, so only the keys themselves are kept. Truncated listings are followed
+ * using <code>NextMarker</code>, or the last key of the page if the bucket does not return one.
+ * </p>
+ */
+public class BucketListingReader {
+    private static final Logger LOG = LoggerFactory.getLogger(BucketListingReader.class);
+
+    private static final int MAX_PAGES = 1000;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    /**
+     * Receives keys of a bucket listing
+     */
+    public interface KeyHandler {
+
+        /**
+         * Called for every key of the listing, in listing order
+         *
+         * @param key Key of an object in the bucket
+         * @param etag ETag of the object without quotes, or null if the listing does not have it
+         */
+        void key(String key, String etag);
+    }
+
+    private final String baseUrl;
+
+    /**
+     * Creates a reader
+     *
+     * @param baseUrl URL of the root of the bucket
+     */
+    public BucketListingReader(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory rv = XMLInputFactory.newInstance();
+        rv.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        rv.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        rv.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+
+        return rv;
+    }
+
+    /**
+     * Lists every key starting with a prefix, following pagination
+     *
+     * @param prefix Key prefix; may be empty
+     * @param handler Receives the keys
+     * @return False if the bucket does not exist at this URL; True otherwise
+     * @throws IOException If the listing could not be read
+     */
+    public boolean list(String prefix, KeyHandler handler) throws IOException {
+        String marker = null;
+
+        for (int page = 0; page < MAX_PAGES; page++) {
+            String query = "?prefix=" + URLEncoder.encode(prefix, "UTF-8");
+            if (null != marker) {
+                query += "&marker=" + URLEncoder.encode(marker, "UTF-8");
+            }
+
+            InputStream is = AbstractBinarySource.openUrl(AbstractBinarySource.resolve(this.baseUrl, query));
+
+            if (null == is) {
+                return false;
+            }
+
+            String next;
+            try {
+                next = readPage(is, handler);
+            }
+            finally {
+                IOUtils.closeQuietly(is);
+            }
+
+            if (null == next) {
+                return true;
+            }
+            if (next.equals(marker)) {
+                throw new IOException("Bucket listing of " + this.baseUrl + " does not advance past " + marker);
+            }
+
+            LOG.trace("Bucket listing of {} continues after {}", this.baseUrl, next);
+            marker = next;
+        }
+
+        throw new IOException("Bucket listing of " + this.baseUrl + " has more than " + MAX_PAGES + " pages");
+    }
+
+    /**
+     * Reads one page of a bucket listing
+     *
+     * @param is Stream with the page
+     * @param handler Receives the keys
+     * @return Marker of the next page, or null if this is the last page
+     * @throws IOException If the page is not a valid listing
+     */
+    static String readPage(InputStream is, KeyHandler handler) throws IOException {
+        boolean truncated = false;
+        String nextMarker = null;
+        String lastKey = null;
+        String key = null;
+        String etag = null;
+        boolean inContents = false;
+
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+
+                    if (XMLStreamConstants.START_ELEMENT == event) {
+                        String name = reader.getLocalName();
+
+                        if ("Contents".equals(name)) {
+                            inContents = true;
+                            key = null;
+                            etag = null;
+                        }
+                        else if (inContents && "Key".equals(name)) {
+                            key = reader.getElementText();
+                        }
+                        else if (inContents && "ETag".equals(name)) {
+                            etag = reader.getElementText().replace("\"", "").trim();
+                        }
+                        else if (!inContents && "IsTruncated".equals(name)) {
+                            truncated = Boolean.parseBoolean(reader.getElementText().trim());
+                        }
+                        else if (!inContents && "NextMarker".equals(name)) {
+                            nextMarker = reader.getElementText();
+                        }
+                    }
+                    else if (XMLStreamConstants.END_ELEMENT == event && "Contents".equals(reader.getLocalName())) {
+                        inContents = false;
+
+                        if (null != key) {
+                            lastKey = key;
+                            handler.key(key, etag);
+                        }
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException xse) {
+            throw new IOException("Invalid bucket listing", xse);
+        }
+
+        if (!truncated) {
+            return null;
+        }
+
+        return (null != nextMarker && !nextMarker.isEmpty()) ? nextMarker : lastKey;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.baseUrl;
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * Expected digest of a driver archive, written as <code>algorithm:hex</code> (i.e. <code>sha256:9f86d0...</code>)
+ */
+public final class Checksum {
+
+    public static final String MD5 = "MD5";
+    public static final String SHA1 = "SHA-1";
+    public static final String SHA256 = "SHA-256";
+
+    private final String algorithm;
+    private final String hex;
+
+    /**
+     * Creates a checksum
+     *
+     * @param algorithm Digest algorithm; one of {@link #MD5}, {@link #SHA1} or {@link #SHA256}
+     * @param hex Hex encoded digest
+     * @throws IllegalArgumentException If the algorithm is not supported or the digest has the wrong length
+     */
+    public Checksum(String algorithm, String hex) {
+        int length;
+
+        if (MD5.equals(algorithm)) {
+            length = 32;
+        }
+        else if (SHA1.equals(algorithm)) {
+            length = 40;
+        }
+        else if (SHA256.equals(algorithm)) {
+            length = 64;
+        }
+        else {
+            throw new IllegalArgumentException("Unsupported checksum algorithm: " + algorithm);
+        }
+
+        String digest = hex.trim().toLowerCase(Locale.ENGLISH);
+
+        if (length != digest.length() || !digest.matches("[0-9a-f]+")) {
+            throw new IllegalArgumentException("Invalid " + algorithm + " digest: " + hex);
+        }
+
+        this.algorithm = algorithm;
+        this.hex = digest;
+    }
+
+    /**
+     * Parses a checksum written as <code>md5:hex</code>, <code>sha1:hex</code> or <code>sha256:hex</code>
+     *
+     * @param value Checksum to parse
+     * @return Parsed checksum
+     * @throws IllegalArgumentException If the value is not a valid checksum
+     */
+    public static Checksum parse(String value) {
+        int colon = value.indexOf(':');
+
+        if (colon < 0) {
+            throw new IllegalArgumentException("Checksum must be of the form algorithm:hex: " + value);
+        }
+
+        String name = value.substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+        String hex = value.substring(colon + 1);
+
+        if ("md5".equals(name)) {
+            return new Checksum(MD5, hex);
+        }
+        if ("sha1".equals(name) || "sha-1".equals(name)) {
+            return new Checksum(SHA1, hex);
+        }
+        if ("sha256".equals(name) || "sha-256".equals(name)) {
+            return new Checksum(SHA256, hex);
+        }
+
+        throw new IllegalArgumentException("Unsupported checksum algorithm: " + value);
+    }
+
+    /**
+     * @return Digest algorithm
+     */
+    public String getAlgorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * @return Lower case hex encoded digest
+     */
+    public String getHex() {
+        return this.hex;
+    }
+
+    /**
+     * Creates a digest to compute this kind of checksum with
+     *
+     * @return New message digest
+     */
+    public MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(this.algorithm);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks a computed digest against this checksum
+     *
+     * @param digest Result of {@link MessageDigest#digest()}
+     * @return True if the digest matches; False otherwise
+     */
+    public boolean matches(byte[] digest) {
+        return this.hex.equals(toHex(digest));
+    }
+
+    static String toHex(byte[] digest) {
+        StringBuilder sb = new StringBuilder();
+
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Checksum)) {
+            return false;
+        }
+
+        Checksum other = (Checksum) obj;
+
+        return this.algorithm.equals(other.algorithm) && this.hex.equals(other.hex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return 31 * this.algorithm.hashCode() + this.hex.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.algorithm.replace("-", "").toLowerCase(Locale.ENGLISH) + ":" + this.hex;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.comcast.magicwand.utils.Version;
+
+/**
+ * Reads driver archives from a local (or network mounted) directory that mirrors the layout of the upstream bucket
+ */
+public class DirectorySource extends AbstractBinarySource {
+
+    private final File root;
+
+    /**
+     * Creates a directory source
+     *
+     * @param root Root directory of the mirror
+     */
+    public DirectorySource(File root) {
+        this.root = root;
+    }
+
+    /**
+     * @return Root directory of the mirror
+     */
+    public File getRoot() {
+        return this.root;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Version> listVersions(DriverBinarySpec spec) throws IOException {
+        if (!this.root.isDirectory()) {
+            throw new IOException("Driver mirror directory " + this.root + " does not exist");
+        }
+
+        List<Version> rv = new ArrayList<>();
+        collect(spec, this.root, "", rv);
+
+        return rv;
+    }
+
+    private static void collect(DriverBinarySpec spec, File dir, String prefix, List<Version> versions) {
+        File[] children = dir.listFiles();
+
+        if (null == children) {
+            return;
+        }
+
+        for (File child : children) {
+            String path = prefix + child.getName();
+
+            if (child.isDirectory()) {
+                collect(spec, child, path + "/", versions);
+            }
+            else {
+                Version v = spec.matchArtifactPath(path);
+
+                if (null != v) {
+                    versions.add(v);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected InputStream openPath(String path) throws IOException {
+        File f = new File(this.root, path.replace('/', File.separatorChar));
+
+        return f.isFile() ? new FileInputStream(f) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "directory[" + this.root + "]";
+    }
+}
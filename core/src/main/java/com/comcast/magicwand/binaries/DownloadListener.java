@@ -0,0 +1,64 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Receives progress of the downloads made by a {@link HttpDownloader}
+ *
+ * <p>
+ * Listeners are called on the thread reading the download, so they should return quickly.
+ * </p>
+ */
+public interface DownloadListener {
+
+    /**
+     * Called once the server accepted a download
+     *
+     * @param url Location being downloaded
+     * @param totalBytes Size of the download, or -1 if the server did not tell
+     */
+    void started(URL url, long totalBytes);
+
+    /**
+     * Called whenever data was read
+     *
+     * @param url Location being downloaded
+     * @param bytesRead Number of bytes read so far
+     * @param totalBytes Size of the download, or -1 if unknown
+     */
+    void progress(URL url, long bytesRead, long totalBytes);
+
+    /**
+     * Called before a failed connection is retried, resuming from the data already read when the server allows it
+     *
+     * @param url Location being downloaded
+     * @param bytesRead Number of bytes read so far
+     * @param attempt Number of the retry, starting at 1
+     * @param cause Reason the previous attempt failed
+     */
+    void retrying(URL url, long bytesRead, int attempt, IOException cause);
+
+    /**
+     * Called when the whole download was read
+     *
+     * @param url Location downloaded
+     * @param bytesRead Size of the download
+     */
+    void finished(URL url, long bytesRead);
+}
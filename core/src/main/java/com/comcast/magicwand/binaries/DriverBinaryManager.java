@@ -0,0 +1,574 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.comcast.magicwand.utils.SystemDetail;
+import com.comcast.magicwand.utils.Version;
+import com.comcast.magicwand.utils.VersionRange;
+
+/**
+ * Resolves, downloads, extracts and caches driver binaries
+ *
+ * <p>
+ * Sources are consulted in order: the configured ones first, followed by the upstream bucket named by the
+ * {@link DriverBinarySpec} unless the manager is offline. Sources are configured through the
+ * <code>magicwand.driver.sources</code> system property or the <code>MAGICWAND_DRIVER_SOURCES</code> environment
+ * variable as a semicolon separated list of:
+ * <ul>
+ * <li><code>file:///path/to/mirror</code> - a directory laid out like the upstream bucket</li>
+ * <li><code>http://host/path</code> - a plain HTTP mirror of the upstream bucket</li>
+ * <li><code>bucket:http://host/path</code> - a mirror that supports the bucket listing API</li>
+ * <li><code>maven:http://host/repo</code> - a Maven repository; a group id may be given as
+ * <code>maven:http://host/repo#com.example.drivers</code></li>
+ * </ul>
+ * Setting <code>magicwand.driver.offline</code> or <code>MAGICWAND_DRIVER_OFFLINE</code> to <code>true</code> keeps
+ * the manager from contacting upstream buckets.
+ * </p>
+ *
+ * <p>
+ * Archives are checked against a checksum while they are downloaded, and rejected before they are cached if it does
+ * not match. Checksums pinned in the properties file named by <code>magicwand.driver.checksums</code> or
+ * <code>MAGICWAND_DRIVER_CHECKSUMS</code> take precedence over the ones published by the sources. Entries are keyed
+ * by driver, version and platform, i.e. <code>chromedriver/2.19/linux-64=sha256:...</code>.
+ * </p>
+ */
+public class DriverBinaryManager {
+    private static final Logger LOG = LoggerFactory.getLogger(DriverBinaryManager.class);
+
+    public static final String SOURCES_PROP = "magicwand.driver.sources";
+    public static final String SOURCES_ENV = "MAGICWAND_DRIVER_SOURCES";
+    public static final String OFFLINE_PROP = "magicwand.driver.offline";
+    public static final String OFFLINE_ENV = "MAGICWAND_DRIVER_OFFLINE";
+    public static final String CHECKSUMS_PROP = "magicwand.driver.checksums";
+    public static final String CHECKSUMS_ENV = "MAGICWAND_DRIVER_CHECKSUMS";
+
+    private static final String BUCKET_SCHEME = "bucket:";
+    private static final String MAVEN_SCHEME = "maven:";
+    private static final String FILE_SCHEME = "file:";
+
+    private static DriverBinaryManager defaultManager;
+
+    private final DriverCache cache;
+    private final List<BinarySource> sources;
+    private final boolean offline;
+    private final MetadataCache metadata;
+    private final Properties checksums;
+    private final ConcurrentMap<DriverCacheKey, FutureTask<File>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a manager
+     *
+     * @param cache Cache to store drivers in
+     * @param sources Sources to consult before the upstream bucket
+     * @param offline True to never consult the upstream bucket
+     */
+    public DriverBinaryManager(DriverCache cache, List<BinarySource> sources, boolean offline) {
+        this(cache, sources, offline, new Properties());
+    }
+
+    /**
+     * Creates a manager verifying downloads against pinned checksums
+     *
+     * @param cache Cache to store drivers in
+     * @param sources Sources to consult before the upstream bucket
+     * @param offline True to never consult the upstream bucket
+     * @param checksums Pinned checksums, see the class documentation for the format
+     */
+    public DriverBinaryManager(DriverCache cache, List<BinarySource> sources, boolean offline, Properties checksums) {
+        this.cache = cache;
+        this.checksums = checksums;
+        this.sources = Collections.unmodifiableList(new ArrayList<>(sources));
+        this.offline = offline;
+        this.metadata = new MetadataCache(new File(cache.getRoot(), MetadataCache.METADATA_DIR_NAME));
+    }
+
+    /**
+     * Gets the manager configured for this machine
+     *
+     * @return Default driver binary manager
+     */
+    public static synchronized DriverBinaryManager getDefault() {
+        if (null == defaultManager) {
+            List<BinarySource> configured = parseSources(SystemDetail.getSetting(SOURCES_PROP, SOURCES_ENV),
+                    MetadataCache.getDefault());
+            boolean offline = Boolean.parseBoolean(SystemDetail.getSetting(OFFLINE_PROP, OFFLINE_ENV));
+            Properties checksums = loadChecksums(SystemDetail.getSetting(CHECKSUMS_PROP, CHECKSUMS_ENV));
+
+            LOG.debug("Using driver sources {}{}", configured, offline ? " (offline)" : "");
+            defaultManager = new DriverBinaryManager(DriverCache.getDefault(), configured, offline, checksums);
+        }
+
+        return defaultManager;
+    }
+
+    /**
+     * Loads pinned checksums
+     *
+     * @param path Location of a properties file, see the class documentation for the format
+     * @return Pinned checksums; empty if <code>path</code> is null
+     * @throws IllegalArgumentException If the file could not be read
+     */
+    public static Properties loadChecksums(String path) {
+        Properties rv = new Properties();
+
+        if (null == path) {
+            return rv;
+        }
+
+        InputStream is = null;
+        try {
+            is = new FileInputStream(path);
+            rv.load(is);
+        }
+        catch (IOException ioe) {
+            throw new IllegalArgumentException("Unable to read driver checksums from " + path, ioe);
+        }
+        finally {
+            IOUtils.closeQuietly(is);
+        }
+
+        return rv;
+    }
+
+    /**
+     * Parses a semicolon separated list of sources
+     *
+     * @param value Source list, see the class documentation for the format
+     * @return Parsed sources; empty if <code>value</code> is null
+     * @throws IllegalArgumentException If a source cannot be parsed
+     */
+    public static List<BinarySource> parseSources(String value) {
+        return parseSources(value, null);
+    }
+
+    /**
+     * Parses a semicolon separated list of sources
+     *
+     * @param value Source list, see the class documentation for the format
+     * @param metadata Cache for bucket listings; may be null to not cache them
+     * @return Parsed sources; empty if <code>value</code> is null
+     * @throws IllegalArgumentException If a source cannot be parsed
+     */
+    public static List<BinarySource> parseSources(String value, MetadataCache metadata) {
+        List<BinarySource> rv = new ArrayList<>();
+
+        if (null == value) {
+            return rv;
+        }
+
+        for (String entry : value.split(";")) {
+            String s = entry.trim();
+
+            if (s.isEmpty()) {
+                continue;
+            }
+
+            if (s.startsWith(BUCKET_SCHEME)) {
+                rv.add(new StorageBucketSource(s.substring(BUCKET_SCHEME.length()), metadata));
+            }
+            else if (s.startsWith(MAVEN_SCHEME)) {
+                String url = s.substring(MAVEN_SCHEME.length());
+                int hash = url.indexOf('#');
+
+                rv.add((hash < 0) ? new MavenRepositorySource(url)
+                        : new MavenRepositorySource(url.substring(0, hash), url.substring(hash + 1)));
+            }
+            else if (s.startsWith(FILE_SCHEME)) {
+                rv.add(new DirectorySource(new File(URI.create(s))));
+            }
+            else if (s.startsWith("http://") || s.startsWith("https://")) {
+                rv.add(new HttpMirrorSource(s));
+            }
+            else {
+                throw new IllegalArgumentException("Unsupported driver source: " + s);
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * @return Cache drivers are stored in
+     */
+    public DriverCache getCache() {
+        return this.cache;
+    }
+
+    /**
+     * Gets the sources consulted for a driver, in order
+     *
+     * @param spec Driver to look for
+     * @return Configured sources followed by the upstream bucket of the driver (if any and not offline)
+     */
+    public List<BinarySource> getSources(DriverBinarySpec spec) {
+        List<BinarySource> rv = new ArrayList<>(this.sources);
+
+        if (!this.offline && null != spec.getUpstreamUrl()) {
+            rv.add(new StorageBucketSource(spec.getUpstreamUrl(), this.metadata));
+        }
+
+        return rv;
+    }
+
+    /**
+     * Resolves the requested version of a driver to a concrete version
+     *
+     * <p>
+     * Exact versions are returned as is. Otherwise the first source that either publishes a latest version (when no
+     * version was requested) or lists versions matching the requested range wins; the highest matching version of that
+     * source is returned.
+     * </p>
+     *
+     * @param spec Driver to look for
+     * @return Concrete version of the driver
+     * @throws IOException If no source knows a matching version and the spec has no fallback version
+     */
+    public Version resolveVersion(DriverBinarySpec spec) throws IOException {
+        if (spec.isExactVersion()) {
+            return Version.valueOf(spec.getVersion());
+        }
+
+        VersionRange range = (null == spec.getVersion()) ? null : VersionRange.parse(spec.getVersion());
+
+        for (BinarySource source : getSources(spec)) {
+            try {
+                if (null == range) {
+                    String latest = source.readLatestVersion(spec);
+
+                    if (null != latest) {
+                        LOG.debug("Latest {} from {} is {}", spec.getDriver(), source, latest);
+                        return Version.valueOf(latest);
+                    }
+                }
+
+                List<Version> versions = source.listVersions(spec);
+
+                if (null != versions) {
+                    Version best = null;
+
+                    for (Version v : versions) {
+                        if ((null == range || range.contains(v)) && (null == best || best.compareTo(v) < 0)) {
+                            best = v;
+                        }
+                    }
+
+                    if (null != best) {
+                        LOG.debug("Resolved {} from {} to {}", spec, source, best);
+                        return best;
+                    }
+                }
+            }
+            catch (IOException e) {
+                LOG.warn("Unable to read versions of {} from {}: {}", spec.getDriver(), source, e.toString());
+            }
+        }
+
+        if (null == range && null != spec.getFallbackVersion()) {
+            LOG.warn("Unable to determine latest {}, using {}", spec.getDriver(), spec.getFallbackVersion());
+            return Version.valueOf(spec.getFallbackVersion());
+        }
+
+        throw new FileNotFoundException("No source has a version of " + spec);
+    }
+
+    /**
+     * Reads an auxiliary text file published alongside the driver archives, such as release notes
+     *
+     * @param spec Driver the file belongs to
+     * @param path Location of the file relative to the root of a source
+     * @return Content of the file from the first source that has it
+     * @throws IOException If no source has the file
+     */
+    public String readResource(DriverBinarySpec spec, String path) throws IOException {
+        IOException failure = null;
+
+        for (BinarySource source : getSources(spec)) {
+            try {
+                InputStream is = source.openResource(spec, path);
+
+                if (null != is) {
+                    try {
+                        return IOUtils.toString(is, "UTF-8");
+                    }
+                    finally {
+                        IOUtils.closeQuietly(is);
+                    }
+                }
+            }
+            catch (IOException e) {
+                LOG.warn("Unable to read {} from {}: {}", path, source, e.toString());
+                failure = e;
+            }
+        }
+
+        throw (null != failure) ? failure : new FileNotFoundException("No source has " + path);
+    }
+
+    /**
+     * Gets the driver executable described by a spec, downloading it into the cache if needed
+     *
+     * <p>
+     * Threads asking for the same driver at the same time share a single download, and the cache entry is locked while
+     * it is being downloaded so that other processes using the same cache wait for it instead of downloading it again.
+     * </p>
+     *
+     * <p>
+     * When a version range is requested and a version within it is already cached, the cached binary is used without
+     * resolving the range against the sources.
+     * </p>
+     *
+     * @param spec Driver to look for
+     * @return Location of the driver executable in the cache
+     * @throws IOException If the driver could not be found or retrieved
+     */
+    public File resolve(final DriverBinarySpec spec) throws IOException {
+        File cached = getCachedInRange(spec);
+
+        if (null != cached) {
+            return cached;
+        }
+
+        final Version version = resolveVersion(spec);
+        final DriverCacheKey key = new DriverCacheKey(spec.getDriver(), version.toString(), spec.getOs(),
+                spec.getArch());
+        File rv = this.cache.get(key);
+
+        if (null != rv) {
+            return rv;
+        }
+
+        FutureTask<File> task = new FutureTask<>(new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                return fetch(spec, version, key);
+            }
+        });
+        FutureTask<File> existing = this.inFlight.putIfAbsent(key, task);
+
+        if (null == existing) {
+            try {
+                task.run();
+            }
+            finally {
+                this.inFlight.remove(key, task);
+            }
+            existing = task;
+        }
+        else {
+            LOG.debug("Waiting for download of {} started by another thread", key);
+        }
+
+        try {
+            return existing.get();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + key);
+        }
+        catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Unable to retrieve " + key, cause);
+        }
+    }
+
+    /**
+     * Looks for the highest cached version within the requested range, so that pinned ranges (like the
+     * <code>major.minor</code> versions of IEDriverServer) resolve without consulting any source
+     *
+     * @param spec Driver to look for
+     * @return Verified cached binary, or null if the spec does not ask for a range or nothing in it is cached
+     */
+    private File getCachedInRange(DriverBinarySpec spec) {
+        if (null == spec.getVersion() || spec.isExactVersion()) {
+            return null;
+        }
+
+        VersionRange range = VersionRange.parse(spec.getVersion());
+        List<Version> candidates = new ArrayList<>();
+
+        for (String v : this.cache.getCachedVersions(spec.getDriver(), spec.getOs(), spec.getArch())) {
+            Version version = Version.valueOf(v);
+
+            if (range.contains(version)) {
+                candidates.add(version);
+            }
+        }
+
+        Collections.sort(candidates, Collections.reverseOrder());
+
+        for (Version version : candidates) {
+            File rv = this.cache.get(new DriverCacheKey(spec.getDriver(), version.toString(), spec.getOs(),
+                    spec.getArch()));
+
+            if (null != rv) {
+                LOG.debug("Using cached {} {} for {}", spec.getDriver(), version, range);
+                return rv;
+            }
+        }
+
+        return null;
+    }
+
+    private File fetch(DriverBinarySpec spec, Version version, DriverCacheKey key) throws IOException {
+        DriverCache.EntryLock lock = this.cache.lock(key);
+
+        try {
+            File rv = this.cache.get(key);
+
+            if (null != rv) {
+                LOG.debug("{} was downloaded by another process", key);
+                return rv;
+            }
+
+            IOException failure = null;
+
+            for (BinarySource source : getSources(spec)) {
+                File stagingDir = null;
+
+                try {
+                    InputStream is = source.openArtifact(spec, version);
+
+                    if (null == is) {
+                        LOG.debug("{} does not have {} {}", source, spec.getDriver(), version);
+                        continue;
+                    }
+
+                    stagingDir = this.cache.createStagingDirectory();
+
+                    LOG.debug("Downloading {} {} from {}", spec.getDriver(), version, source);
+                    download(is, getChecksum(source, spec, version, key), source.getArtifactName(spec, version),
+                            stagingDir, spec.getBinaryName());
+
+                    rv = this.cache.put(key, stagingDir, spec.getBinaryName());
+                    stagingDir = null;
+
+                    return rv;
+                }
+                catch (IOException e) {
+                    LOG.warn("Unable to retrieve {} {} from {}: {}", spec.getDriver(), version, source, e.toString());
+                    failure = e;
+                }
+                finally {
+                    this.cache.discard(stagingDir);
+                }
+            }
+
+            throw (null != failure) ? failure : new FileNotFoundException("No source has " + key);
+        }
+        finally {
+            lock.close();
+        }
+    }
+
+    private Checksum getChecksum(BinarySource source, DriverBinarySpec spec, Version version, DriverCacheKey key)
+            throws IOException {
+        String pinned = this.checksums.getProperty(key.getDriver() + "/" + key.getVersion() + "/" + key.getOs() + "-"
+                + key.getArch());
+
+        if (null != pinned) {
+            try {
+                return Checksum.parse(pinned);
+            }
+            catch (IllegalArgumentException iae) {
+                throw new IOException("Invalid pinned checksum for " + key, iae);
+            }
+        }
+
+        Checksum rv = source.readChecksum(spec, version);
+
+        if (null == rv) {
+            LOG.debug("{} does not publish a checksum for {} {}", source, spec.getDriver(), version);
+        }
+
+        return rv;
+    }
+
+    //The digest is computed while the archive is extracted, so the download is read only once; a mismatch discards
+    //the staging directory before anything is published to the cache
+    private static void download(InputStream is, Checksum checksum, String artifactName, File dstDir,
+            String binaryName) throws IOException {
+        DigestInputStream dis = (null == checksum) ? null : new DigestInputStream(is, checksum.newDigest());
+
+        try {
+            unpack((null == dis) ? is : dis, artifactName, dstDir, binaryName);
+
+            if (null != dis) {
+                // archives may end with data the extractor does not need, like the zip central directory
+                IOUtils.copy(dis, NullOutputStream.NULL_OUTPUT_STREAM);
+
+                byte[] digest = dis.getMessageDigest().digest();
+
+                if (!checksum.matches(digest)) {
+                    throw new IOException("Checksum mismatch for " + artifactName + ": expected " + checksum
+                            + ", got " + Checksum.toHex(digest));
+                }
+            }
+        }
+        finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    private static void unpack(InputStream is, String artifactName, File dstDir, String binaryName) throws IOException {
+        ArchiveExtractor.Format format = ArchiveExtractor.Format.fromFileName(artifactName);
+
+        if (null != format) {
+            new ArchiveExtractor().only(binaryName).executable(binaryName).flatten().extract(is, format, dstDir);
+        }
+        else {
+            // not copyInputStreamToFile, which closes the stream before download() can finish the digest
+            OutputStream os = FileUtils.openOutputStream(new File(dstDir, binaryName));
+            try {
+                IOUtils.copy(is, os);
+            }
+            finally {
+                os.close();
+            }
+        }
+    }
+}
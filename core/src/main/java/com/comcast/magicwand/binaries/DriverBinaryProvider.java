@@ -0,0 +1,53 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.util.List;
+
+/**
+ * Implemented by spells that download a driver binary, so that tools like {@link DriverCachePrefetch} can describe
+ * their drivers without knowing the spells
+ *
+ * <p>
+ * Implementations are discovered on the class path the same way wizard factories are, and need a public no-argument
+ * constructor.
+ * </p>
+ */
+public interface DriverBinaryProvider {
+
+    /**
+     * @return Name of the driver, as used by {@link DriverBinarySpec#getDriver()}
+     */
+    String getDriverName();
+
+    /**
+     * Describes the driver binary for a platform
+     *
+     * @param version Version or version range; null for the version the spell would use by default
+     * @param os Operating system; null for this machine
+     * @param arch Architecture; null for this machine
+     * @return {@link DriverBinarySpec}
+     * @throws IllegalArgumentException If the driver is not built for the platform
+     */
+    DriverBinarySpec createBinarySpec(String version, String os, String arch);
+
+    /**
+     * Describes the driver binaries the spell uses by default on this machine
+     *
+     * @return Binaries to prefetch; empty if the spell cannot run here
+     */
+    List<DriverBinarySpec> getDefaultBinarySpecs();
+}
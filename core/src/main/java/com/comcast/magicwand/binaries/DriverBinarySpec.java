@@ -0,0 +1,383 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.comcast.magicwand.utils.Version;
+
+/**
+ * Describes a driver binary that should be resolved by the {@link DriverBinaryManager}
+ *
+ * <p>
+ * The artifact pattern describes where the driver archive lives relative to the root of a {@link BinarySource}. It may
+ * contain the following placeholders:
+ * <ul>
+ * <li><code>{version}</code> - full version of the driver (i.e. <code>2.47.0</code>)</li>
+ * <li><code>{major}</code>, <code>{minor}</code> - first and second component of the version</li>
+ * <li><code>{os}</code>, <code>{arch}</code> - platform the binary is built for</li>
+ * </ul>
+ * For example chromedriver uses <code>{version}/chromedriver_{os}{arch}.zip</code>.
+ * </p>
+ *
+ * <p>
+ * The requested version may be an exact version, a {@link com.comcast.magicwand.utils.VersionRange} expression or
+ * null to ask for the latest version known to the sources.
+ * </p>
+ */
+public class DriverBinarySpec {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{(version|major|minor|os|arch)\\}");
+
+    private final String driver;
+    private String binaryName;
+    private String os;
+    private String arch;
+    private String version;
+    private String fallbackVersion;
+    private String artifactPattern;
+    private String latestPointer;
+    private String upstreamUrl;
+
+    private Pattern artifactRegex;
+    private Pattern platformRegex;
+
+    /**
+     * Creates a spec for a driver
+     *
+     * @param driver Name of the driver (i.e. <code>chromedriver</code>); also used as the default executable name
+     */
+    public DriverBinarySpec(String driver) {
+        this.driver = driver;
+        this.binaryName = driver;
+    }
+
+    /**
+     * Sets the name of the executable inside the driver archive
+     *
+     * @param binaryName Name of the executable (i.e. <code>chromedriver.exe</code>)
+     * @return this spec
+     */
+    public DriverBinarySpec withBinaryName(String binaryName) {
+        this.binaryName = binaryName;
+
+        return this;
+    }
+
+    /**
+     * Sets the platform the binary is built for
+     *
+     * @param os Operating system (i.e. <code>linux</code>)
+     * @param arch Architecture (i.e. <code>64</code>)
+     * @return this spec
+     */
+    public DriverBinarySpec withPlatform(String os, String arch) {
+        this.os = os;
+        this.arch = arch;
+        this.artifactRegex = null;
+
+        return this;
+    }
+
+    /**
+     * Sets the requested version
+     *
+     * @param version Exact version, version range or null for the latest version
+     * @return this spec
+     */
+    public DriverBinarySpec withVersion(String version) {
+        this.version = version;
+
+        return this;
+    }
+
+    /**
+     * Sets the version to use when the latest version cannot be determined from any source
+     *
+     * @param fallbackVersion Last known good version
+     * @return this spec
+     */
+    public DriverBinarySpec withFallbackVersion(String fallbackVersion) {
+        this.fallbackVersion = fallbackVersion;
+
+        return this;
+    }
+
+    /**
+     * Sets the location of driver archives relative to the root of a source
+     *
+     * @param artifactPattern Pattern using placeholders described in the class documentation
+     * @return this spec
+     */
+    public DriverBinarySpec withArtifactPattern(String artifactPattern) {
+        this.artifactPattern = artifactPattern;
+        this.artifactRegex = null;
+        this.platformRegex = null;
+
+        return this;
+    }
+
+    /**
+     * Sets the location of a text file containing the latest version of the driver (i.e. <code>LATEST_RELEASE</code>)
+     *
+     * @param latestPointer Path relative to the root of a source
+     * @return this spec
+     */
+    public DriverBinarySpec withLatestPointer(String latestPointer) {
+        this.latestPointer = latestPointer;
+
+        return this;
+    }
+
+    /**
+     * Sets the URL of the upstream storage bucket the driver is published to
+     *
+     * @param upstreamUrl Base URL of the bucket
+     * @return this spec
+     */
+    public DriverBinarySpec withUpstreamUrl(String upstreamUrl) {
+        this.upstreamUrl = upstreamUrl;
+
+        return this;
+    }
+
+    /**
+     * @return Name of the driver
+     */
+    public String getDriver() {
+        return this.driver;
+    }
+
+    /**
+     * @return Name of the executable inside the driver archive
+     */
+    public String getBinaryName() {
+        return this.binaryName;
+    }
+
+    /**
+     * @return Operating system the binary is built for
+     */
+    public String getOs() {
+        return this.os;
+    }
+
+    /**
+     * @return Architecture the binary is built for
+     */
+    public String getArch() {
+        return this.arch;
+    }
+
+    /**
+     * @return Requested version, version range, or null for the latest version
+     */
+    public String getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return Version to use when the latest version cannot be determined
+     */
+    public String getFallbackVersion() {
+        return this.fallbackVersion;
+    }
+
+    /**
+     * @return Location of a text file containing the latest version of the driver, or null
+     */
+    public String getLatestPointer() {
+        return this.latestPointer;
+    }
+
+    /**
+     * @return Base URL of the upstream storage bucket, or null
+     */
+    public String getUpstreamUrl() {
+        return this.upstreamUrl;
+    }
+
+    /**
+     * @return Pattern of the driver archive location
+     */
+    public String getArtifactPattern() {
+        return this.artifactPattern;
+    }
+
+    /**
+     * Checks whether an exact version was requested
+     *
+     * @return True if the requested version is neither null nor a range
+     */
+    public boolean isExactVersion() {
+        return null != this.version && !this.version.startsWith("[") && !this.version.startsWith("(");
+    }
+
+    /**
+     * Expands the artifact pattern for a version
+     *
+     * @param v Version of the driver
+     * @return Location of the driver archive relative to the root of a source
+     */
+    public String getArtifactPath(Version v) {
+        return expand(v, this.os, this.arch);
+    }
+
+    private String expand(Version v, String osValue, String archValue) {
+        Matcher m = PLACEHOLDER.matcher(this.artifactPattern);
+        StringBuffer sb = new StringBuffer();
+
+        while (m.find()) {
+            String name = m.group(1);
+            String value;
+
+            if ("version".equals(name)) {
+                value = v.toString();
+            }
+            else if ("major".equals(name)) {
+                value = Integer.toString(v.getComponent(0));
+            }
+            else if ("minor".equals(name)) {
+                value = Integer.toString(v.getComponent(1));
+            }
+            else if ("os".equals(name)) {
+                value = osValue;
+            }
+            else {
+                value = archValue;
+            }
+
+            m.appendReplacement(sb, Matcher.quoteReplacement(value));
+        }
+        m.appendTail(sb);
+
+        return sb.toString();
+    }
+
+    /**
+     * Gets the file name of the driver archive
+     *
+     * @param v Version of the driver
+     * @return Last segment of {@link #getArtifactPath(Version)}
+     */
+    public String getArtifactName(Version v) {
+        String path = getArtifactPath(v);
+
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Extracts the version from a location relative to the root of a source
+     *
+     * @param path Location to check (i.e. a bucket key)
+     * @return Version of the driver if the location matches the artifact pattern for this platform; null otherwise
+     */
+    public Version matchArtifactPath(String path) {
+        Matcher m = getArtifactRegex().matcher(path);
+
+        if (!m.matches()) {
+            return null;
+        }
+
+        Version rv = Version.valueOf(m.group("version"));
+
+        // make sure {major} and {minor} are consistent with {version}
+        return path.equals(getArtifactPath(rv)) ? rv : null;
+    }
+
+    /**
+     * Extracts version and platform from a location relative to the root of a source, accepting any platform
+     *
+     * @param path Location to check (i.e. a bucket key)
+     * @return <code>{version, os, arch}</code> if the location matches the artifact pattern, with os and arch null if
+     *         the pattern does not mention them; null otherwise
+     */
+    public String[] matchArtifactPlatform(String path) {
+        if (null == this.platformRegex) {
+            this.platformRegex = buildRegex(true);
+        }
+
+        Matcher m = this.platformRegex.matcher(path);
+
+        if (!m.matches()) {
+            return null;
+        }
+
+        Version v = Version.valueOf(m.group("version"));
+        String matchedOs = this.artifactPattern.contains("{os}") ? m.group("os") : null;
+        String matchedArch = this.artifactPattern.contains("{arch}") ? m.group("arch") : null;
+
+        return path.equals(expand(v, matchedOs, matchedArch))
+                ? new String[] { v.toString(), matchedOs, matchedArch }
+                : null;
+    }
+
+    private Pattern getArtifactRegex() {
+        if (null == this.artifactRegex) {
+            this.artifactRegex = buildRegex(false);
+        }
+
+        return this.artifactRegex;
+    }
+
+    private Pattern buildRegex(boolean anyPlatform) {
+        Matcher m = PLACEHOLDER.matcher(this.artifactPattern);
+        StringBuilder sb = new StringBuilder();
+        Set<String> seen = new HashSet<>();
+        int last = 0;
+
+        while (m.find()) {
+            sb.append(Pattern.quote(this.artifactPattern.substring(last, m.start())));
+            String name = m.group(1);
+
+            if ("major".equals(name) || "minor".equals(name)) {
+                sb.append("[0-9]+");
+            }
+            else if (!anyPlatform && !"version".equals(name)) {
+                sb.append(Pattern.quote("os".equals(name) ? this.os : this.arch));
+            }
+            else if (!seen.add(name)) {
+                sb.append("\\k<").append(name).append(">");
+            }
+            else if ("version".equals(name)) {
+                sb.append("(?<version>[0-9][^/]*?)");
+            }
+            else if ("os".equals(name)) {
+                sb.append("(?<os>[a-z]+)");
+            }
+            else {
+                sb.append("(?<arch>[A-Za-z0-9]+)");
+            }
+
+            last = m.end();
+        }
+        sb.append(Pattern.quote(this.artifactPattern.substring(last)));
+
+        return Pattern.compile(sb.toString());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.driver + "[" + ((null == this.version) ? "latest" : this.version) + ", " + this.os + "-"
+                + this.arch + "]";
+    }
+}
@@ -0,0 +1,636 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.comcast.magicwand.utils.SystemDetail;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A user level cache of driver binaries shared by every project, module and JVM running on the machine
+ *
+ * <p>
+ * Each entry lives in <code>root/driver/version/os-arch</code> and holds the extracted driver files together with a
+ * manifest that records size and SHA-256 of each file. Entries are prepared in a staging directory under the cache root
+ * and published with an atomic rename, so readers either see a complete entry or no entry at all. Entries are checked
+ * against their manifest before being handed out, and the least recently used ones are evicted once the cache grows past
+ * its size cap.
+ * </p>
+ *
+ * <p>
+ * The location of the default cache is taken from the <code>magicwand.driver.cache.dir</code> system property or the
+ * <code>MAGICWAND_DRIVER_CACHE_DIR</code> environment variable and defaults to
+ * <code>~/.cache/magic-wand/drivers</code>. Its size cap (in bytes) is taken from
+ * <code>magicwand.driver.cache.maxSize</code> or <code>MAGICWAND_DRIVER_CACHE_MAX_SIZE</code>.
+ * </p>
+ */
+public class DriverCache {
+    private static final Logger LOG = LoggerFactory.getLogger(DriverCache.class);
+
+    public static final String CACHE_DIR_PROP = "magicwand.driver.cache.dir";
+    public static final String CACHE_DIR_ENV = "MAGICWAND_DRIVER_CACHE_DIR";
+    public static final String CACHE_MAX_SIZE_PROP = "magicwand.driver.cache.maxSize";
+    public static final String CACHE_MAX_SIZE_ENV = "MAGICWAND_DRIVER_CACHE_MAX_SIZE";
+    public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    static final String MANIFEST_NAME = "manifest.properties";
+    private static final String STAGING_DIR_NAME = ".staging";
+    private static final String LOCKS_DIR_NAME = ".locks";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String BINARY_KEY = "binary";
+    private static final String FILES_KEY = "files";
+    private static final String TOTAL_SIZE_KEY = "size";
+    private static final String SIZE_PREFIX = "size.";
+    private static final String SHA256_PREFIX = "sha256.";
+    private static final long STALE_STAGING_AGE = 24L * 60 * 60 * 1000;
+
+    private static DriverCache defaultCache;
+
+    /* File locks are held by the whole JVM, so threads using the same lock file have to take turns on these first */
+    private static final ConcurrentMap<String, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private final File root;
+    private final long maxSize;
+    private final Set<DriverCacheKey> verified = Collections
+            .newSetFromMap(new ConcurrentHashMap<DriverCacheKey, Boolean>());
+
+    /**
+     * Creates a cache rooted at a given directory
+     *
+     * @param root Root directory of the cache
+     * @param maxSize Maximum size of all cache entries in bytes
+     */
+    public DriverCache(File root, long maxSize) {
+        this.root = root;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the cache configured for this machine
+     *
+     * @return Default driver cache
+     */
+    public static synchronized DriverCache getDefault() {
+        if (null == defaultCache) {
+            String dir = SystemDetail.getSetting(CACHE_DIR_PROP, CACHE_DIR_ENV);
+            File root = (null == dir)
+                    ? new File(System.getProperty("user.home"), ".cache" + File.separator + "magic-wand"
+                            + File.separator + "drivers")
+                    : new File(dir);
+
+            long max = SystemDetail.getLongSetting(CACHE_MAX_SIZE_PROP, CACHE_MAX_SIZE_ENV, DEFAULT_MAX_SIZE);
+
+            LOG.debug("Using driver cache at [{}] with a cap of {} bytes", root, max);
+            defaultCache = new DriverCache(root, max);
+        }
+
+        return defaultCache;
+    }
+
+    /**
+     * @return Root directory of this cache
+     */
+    public File getRoot() {
+        return this.root;
+    }
+
+    /**
+     * @return Maximum size of all cache entries in bytes
+     */
+    public long getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Gets a directory where entry for a key is stored
+     *
+     * @param key Cache key
+     * @return Entry directory; it is not guaranteed to exist
+     */
+    public File getEntryDirectory(DriverCacheKey key) {
+        File rv = this.root;
+
+        for (String segment : key.getPathSegments()) {
+            rv = new File(rv, segment);
+        }
+
+        return rv;
+    }
+
+    /**
+     * Looks up a cached binary
+     *
+     * @param key Key of the binary
+     * @return Cached binary, or null if it is not cached or if the cached copy failed its integrity check
+     */
+    public File get(DriverCacheKey key) {
+        File entryDir = getEntryDirectory(key);
+        File manifestFile = new File(entryDir, MANIFEST_NAME);
+
+        if (!manifestFile.isFile()) {
+            return null;
+        }
+
+        Properties manifest;
+        try {
+            manifest = readManifest(manifestFile);
+        }
+        catch (IOException e) {
+            LOG.warn("Could not read driver cache manifest [{}]", manifestFile, e);
+            return null;
+        }
+
+        String binaryName = manifest.getProperty(BINARY_KEY);
+        if (null == binaryName || !isIntact(key, entryDir, manifest)) {
+            LOG.warn("Driver cache entry [{}] is corrupt and will be removed", key);
+            this.verified.remove(key);
+            remove(entryDir);
+            return null;
+        }
+
+        // the manifest's modification time is used as the entry's last access time
+        manifestFile.setLastModified(System.currentTimeMillis());
+
+        return new File(entryDir, binaryName);
+    }
+
+    private boolean isIntact(DriverCacheKey key, File entryDir, Properties manifest) {
+        boolean checkDigest = !this.verified.contains(key);
+
+        for (String name : listedFiles(manifest)) {
+            File f = new File(entryDir, name);
+            String size = manifest.getProperty(SIZE_PREFIX + name);
+
+            if (!f.isFile() || null == size || f.length() != Long.parseLong(size)) {
+                return false;
+            }
+
+            if (checkDigest) {
+                try {
+                    if (!sha256(f).equals(manifest.getProperty(SHA256_PREFIX + name))) {
+                        return false;
+                    }
+                }
+                catch (IOException e) {
+                    LOG.warn("Could not verify [{}]", f, e);
+                    return false;
+                }
+            }
+        }
+
+        this.verified.add(key);
+
+        return true;
+    }
+
+    private static List<String> listedFiles(Properties manifest) {
+        List<String> rv = new ArrayList<String>();
+        String files = manifest.getProperty(FILES_KEY, "");
+
+        for (String name : files.split(",")) {
+            if (!name.isEmpty()) {
+                rv.add(name);
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * An exclusive lock on a cache entry, held by one thread of one process at a time
+     */
+    public static final class EntryLock implements Closeable {
+        private final ReentrantLock jvmLock;
+        private final RandomAccessFile file;
+        private final FileLock fileLock;
+
+        private EntryLock(ReentrantLock jvmLock, RandomAccessFile file, FileLock fileLock) {
+            this.jvmLock = jvmLock;
+            this.file = file;
+            this.fileLock = fileLock;
+        }
+
+        /**
+         * Releases the lock
+         */
+        @Override
+        public void close() {
+            try {
+                this.fileLock.release();
+            }
+            catch (IOException e) {
+                LOG.warn("Could not release driver cache lock", e);
+            }
+            finally {
+                IOUtils.closeQuietly(this.file);
+                this.jvmLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Acquires an exclusive lock on the entry for a key, waiting for other threads or processes using the same cache
+     * to release it. The entry does not need to exist. The lock should be held while the entry is being downloaded so
+     * that concurrent JVMs download it only once.
+     *
+     * @param key Key of the entry
+     * @return Lock that has to be closed once done
+     * @throws IOException If the lock file could not be created or locked
+     */
+    public EntryLock lock(DriverCacheKey key) throws IOException {
+        File lockFile = new File(this.root, LOCKS_DIR_NAME);
+        for (String segment : key.getPathSegments()) {
+            lockFile = new File(lockFile, segment);
+        }
+        lockFile = new File(lockFile.getPath() + LOCK_SUFFIX);
+        FileUtils.forceMkdir(lockFile.getParentFile());
+
+        String path = lockFile.getCanonicalPath();
+        ReentrantLock jvmLock = new ReentrantLock();
+        ReentrantLock existing = JVM_LOCKS.putIfAbsent(path, jvmLock);
+        if (null != existing) {
+            jvmLock = existing;
+        }
+
+        try {
+            jvmLock.lockInterruptibly();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for lock on [" + key + "]");
+        }
+
+        RandomAccessFile raf = null;
+        EntryLock rv = null;
+        try {
+            raf = new RandomAccessFile(lockFile, "rw");
+            FileChannel channel = raf.getChannel();
+            FileLock fileLock = channel.tryLock();
+
+            if (null == fileLock) {
+                LOG.debug("Waiting for another process to finish with driver cache entry [{}]", key);
+                fileLock = channel.lock();
+            }
+
+            rv = new EntryLock(jvmLock, raf, fileLock);
+            return rv;
+        }
+        finally {
+            if (null == rv) {
+                IOUtils.closeQuietly(raf);
+                jvmLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Creates an empty staging directory on the same file system as the cache. Driver files should be downloaded or
+     * extracted into it and then published using {@link #put(DriverCacheKey, File, String)}
+     *
+     * @return Staging directory
+     * @throws IOException If the directory could not be created
+     */
+    public File createStagingDirectory() throws IOException {
+        File stagingRoot = new File(this.root, STAGING_DIR_NAME);
+        FileUtils.forceMkdir(stagingRoot);
+
+        return Files.createTempDirectory(stagingRoot.toPath(), "stage").toFile();
+    }
+
+    /**
+     * Deletes a staging directory that was not published
+     *
+     * @param stagingDir Staging directory to delete; may be null
+     */
+    public void discard(File stagingDir) {
+        if (null != stagingDir) {
+            FileUtils.deleteQuietly(stagingDir);
+        }
+    }
+
+    /**
+     * Lists the versions of a driver that have a cache entry for a platform, without verifying the entries
+     *
+     * @param driver Name of the driver
+     * @param os Operating system
+     * @param arch Architecture
+     * @return Cached versions in no particular order
+     */
+    public List<String> getCachedVersions(String driver, String os, String arch) {
+        List<String> rv = new ArrayList<String>();
+        String platform = os + "-" + arch;
+
+        for (File version : listDirectories(new File(this.root, driver))) {
+            if (new File(new File(version, platform), MANIFEST_NAME).isFile()) {
+                rv.add(version.getName());
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Publishes the content of a staging directory as the entry for a key. The staging directory is consumed by this
+     * call.
+     *
+     * @param key Key of the entry
+     * @param stagingDir Directory created by {@link #createStagingDirectory()} holding the driver files
+     * @param binaryName Name of the driver executable, relative to the staging directory
+     * @return Cached binary
+     * @throws IOException If the entry could not be published
+     */
+    public File put(DriverCacheKey key, File stagingDir, String binaryName) throws IOException {
+        File binary = new File(stagingDir, binaryName);
+        if (!binary.isFile()) {
+            throw new IOException("Driver binary [" + binaryName + "] was not found in [" + stagingDir + "]");
+        }
+        binary.setExecutable(true);
+
+        Properties manifest = new Properties();
+        List<String> names = new ArrayList<String>();
+        long total = 0;
+
+        for (File f : FileUtils.listFiles(stagingDir, null, true)) {
+            String name = stagingDir.toURI().relativize(f.toURI()).getPath();
+            names.add(name);
+            manifest.setProperty(SIZE_PREFIX + name, Long.toString(f.length()));
+            manifest.setProperty(SHA256_PREFIX + name, sha256(f));
+            total += f.length();
+        }
+
+        manifest.setProperty(BINARY_KEY, binaryName);
+        manifest.setProperty(FILES_KEY, join(names));
+        manifest.setProperty(TOTAL_SIZE_KEY, Long.toString(total));
+        writeManifest(manifest, new File(stagingDir, MANIFEST_NAME));
+
+        File entryDir = getEntryDirectory(key);
+        if (entryDir.exists() && null == get(key)) {
+            remove(entryDir);
+        }
+        FileUtils.forceMkdir(entryDir.getParentFile());
+
+        try {
+            Files.move(stagingDir.toPath(), entryDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            this.verified.add(key);
+            LOG.debug("Published [{}] to driver cache at [{}]", key, entryDir);
+        }
+        catch (IOException e) {
+            // most likely somebody else published the same entry first
+            discard(stagingDir);
+            File existing = get(key);
+            if (null == existing) {
+                throw e;
+            }
+            LOG.debug("Driver cache entry [{}] was published concurrently", key);
+            return existing;
+        }
+
+        trim(key);
+
+        return new File(entryDir, binaryName);
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits into its size cap
+     */
+    public void trim() {
+        trim(null);
+    }
+
+    private synchronized void trim(DriverCacheKey keep) {
+        File keepDir = (null == keep) ? null : getEntryDirectory(keep);
+        List<File> manifests = new ArrayList<File>();
+        long total = 0;
+
+        for (File manifest : findManifests()) {
+            manifests.add(manifest);
+            total += entrySize(manifest);
+        }
+
+        Collections.sort(manifests, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return (l < r) ? -1 : ((l == r) ? 0 : 1);
+            }
+        });
+
+        for (File manifest : manifests) {
+            if (total <= this.maxSize) {
+                break;
+            }
+
+            File entryDir = manifest.getParentFile();
+            if (entryDir.equals(keepDir)) {
+                continue;
+            }
+
+            LOG.debug("Evicting [{}] from driver cache", entryDir);
+            total -= entrySize(manifest);
+            remove(entryDir);
+        }
+
+        removeStaleStagingDirectories();
+    }
+
+    private List<File> findManifests() {
+        List<File> rv = new ArrayList<File>();
+        File[] drivers = this.root.listFiles();
+
+        if (null == drivers) {
+            return rv;
+        }
+
+        for (File driver : drivers) {
+            if (!driver.isDirectory() || driver.getName().startsWith(".")) {
+                continue;
+            }
+            for (File version : listDirectories(driver)) {
+                for (File platform : listDirectories(version)) {
+                    File manifest = new File(platform, MANIFEST_NAME);
+                    if (manifest.isFile()) {
+                        rv.add(manifest);
+                    }
+                }
+            }
+        }
+
+        return rv;
+    }
+
+    private static List<File> listDirectories(File dir) {
+        List<File> rv = new ArrayList<File>();
+        File[] children = dir.listFiles();
+
+        if (null != children) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    rv.add(child);
+                }
+            }
+        }
+
+        return rv;
+    }
+
+    private static long entrySize(File manifest) {
+        try {
+            return Long.parseLong(readManifest(manifest).getProperty(TOTAL_SIZE_KEY, "0"));
+        }
+        catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void removeStaleStagingDirectories() {
+        File[] staged = new File(this.root, STAGING_DIR_NAME).listFiles();
+
+        if (null != staged) {
+            long cutoff = System.currentTimeMillis() - STALE_STAGING_AGE;
+            for (File f : staged) {
+                if (f.lastModified() < cutoff) {
+                    FileUtils.deleteQuietly(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an entry by first moving it out of the way, so that other readers never see a partially deleted entry
+     */
+    private void remove(File entryDir) {
+        File target = entryDir;
+
+        try {
+            File trash = new File(createStagingDirectory(), "evicted-" + UUID.randomUUID());
+            Files.move(entryDir.toPath(), trash.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            target = trash.getParentFile();
+        }
+        catch (IOException e) {
+            LOG.debug("Could not move [{}] out of the cache before deleting it", entryDir, e);
+        }
+
+        FileUtils.deleteQuietly(target);
+    }
+
+    private static Properties readManifest(File manifestFile) throws IOException {
+        Properties rv = new Properties();
+        InputStream in = null;
+
+        try {
+            in = new FileInputStream(manifestFile);
+            rv.load(in);
+        }
+        finally {
+            IOUtils.closeQuietly(in);
+        }
+
+        return rv;
+    }
+
+    private static void writeManifest(Properties manifest, File manifestFile) throws IOException {
+        OutputStream out = null;
+
+        try {
+            out = new FileOutputStream(manifestFile);
+            manifest.store(out, "magic-wand driver cache entry");
+            out.close();
+        }
+        finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private static String join(List<String> names) {
+        StringBuilder sb = new StringBuilder();
+
+        for (String name : names) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(name);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Computes SHA-256 of a file
+     *
+     * @param f File to hash
+     * @return Lower case hex encoded digest
+     * @throws IOException If the file could not be read
+     */
+    static String sha256(File f) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(f);
+            byte[] buf = new byte[8192];
+            int n;
+            while (-1 != (n = in.read(buf))) {
+                md.update(buf, 0, n);
+            }
+        }
+        finally {
+            IOUtils.closeQuietly(in);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+/**
+ * Identifies a driver binary in the {@link DriverCache}
+ *
+ * <p>
+ * A key is made of the driver name (i.e. <code>chromedriver</code>), its version, and the OS and architecture the
+ * binary was built for. Keys map to a relative directory of the cache: <code>driver/version/os-arch</code>.
+ * </p>
+ */
+public final class DriverCacheKey {
+
+    private final String driver;
+    private final String version;
+    private final String os;
+    private final String arch;
+
+    /**
+     * Creates a cache key
+     *
+     * @param driver Name of the driver (i.e. <code>chromedriver</code>)
+     * @param version Version of the driver
+     * @param os Operating system the binary is built for (i.e. <code>linux</code>)
+     * @param arch Architecture the binary is built for (i.e. <code>64</code>)
+     */
+    public DriverCacheKey(String driver, String version, String os, String arch) {
+        this.driver = requireSegment("driver", driver);
+        this.version = requireSegment("version", version);
+        this.os = requireSegment("os", os);
+        this.arch = requireSegment("arch", arch);
+    }
+
+    private static String requireSegment(String name, String value) {
+        if (null == value || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Driver cache key '" + name + "' cannot be empty");
+        }
+
+        String rv = value.trim();
+        if (rv.contains("/") || rv.contains("\\") || rv.contains("..") || rv.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid driver cache key '" + name + "': " + value);
+        }
+
+        return rv;
+    }
+
+    /**
+     * @return Name of the driver
+     */
+    public String getDriver() {
+        return this.driver;
+    }
+
+    /**
+     * @return Version of the driver
+     */
+    public String getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return Operating system the binary is built for
+     */
+    public String getOs() {
+        return this.os;
+    }
+
+    /**
+     * @return Architecture the binary is built for
+     */
+    public String getArch() {
+        return this.arch;
+    }
+
+    /**
+     * Gets the directory segments of this key, relative to the cache root
+     *
+     * @return Path segments
+     */
+    String[] getPathSegments() {
+        return new String[] { this.driver, this.version, this.os + "-" + this.arch };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof DriverCacheKey)) {
+            return false;
+        }
+
+        DriverCacheKey other = (DriverCacheKey) obj;
+
+        return this.driver.equals(other.driver) && this.version.equals(other.version) && this.os.equals(other.os)
+                && this.arch.equals(other.arch);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int rv = this.driver.hashCode();
+        rv = 31 * rv + this.version.hashCode();
+        rv = 31 * rv + this.os.hashCode();
+        return 31 * rv + this.arch.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.driver + "/" + this.version + "/" + this.os + "-" + this.arch;
+    }
+}
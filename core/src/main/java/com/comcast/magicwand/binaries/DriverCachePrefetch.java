@@ -0,0 +1,342 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+
+import com.comcast.magicwand.builders.PhoenixDriverBuilder;
+import com.comcast.magicwand.utils.Version;
+
+/**
+ * Downloads driver binaries into the shared {@link DriverCache} ahead of time, i.e. while baking CI agent images
+ *
+ * <p>
+ * Usage: <code>java -cp ... com.comcast.magicwand.binaries.DriverCachePrefetch [manifest]</code>
+ * </p>
+ *
+ * <p>
+ * The manifest lists one driver per line as <code>driver [version [os arch]]</code>, where the version may be a
+ * range and <code>latest</code> (or no version) stands for the version the spell would pick. Blank lines and lines
+ * starting with <code>#</code> are ignored. Without a manifest, the binaries the installed spells use by default on
+ * this machine are fetched. Drivers are resolved through the default {@link DriverBinaryManager}, so the usual sources,
+ * offline mode and checksum settings apply.
+ * </p>
+ */
+public class DriverCachePrefetch {
+
+    public static final int DEFAULT_THREADS = 4;
+
+    private static final String LATEST = "latest";
+
+    private final DriverBinaryManager manager;
+    private final int threads;
+
+    /**
+     * Outcome of fetching one driver binary
+     */
+    public static final class Result {
+        private final DriverBinarySpec spec;
+        private final Version version;
+        private final File binary;
+        private final boolean cached;
+        private final IOException failure;
+
+        Result(DriverBinarySpec spec, Version version, File binary, boolean cached, IOException failure) {
+            this.spec = spec;
+            this.version = version;
+            this.binary = binary;
+            this.cached = cached;
+            this.failure = failure;
+        }
+
+        /**
+         * @return Driver that was fetched
+         */
+        public DriverBinarySpec getSpec() {
+            return this.spec;
+        }
+
+        /**
+         * @return Resolved version, or null if it could not be resolved
+         */
+        public Version getVersion() {
+            return this.version;
+        }
+
+        /**
+         * @return Cached binary, or null if fetching failed
+         */
+        public File getBinary() {
+            return this.binary;
+        }
+
+        /**
+         * @return True if the binary was cached before; False if it was downloaded or fetching failed
+         */
+        public boolean isCached() {
+            return this.cached;
+        }
+
+        /**
+         * @return Reason fetching failed, or null if it succeeded
+         */
+        public IOException getFailure() {
+            return this.failure;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            String status = (null != this.failure) ? "failed" : (this.cached ? "cached" : "downloaded");
+            String detail = (null != this.failure) ? this.failure.toString() : this.binary.toString();
+
+            return String.format("%-10s %s %s %s-%s %s", status, this.spec.getDriver(),
+                    (null == this.version) ? this.spec.getVersion() : this.version, this.spec.getOs(),
+                    this.spec.getArch(), detail);
+        }
+    }
+
+    /**
+     * Creates a prefetcher
+     *
+     * @param manager Manager to fetch drivers with
+     * @param threads Number of drivers fetched at the same time
+     */
+    public DriverCachePrefetch(DriverBinaryManager manager, int threads) {
+        this.manager = manager;
+        this.threads = threads;
+    }
+
+    /**
+     * Loads the {@link DriverBinaryProvider}s of the installed spells
+     *
+     * @return Providers by driver name
+     */
+    public static Map<String, DriverBinaryProvider> loadProviders() {
+        return index(PhoenixDriverBuilder.loadImplementations(DriverBinaryProvider.class));
+    }
+
+    static Map<String, DriverBinaryProvider> index(Collection<DriverBinaryProvider> providers) {
+        Map<String, DriverBinaryProvider> rv = new LinkedHashMap<>();
+
+        for (DriverBinaryProvider provider : providers) {
+            rv.put(provider.getDriverName(), provider);
+        }
+
+        return rv;
+    }
+
+    /**
+     * Collects the binaries the installed spells use by default
+     *
+     * @param providers Providers of the installed spells
+     * @return Binaries to prefetch
+     */
+    public static List<DriverBinarySpec> getDefaultSpecs(Collection<DriverBinaryProvider> providers) {
+        List<DriverBinarySpec> rv = new ArrayList<>();
+
+        for (DriverBinaryProvider provider : providers) {
+            rv.addAll(provider.getDefaultBinarySpecs());
+        }
+
+        return rv;
+    }
+
+    /**
+     * Parses a prefetch manifest
+     *
+     * @param reader Manifest, see the class documentation for the format
+     * @param providers Providers by driver name
+     * @return Binaries listed by the manifest
+     * @throws IOException If the manifest could not be read
+     * @throws IllegalArgumentException If the manifest names an unknown driver or is malformed
+     */
+    public static List<DriverBinarySpec> parseManifest(Reader reader, Map<String, DriverBinaryProvider> providers)
+            throws IOException {
+        List<DriverBinarySpec> rv = new ArrayList<>();
+        BufferedReader br = new BufferedReader(reader);
+        String line;
+        int lineNo = 0;
+
+        while (null != (line = br.readLine())) {
+            lineNo++;
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split("\\s+");
+
+            if (3 == fields.length || fields.length > 4) {
+                throw new IllegalArgumentException("Line " + lineNo + " must be 'driver [version [os arch]]': " + line);
+            }
+
+            DriverBinaryProvider provider = providers.get(fields[0]);
+
+            if (null == provider) {
+                throw new IllegalArgumentException("Line " + lineNo + " names unknown driver " + fields[0]
+                        + ", known drivers are " + providers.keySet());
+            }
+
+            String version = (fields.length < 2 || LATEST.equalsIgnoreCase(fields[1])) ? null : fields[1];
+
+            rv.add((fields.length < 4) ? provider.createBinarySpec(version, null, null)
+                    : provider.createBinarySpec(version, fields[2], fields[3]));
+        }
+
+        return rv;
+    }
+
+    /**
+     * Fetches driver binaries into the cache, several at a time
+     *
+     * @param specs Binaries to fetch
+     * @return Outcome for every binary, in the order of <code>specs</code>
+     * @throws InterruptedException If interrupted while waiting for downloads
+     */
+    public List<Result> prefetch(List<DriverBinarySpec> specs) throws InterruptedException {
+        List<Callable<Result>> tasks = new ArrayList<>();
+
+        for (final DriverBinarySpec spec : specs) {
+            tasks.add(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return fetch(spec);
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.threads, tasks.size())));
+        List<Result> rv = new ArrayList<>();
+
+        try {
+            for (Future<Result> f : executor.invokeAll(tasks)) {
+                rv.add(f.get());
+            }
+        }
+        catch (ExecutionException ee) {
+            throw new IllegalStateException(ee.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        return rv;
+    }
+
+    private Result fetch(DriverBinarySpec spec) {
+        Version version = null;
+
+        try {
+            version = this.manager.resolveVersion(spec);
+
+            File cached = this.manager.getCache().get(new DriverCacheKey(spec.getDriver(), version.toString(),
+                    spec.getOs(), spec.getArch()));
+
+            if (null != cached) {
+                return new Result(spec, version, cached, true, null);
+            }
+
+            return new Result(spec, version, this.manager.resolve(spec.withVersion(version.toString())), false, null);
+        }
+        catch (IOException ioe) {
+            return new Result(spec, version, null, false, ioe);
+        }
+    }
+
+    /**
+     * Fetches the binaries listed by a manifest, or used by default by the installed spells
+     *
+     * @param args Location of a manifest (optional)
+     * @param out Stream to report to
+     * @return Exit code: 0 if every binary was fetched, 1 if some failed, 2 on invalid usage
+     * @throws InterruptedException If interrupted while waiting for downloads
+     */
+    static int run(String[] args, PrintStream out) throws InterruptedException {
+        if (args.length > 1) {
+            out.println("Usage: DriverCachePrefetch [manifest]");
+            return 2;
+        }
+
+        Map<String, DriverBinaryProvider> providers = loadProviders();
+        List<DriverBinarySpec> specs;
+
+        if (0 == args.length) {
+            specs = getDefaultSpecs(providers.values());
+        }
+        else {
+            Reader reader = null;
+            try {
+                reader = new InputStreamReader(new FileInputStream(args[0]), StandardCharsets.UTF_8);
+                specs = parseManifest(reader, providers);
+            }
+            catch (IOException | IllegalArgumentException e) {
+                out.println("Invalid manifest " + args[0] + ": " + e.getMessage());
+                return 2;
+            }
+            finally {
+                IOUtils.closeQuietly(reader);
+            }
+        }
+
+        DriverBinaryManager manager = DriverBinaryManager.getDefault();
+        out.println("Prefetching " + specs.size() + " driver(s) into " + manager.getCache().getRoot());
+
+        int rv = 0;
+
+        for (Result result : new DriverCachePrefetch(manager, DEFAULT_THREADS).prefetch(specs)) {
+            out.println(result);
+
+            if (null != result.getFailure()) {
+                rv = 1;
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Command line entry point, see the class documentation
+     *
+     * @param args Location of a manifest (optional)
+     * @throws InterruptedException If interrupted while waiting for downloads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        System.exit(run(args, System.out));
+    }
+}
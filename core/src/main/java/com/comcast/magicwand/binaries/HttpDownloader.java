@@ -0,0 +1,384 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.comcast.magicwand.utils.SystemDetail;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens HTTP downloads that survive dropped connections
+ *
+ * <p>
+ * Streams returned by {@link #open(URL)} reconnect transparently when a connection fails, asking the server for the
+ * rest of the file with a <code>Range</code> request (guarded by <code>If-Range</code> so that a file replaced in the
+ * meantime is not stitched together). Servers that ignore ranges are read from the start again, skipping what was
+ * already returned, provided they still report the <code>ETag</code> or <code>Last-Modified</code> of the first
+ * response; a file that changed, or that cannot be told apart from a changed one, fails the download without further
+ * retries, as the part already returned cannot be taken back. A download gives up after a number of consecutive
+ * failed attempts, waiting longer between each.
+ * </p>
+ *
+ * <p>
+ * The default downloader is configured through system properties or environment variables:
+ * <ul>
+ * <li><code>magicwand.driver.download.connectTimeout</code> / <code>MAGICWAND_DRIVER_DOWNLOAD_CONNECT_TIMEOUT</code>
+ * - connect timeout in milliseconds</li>
+ * <li><code>magicwand.driver.download.readTimeout</code> / <code>MAGICWAND_DRIVER_DOWNLOAD_READ_TIMEOUT</code> - read
+ * timeout in milliseconds</li>
+ * <li><code>magicwand.driver.download.retries</code> / <code>MAGICWAND_DRIVER_DOWNLOAD_RETRIES</code> - attempts after
+ * a failure</li>
+ * <li><code>magicwand.driver.download.backoff</code> / <code>MAGICWAND_DRIVER_DOWNLOAD_BACKOFF</code> - wait before the
+ * first retry in milliseconds; doubled for every following one</li>
+ * </ul>
+ * </p>
+ */
+public class HttpDownloader {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpDownloader.class);
+
+    public static final String CONNECT_TIMEOUT_PROP = "magicwand.driver.download.connectTimeout";
+    public static final String CONNECT_TIMEOUT_ENV = "MAGICWAND_DRIVER_DOWNLOAD_CONNECT_TIMEOUT";
+    public static final String READ_TIMEOUT_PROP = "magicwand.driver.download.readTimeout";
+    public static final String READ_TIMEOUT_ENV = "MAGICWAND_DRIVER_DOWNLOAD_READ_TIMEOUT";
+    public static final String RETRIES_PROP = "magicwand.driver.download.retries";
+    public static final String RETRIES_ENV = "MAGICWAND_DRIVER_DOWNLOAD_RETRIES";
+    public static final String BACKOFF_PROP = "magicwand.driver.download.backoff";
+    public static final String BACKOFF_ENV = "MAGICWAND_DRIVER_DOWNLOAD_BACKOFF";
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 30 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT = 60 * 1000;
+    public static final int DEFAULT_RETRIES = 3;
+    public static final long DEFAULT_BACKOFF = 1000;
+
+    private static final long MAX_BACKOFF = 30 * 1000;
+    private static final int HTTP_PARTIAL = 206;
+
+    private static HttpDownloader defaultDownloader;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxRetries;
+    private final long backoff;
+    private final List<DownloadListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a downloader
+     *
+     * @param connectTimeout Connect timeout in milliseconds
+     * @param readTimeout Read timeout in milliseconds
+     * @param maxRetries Number of consecutive failed attempts retried before a download fails
+     * @param backoff Wait before the first retry in milliseconds; doubled for every following one
+     */
+    public HttpDownloader(int connectTimeout, int readTimeout, int maxRetries, long backoff) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+    }
+
+    /**
+     * Gets the downloader configured for this machine
+     *
+     * @return Default downloader
+     */
+    public static synchronized HttpDownloader getDefault() {
+        if (null == defaultDownloader) {
+            defaultDownloader = new HttpDownloader(
+                    (int) SystemDetail.getLongSetting(CONNECT_TIMEOUT_PROP, CONNECT_TIMEOUT_ENV, DEFAULT_CONNECT_TIMEOUT),
+                    (int) SystemDetail.getLongSetting(READ_TIMEOUT_PROP, READ_TIMEOUT_ENV, DEFAULT_READ_TIMEOUT),
+                    (int) SystemDetail.getLongSetting(RETRIES_PROP, RETRIES_ENV, DEFAULT_RETRIES),
+                    SystemDetail.getLongSetting(BACKOFF_PROP, BACKOFF_ENV, DEFAULT_BACKOFF));
+        }
+
+        return defaultDownloader;
+    }
+
+    /**
+     * Registers a listener for the downloads of this downloader
+     *
+     * @param listener Listener to add
+     */
+    public void addListener(DownloadListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener
+     *
+     * @param listener Listener to remove
+     */
+    public void removeListener(DownloadListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Opens a download
+     *
+     * @param url Location to download
+     * @return Stream with the content of the URL; null if the URL does not exist
+     * @throws IOException If the URL could not be read
+     */
+    public InputStream open(URL url) throws IOException {
+        if (!"http".equals(url.getProtocol()) && !"https".equals(url.getProtocol())) {
+            URLConnection conn = url.openConnection();
+            conn.setConnectTimeout(this.connectTimeout);
+            conn.setReadTimeout(this.readTimeout);
+
+            try {
+                return conn.getInputStream();
+            }
+            catch (FileNotFoundException fnfe) {
+                return null;
+            }
+        }
+
+        Download rv = new Download(url);
+
+        return rv.start() ? rv : null;
+    }
+
+    /**
+     * A response that retrying will not fix
+     */
+    private static class UnexpectedResponseException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnexpectedResponseException(String message) {
+            super(message);
+        }
+    }
+
+    private class Download extends InputStream {
+        private final URL url;
+        private InputStream in;
+        private long position = 0;
+        private long total = -1;
+        private String validator;
+        private int failures = 0;
+        private boolean finished = false;
+
+        Download(URL url) {
+            this.url = url;
+        }
+
+        boolean start() throws IOException {
+            try {
+                if (!connect()) {
+                    return false;
+                }
+            }
+            catch (IOException ioe) {
+                resume(ioe);
+            }
+
+            return true;
+        }
+
+        /**
+         * @return False if the URL does not exist
+         */
+        private boolean connect() throws IOException {
+            HttpURLConnection http = (HttpURLConnection) this.url.openConnection();
+            http.setConnectTimeout(HttpDownloader.this.connectTimeout);
+            http.setReadTimeout(HttpDownloader.this.readTimeout);
+
+            if (this.position > 0) {
+                http.setRequestProperty("Range", "bytes=" + this.position + "-");
+                if (null != this.validator) {
+                    http.setRequestProperty("If-Range", this.validator);
+                }
+            }
+
+            int code = http.getResponseCode();
+
+            if (0 == this.position
+                    && (HttpURLConnection.HTTP_NOT_FOUND == code || HttpURLConnection.HTTP_GONE == code)) {
+                http.disconnect();
+                return false;
+            }
+
+            if (HttpURLConnection.HTTP_OK == code) {
+                if (this.position > 0) {
+                    // a full response to If-Range means the file was replaced, unless the server ignores ranges
+                    if (null == this.validator || !this.validator.equals(getValidator(http))) {
+                        http.disconnect();
+                        throw new UnexpectedResponseException(this.url + " changed after " + this.position
+                                + " bytes were downloaded");
+                    }
+
+                    LOG.debug("{} does not support ranges, skipping {} bytes", this.url, this.position);
+                    this.in = http.getInputStream();
+                    IOUtils.skipFully(this.in, this.position);
+                }
+                else {
+                    this.in = http.getInputStream();
+                    this.total = http.getContentLengthLong();
+                    this.validator = getValidator(http);
+
+                    for (DownloadListener l : HttpDownloader.this.listeners) {
+                        l.started(this.url, this.total);
+                    }
+                }
+            }
+            else if (HTTP_PARTIAL == code && this.position > 0) {
+                String range = http.getHeaderField("Content-Range");
+
+                if (null == range || !range.startsWith("bytes " + this.position + "-")) {
+                    http.disconnect();
+                    throw new IOException("Unexpected Content-Range [" + range + "] from " + this.url);
+                }
+
+                this.in = http.getInputStream();
+            }
+            else {
+                http.disconnect();
+
+                String message = "Unexpected response " + code + " from " + this.url;
+
+                // server errors tend to go away, anything else will not
+                if (code >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                    throw new IOException(message);
+                }
+                throw new UnexpectedResponseException(message);
+            }
+
+            return true;
+        }
+
+        private String getValidator(HttpURLConnection http) {
+            return (null != http.getHeaderField("ETag")) ? http.getHeaderField("ETag")
+                    : http.getHeaderField("Last-Modified");
+        }
+
+        private void resume(IOException cause) throws IOException {
+            IOException last = cause;
+
+            while (true) {
+                pause(last);
+
+                try {
+                    if (!connect()) {
+                        throw new FileNotFoundException(this.url.toString());
+                    }
+                    return;
+                }
+                catch (IOException ioe) {
+                    last = ioe;
+                }
+            }
+        }
+
+        private void pause(IOException cause) throws IOException {
+            // unknown hosts and client errors will not go away by waiting
+            if (this.failures >= HttpDownloader.this.maxRetries || cause instanceof UnexpectedResponseException
+                    || cause instanceof UnknownHostException) {
+                throw cause;
+            }
+
+            this.failures++;
+
+            long delay = Math.min(HttpDownloader.this.backoff << (this.failures - 1), MAX_BACKOFF);
+
+            LOG.debug("Retrying {} at byte {} in {}ms: {}", this.url, this.position, delay, cause.toString());
+
+            for (DownloadListener l : HttpDownloader.this.listeners) {
+                l.retrying(this.url, this.position, this.failures, cause);
+            }
+
+            try {
+                Thread.sleep(delay);
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while downloading " + this.url);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n;
+
+            do {
+                n = read(b, 0, 1);
+            } while (0 == n);
+
+            return (n < 0) ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.finished) {
+                return -1;
+            }
+
+            while (true) {
+                int n;
+
+                try {
+                    n = this.in.read(b, off, len);
+
+                    if (n < 0 && this.total >= 0 && this.position < this.total) {
+                        throw new EOFException("Connection closed after " + this.position + " of " + this.total
+                                + " bytes");
+                    }
+                }
+                catch (IOException ioe) {
+                    IOUtils.closeQuietly(this.in);
+                    resume(ioe);
+                    continue;
+                }
+
+                if (n < 0) {
+                    this.finished = true;
+
+                    for (DownloadListener l : HttpDownloader.this.listeners) {
+                        l.finished(this.url, this.position);
+                    }
+                }
+                else if (n > 0) {
+                    this.position += n;
+                    this.failures = 0;
+
+                    for (DownloadListener l : HttpDownloader.this.listeners) {
+                        l.progress(this.url, this.position, this.total);
+                    }
+                }
+
+                return n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+}
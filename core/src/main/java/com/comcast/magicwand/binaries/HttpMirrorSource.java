@@ -0,0 +1,75 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import com.comcast.magicwand.utils.Version;
+
+/**
+ * Reads driver archives from a plain HTTP server that mirrors the layout of the upstream bucket
+ *
+ * <p>
+ * A plain mirror cannot be enumerated, so it can only serve exact versions or the version named by the latest pointer
+ * of a driver. Use a {@link StorageBucketSource} for mirrors that implement the bucket listing API.
+ * </p>
+ */
+public class HttpMirrorSource extends AbstractBinarySource {
+
+    private final String baseUrl;
+
+    /**
+     * Creates a mirror source
+     *
+     * @param baseUrl URL of the root of the mirror
+     */
+    public HttpMirrorSource(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * @return URL of the root of the mirror
+     */
+    public String getBaseUrl() {
+        return this.baseUrl;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Version> listVersions(DriverBinarySpec spec) throws IOException {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected InputStream openPath(String path) throws IOException {
+        return openUrl(resolve(this.baseUrl, path));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "mirror[" + this.baseUrl + "]";
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import com.comcast.magicwand.utils.Version;
+
+/**
+ * Reads driver archives deployed to a Maven repository
+ *
+ * <p>
+ * Drivers are expected to be deployed with the driver name as the artifact id, the driver version as the version and
+ * <code>os-arch</code> as the classifier, i.e.
+ * <code>com/example/drivers/chromedriver/2.19/chromedriver-2.19-linux-64.zip</code>. The packaging is taken from the
+ * extension of the upstream artifact.
+ * </p>
+ */
+public class MavenRepositorySource extends AbstractBinarySource {
+
+    public static final String DEFAULT_GROUP_ID = "com.comcast.magic-wand.drivers";
+
+    private static final String METADATA_NAME = "maven-metadata.xml";
+    private static final String VERSIONS_XPATH = "/metadata/versioning/versions/version/text()";
+    private static final String RELEASE_XPATH = "/metadata/versioning/release/text()";
+
+    private final String repositoryUrl;
+    private final String groupId;
+
+    /**
+     * Creates a Maven repository source using the {@link #DEFAULT_GROUP_ID}
+     *
+     * @param repositoryUrl URL of the repository
+     */
+    public MavenRepositorySource(String repositoryUrl) {
+        this(repositoryUrl, DEFAULT_GROUP_ID);
+    }
+
+    /**
+     * Creates a Maven repository source
+     *
+     * @param repositoryUrl URL of the repository
+     * @param groupId Group id drivers are deployed under
+     */
+    public MavenRepositorySource(String repositoryUrl, String groupId) {
+        this.repositoryUrl = repositoryUrl;
+        this.groupId = groupId;
+    }
+
+    private String artifactDirectory(DriverBinarySpec spec) {
+        return this.groupId.replace('.', '/') + "/" + spec.getDriver() + "/";
+    }
+
+    private static String packaging(DriverBinarySpec spec, Version version) {
+        String name = spec.getArtifactName(version);
+
+        if (name.endsWith(".tar.gz")) {
+            return "tar.gz";
+        }
+
+        int dot = name.lastIndexOf('.');
+
+        return (dot < 0) ? "bin" : name.substring(dot + 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Version> listVersions(DriverBinarySpec spec) throws IOException {
+        NodeList nodes = readMetadata(spec, VERSIONS_XPATH);
+
+        if (null == nodes) {
+            return null;
+        }
+
+        List<Version> rv = new ArrayList<>();
+
+        for (int idx = 0; idx < nodes.getLength(); idx++) {
+            rv.add(Version.valueOf(nodes.item(idx).getTextContent().trim()));
+        }
+
+        return rv;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String readLatestVersion(DriverBinarySpec spec) throws IOException {
+        NodeList nodes = readMetadata(spec, RELEASE_XPATH);
+
+        if (null == nodes || 0 == nodes.getLength()) {
+            return null;
+        }
+
+        return nodes.item(0).getTextContent().trim();
+    }
+
+    private NodeList readMetadata(DriverBinarySpec spec, String expression) throws IOException {
+        InputStream is = openPath(artifactDirectory(spec) + METADATA_NAME);
+
+        if (null == is) {
+            return null;
+        }
+
+        try {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is);
+            XPath xpath = XPathFactory.newInstance().newXPath();
+
+            return (NodeList) xpath.evaluate(expression, doc, XPathConstants.NODESET);
+        }
+        catch (ParserConfigurationException | XPathExpressionException err) {
+            throw new RuntimeException(err);
+        }
+        catch (SAXException se) {
+            throw new IOException("Invalid maven metadata for " + spec.getDriver(), se);
+        }
+        finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getArtifactName(DriverBinarySpec spec, Version version) {
+        return spec.getDriver() + "-" + version + "-" + spec.getOs() + "-" + spec.getArch() + "."
+                + packaging(spec, version);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream openArtifact(DriverBinarySpec spec, Version version) throws IOException {
+        return openPath(artifactDirectory(spec) + version + "/" + getArtifactName(spec, version));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Reads the <code>.sha1</code> file Maven deploys next to every artifact.
+     * </p>
+     */
+    @Override
+    public Checksum readChecksum(DriverBinarySpec spec, Version version) throws IOException {
+        return readChecksumFile(artifactDirectory(spec) + version + "/" + getArtifactName(spec, version) + ".sha1",
+                Checksum.SHA1);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Maven repositories only hold driver archives, so this always returns null.
+     */
+    @Override
+    public InputStream openResource(DriverBinarySpec spec, String path) throws IOException {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected InputStream openPath(String path) throws IOException {
+        return openUrl(resolve(this.repositoryUrl, path));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "maven[" + this.repositoryUrl + ", " + this.groupId + "]";
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Small on-disk cache for driver metadata such as the latest release of a driver or a browser compatibility table
+ *
+ * <p>
+ * Values are kept in files next to the driver cache and shared by every JVM on the machine. A value older than its TTL
+ * is still returned, and a refresh is started in the background (stale-while-revalidate), so lookups only wait on the
+ * network when nothing was ever cached. Failed loads are remembered for {@link #FAILURE_TTL} milliseconds, during
+ * which the value is neither loaded nor refreshed again, so builds without network access do not wait on it over and
+ * over.
+ * </p>
+ */
+public class MetadataCache {
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataCache.class);
+
+    static final String METADATA_DIR_NAME = ".metadata";
+
+    /** Time in milliseconds a failed load is remembered before the value is loaded again */
+    public static final long FAILURE_TTL = 60 * 1000;
+
+    private static MetadataCache defaultCache;
+    private static Executor sharedRefresher;
+
+    private final File dir;
+    private final Executor refresher;
+    private final long failureTtl;
+    private final Set<String> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentMap<String, Long> failures = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a metadata cache
+     *
+     * @param dir Directory to keep values in
+     * @param refresher Executor running background refreshes
+     */
+    public MetadataCache(File dir, Executor refresher) {
+        this(dir, refresher, FAILURE_TTL);
+    }
+
+    /**
+     * Creates a metadata cache
+     *
+     * @param dir Directory to keep values in
+     * @param refresher Executor running background refreshes
+     * @param failureTtl Time in milliseconds a failed load is remembered
+     */
+    MetadataCache(File dir, Executor refresher, long failureTtl) {
+        this.dir = dir;
+        this.refresher = refresher;
+        this.failureTtl = failureTtl;
+    }
+
+    /**
+     * Creates a metadata cache refreshing values on a shared background thread
+     *
+     * @param dir Directory to keep values in
+     */
+    public MetadataCache(File dir) {
+        this(dir, getSharedRefresher());
+    }
+
+    private static synchronized Executor getSharedRefresher() {
+        if (null == sharedRefresher) {
+            sharedRefresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "magicwand-metadata-refresh");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        return sharedRefresher;
+    }
+
+    /**
+     * Gets the metadata cache stored alongside the default {@link DriverCache}
+     *
+     * @return Default metadata cache
+     */
+    public static synchronized MetadataCache getDefault() {
+        if (null == defaultCache) {
+            defaultCache = new MetadataCache(new File(DriverCache.getDefault().getRoot(), METADATA_DIR_NAME));
+        }
+
+        return defaultCache;
+    }
+
+    /**
+     * Gets a value, loading it synchronously only if it was never cached
+     *
+     * @param name Name of the value; must be usable as a file name
+     * @param ttl Time in milliseconds after which the value is refreshed in the background
+     * @param loader Loads the current value; may return null if there is none
+     * @return Cached (possibly stale) value, freshly loaded value, or null if the value could not be loaded
+     */
+    public String get(String name, long ttl, Callable<String> loader) {
+        File f = new File(this.dir, name);
+        String rv = read(f);
+
+        if (null == rv) {
+            return hasFailedRecently(name) ? null : load(name, loader);
+        }
+
+        refreshIfStale(name, f, ttl, loader);
+
+        return rv;
+    }
+
+    /**
+     * Gets a value without ever waiting for the loader
+     *
+     * @param name Name of the value; must be usable as a file name
+     * @param ttl Time in milliseconds after which the value is refreshed in the background
+     * @param loader Loads the current value; may return null if there is none
+     * @param defaultValue Value to return while nothing is cached
+     * @return Cached (possibly stale) value or <code>defaultValue</code>
+     */
+    public String getNonBlocking(String name, long ttl, Callable<String> loader, String defaultValue) {
+        File f = new File(this.dir, name);
+        String rv = read(f);
+
+        if (null == rv) {
+            refresh(name, loader);
+            return defaultValue;
+        }
+
+        refreshIfStale(name, f, ttl, loader);
+
+        return rv;
+    }
+
+    private void refreshIfStale(String name, File f, long ttl, Callable<String> loader) {
+        if (System.currentTimeMillis() - f.lastModified() > ttl) {
+            LOG.debug("Cached {} is stale, refreshing in the background", name);
+            refresh(name, loader);
+        }
+    }
+
+    private void refresh(final String name, final Callable<String> loader) {
+        if (hasFailedRecently(name) || !this.refreshing.add(name)) {
+            return;
+        }
+
+        try {
+            this.refresher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        load(name, loader);
+                    }
+                    finally {
+                        MetadataCache.this.refreshing.remove(name);
+                    }
+                }
+            });
+        }
+        catch (RuntimeException re) {
+            this.refreshing.remove(name);
+            LOG.warn("Unable to schedule refresh of {}: {}", name, re.toString());
+        }
+    }
+
+    private String load(String name, Callable<String> loader) {
+        String rv;
+
+        try {
+            rv = loader.call();
+        }
+        catch (Exception e) {
+            LOG.warn("Unable to load {}: {}", name, e.toString());
+            this.failures.put(name, System.currentTimeMillis());
+            return null;
+        }
+
+        if (null == rv) {
+            this.failures.put(name, System.currentTimeMillis());
+        }
+        else {
+            this.failures.remove(name);
+            try {
+                write(name, rv);
+            }
+            catch (IOException ioe) {
+                LOG.warn("Unable to cache {}: {}", name, ioe.toString());
+            }
+        }
+
+        return rv;
+    }
+
+    private boolean hasFailedRecently(String name) {
+        Long failedAt = this.failures.get(name);
+
+        if (null == failedAt) {
+            return false;
+        }
+        if (System.currentTimeMillis() - failedAt < this.failureTtl) {
+            LOG.debug("Loading {} failed less than {} ms ago, not trying again yet", name, this.failureTtl);
+            return true;
+        }
+
+        this.failures.remove(name, failedAt);
+        return false;
+    }
+
+    private void write(String name, String value) throws IOException {
+        FileUtils.forceMkdir(this.dir);
+
+        File tmp = File.createTempFile(name, ".tmp", this.dir);
+
+        try {
+            FileUtils.writeStringToFile(tmp, value, StandardCharsets.UTF_8.name());
+            Files.move(tmp.toPath(), new File(this.dir, name).toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+    private static String read(File f) {
+        if (!f.isFile()) {
+            return null;
+        }
+
+        try {
+            return FileUtils.readFileToString(f, StandardCharsets.UTF_8.name());
+        }
+        catch (IOException ioe) {
+            LOG.warn("Unable to read cached {}: {}", f, ioe.toString());
+            return null;
+        }
+    }
+}
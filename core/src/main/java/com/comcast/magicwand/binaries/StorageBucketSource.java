@@ -0,0 +1,150 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import com.comcast.magicwand.utils.Version;
+
+/**
+ * Reads driver archives from a storage bucket (or a mirror of one) that supports the XML bucket listing API, such as
+ * the buckets chromedriver and IEDriverServer are published to
+ *
+ * <p>
+ * Listings are turned into a {@link BucketIndex} covering every platform of a driver. When a {@link MetadataCache} is
+ * given, the index is kept there for a day, so versions of all spells reading the same bucket are resolved without
+ * listing it again.
+ * </p>
+ */
+public class StorageBucketSource extends HttpMirrorSource {
+
+    private static final long INDEX_TTL = TimeUnit.DAYS.toMillis(1);
+
+    private final MetadataCache metadata;
+
+    /**
+     * Creates a bucket source that lists the bucket every time versions are requested
+     *
+     * @param baseUrl URL of the root of the bucket
+     */
+    public StorageBucketSource(String baseUrl) {
+        this(baseUrl, null);
+    }
+
+    /**
+     * Creates a bucket source that caches listings
+     *
+     * @param baseUrl URL of the root of the bucket
+     * @param metadata Cache to keep bucket indexes in; may be null to not cache them
+     */
+    public StorageBucketSource(String baseUrl, MetadataCache metadata) {
+        super(baseUrl);
+        this.metadata = metadata;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Version> listVersions(DriverBinarySpec spec) throws IOException {
+        BucketIndex index = getIndex(spec);
+
+        return (null == index) ? null : index.getVersions(spec.getOs(), spec.getArch());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Uses the MD5 checksum from the bucket listing if there is one, and the <code>.sha256</code> file next to the
+     * archive otherwise.
+     * </p>
+     */
+    @Override
+    public Checksum readChecksum(DriverBinarySpec spec, Version version) throws IOException {
+        BucketIndex index = getIndex(spec);
+        Checksum rv = (null == index) ? null : index.getChecksum(version, spec.getOs(), spec.getArch());
+
+        return (null != rv) ? rv : super.readChecksum(spec, version);
+    }
+
+    /**
+     * Gets the index of the artifacts of a driver in this bucket
+     *
+     * @param spec Driver to look for; its version and platform are ignored
+     * @return Index of the driver artifacts, or null if the bucket could not be listed
+     * @throws IOException If the bucket listing is invalid
+     */
+    public BucketIndex getIndex(final DriverBinarySpec spec) throws IOException {
+        if (null == this.metadata) {
+            return buildIndex(spec);
+        }
+
+        String text = this.metadata.get(getIndexName(spec), INDEX_TTL, new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                BucketIndex index = buildIndex(spec);
+
+                return (null == index) ? null : index.toText();
+            }
+        });
+
+        return (null == text) ? null : BucketIndex.parse(text);
+    }
+
+    private BucketIndex buildIndex(DriverBinarySpec spec) throws IOException {
+        String pattern = spec.getArtifactPattern();
+        int placeholder = pattern.indexOf('{');
+        String prefix = (placeholder < 0) ? pattern : pattern.substring(0, placeholder);
+
+        BucketIndex.Builder builder = new BucketIndex.Builder(spec);
+
+        return new BucketListingReader(getBaseUrl()).list(prefix, builder) ? builder.build() : null;
+    }
+
+    private String getIndexName(DriverBinarySpec spec) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] digest = md.digest((getBaseUrl() + "|" + spec.getArtifactPattern()).getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(spec.getDriver()).append("-index-");
+
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "bucket[" + getBaseUrl() + "]";
+    }
+}
@@ -24,10 +24,13 @@ import java.util.Set;
 import java.util.HashSet;
 import java.util.Map;
 
+import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.net.MalformedURLException;
 
+import com.comcast.magicwand.drivers.AbstractPhoenixDriver;
 import com.comcast.magicwand.drivers.PhoenixDriver;
+import com.comcast.magicwand.metrics.PageLoadMetrics;
 import com.comcast.magicwand.wizards.WizardFactory;
 
 import org.slf4j.Logger;
@@ -117,7 +120,19 @@ public class PhoenixDriverBuilder {
      * @return List of WizardFactory classes.
      */
     public static final List<WizardFactory> loadAllFactories() {
-        List<WizardFactory> factories = new LinkedList<WizardFactory>();
+        return loadImplementations(WizardFactory.class);
+    }
+
+    /**
+     * Load implementations of an interface from the classpath, searching the same locations as
+     * {@link #loadAllFactories()}
+     *
+     * @param type Interface to look for
+     * @param <T> Type of the interface
+     * @return Instances of every concrete implementation
+     */
+    public static final <T> List<T> loadImplementations(Class<T> type) {
+        List<T> factories = new LinkedList<T>();
 
         ClassLoader loader = ClasspathHelper.contextClassLoader();
 
@@ -146,13 +161,18 @@ public class PhoenixDriverBuilder {
 
         Reflections ref = new Reflections(conf);
 
-        Set<Class<? extends WizardFactory>> fact_set = ref.getSubTypesOf(WizardFactory.class);
+        Set<Class<? extends T>> fact_set = ref.getSubTypesOf(type);
 
-        Iterator<Class<? extends WizardFactory>> iter = fact_set.iterator();
+        Iterator<Class<? extends T>> iter = fact_set.iterator();
 
         while(iter.hasNext()) {
+            Class<? extends T> impl = iter.next();
+
+            if(impl.isInterface() || Modifier.isAbstract(impl.getModifiers()))
+                continue;
+
             try {
-                factories.add(iter.next().newInstance());
+                factories.add(impl.newInstance());
             }
             catch(InstantiationException | IllegalAccessException ie) {
                 LOG.error("ERROR: {}", ie);
@@ -211,6 +231,15 @@ public class PhoenixDriverBuilder {
             }
         }
 
+        if (rv instanceof AbstractPhoenixDriver) {
+            AbstractPhoenixDriver driver = (AbstractPhoenixDriver) rv;
+
+            if (PageLoadMetrics.isEnabled(curIngredients)) {
+                driver.setPageLoadMetrics(PageLoadMetrics.getDefault());
+            }
+            driver.getSessionState().setEnabled(curIngredients.isSessionStateCache());
+        }
+
         return rv;
     }
 
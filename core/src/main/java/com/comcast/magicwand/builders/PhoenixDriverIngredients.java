@@ -15,16 +15,26 @@
  */
 package com.comcast.magicwand.builders;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.comcast.cookie.CookieHandler;
 import com.comcast.magicwand.utils.SystemDetail;
 import com.comcast.magicwand.drivers.PhoenixDriver;
+import com.comcast.magicwand.drivers.profiles.SessionStorage;
 import com.comcast.magicwand.enums.DesktopOS;
 import com.comcast.magicwand.enums.MobileOS;
 import com.comcast.magicwand.enums.OSType;
+import com.comcast.magicwand.metrics.PageLoadMetrics;
+import com.comcast.magicwand.proxy.BlockingRule;
+import com.comcast.magicwand.proxy.FixtureMode;
 
+import org.openqa.selenium.Dimension;
 import org.openqa.selenium.remote.BrowserType;
 import org.openqa.selenium.remote.DesiredCapabilities;
 
@@ -36,6 +46,9 @@ import org.openqa.selenium.remote.DesiredCapabilities;
  */
 public class PhoenixDriverIngredients {
 
+    /** Window size used by headless and lean sessions unless {@link #withWindowSize(int, int)} says otherwise */
+    public static final Dimension DEFAULT_WINDOW_SIZE = new Dimension(1366, 768);
+
     private MobileOS mos;
     private String browserType;
     private DesktopOS dos;
@@ -45,6 +58,21 @@ public class PhoenixDriverIngredients {
 
     private CookieHandler cookieHandler;
 
+    private File ramStorageDir;
+    private long ramStorageLimit;
+
+    private boolean headless;
+    private boolean leanLaunch;
+    private Dimension windowSize;
+
+    private List<BlockingRule> blockingRules = new ArrayList<>();
+
+    private File fixtureDir;
+    private FixtureMode fixtureMode;
+
+    private boolean pageLoadMetrics;
+    private boolean sessionStateCache;
+
     /**
      * Adds a custom configuration parameter for PhoenixDriver construction
      *
@@ -108,6 +136,244 @@ public class PhoenixDriverIngredients {
         return this;
     }
 
+    /**
+     * Places the profile, disk cache and downloads of each session on <code>/dev/shm</code>, see
+     * {@link #withRamStorage(File, long)}
+     *
+     * @param maxSessionSize Number of bytes each session may use
+     * @return this builder
+     */
+    public PhoenixDriverIngredients withRamStorage(long maxSessionSize) {
+        return withRamStorage(SessionStorage.DEFAULT_RAM_DIR, maxSessionSize);
+    }
+
+    /**
+     * Places the profile, disk cache and downloads of each session on a RAM-backed file system. Honored by the
+     * Chrome, Firefox and PhantomJS spells; sessions fall back to the temporary directory on disk when the RAM
+     * directory is missing or has no room left for another <code>maxSessionSize</code> bytes.
+     *
+     * @param dir Directory on a RAM-backed file system
+     * @param maxSessionSize Number of bytes each session may use
+     * @return this builder
+     */
+    public PhoenixDriverIngredients withRamStorage(File dir, long maxSessionSize) {
+        if (maxSessionSize <= 0) {
+            throw new IllegalArgumentException("Session size limit must be positive: " + maxSessionSize);
+        }
+
+        this.ramStorageDir = dir;
+        this.ramStorageLimit = maxSessionSize;
+
+        return this;
+    }
+
+    /**
+     * Gets RAM-backed directory sessions are placed in
+     *
+     * @return Directory specified by {@link #withRamStorage(File, long)} or null if sessions are kept on disk
+     */
+    public File getRamStorageDir() {
+        return this.ramStorageDir;
+    }
+
+    /**
+     * Gets number of bytes each session may use in the RAM-backed directory
+     *
+     * @return Limit specified by {@link #withRamStorage(File, long)}
+     */
+    public long getRamStorageLimit() {
+        return this.ramStorageLimit;
+    }
+
+    /**
+     * Runs browsers without a display, see {@link #withHeadless(boolean)}
+     *
+     * @return this builder
+     */
+    public PhoenixDriverIngredients withHeadless() {
+        return withHeadless(true);
+    }
+
+    /**
+     * Specifies whether browsers should run without a display (no Xvfb needed). Honored by the Chrome and Firefox
+     * spells; PhantomJS is always headless.
+     *
+     * @param headless True to run headless
+     * @return this builder
+     */
+    public PhoenixDriverIngredients withHeadless(boolean headless) {
+        this.headless = headless;
+
+        return this;
+    }
+
+    /**
+     * Launches browsers with a lean preset: no extensions besides the driver's own, no GPU, reduced background
+     * networking (updates, sync, safe browsing, telemetry) and a fixed window size
+     *
+     * @return this builder
+     */
+    public PhoenixDriverIngredients withLeanLaunch() {
+        this.leanLaunch = true;
+
+        return this;
+    }
+
+    /**
+     * Specifies the size of the browser window
+     *
+     * @param width Width in pixels
+     * @param height Height in pixels
+     * @return this builder
+     */
+    public PhoenixDriverIngredients withWindowSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Window size must be positive: " + width + "x" + height);
+        }
+
+        this.windowSize = new Dimension(width, height);
+
+        return this;
+    }
+
+    /**
+     * Checks whether browsers should run without a display
+     *
+     * @return True if requested by {@link #withHeadless(boolean)}
+     */
+    public boolean isHeadless() {
+        return this.headless;
+    }
+
+    /**
+     * Checks whether browsers should be launched with the lean preset
+     *
+     * @return True if requested by {@link #withLeanLaunch()}
+     */
+    public boolean isLeanLaunch() {
+        return this.leanLaunch;
+    }
+
+    /**
+     * Gets the size of the browser window
+     *
+     * @return Size specified by {@link #withWindowSize(int, int)}, {@link #DEFAULT_WINDOW_SIZE} for headless and
+     *         lean sessions, or null to leave the window alone
+     */
+    public Dimension getWindowSize() {
+        if (null == this.windowSize && (this.headless || this.leanLaunch)) {
+            return DEFAULT_WINDOW_SIZE;
+        }
+
+        return this.windowSize;
+    }
+
+    /**
+     * Keeps requests matching the rules from reaching the network, e.g. ads, analytics, fonts and images that no
+     * assertion looks at. Local Chrome and Firefox sessions go through a proxy that counts what it blocks; remote
+     * sessions get an equivalent proxy auto-config script.
+     *
+     * @param rules Rules to add to the ones already given
+     * @return this builder
+     */
+    public PhoenixDriverIngredients withBlockingRules(BlockingRule... rules) {
+        this.blockingRules.addAll(Arrays.asList(rules));
+
+        return this;
+    }
+
+    /**
+     * Gets the rules deciding which requests to block
+     *
+     * @return Rules given to {@link #withBlockingRules(BlockingRule...)}; empty if nothing is blocked
+     */
+    public List<BlockingRule> getBlockingRules() {
+        return Collections.unmodifiableList(this.blockingRules);
+    }
+
+    /**
+     * Records the plain HTTP traffic of the session into a directory of fixture files, or answers the session from
+     * them without going upstream, so that each test can run against its own stubbed backend. Requests are matched
+     * on method, URL and body; HTTPS is passed along untouched, as the proxy cannot see into it.
+     *
+     * @param dir Directory of the fixture set of the test
+     * @param mode Whether to record or replay the fixtures
+     * @return this builder
+     */
+    public PhoenixDriverIngredients withFixtures(File dir, FixtureMode mode) {
+        if (null == dir || null == mode) {
+            throw new IllegalArgumentException("Fixture directory and mode are required");
+        }
+
+        this.fixtureDir = dir;
+        this.fixtureMode = mode;
+
+        return this;
+    }
+
+    /**
+     * Gets the directory of the fixture set of the session
+     *
+     * @return Directory specified by {@link #withFixtures(File, FixtureMode)} or null if the session is not stubbed
+     */
+    public File getFixtureDir() {
+        return this.fixtureDir;
+    }
+
+    /**
+     * Gets whether fixtures are recorded or replayed
+     *
+     * @return Mode specified by {@link #withFixtures(File, FixtureMode)} or null if the session is not stubbed
+     */
+    public FixtureMode getFixtureMode() {
+        return this.fixtureMode;
+    }
+
+    /**
+     * Measures every navigation of the session (time to first byte, <code>DOMContentLoaded</code>, <code>load</code>
+     * and transfer sizes) into {@link PageLoadMetrics#getDefault()}, which reports percentiles per URL pattern when
+     * the JVM exits
+     *
+     * @return this builder
+     */
+    public PhoenixDriverIngredients withPageLoadMetrics() {
+        this.pageLoadMetrics = true;
+
+        return this;
+    }
+
+    /**
+     * Checks whether navigations are measured
+     *
+     * @return True if {@link #withPageLoadMetrics()} was given
+     */
+    public boolean isPageLoadMetrics() {
+        return this.pageLoadMetrics;
+    }
+
+    /**
+     * Keeps track of the window, frame and (on mobile) context the session is in, so that switching to where the
+     * session already is and asking for the current window handle do not cost a round trip. Only switches made
+     * through the {@link PhoenixDriver} itself are seen, not those made through its underlying driver.
+     *
+     * @return this builder
+     * @see com.comcast.magicwand.drivers.AbstractPhoenixDriver#getSessionState()
+     */
+    public PhoenixDriverIngredients withSessionStateCache() {
+        this.sessionStateCache = true;
+
+        return this;
+    }
+
+    /**
+     * Checks whether redundant switches are skipped
+     *
+     * @return True if {@link #withSessionStateCache()} was given
+     */
+    public boolean isSessionStateCache() {
+        return this.sessionStateCache;
+    }
+
     /**
      * Gets cookie handler
      *
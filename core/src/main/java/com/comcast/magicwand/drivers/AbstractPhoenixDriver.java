@@ -15,15 +15,21 @@
  */
 package com.comcast.magicwand.drivers;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.net.URL;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.openqa.selenium.Alert;
 import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
@@ -31,10 +37,110 @@ import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 
 import com.comcast.cookie.CookieHandler;
+import com.comcast.magicwand.metrics.PageLoadMetrics;
+import com.comcast.magicwand.proxy.BlockingStats;
 
 public abstract class AbstractPhoenixDriver implements PhoenixDriver {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractPhoenixDriver.class);
 
+    private final List<Closeable> sessionResources = new CopyOnWriteArrayList<>();
+    private BlockingStats blockingStats;
+    private PageLoadMetrics pageLoadMetrics;
+    private final SessionState sessionState = new SessionState();
+    private final ScriptCache scriptCache = new ScriptCache(this);
+
+    /**
+     * Registers something that lives as long as the session (a proxy, a scratch directory...), closed after the
+     * driver quits
+     *
+     * @param resource Resource to close on {@link #quit()}
+     */
+    public void addSessionResource(Closeable resource) {
+        this.sessionResources.add(resource);
+    }
+
+    /**
+     * Gets the counts of requests kept off the network by the blocking rules of the ingredients
+     *
+     * @return Stats or null if the session blocks nothing, or blocks without a local proxy to count
+     */
+    public BlockingStats getBlockingStats() {
+        return this.blockingStats;
+    }
+
+    /**
+     * @param stats Counts of blocked requests of this session
+     */
+    protected void setBlockingStats(BlockingStats stats) {
+        this.blockingStats = stats;
+    }
+
+    /**
+     * Gets the metrics the navigations of this session are measured into
+     *
+     * @return Metrics or null if navigations are not measured
+     */
+    public PageLoadMetrics getPageLoadMetrics() {
+        return this.pageLoadMetrics;
+    }
+
+    /**
+     * Measures the page after each {@link #get(String)} and {@link #navigate()} call, with one script call
+     *
+     * @param metrics Metrics to record into; null to stop measuring
+     */
+    public void setPageLoadMetrics(PageLoadMetrics metrics) {
+        this.pageLoadMetrics = metrics;
+    }
+
+    /**
+     * Gets the mirror of the window, frame and context of this session, which counts the calls it saved. It is
+     * disabled unless {@link com.comcast.magicwand.builders.PhoenixDriverIngredients#withSessionStateCache()} was
+     * given.
+     *
+     * @return Session state
+     */
+    public SessionState getSessionState() {
+        return this.sessionState;
+    }
+
+    /**
+     * Gets the cache of JavaScript functions installed into the pages of this driver. Not part of
+     * {@link PhoenixDriver}, so that implementations written against earlier versions keep compiling.
+     *
+     * @return Script cache
+     */
+    public ScriptCache getScriptCache() {
+        return this.scriptCache;
+    }
+
+    //the page is about to be replaced, so neither the frame nor the installed scripts carry over
+    private void documentChanged() {
+        this.sessionState.invalidate();
+        this.scriptCache.invalidate();
+    }
+
+    //errors other than missing elements may mean the window or frame is gone
+    private RuntimeException invalidateOn(RuntimeException e) {
+        if (!(e instanceof NoSuchElementException)) {
+            this.sessionState.invalidate();
+        }
+
+        return e;
+    }
+
+    /**
+     * Records the timing of the page the driver is showing, if navigations are measured
+     */
+    protected void measurePageLoad() {
+        PageLoadMetrics metrics = this.pageLoadMetrics;
+        WebDriver driver = this.getDriver();
+
+        if (null != metrics && null != driver) {
+            metrics.capture(driver);
+        }
+    }
+
     /**
      * @return Reference to a {@link CookieHandler}
      */
@@ -86,6 +192,8 @@ public abstract class AbstractPhoenixDriver implements PhoenixDriver {
     public void close() {
         WebDriver driver = this.getDriver();
 
+        documentChanged();
+
         if (null != driver) {
             driver.close();
         }
@@ -99,7 +207,11 @@ public abstract class AbstractPhoenixDriver implements PhoenixDriver {
         WebElement element = null;
 
         if (null != driver) {
-            element = driver.findElement(arg0);
+            try {
+                element = driver.findElement(arg0);
+            } catch (WebDriverException e) {
+                throw invalidateOn(e);
+            }
         }
 
         return element;
@@ -113,7 +225,11 @@ public abstract class AbstractPhoenixDriver implements PhoenixDriver {
         List<WebElement> elements = null;
 
         if (null != driver) {
-            elements = driver.findElements(arg0);
+            try {
+                elements = driver.findElements(arg0);
+            } catch (WebDriverException e) {
+                throw invalidateOn(e);
+            }
         }
 
         return elements;
@@ -126,7 +242,9 @@ public abstract class AbstractPhoenixDriver implements PhoenixDriver {
         WebDriver driver = this.getDriver();
 
         if (null != driver) {
+            documentChanged();
             driver.get(arg0);
+            measurePageLoad();
         }
     }
 
@@ -180,7 +298,16 @@ public abstract class AbstractPhoenixDriver implements PhoenixDriver {
         String windowHandle = null;
 
         if (null != driver) {
-            windowHandle = driver.getWindowHandle();
+            windowHandle = this.sessionState.elideGetWindowHandle();
+
+            if (null == windowHandle) {
+                try {
+                    windowHandle = driver.getWindowHandle();
+                } catch (WebDriverException e) {
+                    throw invalidateOn(e);
+                }
+                this.sessionState.windowHandleFetched(windowHandle);
+            }
         }
 
         return windowHandle;
@@ -223,6 +350,10 @@ public abstract class AbstractPhoenixDriver implements PhoenixDriver {
 
         if (null != driver) {
             navigate = driver.navigate();
+
+            if ((null != this.pageLoadMetrics || this.sessionState.isEnabled()) && null != navigate) {
+                navigate = new TrackedNavigation(navigate);
+            }
         }
 
         return navigate;
@@ -233,11 +364,28 @@ public abstract class AbstractPhoenixDriver implements PhoenixDriver {
      */
     public void quit() {
         WebDriver driver = this.getDriver();
-        if (null != driver) {
-            driver.quit();
+        documentChanged();
+
+        try {
+            if (null != driver) {
+                driver.quit();
+            }
+        } finally {
+            closeSessionResources();
         }
     }
 
+    /**
+     * Closes the resources registered with {@link #addSessionResource(Closeable)}, i.e. when the session failed to
+     * start
+     */
+    protected void closeSessionResources() {
+        for (Closeable resource : this.sessionResources) {
+            IOUtils.closeQuietly(resource);
+        }
+        this.sessionResources.clear();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -247,8 +395,160 @@ public abstract class AbstractPhoenixDriver implements PhoenixDriver {
 
         if (null != driver) {
             switchTo = driver.switchTo();
+
+            if (this.sessionState.isEnabled() && null != switchTo) {
+                switchTo = new TrackedTargetLocator(switchTo);
+            }
         }
 
         return switchTo;
     }
+
+    //Navigation forgetting the session state and installed scripts before the browser moves and measuring the page once it got there
+    private class TrackedNavigation implements Navigation {
+        private final Navigation navigation;
+
+        TrackedNavigation(Navigation navigation) {
+            this.navigation = navigation;
+        }
+
+        @Override
+        public void back() {
+            documentChanged();
+            this.navigation.back();
+            measurePageLoad();
+        }
+
+        @Override
+        public void forward() {
+            documentChanged();
+            this.navigation.forward();
+            measurePageLoad();
+        }
+
+        @Override
+        public void to(String url) {
+            documentChanged();
+            this.navigation.to(url);
+            measurePageLoad();
+        }
+
+        @Override
+        public void to(URL url) {
+            documentChanged();
+            this.navigation.to(url);
+            measurePageLoad();
+        }
+
+        @Override
+        public void refresh() {
+            documentChanged();
+            this.navigation.refresh();
+            measurePageLoad();
+        }
+    }
+
+    //TargetLocator skipping switches to where the session already is
+    private class TrackedTargetLocator implements TargetLocator {
+        private final TargetLocator locator;
+
+        TrackedTargetLocator(TargetLocator locator) {
+            this.locator = locator;
+        }
+
+        private SessionState state() {
+            return AbstractPhoenixDriver.this.sessionState;
+        }
+
+        @Override
+        public WebDriver frame(int index) {
+            try {
+                WebDriver rv = this.locator.frame(index);
+                state().frameSwitched(Boolean.FALSE);
+                AbstractPhoenixDriver.this.scriptCache.invalidate();
+                return rv;
+            } catch (WebDriverException e) {
+                throw invalidateOn(e);
+            }
+        }
+
+        @Override
+        public WebDriver frame(String nameOrId) {
+            try {
+                WebDriver rv = this.locator.frame(nameOrId);
+                state().frameSwitched(Boolean.FALSE);
+                AbstractPhoenixDriver.this.scriptCache.invalidate();
+                return rv;
+            } catch (WebDriverException e) {
+                throw invalidateOn(e);
+            }
+        }
+
+        @Override
+        public WebDriver frame(WebElement frameElement) {
+            try {
+                WebDriver rv = this.locator.frame(frameElement);
+                state().frameSwitched(Boolean.FALSE);
+                AbstractPhoenixDriver.this.scriptCache.invalidate();
+                return rv;
+            } catch (WebDriverException e) {
+                throw invalidateOn(e);
+            }
+        }
+
+        @Override
+        public WebDriver parentFrame() {
+            try {
+                WebDriver rv = this.locator.parentFrame();
+                //the parent may or may not be the top level document
+                state().frameSwitched(null);
+                AbstractPhoenixDriver.this.scriptCache.invalidate();
+                return rv;
+            } catch (WebDriverException e) {
+                throw invalidateOn(e);
+            }
+        }
+
+        @Override
+        public WebDriver window(String nameOrHandle) {
+            if (state().elideWindowSwitch(nameOrHandle)) {
+                return getDriver();
+            }
+
+            try {
+                WebDriver rv = this.locator.window(nameOrHandle);
+                state().windowSwitched(nameOrHandle);
+                AbstractPhoenixDriver.this.scriptCache.invalidate();
+                return rv;
+            } catch (WebDriverException e) {
+                throw invalidateOn(e);
+            }
+        }
+
+        @Override
+        public WebDriver defaultContent() {
+            if (state().elideDefaultContent()) {
+                return getDriver();
+            }
+
+            try {
+                WebDriver rv = this.locator.defaultContent();
+                state().frameSwitched(Boolean.TRUE);
+                AbstractPhoenixDriver.this.scriptCache.invalidate();
+                return rv;
+            } catch (WebDriverException e) {
+                throw invalidateOn(e);
+            }
+        }
+
+        @Override
+        public WebElement activeElement() {
+            return this.locator.activeElement();
+        }
+
+        @Override
+        public Alert alert() {
+            return this.locator.alert();
+        }
+    }
 }
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Named JavaScript functions installed into the page once per document and invoked afterwards by a short handle, so
+ * helpers injected over and over (wait helpers, DOM serializers) are sent and parsed once instead of on every call.
+ *
+ * <p>
+ * Functions are registered with the source of a function expression, i.e. <code>function(el) { ... }</code>, and
+ * called with {@link #call(String, Object...)}; arguments and return values are converted the same way as
+ * {@link JavascriptExecutor#executeScript(String, Object...)} does. The first call in a document installs every
+ * registered function under a token identifying that installation and invokes the function in the same round trip.
+ * Later calls send only the token, the handle and the arguments; when the page answers that it has not seen the
+ * token (the browser navigated, or the session moved to another window or frame) the functions are installed again.
+ * Navigations and switches made through {@link AbstractPhoenixDriver} skip that extra round trip.
+ * </p>
+ */
+public class ScriptCache {
+
+    /** Property of the page window the installed functions are kept in */
+    static final String GLOBAL = "__magicwandScripts";
+
+    /** Answer of {@link #CALL_SCRIPT} when the page does not have the functions of the current token */
+    static final String MISSING = "__magicwandScripts:missing";
+
+    private static final String INVOKE = "return f.apply(null, Array.prototype.slice.call(arguments, 2));";
+
+    static final String CALL_SCRIPT = "var s = window." + GLOBAL + ", f = s && s.token === arguments[0] && "
+        + "s.fns[arguments[1]]; if (!f) { return '" + MISSING + "'; } " + INVOKE;
+
+    private static final AtomicLong TOKENS = new AtomicLong();
+
+    private final WebDriver driver;
+    private final Map<String, String> handles = new LinkedHashMap<>();
+    private final Map<String, String> sources = new LinkedHashMap<>();
+    private String installScript;
+    private String token;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong installs = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache for a driver
+     *
+     * @param driver Driver executing the scripts; a {@link PhoenixDriver} is unwrapped on every call, so the cache
+     *            can be created before the session starts
+     */
+    public ScriptCache(WebDriver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Registers a function, replacing the function registered under the same name (if any)
+     *
+     * @param name Name to call the function by
+     * @param function Source of a function expression, i.e. <code>function(a, b) { return a + b; }</code>
+     * @throws IllegalArgumentException If either argument is null or empty
+     */
+    public synchronized void register(String name, String function) {
+        if (null == name || name.isEmpty()) {
+            throw new IllegalArgumentException("Script name cannot be empty");
+        }
+        if (null == function || function.trim().isEmpty()) {
+            throw new IllegalArgumentException("Script '" + name + "' has no function");
+        }
+
+        if (function.equals(this.sources.get(name))) {
+            return;
+        }
+
+        if (!this.handles.containsKey(name)) {
+            this.handles.put(name, "f" + Integer.toString(this.handles.size(), 36));
+        }
+        this.sources.put(name, function);
+
+        //pages holding the old set of functions must not be used anymore
+        this.installScript = null;
+        this.token = null;
+    }
+
+    /**
+     * @param name Name of a function
+     * @return True if a function is registered under <code>name</code>
+     */
+    public synchronized boolean isRegistered(String name) {
+        return this.sources.containsKey(name);
+    }
+
+    /**
+     * Calls a registered function in the current document, installing the registered functions first if needed
+     *
+     * @param name Name of the function
+     * @param args Arguments of the function
+     * @return Value returned by the function, converted as by {@link JavascriptExecutor#executeScript(String, Object...)}
+     * @throws IllegalArgumentException If no function is registered under <code>name</code>
+     * @throws WebDriverException If the driver cannot execute scripts or the script fails
+     */
+    public Object call(String name, Object... args) {
+        String handle;
+        String knownToken;
+        synchronized (this) {
+            handle = this.handles.get(name);
+            if (null == handle) {
+                throw new IllegalArgumentException("No script registered as '" + name + "'");
+            }
+            knownToken = this.token;
+        }
+
+        JavascriptExecutor executor = getExecutor();
+        this.calls.incrementAndGet();
+
+        if (null != knownToken) {
+            Object rv = executor.executeScript(CALL_SCRIPT, arguments(knownToken, handle, args));
+
+            if (!MISSING.equals(rv)) {
+                return rv;
+            }
+            this.misses.incrementAndGet();
+        }
+
+        String installToken = newToken();
+        String script;
+        synchronized (this) {
+            script = getInstallScript();
+        }
+
+        Object rv = executor.executeScript(script, arguments(installToken, handle, args));
+        this.installs.incrementAndGet();
+
+        synchronized (this) {
+            //a function registered meanwhile is not in the page yet
+            if (script == this.installScript) {
+                this.token = installToken;
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Forgets which document has the functions installed, so the next call installs them without asking the page
+     * first. Called when the session navigates or switches to another window or frame.
+     */
+    public synchronized void invalidate() {
+        this.token = null;
+    }
+
+    /**
+     * @return Number of calls made through the cache
+     */
+    public long getCalls() {
+        return this.calls.get();
+    }
+
+    /**
+     * @return Number of times the functions were installed into a document
+     */
+    public long getInstalls() {
+        return this.installs.get();
+    }
+
+    /**
+     * @return Number of calls that found the functions missing from the page and had to install them
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    private JavascriptExecutor getExecutor() {
+        WebDriver target = this.driver;
+
+        if (target instanceof PhoenixDriver) {
+            target = ((PhoenixDriver) target).getDriver();
+        }
+
+        if (!(target instanceof JavascriptExecutor)) {
+            throw new WebDriverException("Driver cannot execute scripts: " + target);
+        }
+
+        return (JavascriptExecutor) target;
+    }
+
+    private String getInstallScript() {
+        if (null == this.installScript) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("var s = window.").append(GLOBAL).append(" = {token: arguments[0], fns: {}};\n");
+
+            for (Map.Entry<String, String> entry : this.sources.entrySet()) {
+                sb.append("s.fns.").append(this.handles.get(entry.getKey())).append(" = (")
+                    .append(entry.getValue()).append(");\n");
+            }
+
+            sb.append("var f = s.fns[arguments[1]]; ").append(INVOKE);
+            this.installScript = sb.toString();
+        }
+
+        return this.installScript;
+    }
+
+    private static String newToken() {
+        return Long.toString(System.currentTimeMillis(), 36) + "." + Long.toString(TOKENS.incrementAndGet(), 36);
+    }
+
+    private static Object[] arguments(String token, String handle, Object[] args) {
+        int count = (null == args) ? 0 : args.length;
+        Object[] rv = new Object[count + 2];
+
+        rv[0] = token;
+        rv[1] = handle;
+        if (count > 0) {
+            System.arraycopy(args, 0, rv, 2, count);
+        }
+
+        return rv;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return "ScriptCache [scripts=" + this.sources.keySet() + ", calls=" + getCalls() + ", installs="
+            + getInstalls() + ", misses=" + getMisses() + "]";
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local mirror of the window, frame and (on mobile) context a session is in, used by {@link AbstractPhoenixDriver}
+ * to skip switches to where the session already is and to answer repeated lookups without a round trip.
+ *
+ * <p>
+ * The mirror only records what it has seen go through the driver, and forgets everything on navigation, on
+ * {@link AbstractPhoenixDriver#close()}, on context switches and on errors; anything unknown goes to the browser.
+ * Switching windows through the underlying {@link org.openqa.selenium.WebDriver} directly bypasses the mirror, which
+ * is why it has to be enabled explicitly.
+ * </p>
+ */
+public class SessionState {
+
+    private boolean enabled;
+    private String windowHandle;
+    private String windowTarget;
+    private Boolean defaultContent;
+    private String context;
+
+    private final AtomicLong elidedWindowHandles = new AtomicLong();
+    private final AtomicLong elidedWindowSwitches = new AtomicLong();
+    private final AtomicLong elidedFrameSwitches = new AtomicLong();
+    private final AtomicLong elidedContextSwitches = new AtomicLong();
+
+    /**
+     * @return True if redundant calls are skipped
+     */
+    public synchronized boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @param enabled True to skip redundant calls; False to send every call to the browser
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        invalidate();
+    }
+
+    /**
+     * Forgets everything known about the session
+     */
+    public synchronized void invalidate() {
+        this.windowHandle = null;
+        this.windowTarget = null;
+        this.defaultContent = null;
+        this.context = null;
+    }
+
+    /**
+     * Gets the handle of the current window, if known
+     *
+     * @return Handle or null if the browser has to be asked
+     */
+    synchronized String elideGetWindowHandle() {
+        if (this.enabled && null != this.windowHandle) {
+            this.elidedWindowHandles.incrementAndGet();
+            return this.windowHandle;
+        }
+
+        return null;
+    }
+
+    synchronized void windowHandleFetched(String handle) {
+        if (this.enabled) {
+            this.windowHandle = handle;
+        }
+    }
+
+    /**
+     * Checks whether switching to a window would change anything. Switching windows also leaves any frame, so the
+     * switch is only skipped when the session is known to be on the top level document of that window.
+     *
+     * @param nameOrHandle Argument of the switch
+     * @return True if the switch can be skipped
+     */
+    synchronized boolean elideWindowSwitch(String nameOrHandle) {
+        if (this.enabled && Boolean.TRUE.equals(this.defaultContent) && null != nameOrHandle
+                && (nameOrHandle.equals(this.windowTarget) || nameOrHandle.equals(this.windowHandle))) {
+            this.elidedWindowSwitches.incrementAndGet();
+            return true;
+        }
+
+        return false;
+    }
+
+    synchronized void windowSwitched(String nameOrHandle) {
+        if (!this.enabled) {
+            return;
+        }
+
+        //the argument may be a window name, so it only tells the handle if it is the one already known
+        if (null == nameOrHandle || !nameOrHandle.equals(this.windowHandle)) {
+            this.windowHandle = null;
+        }
+        this.windowTarget = nameOrHandle;
+        this.defaultContent = Boolean.TRUE;
+    }
+
+    synchronized boolean elideDefaultContent() {
+        if (this.enabled && Boolean.TRUE.equals(this.defaultContent)) {
+            this.elidedFrameSwitches.incrementAndGet();
+            return true;
+        }
+
+        return false;
+    }
+
+    synchronized void frameSwitched(Boolean toDefaultContent) {
+        if (this.enabled) {
+            this.defaultContent = toDefaultContent;
+        }
+    }
+
+    /**
+     * Gets the current context, if known
+     *
+     * @return Name of the context or null if the device has to be asked
+     */
+    public synchronized String elideGetContext() {
+        if (this.enabled && null != this.context) {
+            this.elidedContextSwitches.incrementAndGet();
+            return this.context;
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks whether switching to a context would change anything
+     *
+     * @param name Name of the context
+     * @return True if the switch can be skipped
+     */
+    public synchronized boolean elideContextSwitch(String name) {
+        if (this.enabled && null != name && name.equals(this.context)) {
+            this.elidedContextSwitches.incrementAndGet();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Records the context of the session. Windows and frames belong to a context, so they are forgotten when it
+     * changes.
+     *
+     * @param name Name of the context the session is in
+     */
+    public synchronized void contextSwitched(String name) {
+        if (!this.enabled) {
+            return;
+        }
+
+        if (null == name || !name.equals(this.context)) {
+            this.windowHandle = null;
+            this.windowTarget = null;
+            this.defaultContent = null;
+        }
+        this.context = name;
+    }
+
+    /**
+     * Records the context the device reported the session to be in
+     *
+     * @param name Name of the context
+     */
+    public synchronized void contextFetched(String name) {
+        if (this.enabled) {
+            this.context = name;
+        }
+    }
+
+    /**
+     * @return Number of <code>getWindowHandle()</code> calls answered locally
+     */
+    public long getElidedWindowHandles() {
+        return this.elidedWindowHandles.get();
+    }
+
+    /**
+     * @return Number of <code>switchTo().window()</code> calls skipped
+     */
+    public long getElidedWindowSwitches() {
+        return this.elidedWindowSwitches.get();
+    }
+
+    /**
+     * @return Number of <code>switchTo().defaultContent()</code> calls skipped
+     */
+    public long getElidedFrameSwitches() {
+        return this.elidedFrameSwitches.get();
+    }
+
+    /**
+     * @return Number of context switches skipped and context lookups answered locally
+     */
+    public long getElidedContextSwitches() {
+        return this.elidedContextSwitches.get();
+    }
+
+    /**
+     * @return Number of round trips saved
+     */
+    public long getElidedCalls() {
+        return getElidedWindowHandles() + getElidedWindowSwitches() + getElidedFrameSwitches()
+                + getElidedContextSwitches();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "SessionState[elidedWindowHandles=" + getElidedWindowHandles() + ", elidedWindowSwitches="
+                + getElidedWindowSwitches() + ", elidedFrameSwitches=" + getElidedFrameSwitches()
+                + ", elidedContextSwitches=" + getElidedContextSwitches() + "]";
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.profiles;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Fills in a browser profile (Firefox profile or Chrome user-data-dir) that becomes a {@link ProfileTemplate}
+ */
+public interface ProfilePreparer {
+
+    /**
+     * Lays out a profile: extensions, preferences, a seeded disk cache...
+     *
+     * @param dir Empty directory to lay the profile out in
+     * @throws IOException If the profile could not be prepared
+     */
+    void prepare(File dir) throws IOException;
+}
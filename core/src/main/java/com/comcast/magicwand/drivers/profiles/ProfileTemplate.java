@@ -0,0 +1,240 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.profiles;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A browser profile prepared once and cloned for every session.
+ *
+ * <p>
+ * Packed extensions, which browsers only ever replace and never rewrite in place, are hard linked into the clone.
+ * Everything else is copied, in parallel, so a session can never alter the template: preferences and databases, but
+ * also disk caches, whose index and block files (Chrome's <code>index</code> and <code>data_N</code>, the metadata
+ * of Firefox's <code>cache2</code> entries...) are updated in place. When the file system does not support hard
+ * links, extensions are copied as well.
+ * </p>
+ */
+public class ProfileTemplate {
+    private static final Logger LOG = LoggerFactory.getLogger(ProfileTemplate.class);
+
+    /** Extensions of files that are hard linked rather than copied */
+    static final Set<String> LINKED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            ".xpi", ".crx")));
+
+    /** Files never carried over into a clone, as they belong to a running browser */
+    static final Set<String> EXCLUDED_FILES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "lock", ".parentlock", "parent.lock", "SingletonLock", "SingletonSocket", "SingletonCookie",
+            "lockfile")));
+
+    private static final int MAX_COPY_THREADS = 8;
+
+    private final String name;
+    private final File dir;
+    private volatile boolean linksSupported = true;
+
+    /**
+     * Creates a template from a prepared profile
+     *
+     * @param name Name of the template
+     * @param dir Directory holding the prepared profile
+     */
+    public ProfileTemplate(String name, File dir) {
+        this.name = name;
+        this.dir = dir;
+    }
+
+    /**
+     * @return Name of this template
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return Directory holding the prepared profile; it must not be modified
+     */
+    public File getDirectory() {
+        return this.dir;
+    }
+
+    /**
+     * Clones this template into a directory
+     *
+     * @param target Directory to clone into; created if it does not exist, existing files are overwritten
+     * @throws IOException If the template could not be cloned
+     */
+    public void cloneTo(File target) throws IOException {
+        final Path source = this.dir.toPath();
+        final Path dest = target.toPath();
+        final List<Path> copies = new ArrayList<>();
+        final List<Path> links = new ArrayList<>();
+
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(dest.resolve(source.relativize(d).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                Path relative = source.relativize(file);
+
+                if (!EXCLUDED_FILES.contains(file.getFileName().toString())) {
+                    (isLinked(relative) ? links : copies).add(relative);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        int linked = 0;
+        for (Path relative : links) {
+            Path from = source.resolve(relative);
+            Path to = dest.resolve(relative.toString());
+
+            if (this.linksSupported) {
+                try {
+                    Files.deleteIfExists(to);
+                    link(to, from);
+                    linked++;
+                    continue;
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    LOG.debug("Unable to hard link profile files, copying instead: {}", e.toString());
+                    this.linksSupported = false;
+                }
+            }
+
+            copies.add(relative);
+        }
+
+        copyAll(source, dest, copies);
+        LOG.debug("Cloned profile template {} into {} ({} files linked, {} copied)", this.name, target, linked,
+                copies.size());
+    }
+
+    /**
+     * Copies a profile that may be in use by a browser, leaving out its lock files; meant for preparing templates
+     *
+     * @param source Directory of the profile
+     * @param target Directory to copy the profile to
+     * @throws IOException If the profile could not be copied
+     */
+    public static void copyProfile(File source, File target) throws IOException {
+        FileUtils.copyDirectory(source, target, new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return !EXCLUDED_FILES.contains(file.getName());
+            }
+        });
+    }
+
+    /**
+     * Creates a hard link
+     *
+     * @param link Link to create
+     * @param existing File to link to
+     * @throws IOException If the link could not be created
+     */
+    protected void link(Path link, Path existing) throws IOException {
+        Files.createLink(link, existing);
+    }
+
+    /**
+     * Checks whether a file of the template is hard linked into clones
+     *
+     * @param relative Path of the file relative to the template directory
+     * @return True if the file is linked; False if it is copied
+     */
+    static boolean isLinked(Path relative) {
+        String fileName = relative.getFileName().toString().toLowerCase(Locale.ENGLISH);
+        for (String ext : LINKED_EXTENSIONS) {
+            if (fileName.endsWith(ext)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void copyAll(final Path source, final Path dest, List<Path> files) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.min(MAX_COPY_THREADS, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (final Path relative : files) {
+                results.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        Files.copy(source.resolve(relative), dest.resolve(relative.toString()),
+                                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while cloning profile", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.name + " [" + this.dir + "]";
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.profiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-JVM registry of {@link ProfileTemplate}s, each prepared once, the first time it is asked for.
+ *
+ * <p>
+ * Templates and the clones made through {@link #createClone(ProfileTemplate)} live under the same root directory, so
+ * that clones can hard link the files of their template. The default registry removes its root when the JVM exits.
+ * </p>
+ */
+public class ProfileTemplates {
+    private static final Logger LOG = LoggerFactory.getLogger(ProfileTemplates.class);
+
+    private static final String TEMPLATES_DIR_NAME = "templates";
+    private static final String CLONES_DIR_NAME = "clones";
+    private static final String STAGING_SUFFIX = ".staging";
+
+    private static ProfileTemplates defaultTemplates;
+
+    private final File root;
+    private final ConcurrentMap<String, ProfileTemplate> templates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a registry
+     *
+     * @param root Directory holding the templates and their clones
+     */
+    public ProfileTemplates(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Gets the registry of this JVM
+     *
+     * @return Default registry
+     * @throws IOException If its directory could not be created
+     */
+    public static synchronized ProfileTemplates getDefault() throws IOException {
+        if (null == defaultTemplates) {
+            final File dir = Files.createTempDirectory("magicwand-profiles").toFile();
+
+            Runtime.getRuntime().addShutdownHook(new Thread("magicwand-profiles-cleanup") {
+                @Override
+                public void run() {
+                    FileUtils.deleteQuietly(dir);
+                }
+            });
+
+            defaultTemplates = new ProfileTemplates(dir);
+        }
+
+        return defaultTemplates;
+    }
+
+    /**
+     * Gets a template, preparing it if this is the first time it is asked for
+     *
+     * @param name Name of the template; only letters, digits, '.', '_' and '-' are allowed
+     * @param preparer Lays out the profile if the template was not prepared yet
+     * @return Prepared template
+     * @throws IOException If the template could not be prepared; the next call will try again
+     */
+    public ProfileTemplate get(String name, ProfilePreparer preparer) throws IOException {
+        if (!name.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("Invalid profile template name: " + name);
+        }
+
+        ProfileTemplate rv = this.templates.get(name);
+        if (null != rv) {
+            return rv;
+        }
+
+        synchronized (getLock(name)) {
+            rv = this.templates.get(name);
+            if (null != rv) {
+                return rv;
+            }
+
+            File templatesDir = new File(this.root, TEMPLATES_DIR_NAME);
+            File dir = new File(templatesDir, name);
+            File staging = new File(templatesDir, name + STAGING_SUFFIX);
+
+            FileUtils.deleteQuietly(staging);
+            FileUtils.deleteQuietly(dir);
+            FileUtils.forceMkdir(staging);
+
+            long start = System.currentTimeMillis();
+            try {
+                preparer.prepare(staging);
+            } catch (IOException | RuntimeException e) {
+                FileUtils.deleteQuietly(staging);
+                throw e;
+            }
+
+            if (!staging.renameTo(dir)) {
+                FileUtils.deleteQuietly(staging);
+                throw new IOException("Unable to move prepared profile template to " + dir);
+            }
+
+            LOG.debug("Prepared profile template {} in {} ms", name, System.currentTimeMillis() - start);
+            rv = new ProfileTemplate(name, dir);
+            this.templates.put(name, rv);
+        }
+
+        return rv;
+    }
+
+    /**
+     * Clones a template into a new directory next to it
+     *
+     * @param template Template to clone
+     * @return Directory holding the clone; the caller deletes it once the session is over
+     * @throws IOException If the template could not be cloned
+     */
+    public File createClone(ProfileTemplate template) throws IOException {
+        File clones = new File(this.root, CLONES_DIR_NAME);
+        FileUtils.forceMkdir(clones);
+
+        File rv = Files.createTempDirectory(clones.toPath(), template.getName() + "-").toFile();
+        try {
+            template.cloneTo(rv);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(rv);
+            throw e;
+        }
+
+        return rv;
+    }
+
+    /**
+     * Forgets a template and deletes its directory, so that it is prepared again the next time it is asked for
+     *
+     * @param name Name of the template
+     */
+    public void invalidate(String name) {
+        synchronized (getLock(name)) {
+            ProfileTemplate template = this.templates.remove(name);
+            if (null != template) {
+                FileUtils.deleteQuietly(template.getDirectory());
+            }
+        }
+    }
+
+    /**
+     * @return Directory holding the templates and their clones
+     */
+    public File getRoot() {
+        return this.root;
+    }
+
+    private Object getLock(String name) {
+        Object lock = new Object();
+        Object existing = this.locks.putIfAbsent(name, lock);
+
+        return (null == existing) ? lock : existing;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.profiles;
+
+import java.io.Closeable;
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Scratch space of one browser session, holding its profile, disk cache and downloads. Allocated by a
+ * {@link SessionStorage}; closing it deletes everything in it.
+ */
+public class SessionDirectory implements Closeable {
+
+    static final String PROFILE_DIR_NAME = "profile";
+    static final String CACHE_DIR_NAME = "cache";
+    static final String DOWNLOAD_DIR_NAME = "downloads";
+
+    private final File root;
+    private final long limit;
+    private final boolean ramBacked;
+    private volatile boolean closed = false;
+
+    SessionDirectory(File root, long limit, boolean ramBacked) {
+        this.root = root;
+        this.limit = limit;
+        this.ramBacked = ramBacked;
+    }
+
+    /**
+     * @return Directory holding the profile, cache and download directories of the session
+     */
+    public File getRoot() {
+        return this.root;
+    }
+
+    /**
+     * @return Directory for the browser profile (Firefox profile, Chrome user-data-dir...)
+     */
+    public File getProfileDir() {
+        return new File(this.root, PROFILE_DIR_NAME);
+    }
+
+    /**
+     * @return Directory for the browser disk cache
+     */
+    public File getCacheDir() {
+        return new File(this.root, CACHE_DIR_NAME);
+    }
+
+    /**
+     * @return Directory downloads are saved to
+     */
+    public File getDownloadDir() {
+        return new File(this.root, DOWNLOAD_DIR_NAME);
+    }
+
+    /**
+     * @return Number of bytes the session may use
+     */
+    public long getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Gets the size the browser disk cache should be capped at: half of the session limit, leaving the rest for the
+     * profile and downloads
+     *
+     * @return Cache size in bytes
+     */
+    public long getCacheLimit() {
+        return this.limit / 2;
+    }
+
+    /**
+     * @return True if this directory is on a RAM-backed file system; False if it fell back to disk
+     */
+    public boolean isRamBacked() {
+        return this.ramBacked;
+    }
+
+    /**
+     * @return True if this directory was closed
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Deletes this directory and everything in it; closing it again does nothing
+     */
+    @Override
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+            FileUtils.deleteQuietly(this.root);
+            SessionStorage.release(this);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.root + (this.ramBacked ? " (RAM)" : " (disk)");
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.profiles;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+import com.comcast.magicwand.drivers.services.ProcessTable;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Places the profile, disk cache and downloads of browser sessions on a RAM-backed file system such as
+ * <code>/dev/shm</code>, so that parallel sessions do not contend for a slow disk.
+ *
+ * <p>
+ * Every session is given a {@link SessionDirectory} with a size limit; spells cap the browser disk cache accordingly.
+ * A session is only placed in RAM if the file system has room for its whole limit on top of the limits reserved by
+ * the other live sessions of this JVM; otherwise it falls back to the temporary directory on disk. Session
+ * directories are deleted when their session quits, when the JVM exits, and, for JVMs that did not exit cleanly, the
+ * first time a later JVM allocates a directory in the same place.
+ * </p>
+ */
+public class SessionStorage {
+    private static final Logger LOG = LoggerFactory.getLogger(SessionStorage.class);
+
+    /** RAM-backed file system available on most Linux machines */
+    public static final File DEFAULT_RAM_DIR = new File("/dev/shm");
+
+    static final String DIR_PREFIX = "magicwand-session-";
+
+    private static final Set<SessionDirectory> LIVE =
+            Collections.newSetFromMap(new ConcurrentHashMap<SessionDirectory, Boolean>());
+    private static final Set<String> SWEPT = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static final ConcurrentHashMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+    private static boolean hookInstalled = false;
+
+    private final File ramDir;
+    private final File diskDir;
+    private final long limit;
+
+    /**
+     * Creates storage that falls back to the temporary directory
+     *
+     * @param ramDir Directory on a RAM-backed file system
+     * @param limit Number of bytes each session may use
+     */
+    public SessionStorage(File ramDir, long limit) {
+        this(ramDir, new File(System.getProperty("java.io.tmpdir")), limit);
+    }
+
+    /**
+     * Creates storage
+     *
+     * @param ramDir Directory on a RAM-backed file system
+     * @param diskDir Directory sessions fall back to when <code>ramDir</code> is full or unusable
+     * @param limit Number of bytes each session may use
+     */
+    public SessionStorage(File ramDir, File diskDir, long limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Session size limit must be positive: " + limit);
+        }
+
+        this.ramDir = ramDir;
+        this.diskDir = diskDir;
+        this.limit = limit;
+    }
+
+    /**
+     * Gets the storage requested by a set of ingredients
+     *
+     * @param i Ingredients of a driver
+     * @return Storage or null if the ingredients did not ask for RAM-backed storage
+     */
+    public static SessionStorage forIngredients(PhoenixDriverIngredients i) {
+        if (null == i.getRamStorageDir()) {
+            return null;
+        }
+
+        return new SessionStorage(i.getRamStorageDir(), i.getRamStorageLimit());
+    }
+
+    /**
+     * Allocates the directory of a new session
+     *
+     * @param browser Name of the browser, used in the name of the directory
+     * @return Session directory with empty profile, cache and download directories
+     * @throws IOException If neither the RAM nor the disk directory could be used
+     */
+    public SessionDirectory allocate(String browser) throws IOException {
+        installHook();
+
+        SessionDirectory rv;
+        //the room is checked and reserved under one lock, so concurrent sessions cannot count on the same space
+        synchronized (lockFor(this.ramDir)) {
+            boolean ram = hasRoom(this.ramDir);
+            File parent = ram ? this.ramDir : this.diskDir;
+
+            if (!ram) {
+                LOG.info("No room for another {} byte session in {}, using {}", this.limit, this.ramDir,
+                        this.diskDir);
+            }
+
+            sweep(parent);
+
+            File root = Files.createTempDirectory(parent.toPath(),
+                    DIR_PREFIX + ProcessTable.getCurrentPid() + "-" + browser + "-").toFile();
+            rv = new SessionDirectory(root, this.limit, ram);
+            LIVE.add(rv);
+        }
+
+        try {
+            FileUtils.forceMkdir(rv.getProfileDir());
+            FileUtils.forceMkdir(rv.getCacheDir());
+            FileUtils.forceMkdir(rv.getDownloadDir());
+        } catch (IOException e) {
+            rv.close();
+            throw e;
+        }
+
+        LOG.debug("Allocated session directory {}", rv);
+        return rv;
+    }
+
+    /**
+     * @return Number of bytes each session may use
+     */
+    public long getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Gets the space left on the file system of a directory
+     *
+     * @param dir Directory
+     * @return Usable bytes
+     */
+    protected long getUsableSpace(File dir) {
+        return dir.getUsableSpace();
+    }
+
+    private boolean hasRoom(File dir) {
+        if (!dir.isDirectory() || !dir.canWrite()) {
+            return false;
+        }
+
+        //live sessions in the same directory keep their whole limit reserved, whatever they have written so far
+        long reserved = 0;
+        for (SessionDirectory session : LIVE) {
+            if (session.isRamBacked() && session.getRoot().getParentFile().equals(dir)) {
+                reserved += session.getLimit();
+            }
+        }
+
+        return getUsableSpace(dir) - reserved >= this.limit;
+    }
+
+    private static Object lockFor(File dir) {
+        String key = dir.getAbsolutePath();
+        Object lock = LOCKS.get(key);
+        if (null == lock) {
+            Object created = new Object();
+            lock = LOCKS.putIfAbsent(key, created);
+            if (null == lock) {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+    static void release(SessionDirectory session) {
+        LIVE.remove(session);
+    }
+
+    static Set<SessionDirectory> getLive() {
+        return LIVE;
+    }
+
+    private static synchronized void installHook() {
+        if (!hookInstalled) {
+            Runtime.getRuntime().addShutdownHook(new Thread("magicwand-session-cleanup") {
+                @Override
+                public void run() {
+                    for (SessionDirectory session : new ArrayList<>(LIVE)) {
+                        session.close();
+                    }
+                }
+            });
+            hookInstalled = true;
+        }
+    }
+
+    //Removes the session directories of JVMs that are gone, once per parent directory
+    private static void sweep(File parent) {
+        if (!SWEPT.add(parent.getAbsolutePath())) {
+            return;
+        }
+
+        File[] stale = parent.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory() && file.getName().startsWith(DIR_PREFIX);
+            }
+        });
+        if (null == stale || 0 == stale.length) {
+            return;
+        }
+
+        ProcessTable table;
+        try {
+            table = ProcessTable.capture();
+        } catch (IOException e) {
+            LOG.debug("Unable to list processes, not removing stale session directories: {}", e.toString());
+            return;
+        }
+
+        List<File> removed = new ArrayList<>();
+        for (File dir : stale) {
+            String rest = dir.getName().substring(DIR_PREFIX.length());
+            int dash = rest.indexOf('-');
+
+            try {
+                int owner = Integer.parseInt((dash > 0) ? rest.substring(0, dash) : rest);
+                if (owner != ProcessTable.getCurrentPid() && !table.isRunning(owner)) {
+                    FileUtils.deleteQuietly(dir);
+                    removed.add(dir);
+                }
+            } catch (NumberFormatException e) {
+                //not one of ours
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            LOG.info("Removed session directories left behind by earlier runs: {}", removed);
+        }
+    }
+}
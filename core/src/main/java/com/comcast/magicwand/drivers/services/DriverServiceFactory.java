@@ -0,0 +1,38 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.services;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openqa.selenium.remote.service.DriverService;
+
+/**
+ * Creates (but does not start) the {@link DriverService} of a driver executable for a {@link DriverServicePool}
+ *
+ * @param <S> Type of service created
+ */
+public interface DriverServiceFactory<S extends DriverService> {
+
+    /**
+     * Creates a service that runs a driver executable
+     *
+     * @param executable Driver executable the service should run
+     * @return Service that has not been started yet
+     * @throws IOException If the service could not be created
+     */
+    S createService(File executable) throws IOException;
+}
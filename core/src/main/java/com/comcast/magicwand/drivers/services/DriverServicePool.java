@@ -0,0 +1,375 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.comcast.magicwand.utils.SystemDetail;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openqa.selenium.remote.service.DriverService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-JVM pool of long-lived driver services (chromedriver, IEDriverServer, phantomjs...), keyed by the executable
+ * they run.
+ *
+ * <p>
+ * Sessions are created against a service that is already running instead of spawning a new driver process each time,
+ * and because every service is built with an explicit executable there is no need for JVM wide
+ * <code>webdriver.*.driver</code> properties; two builds using different driver versions in the same JVM each get
+ * their own service. Before a service is handed out it is checked to still be alive and answering its
+ * <code>/status</code> endpoint, and one that crashed is replaced. All services are stopped when the JVM exits.
+ * </p>
+ *
+ * <p>
+ * When the pool has a {@link ProcessReaper}, the processes of every service are tracked; stopping a service kills
+ * whatever it left running (like browsers of sessions that were never quit). The default pool also stops services
+ * that have no sessions and were not acquired for <code>magicwand.driver.service.idleTimeout</code> milliseconds
+ * (<code>MAGICWAND_DRIVER_SERVICE_IDLE_TIMEOUT</code>, 30 minutes by default, 0 to keep them until the JVM exits).
+ * </p>
+ *
+ * <p>
+ * Sessions should talk to a pooled service through a {@link SharedServiceCommandExecutor}, which does not stop the
+ * service when the session quits.
+ * </p>
+ */
+public class DriverServicePool {
+    private static final Logger LOG = LoggerFactory.getLogger(DriverServicePool.class);
+
+    public static final String IDLE_TIMEOUT_PROP = "magicwand.driver.service.idleTimeout";
+    public static final String IDLE_TIMEOUT_ENV = "MAGICWAND_DRIVER_SERVICE_IDLE_TIMEOUT";
+
+    /** Time allowed for a service to answer its status endpoint, in milliseconds */
+    static final int STATUS_TIMEOUT = 2000;
+    static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+    private static final long MAX_IDLE_CHECK_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private static DriverServicePool defaultPool;
+    private static ScheduledExecutorService idleChecker;
+
+    private final ConcurrentMap<String, DriverService> services = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<Integer>> processes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> lastUsed = new ConcurrentHashMap<>();
+    private final ProcessReaper reaper;
+    private final long idleTimeout;
+
+    /**
+     * Creates a pool that neither tracks the processes of its services nor stops idle ones
+     */
+    public DriverServicePool() {
+        this(null, 0);
+    }
+
+    /**
+     * Creates a pool
+     *
+     * @param reaper Tracks and kills the processes of the services; may be null
+     * @param idleTimeout Time in milliseconds after which a service without sessions that was not acquired is
+     *            stopped by {@link #reapIdle()}; 0 to never stop idle services
+     */
+    public DriverServicePool(ProcessReaper reaper, long idleTimeout) {
+        this.reaper = reaper;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Gets the pool shared by this JVM, which is shut down when the JVM exits
+     *
+     * @return Default pool
+     */
+    public static synchronized DriverServicePool getDefault() {
+        if (null == defaultPool) {
+            long idle = SystemDetail.getLongSetting(IDLE_TIMEOUT_PROP, IDLE_TIMEOUT_ENV, DEFAULT_IDLE_TIMEOUT);
+
+            final DriverServicePool pool = new DriverServicePool(ProcessReaper.getDefault(), idle);
+
+            Runtime.getRuntime().addShutdownHook(new Thread("magicwand-driver-services-shutdown") {
+                @Override
+                public void run() {
+                    pool.shutdown();
+                }
+            });
+
+            if (idle > 0) {
+                long interval = Math.min(idle, MAX_IDLE_CHECK_INTERVAL);
+                idleChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "magicwand-driver-services-idle");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+                idleChecker.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        pool.reapIdle();
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+            }
+
+            defaultPool = pool;
+        }
+
+        return defaultPool;
+    }
+
+    /**
+     * Gets a running service for a driver executable, starting one if needed
+     *
+     * @param executable Driver executable
+     * @param factory Creates the service if none is running for <code>executable</code>
+     * @param <S> Type of service
+     * @return Running service
+     * @throws IOException If the service could not be created or started
+     */
+    public <S extends DriverService> S acquire(File executable, DriverServiceFactory<S> factory) throws IOException {
+        return acquire(executable, null, factory);
+    }
+
+    /**
+     * Gets a running service for a driver executable, starting one if needed
+     *
+     * @param executable Driver executable
+     * @param variant Distinguishes services of the same executable started with different process level options (like
+     *            command line arguments); may be null
+     * @param factory Creates the service if none is running for <code>executable</code> and <code>variant</code>
+     * @param <S> Type of service
+     * @return Running service
+     * @throws IOException If the service could not be created or started
+     */
+    @SuppressWarnings("unchecked")
+    public <S extends DriverService> S acquire(File executable, String variant, DriverServiceFactory<S> factory)
+            throws IOException {
+        String key = getKey(executable, variant);
+        Object lock = getLock(key);
+
+        synchronized (lock) {
+            DriverService existing = this.services.get(key);
+
+            if (null != existing) {
+                if (isHealthy(existing)) {
+                    this.lastUsed.put(key, System.currentTimeMillis());
+                    return (S) existing;
+                }
+
+                LOG.warn("Driver service for {} at {} is not responding, restarting it", key, existing.getUrl());
+                stop(key, existing);
+            }
+
+            S service = factory.createService(executable);
+            if (null == this.reaper) {
+                service.start();
+            }
+            else {
+                this.processes.put(key, this.reaper.start(service, executable));
+            }
+            this.services.put(key, service);
+            this.lastUsed.put(key, System.currentTimeMillis());
+
+            LOG.debug("Started driver service for {} at {}", key, service.getUrl());
+            return service;
+        }
+    }
+
+    /**
+     * Stops every service in this pool, killing any process they leave behind
+     */
+    public void shutdown() {
+        List<String> keys = new ArrayList<>(this.services.keySet());
+
+        for (String key : keys) {
+            synchronized (getLock(key)) {
+                DriverService service = this.services.get(key);
+                if (null != service) {
+                    LOG.debug("Stopping driver service for {}", key);
+                    stop(key, service);
+                }
+            }
+        }
+
+        if (null != this.reaper) {
+            this.reaper.reapAll();
+        }
+    }
+
+    /**
+     * Stops the services that have no sessions and were not acquired within the idle timeout of this pool
+     *
+     * @return Number of services stopped
+     */
+    public int reapIdle() {
+        return reapIdle(System.currentTimeMillis());
+    }
+
+    int reapIdle(long now) {
+        int rv = 0;
+
+        if (this.idleTimeout <= 0) {
+            return rv;
+        }
+
+        for (Map.Entry<String, Long> e : this.lastUsed.entrySet()) {
+            String key = e.getKey();
+            if (now - e.getValue() < this.idleTimeout) {
+                continue;
+            }
+
+            synchronized (getLock(key)) {
+                DriverService service = this.services.get(key);
+                Long used = this.lastUsed.get(key);
+
+                if (null == service || null == used || now - used < this.idleTimeout) {
+                    continue;
+                }
+
+                if (!service.isRunning() || !hasSessions(service)) {
+                    LOG.info("Stopping driver service for {}, idle for {} ms", key, now - used);
+                    stop(key, service);
+                    rv++;
+                }
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Gets the number of services in this pool
+     *
+     * @return Number of services
+     */
+    public int size() {
+        return this.services.size();
+    }
+
+    /**
+     * Checks whether a pooled service can still take sessions
+     *
+     * @param service Service to check
+     * @return True if the service process is running and answers its status endpoint; False otherwise
+     */
+    protected boolean isHealthy(DriverService service) {
+        if (!service.isRunning()) {
+            return false;
+        }
+
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(service.getUrl(), "/status").openConnection();
+            conn.setConnectTimeout(STATUS_TIMEOUT);
+            conn.setReadTimeout(STATUS_TIMEOUT);
+            return HttpURLConnection.HTTP_OK == conn.getResponseCode();
+        } catch (IOException e) {
+            LOG.debug("Status check of {} failed: {}", service.getUrl(), e.toString());
+            return false;
+        } finally {
+            if (null != conn) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a service has sessions running on it
+     *
+     * @param service Service to check
+     * @return True if the service reports sessions, or if it could not be asked; False otherwise
+     */
+    protected boolean hasSessions(DriverService service) {
+        HttpURLConnection conn = null;
+        InputStream in = null;
+        try {
+            conn = (HttpURLConnection) new URL(service.getUrl(), "/sessions").openConnection();
+            conn.setConnectTimeout(STATUS_TIMEOUT);
+            conn.setReadTimeout(STATUS_TIMEOUT);
+            in = conn.getInputStream();
+
+            JSONArray sessions = new JSONObject(IOUtils.toString(in, StandardCharsets.UTF_8)).optJSONArray("value");
+            return null == sessions || sessions.length() > 0;
+        } catch (IOException | JSONException e) {
+            LOG.debug("Unable to list sessions of {}: {}", service.getUrl(), e.toString());
+            return true;
+        } finally {
+            IOUtils.closeQuietly(in);
+            if (null != conn) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    //Stops a service and kills whatever its processes leave behind; the caller holds the lock of the key
+    private void stop(String key, DriverService service) {
+        this.services.remove(key);
+        this.lastUsed.remove(key);
+        Set<Integer> roots = this.processes.remove(key);
+
+        Set<Integer> trees = Collections.emptySet();
+        if (null != this.reaper && null != roots && !roots.isEmpty()) {
+            //taken before stopping, as the children of the driver lose their parent once it exits
+            trees = this.reaper.getProcessTrees(roots);
+        }
+
+        stopQuietly(service);
+
+        if (!trees.isEmpty()) {
+            this.reaper.reap(trees);
+        }
+    }
+
+    private Object getLock(String key) {
+        Object lock = new Object();
+        Object existing = this.locks.putIfAbsent(key, lock);
+
+        return (null == existing) ? lock : existing;
+    }
+
+    private static String getKey(File executable, String variant) throws IOException {
+        String path = executable.getCanonicalPath();
+
+        return (null == variant) ? path : path + "#" + variant;
+    }
+
+    private static void stopQuietly(DriverService service) {
+        try {
+            service.stop();
+        } catch (RuntimeException e) {
+            LOG.warn("Error stopping driver service at {}: {}", service.getUrl(), e.toString());
+        }
+    }
+}
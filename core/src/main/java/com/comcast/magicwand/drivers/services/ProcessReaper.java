@@ -0,0 +1,387 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.comcast.magicwand.binaries.DriverCache;
+import com.comcast.magicwand.utils.SystemDetail;
+
+import org.apache.commons.io.FileUtils;
+import org.openqa.selenium.remote.service.DriverService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the driver processes this JVM spawns so that they, and everything they spawned in turn (browsers,
+ * renderers...), can be killed even if the sessions running on them were never quit. A driver process is recognised
+ * by the full path of its executable and the port it was told to listen on.
+ *
+ * <p>
+ * Tracked processes are written to a registry file named after the id of this JVM's process. When a reaper is created
+ * through {@link #getDefault()} it sweeps the registry: processes recorded by JVMs that are no longer running are
+ * killed, provided they still run the same command line (so a recycled process id is left alone).
+ * </p>
+ */
+public class ProcessReaper {
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessReaper.class);
+
+    static final String REGISTRY_DIR_NAME = ".processes";
+    private static final String REGISTRY_SUFFIX = ".pids";
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    private static ProcessReaper defaultReaper;
+
+    private final File registryDir;
+    private final int ownPid;
+    private final Map<Integer, String> tracked = new LinkedHashMap<>();
+
+    /**
+     * Creates a reaper for the processes of this JVM
+     *
+     * @param registryDir Directory holding the registry files of all JVMs on this machine
+     */
+    public ProcessReaper(File registryDir) {
+        this(registryDir, ProcessTable.getCurrentPid());
+    }
+
+    ProcessReaper(File registryDir, int ownPid) {
+        this.registryDir = registryDir;
+        this.ownPid = ownPid;
+    }
+
+    /**
+     * Gets the reaper of this JVM, keeping its registry next to the default {@link DriverCache}. Processes left behind
+     * by earlier JVMs are killed the first time this is called.
+     *
+     * @return Default reaper
+     */
+    public static synchronized ProcessReaper getDefault() {
+        if (null == defaultReaper) {
+            defaultReaper = new ProcessReaper(new File(DriverCache.getDefault().getRoot(), REGISTRY_DIR_NAME));
+
+            int killed = defaultReaper.sweep();
+            if (killed > 0) {
+                LOG.info("Killed {} processes left behind by earlier runs", killed);
+            }
+        }
+
+        return defaultReaper;
+    }
+
+    /**
+     * Starts a driver service and tracks the process it spawned
+     *
+     * <p>
+     * Services are started one at a time, so that a process that shows up as a child of this JVM can only belong to
+     * the service being started.
+     * </p>
+     *
+     * @param service Service to start
+     * @param executable Executable the service runs
+     * @return Ids of the processes that are now tracked; empty if none were found or processes could not be listed
+     * @throws IOException If the service could not be started
+     */
+    public synchronized Set<Integer> start(DriverService service, File executable) throws IOException {
+        service.start();
+
+        return track(executable, service.getUrl().getPort());
+    }
+
+    /**
+     * Starts tracking the processes this JVM spawned that run an executable listening on a port, and that are not
+     * tracked yet
+     *
+     * @param executable Executable the processes run
+     * @param port Port passed on the command line of the processes
+     * @return Ids of the processes that are now tracked; empty if none were found or processes could not be listed
+     */
+    public synchronized Set<Integer> track(File executable, int port) {
+        Set<Integer> rv = new LinkedHashSet<>();
+        ProcessTable table = captureQuietly();
+
+        if (null == table) {
+            return rv;
+        }
+
+        String path = getPath(executable);
+        for (Integer child : table.getChildren(this.ownPid)) {
+            String command = table.getCommand(child);
+            if (!this.tracked.containsKey(child) && runs(command, path, port)) {
+                this.tracked.put(child, command);
+                rv.add(child);
+            }
+        }
+
+        if (!rv.isEmpty()) {
+            LOG.debug("Tracking {} processes {}", path, rv);
+            writeRegistry();
+        }
+
+        return rv;
+    }
+
+    /**
+     * Gets the processes in the trees of some tracked processes, so that they can still be found once the roots exit
+     * and their children are reparented
+     *
+     * @param roots Ids of tracked processes
+     * @return Ids of the running processes among <code>roots</code> and of all their descendants
+     */
+    public Set<Integer> getProcessTrees(Collection<Integer> roots) {
+        ProcessTable table = captureQuietly();
+
+        return (null == table) ? new LinkedHashSet<>(roots) : table.getTrees(roots);
+    }
+
+    /**
+     * Kills processes, along with any descendants they have at this point, and stops tracking them
+     *
+     * @param pids Ids of the processes to kill
+     */
+    public synchronized void reap(Collection<Integer> pids) {
+        if (pids.isEmpty()) {
+            return;
+        }
+
+        ProcessTable table = captureQuietly();
+        if (null != table) {
+            Set<Integer> victims = table.getTrees(pids);
+            victims.remove(this.ownPid);
+
+            if (!victims.isEmpty()) {
+                LOG.debug("Killing processes {}", victims);
+                killQuietly(victims);
+            }
+        }
+
+        this.tracked.keySet().removeAll(pids);
+        writeRegistry();
+    }
+
+    /**
+     * Kills every tracked process and its descendants
+     */
+    public synchronized void reapAll() {
+        reap(new ArrayList<>(this.tracked.keySet()));
+    }
+
+    /**
+     * Gets the processes currently tracked
+     *
+     * @return Ids of tracked processes
+     */
+    public synchronized Set<Integer> getTracked() {
+        return new LinkedHashSet<>(this.tracked.keySet());
+    }
+
+    /**
+     * Kills the processes recorded in the registry files of JVMs that are no longer running, then removes those files
+     *
+     * @return Number of processes killed
+     */
+    public int sweep() {
+        File[] files = this.registryDir.listFiles();
+        if (null == files) {
+            return 0;
+        }
+
+        ProcessTable table = null;
+        int rv = 0;
+
+        for (File file : files) {
+            String fileName = file.getName();
+            if (!fileName.endsWith(REGISTRY_SUFFIX)) {
+                continue;
+            }
+
+            int owner;
+            try {
+                owner = Integer.parseInt(fileName.substring(0, fileName.length() - REGISTRY_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            if (null == table) {
+                table = captureQuietly();
+                if (null == table) {
+                    return rv;
+                }
+            }
+
+            if (owner == this.ownPid || table.isRunning(owner)) {
+                continue;
+            }
+
+            List<Integer> stale = new ArrayList<>();
+            try {
+                for (String line : FileUtils.readLines(file, StandardCharsets.UTF_8)) {
+                    int tab = line.indexOf('\t');
+                    if (tab <= 0) {
+                        continue;
+                    }
+
+                    int pid = Integer.parseInt(line.substring(0, tab));
+                    if (line.substring(tab + 1).equals(table.getCommand(pid))) {
+                        stale.add(pid);
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOG.warn("Unable to read process registry {}: {}", file, e.toString());
+            }
+
+            Set<Integer> victims = table.getTrees(stale);
+            victims.remove(this.ownPid);
+            if (!victims.isEmpty()) {
+                LOG.debug("Killing processes {} left behind by process {}", victims, owner);
+                killQuietly(victims);
+                rv += victims.size();
+            }
+
+            FileUtils.deleteQuietly(file);
+        }
+
+        return rv;
+    }
+
+    /**
+     * Lists the processes running on this machine
+     *
+     * @return Process table
+     * @throws IOException If processes could not be listed
+     */
+    protected ProcessTable captureProcesses() throws IOException {
+        return ProcessTable.capture();
+    }
+
+    /**
+     * Forcibly kills processes
+     *
+     * @param pids Ids of the processes to kill
+     * @throws IOException If the processes could not be killed
+     */
+    protected void kill(Collection<Integer> pids) throws IOException {
+        List<List<String>> commands = new ArrayList<>();
+
+        if (SystemDetail.deviceIsRunningWindows()) {
+            for (Integer pid : pids) {
+                List<String> command = new ArrayList<>();
+                command.add("taskkill");
+                command.add("/F");
+                command.add("/PID");
+                command.add(pid.toString());
+                commands.add(command);
+            }
+        }
+        else {
+            List<String> command = new ArrayList<>();
+            command.add("kill");
+            command.add("-9");
+            for (Integer pid : pids) {
+                command.add(pid.toString());
+            }
+            commands.add(command);
+        }
+
+        for (List<String> command : commands) {
+            Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try {
+                p.getOutputStream().close();
+                //processes that exited on their own in the meantime make kill fail, which is fine
+                p.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while killing processes", e);
+            } finally {
+                p.destroy();
+            }
+        }
+    }
+
+    //services are launched with the canonical path of their executable
+    private static String getPath(File executable) {
+        try {
+            return executable.getCanonicalPath();
+        } catch (IOException e) {
+            return executable.getAbsolutePath();
+        }
+    }
+
+    //whether a command line runs an executable with a port among the arguments that follow it
+    private static boolean runs(String command, String path, int port) {
+        int at = command.indexOf(path);
+        if (at < 0) {
+            return false;
+        }
+
+        Matcher numbers = NUMBER.matcher(command.substring(at + path.length()));
+        while (numbers.find()) {
+            if (numbers.group().equals(Integer.toString(port))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private ProcessTable captureQuietly() {
+        try {
+            return captureProcesses();
+        } catch (IOException e) {
+            LOG.warn("Unable to list processes: {}", e.toString());
+            return null;
+        }
+    }
+
+    private void killQuietly(Collection<Integer> pids) {
+        try {
+            kill(pids);
+        } catch (IOException e) {
+            LOG.warn("Unable to kill processes {}: {}", pids, e.toString());
+        }
+    }
+
+    private void writeRegistry() {
+        File file = new File(this.registryDir, this.ownPid + REGISTRY_SUFFIX);
+
+        if (this.tracked.isEmpty()) {
+            FileUtils.deleteQuietly(file);
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<Integer, String> e : this.tracked.entrySet()) {
+            lines.add(e.getKey() + "\t" + e.getValue());
+        }
+
+        try {
+            FileUtils.writeLines(file, StandardCharsets.UTF_8.name(), lines);
+        } catch (IOException e) {
+            LOG.warn("Unable to write process registry {}: {}", file, e.toString());
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.comcast.magicwand.utils.SystemDetail;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Snapshot of the processes running on this machine: their parent and command line.
+ *
+ * <p>
+ * Captured with <code>ps</code> on unix-like systems and <code>wmic</code> on Windows, which works on every Java
+ * version this project supports.
+ * </p>
+ */
+public class ProcessTable {
+
+    private final Map<Integer, Integer> parents = new HashMap<>();
+    private final Map<Integer, String> commands = new HashMap<>();
+
+    /**
+     * Creates an empty table; processes are added with {@link #add(int, int, String)}
+     */
+    ProcessTable() {
+    }
+
+    /**
+     * Captures the processes currently running on this machine
+     *
+     * @return Process table
+     * @throws IOException If the processes could not be listed
+     */
+    public static ProcessTable capture() throws IOException {
+        boolean windows = SystemDetail.deviceIsRunningWindows();
+        ProcessBuilder pb = windows
+                ? new ProcessBuilder("wmic", "process", "get", "ParentProcessId,ProcessId,CommandLine", "/format:csv")
+                : new ProcessBuilder("ps", "-A", "-o", "pid=", "-o", "ppid=", "-o", "args=");
+        pb.redirectErrorStream(true);
+
+        Process p = pb.start();
+        InputStream in = p.getInputStream();
+        try {
+            p.getOutputStream().close();
+            Reader reader = new InputStreamReader(in, Charset.defaultCharset());
+            ProcessTable rv = windows ? parseWmic(reader) : parsePs(reader);
+
+            if (0 != p.waitFor()) {
+                throw new IOException("Listing processes failed with exit code " + p.exitValue());
+            }
+
+            return rv;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while listing processes", e);
+        } finally {
+            IOUtils.closeQuietly(in);
+            p.destroy();
+        }
+    }
+
+    /**
+     * Parses the output of <code>ps -A -o pid= -o ppid= -o args=</code>
+     *
+     * @param reader Output of ps
+     * @return Process table
+     * @throws IOException If the output could not be read
+     */
+    static ProcessTable parsePs(Reader reader) throws IOException {
+        ProcessTable rv = new ProcessTable();
+        BufferedReader br = new BufferedReader(reader);
+
+        for (String line = br.readLine(); null != line; line = br.readLine()) {
+            String[] parts = line.trim().split("\\s+", 3);
+            if (parts.length < 2) {
+                continue;
+            }
+
+            try {
+                rv.add(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), (parts.length > 2) ? parts[2] : "");
+            } catch (NumberFormatException e) {
+                //header or garbage
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Parses the output of <code>wmic process get ParentProcessId,ProcessId,CommandLine /format:csv</code>, whose
+     * columns are <code>Node,CommandLine,ParentProcessId,ProcessId</code>
+     *
+     * @param reader Output of wmic
+     * @return Process table
+     * @throws IOException If the output could not be read
+     */
+    static ProcessTable parseWmic(Reader reader) throws IOException {
+        ProcessTable rv = new ProcessTable();
+        BufferedReader br = new BufferedReader(reader);
+
+        for (String line = br.readLine(); null != line; line = br.readLine()) {
+            //the command line may contain commas, so the ids are taken from the end
+            int last = line.trim().lastIndexOf(',');
+            int middle = (last > 0) ? line.lastIndexOf(',', last - 1) : -1;
+            int first = line.indexOf(',');
+            if (middle <= first) {
+                continue;
+            }
+
+            try {
+                int ppid = Integer.parseInt(line.substring(middle + 1, last).trim());
+                int pid = Integer.parseInt(line.substring(last + 1).trim());
+                rv.add(pid, ppid, line.substring(first + 1, middle));
+            } catch (NumberFormatException e) {
+                //header or garbage
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Gets the id of the process running this JVM
+     *
+     * @return Process id or -1 if it is not known
+     */
+    public static int getCurrentPid() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int at = name.indexOf('@');
+
+        try {
+            return Integer.parseInt((at > 0) ? name.substring(0, at) : name);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    void add(int pid, int ppid, String command) {
+        this.parents.put(pid, ppid);
+        this.commands.put(pid, command);
+    }
+
+    /**
+     * Checks whether a process is in this table
+     *
+     * @param pid Process id
+     * @return True if the process was running when the table was captured
+     */
+    public boolean isRunning(int pid) {
+        return this.parents.containsKey(pid);
+    }
+
+    /**
+     * Gets the command line of a process
+     *
+     * @param pid Process id
+     * @return Command line or null if the process is not in this table
+     */
+    public String getCommand(int pid) {
+        return this.commands.get(pid);
+    }
+
+    /**
+     * Gets the direct children of a process
+     *
+     * @param pid Process id
+     * @return Ids of the children
+     */
+    public List<Integer> getChildren(int pid) {
+        List<Integer> rv = new ArrayList<>();
+
+        for (Map.Entry<Integer, Integer> e : this.parents.entrySet()) {
+            if (e.getValue().intValue() == pid && e.getKey().intValue() != pid) {
+                rv.add(e.getKey());
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Gets the running processes among <code>roots</code> together with all of their descendants
+     *
+     * @param roots Ids of the processes at the top of the trees
+     * @return Ids of the processes in the trees, parents before their children
+     */
+    public Set<Integer> getTrees(Collection<Integer> roots) {
+        Set<Integer> rv = new LinkedHashSet<>();
+        Deque<Integer> pending = new ArrayDeque<>();
+
+        for (Integer root : roots) {
+            if (isRunning(root)) {
+                pending.add(root);
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            Integer pid = pending.poll();
+            if (rv.add(pid)) {
+                pending.addAll(getChildren(pid));
+            }
+        }
+
+        return rv;
+    }
+}
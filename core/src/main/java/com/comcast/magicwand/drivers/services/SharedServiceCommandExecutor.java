@@ -0,0 +1,89 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.services;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandInfo;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.service.DriverService;
+
+/**
+ * Sends the commands of one session to a {@link DriverService} shared with other sessions.
+ *
+ * <p>
+ * Unlike the executor selenium attaches to a driver created from a service, quitting the session leaves the service
+ * running; its lifecycle belongs to the {@link DriverServicePool} it was acquired from.
+ * </p>
+ */
+public class SharedServiceCommandExecutor extends HttpCommandExecutor {
+
+    private final DriverService service;
+
+    /**
+     * Creates an executor for a shared service
+     *
+     * @param service Service to send commands to
+     */
+    public SharedServiceCommandExecutor(DriverService service) {
+        this(Collections.<String, CommandInfo>emptyMap(), service);
+    }
+
+    /**
+     * Creates an executor for a shared service that understands driver specific commands
+     *
+     * @param additionalCommands Driver specific commands, keyed by name
+     * @param service Service to send commands to
+     */
+    public SharedServiceCommandExecutor(Map<String, CommandInfo> additionalCommands, DriverService service) {
+        super(additionalCommands, service.getUrl());
+        this.service = service;
+    }
+
+    /**
+     * Gets the service commands are sent to
+     *
+     * @return Shared service
+     */
+    public DriverService getService() {
+        return this.service;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response execute(Command command) throws IOException {
+        if (DriverCommand.NEW_SESSION.equals(command.getName())) {
+            this.service.start();
+        }
+
+        try {
+            return super.execute(command);
+        } catch (IOException | WebDriverException e) {
+            if (!this.service.isRunning()) {
+                throw new WebDriverException("The shared driver service has unexpectedly died", e);
+            }
+            throw e;
+        }
+    }
+}
@@ -15,14 +15,25 @@
  */
 package com.comcast.magicwand.drivers.web;
 
+import java.io.IOException;
+import java.util.List;
+
 import com.comcast.cookie.CookieHandler;
 import com.comcast.cookie.handlers.GeneralCookieHandler;
 import com.comcast.magicwand.utils.SystemDetail;
 import com.comcast.magicwand.builders.PhoenixDriverIngredients;
 import com.comcast.magicwand.drivers.AbstractPhoenixDriver;
+import com.comcast.magicwand.proxy.BlockingInterceptor;
+import com.comcast.magicwand.proxy.BlockingRules;
+import com.comcast.magicwand.proxy.LocalProxy;
+import com.comcast.magicwand.proxy.ProxyInterceptor;
+import com.comcast.magicwand.proxy.ProxyInterceptors;
 
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Defines Web driver
@@ -31,6 +42,7 @@ import org.openqa.selenium.remote.DesiredCapabilities;
  *
  */
 public abstract class AbstractWebPhoenixDriver<T extends WebDriver> extends AbstractPhoenixDriver {
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractWebPhoenixDriver.class);
 
     /**
      * {@inheritDoc}
@@ -76,6 +88,56 @@ public abstract class AbstractWebPhoenixDriver<T extends WebDriver> extends Abst
         System.setProperty(key, value);
     }
 
+    /**
+     * Starts a proxy for the session
+     *
+     * @param interceptors Interceptors the proxy should run
+     * @return {@link LocalProxy}
+     * @throws IOException If the proxy could not be started
+     */
+    protected LocalProxy createProxy(List<ProxyInterceptor> interceptors) throws IOException {
+        return new LocalProxy(interceptors);
+    }
+
+    /**
+     * Points a session at a {@link LocalProxy} of its own when its ingredients have blocking rules or a
+     * {@link com.comcast.magicwand.proxy.ProxyInterceptorProvider} is on the class path. What the proxy blocks is
+     * counted, see {@link #getBlockingStats()}. Sessions that already have a proxy, or whose proxy cannot be started,
+     * get the blocking rules as a proxy auto-config script instead.
+     *
+     * @param dc Capabilities of the session, which the proxy is set on; a copy of the capabilities of the ingredients,
+     *            so that later sessions do not inherit it
+     * @param i Ingredients of the driver
+     */
+    protected void applyProxy(DesiredCapabilities dc, PhoenixDriverIngredients i) {
+        List<ProxyInterceptor> interceptors = ProxyInterceptors.forIngredients(i);
+
+        if (interceptors.isEmpty()) {
+            return;
+        }
+
+        if (null == dc.getCapability(CapabilityType.PROXY)) {
+            try {
+                LocalProxy proxy = createProxy(interceptors);
+                addSessionResource(proxy);
+
+                for (ProxyInterceptor interceptor : interceptors) {
+                    if (interceptor instanceof BlockingInterceptor) {
+                        setBlockingStats(((BlockingInterceptor) interceptor).getStats());
+                    }
+                }
+                dc.setCapability(CapabilityType.PROXY, proxy.toSeleniumProxy());
+                return;
+            } catch (IOException e) {
+                LOG.error("Unable to start session proxy, falling back to proxy auto-config: {}", e);
+            }
+        }
+
+        if (!BlockingRules.applyAutoConfig(dc, i.getBlockingRules())) {
+            LOG.warn("Session already has a proxy, it will not go through the magic-wand proxy");
+        }
+    }
+
     /**
      * Verify the running conditions of this driver have been met
      *
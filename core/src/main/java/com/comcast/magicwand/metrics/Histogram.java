@@ -0,0 +1,150 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Distribution of non-negative values. Counts are kept in power of two buckets, so the histogram stays small no
+ * matter how many values it sees; percentiles are computed from a uniform sample of at most
+ * {@value #MAX_SAMPLES} values, which makes them exact for all but the largest suites.
+ */
+public class Histogram {
+
+    static final int MAX_SAMPLES = 4096;
+
+    private final long[] buckets = new long[Long.SIZE];
+    private final long[] samples = new long[MAX_SAMPLES];
+    private final Random random = new Random();
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    /**
+     * Adds a value; negative values (i.e. events that did not happen) are ignored
+     *
+     * @param value Value to add
+     */
+    public synchronized void record(long value) {
+        if (value < 0) {
+            return;
+        }
+
+        this.buckets[Long.SIZE - Long.numberOfLeadingZeros(value)]++;
+        this.sum += value;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+
+        //reservoir sampling keeps every value seen so far equally likely to be in the sample
+        if (this.count < MAX_SAMPLES) {
+            this.samples[(int) this.count] = value;
+        } else {
+            long slot = (long) (this.random.nextDouble() * (this.count + 1));
+            if (slot < MAX_SAMPLES) {
+                this.samples[(int) slot] = value;
+            }
+        }
+        this.count++;
+    }
+
+    /**
+     * @return Number of values added
+     */
+    public synchronized long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return Smallest value added, or 0 if there is none
+     */
+    public synchronized long getMin() {
+        return (0 == this.count) ? 0 : this.min;
+    }
+
+    /**
+     * @return Largest value added, or 0 if there is none
+     */
+    public synchronized long getMax() {
+        return (0 == this.count) ? 0 : this.max;
+    }
+
+    /**
+     * @return Average of the values added, or 0 if there is none
+     */
+    public synchronized double getMean() {
+        return (0 == this.count) ? 0 : (double) this.sum / this.count;
+    }
+
+    /**
+     * Gets a percentile using the nearest rank method
+     *
+     * @param percentile Percentile between 0 (exclusive) and 100 (inclusive)
+     * @return Value below which <code>percentile</code> percent of the values fall, or 0 if there is none
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in (0, 100]: " + percentile);
+        }
+
+        int size = (int) Math.min(this.count, MAX_SAMPLES);
+        if (0 == size) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(this.samples, size);
+        Arrays.sort(sorted);
+
+        int rank = (int) Math.ceil(percentile / 100 * size);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Summarizes this histogram. Buckets are keyed by their inclusive upper bound and only listed when not empty.
+     *
+     * @return JSON object with <code>count</code>, <code>min</code>, <code>max</code>, <code>mean</code>,
+     *         <code>p50</code>, <code>p75</code>, <code>p90</code>, <code>p95</code>, <code>p99</code> and
+     *         <code>buckets</code>
+     * @throws JSONException If the summary could not be built
+     */
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject rv = new JSONObject();
+        rv.put("count", this.count);
+        rv.put("min", getMin());
+        rv.put("max", getMax());
+        rv.put("mean", Math.round(getMean() * 100) / 100.0);
+        rv.put("p50", getPercentile(50));
+        rv.put("p75", getPercentile(75));
+        rv.put("p90", getPercentile(90));
+        rv.put("p95", getPercentile(95));
+        rv.put("p99", getPercentile(99));
+
+        JSONObject histogram = new JSONObject();
+        for (int i = 0; i < this.buckets.length; i++) {
+            if (this.buckets[i] > 0) {
+                long upper = (0 == i) ? 0 : (i == Long.SIZE - 1) ? Long.MAX_VALUE : (1L << i) - 1;
+                histogram.put("le_" + upper, this.buckets[i]);
+            }
+        }
+        rv.put("buckets", histogram);
+
+        return rv;
+    }
+}
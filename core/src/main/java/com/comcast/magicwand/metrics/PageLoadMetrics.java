@@ -0,0 +1,307 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+import com.comcast.magicwand.utils.SystemDetail;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Page load figures of the navigations of all sessions, grouped by URL pattern into {@link Histogram}s.
+ *
+ * <p>
+ * URLs are grouped by the first pattern given to {@link #addUrlPattern(String, String)} that matches them; the
+ * others are grouped by host and path, with numeric and hexadecimal path segments (ids, hashes, UUIDs) replaced by
+ * <code>{id}</code> and the query dropped. The shared instance writes its report when the JVM exits, to the file
+ * named by <code>MAGICWAND_PAGE_METRICS_REPORT</code> (<code>magicwand-page-metrics.json</code> in the working
+ * directory by default).
+ * </p>
+ */
+public class PageLoadMetrics {
+    private static final Logger LOG = LoggerFactory.getLogger(PageLoadMetrics.class);
+
+    static final String ENABLED_PROP = "magicwand.metrics.pageload";
+    static final String ENABLED_ENV = "MAGICWAND_PAGE_METRICS";
+    static final String REPORT_PROP = "magicwand.metrics.pageload.report";
+    static final String REPORT_ENV = "MAGICWAND_PAGE_METRICS_REPORT";
+    static final String DEFAULT_REPORT = "magicwand-page-metrics.json";
+
+    private static final Pattern ID_SEGMENT = Pattern.compile(
+            "[0-9]+|[0-9a-fA-F]{8,}|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final String[] FIGURES = { "timeToFirstByte", "domContentLoaded", "load", "transferSize",
+            "resourceCount", "resourceTransferSize" };
+
+    private static PageLoadMetrics defaultMetrics;
+
+    private final Map<String, Pattern> patterns = new LinkedHashMap<>();
+    private final ConcurrentMap<String, Map<String, Histogram>> pages = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the metrics shared by the sessions of this JVM, which write their report when the JVM exits
+     *
+     * @return Metrics
+     */
+    public static synchronized PageLoadMetrics getDefault() {
+        if (null == defaultMetrics) {
+            final PageLoadMetrics rv = new PageLoadMetrics();
+            String report = SystemDetail.getSetting(REPORT_PROP, REPORT_ENV);
+            final File file = new File((null == report) ? DEFAULT_REPORT : report);
+
+            Runtime.getRuntime().addShutdownHook(new Thread("magicwand-page-metrics-report") {
+                @Override
+                public void run() {
+                    if (!rv.getPatterns().isEmpty()) {
+                        try {
+                            rv.writeReport(file);
+                            LOG.info("Page load metrics written to {}", file.getAbsolutePath());
+                        } catch (IOException e) {
+                            LOG.error("Unable to write page load metrics to {}: {}", file, e.toString());
+                        }
+                    }
+                }
+            });
+
+            defaultMetrics = rv;
+        }
+
+        return defaultMetrics;
+    }
+
+    /**
+     * Checks whether the navigations of a session should be measured
+     *
+     * @param ingredients Ingredients of the session
+     * @return True if {@link PhoenixDriverIngredients#withPageLoadMetrics()} was given or
+     *         <code>MAGICWAND_PAGE_METRICS</code> is set to <code>true</code>
+     */
+    public static boolean isEnabled(PhoenixDriverIngredients ingredients) {
+        return ingredients.isPageLoadMetrics()
+                || Boolean.parseBoolean(SystemDetail.getSetting(ENABLED_PROP, ENABLED_ENV));
+    }
+
+    /**
+     * Groups the URLs matching a regular expression under a name
+     *
+     * @param name Name the figures of the matching URLs are reported under
+     * @param regex Regular expression the whole URL has to match
+     * @return this
+     */
+    public PageLoadMetrics addUrlPattern(String name, String regex) {
+        synchronized (this.patterns) {
+            this.patterns.put(name, Pattern.compile(regex));
+        }
+
+        return this;
+    }
+
+    /**
+     * Measures the page a driver is showing. Failures are logged, never thrown, so that measuring cannot fail a test.
+     *
+     * @param driver Driver that just navigated
+     * @return Timing of the page, or null if it could not be measured
+     */
+    public PageLoadTiming capture(WebDriver driver) {
+        if (!(driver instanceof JavascriptExecutor)) {
+            return null;
+        }
+
+        PageLoadTiming rv;
+        try {
+            rv = PageLoadTiming.fromScriptResult(((JavascriptExecutor) driver).executeScript(PageLoadTiming.SCRIPT));
+        } catch (WebDriverException e) {
+            LOG.debug("Unable to measure page load: {}", e.toString());
+            return null;
+        }
+
+        if (null != rv) {
+            record(rv);
+        }
+
+        return rv;
+    }
+
+    /**
+     * Adds a timing to the histograms of its URL pattern; pages other than http(s) ones (i.e.
+     * <code>about:blank</code>) are ignored
+     *
+     * @param timing Timing of a page
+     */
+    public void record(PageLoadTiming timing) {
+        String pattern = getPattern(timing.getUrl());
+
+        if (null == pattern) {
+            return;
+        }
+
+        Map<String, Histogram> histograms = this.pages.get(pattern);
+        if (null == histograms) {
+            Map<String, Histogram> created = new LinkedHashMap<>();
+            for (String figure : FIGURES) {
+                created.put(figure, new Histogram());
+            }
+
+            histograms = this.pages.putIfAbsent(pattern, created);
+            if (null == histograms) {
+                histograms = created;
+            }
+        }
+
+        histograms.get("timeToFirstByte").record(timing.getTimeToFirstByte());
+        histograms.get("domContentLoaded").record(timing.getDomContentLoaded());
+        histograms.get("load").record(timing.getLoad());
+        histograms.get("transferSize").record(timing.getTransferSize());
+        histograms.get("resourceCount").record(timing.getResourceCount());
+        histograms.get("resourceTransferSize").record(timing.getResourceTransferSize());
+    }
+
+    /**
+     * Gets the pattern a URL is grouped under
+     *
+     * @param url URL of a page
+     * @return Name of the pattern, or null if the URL is not measured
+     */
+    public String getPattern(String url) {
+        if (null == url) {
+            return null;
+        }
+
+        synchronized (this.patterns) {
+            for (Map.Entry<String, Pattern> pattern : this.patterns.entrySet()) {
+                if (pattern.getValue().matcher(url).matches()) {
+                    return pattern.getKey();
+                }
+            }
+        }
+
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+
+        String scheme = uri.getScheme();
+        if (null == uri.getHost() || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+            return null;
+        }
+
+        StringBuilder rv = new StringBuilder(uri.getHost().toLowerCase(Locale.ENGLISH));
+        if (-1 != uri.getPort()) {
+            rv.append(':').append(uri.getPort());
+        }
+
+        String path = uri.getRawPath();
+        for (String segment : (null == path) ? new String[0] : path.split("/")) {
+            if (!segment.isEmpty()) {
+                rv.append('/').append(ID_SEGMENT.matcher(segment).matches() ? "{id}" : segment);
+            }
+        }
+        if (null == path || path.isEmpty() || path.endsWith("/")) {
+            rv.append('/');
+        }
+
+        return rv.toString();
+    }
+
+    /**
+     * @return Names of the patterns measured so far
+     */
+    public List<String> getPatterns() {
+        return new ArrayList<>(new TreeMap<>(this.pages).keySet());
+    }
+
+    /**
+     * Gets a histogram
+     *
+     * @param pattern Name of a pattern
+     * @param figure One of <code>timeToFirstByte</code>, <code>domContentLoaded</code>, <code>load</code>,
+     *            <code>transferSize</code>, <code>resourceCount</code> and <code>resourceTransferSize</code>
+     * @return Histogram or null if nothing was measured for the pattern
+     */
+    public Histogram getHistogram(String pattern, String figure) {
+        Map<String, Histogram> histograms = this.pages.get(pattern);
+
+        return (null == histograms) ? null : histograms.get(figure);
+    }
+
+    /**
+     * Builds the report: one object per pattern, holding the summary of each figure, see {@link Histogram#toJson()}
+     *
+     * @return Report
+     * @throws JSONException If the report could not be built
+     */
+    public JSONObject toJson() throws JSONException {
+        JSONObject pagesJson = new JSONObject();
+
+        for (String pattern : getPatterns()) {
+            JSONObject figures = new JSONObject();
+            for (Map.Entry<String, Histogram> figure : this.pages.get(pattern).entrySet()) {
+                figures.put(figure.getKey(), figure.getValue().toJson());
+            }
+            pagesJson.put(pattern, figures);
+        }
+
+        JSONObject rv = new JSONObject();
+        rv.put("generated", System.currentTimeMillis());
+        rv.put("pages", pagesJson);
+
+        return rv;
+    }
+
+    /**
+     * Writes the report
+     *
+     * @param file File to write to
+     * @throws IOException If the report could not be written
+     */
+    public void writeReport(File file) throws IOException {
+        try {
+            FileUtils.writeStringToFile(file, toJson().toString(2), StandardCharsets.UTF_8);
+        } catch (JSONException e) {
+            throw new IOException("Unable to build page load report", e);
+        }
+    }
+
+    /**
+     * Forgets everything measured so far
+     */
+    public void reset() {
+        this.pages.clear();
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.metrics;
+
+import java.util.Map;
+
+/**
+ * Navigation and Resource Timing figures of one page load, as reported by the browser. Times are in milliseconds
+ * since the navigation started, sizes in bytes; figures the browser does not report are -1.
+ */
+public final class PageLoadTiming {
+
+    /**
+     * Script collecting the figures in one round trip. <code>transferSize</code> is only reported by browsers
+     * implementing Resource Timing level 2, and is 0 for resources served from the cache.
+     */
+    static final String SCRIPT = "var p = window.performance, t = p && p.timing;"
+            + "if (!t || !t.navigationStart) { return null; }"
+            + "var r = p.getEntriesByType ? p.getEntriesByType('resource') : [],"
+            + " n = p.getEntriesByType ? p.getEntriesByType('navigation')[0] : null,"
+            + " size = -1;"
+            + "for (var i = 0; i < r.length; i++) {"
+            + " if ('number' === typeof r[i].transferSize) { size = Math.max(size, 0) + r[i].transferSize; } }"
+            + "function since(v) { return v > 0 ? v - t.navigationStart : -1; }"
+            + "return { url: location.href, ttfb: since(t.responseStart),"
+            + " domContentLoaded: since(t.domContentLoadedEventEnd), load: since(t.loadEventEnd),"
+            + " transferSize: (n && 'number' === typeof n.transferSize) ? n.transferSize : -1,"
+            + " resourceCount: r.length, resourceTransferSize: size };";
+
+    private final String url;
+    private final long timeToFirstByte;
+    private final long domContentLoaded;
+    private final long load;
+    private final long transferSize;
+    private final long resourceCount;
+    private final long resourceTransferSize;
+
+    /**
+     * Creates a timing
+     *
+     * @param url URL of the page
+     * @param timeToFirstByte Time until the first byte of the document arrived
+     * @param domContentLoaded Time until <code>DOMContentLoaded</code> handlers finished
+     * @param load Time until <code>load</code> handlers finished
+     * @param transferSize Bytes transferred for the document
+     * @param resourceCount Number of resources the page loaded
+     * @param resourceTransferSize Bytes transferred for the resources
+     */
+    public PageLoadTiming(String url, long timeToFirstByte, long domContentLoaded, long load, long transferSize,
+            long resourceCount, long resourceTransferSize) {
+        this.url = url;
+        this.timeToFirstByte = timeToFirstByte;
+        this.domContentLoaded = domContentLoaded;
+        this.load = load;
+        this.transferSize = transferSize;
+        this.resourceCount = resourceCount;
+        this.resourceTransferSize = resourceTransferSize;
+    }
+
+    /**
+     * Reads the result of {@link #SCRIPT}
+     *
+     * @param result Value returned by the browser
+     * @return Timing or null if the browser does not support Navigation Timing
+     */
+    static PageLoadTiming fromScriptResult(Object result) {
+        if (!(result instanceof Map)) {
+            return null;
+        }
+
+        Map<?, ?> map = (Map<?, ?>) result;
+        Object url = map.get("url");
+
+        return new PageLoadTiming((null == url) ? null : url.toString(), getLong(map, "ttfb"),
+                getLong(map, "domContentLoaded"), getLong(map, "load"), getLong(map, "transferSize"),
+                getLong(map, "resourceCount"), getLong(map, "resourceTransferSize"));
+    }
+
+    private static long getLong(Map<?, ?> map, String key) {
+        Object value = map.get(key);
+
+        return (value instanceof Number) ? Math.round(((Number) value).doubleValue()) : -1;
+    }
+
+    /**
+     * @return URL of the page
+     */
+    public String getUrl() {
+        return this.url;
+    }
+
+    /**
+     * @return Milliseconds until the first byte of the document arrived
+     */
+    public long getTimeToFirstByte() {
+        return this.timeToFirstByte;
+    }
+
+    /**
+     * @return Milliseconds until <code>DOMContentLoaded</code> handlers finished
+     */
+    public long getDomContentLoaded() {
+        return this.domContentLoaded;
+    }
+
+    /**
+     * @return Milliseconds until <code>load</code> handlers finished
+     */
+    public long getLoad() {
+        return this.load;
+    }
+
+    /**
+     * @return Bytes transferred for the document
+     */
+    public long getTransferSize() {
+        return this.transferSize;
+    }
+
+    /**
+     * @return Number of resources the page loaded
+     */
+    public long getResourceCount() {
+        return this.resourceCount;
+    }
+
+    /**
+     * @return Bytes transferred for the resources of the page
+     */
+    public long getResourceTransferSize() {
+        return this.resourceTransferSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "PageLoadTiming[url=" + this.url + ", ttfb=" + this.timeToFirstByte + ", domContentLoaded="
+                + this.domContentLoaded + ", load=" + this.load + ", transferSize=" + this.transferSize
+                + ", resources=" + this.resourceCount + ", resourceTransferSize=" + this.resourceTransferSize + "]";
+    }
+}
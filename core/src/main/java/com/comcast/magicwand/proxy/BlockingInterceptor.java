@@ -0,0 +1,189 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ProxyInterceptor} answering requests matched by {@link BlockingRule}s with an empty response and refusing
+ * tunnels to blocked hosts.
+ *
+ * <p>
+ * To report how many bytes were saved, the size of a blocked resource is asked from upstream with a HEAD request off
+ * the browser's critical path; sizes are remembered JVM wide, so each URL is only asked about once.
+ * </p>
+ */
+public class BlockingInterceptor implements ProxyInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(BlockingInterceptor.class);
+
+    private static final int MAX_KNOWN_SIZES = 4096;
+    private static final int MAX_PENDING_PROBES = 256;
+    private static final int PROBE_TIMEOUT = 5000;
+
+    private static final Map<String, Long> SIZES = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > MAX_KNOWN_SIZES;
+                }
+            });
+
+    private static final ExecutorService PROBES = new ThreadPoolExecutor(1, 2, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(MAX_PENDING_PROBES), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread rv = new Thread(r, "magicwand-blocking-probe");
+                    rv.setDaemon(true);
+                    return rv;
+                }
+            });
+
+    private final List<BlockingRule> rules;
+    private final BlockingStats stats = new BlockingStats();
+
+    /**
+     * Creates an interceptor
+     *
+     * @param rules Rules deciding what to block
+     */
+    public BlockingInterceptor(Collection<BlockingRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+    }
+
+    /**
+     * @return Counts of what was blocked so far
+     */
+    public BlockingStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * @return Rules deciding what to block
+     */
+    public List<BlockingRule> getRules() {
+        return this.rules;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ProxyResponse intercept(ProxyRequest request) {
+        ResourceType type = request.getResourceType();
+
+        for (BlockingRule rule : this.rules) {
+            if (rule.matches(request.getUri(), type)) {
+                LOG.trace("Blocked {} ({}) by {}", request, type, rule);
+                this.stats.recordRequest(type);
+                measure(request.getUri());
+
+                return ProxyResponse.noContent();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onResponse(ProxyRequest request, ProxyResponse response) {
+        //nothing to do, allowed responses are passed along untouched
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean allowTunnel(String host, int port) {
+        for (BlockingRule rule : this.rules) {
+            if (rule.blocksHost(host)) {
+                this.stats.recordTunnel();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Asks upstream for the size of a resource
+     *
+     * @param uri URL of the resource
+     * @return Size in bytes or a negative value if upstream did not tell
+     * @throws IOException If upstream could not be reached
+     */
+    protected long probeSize(URI uri) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) uri.toURL().openConnection(java.net.Proxy.NO_PROXY);
+
+        try {
+            conn.setRequestMethod("HEAD");
+            conn.setConnectTimeout(PROBE_TIMEOUT);
+            conn.setReadTimeout(PROBE_TIMEOUT);
+
+            return (conn.getResponseCode() < 400) ? conn.getContentLengthLong() : -1;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private void measure(final URI uri) {
+        final String key = uri.toString();
+        Long known = SIZES.get(key);
+
+        if (null != known) {
+            this.stats.addBytesSaved(known);
+            return;
+        }
+
+        try {
+            PROBES.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        long size = Math.max(0, probeSize(uri));
+                        SIZES.put(key, size);
+                        BlockingInterceptor.this.stats.addBytesSaved(size);
+                    } catch (IOException e) {
+                        LOG.trace("Unable to find the size of {}: {}", uri, e.toString());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //too many probes pending, this one goes uncounted
+        }
+    }
+}
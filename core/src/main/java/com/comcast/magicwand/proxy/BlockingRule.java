@@ -0,0 +1,213 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Declarative rule saying which requests of a session should never reach the network. A rule matches a request when
+ * all of its parts match:
+ * <ul>
+ * <li>host glob (<code>*.doubleclick.net</code> also matches <code>doubleclick.net</code>)</li>
+ * <li>URL glob (<code>*&#47;analytics/*</code>)</li>
+ * <li>{@link ResourceType}s</li>
+ * </ul>
+ * Parts that were not given match everything. Globs are case insensitive; <code>*</code> matches any run of characters
+ * and <code>?</code> any single one.
+ *
+ * <pre>
+ * BlockingRule.host("*.doubleclick.net");
+ * BlockingRule.types(ResourceType.IMAGE, ResourceType.FONT);
+ * BlockingRule.host("*.cdn.example.com").ofTypes(ResourceType.MEDIA);
+ * </pre>
+ */
+public final class BlockingRule {
+
+    private final String hostGlob;
+    private final String urlGlob;
+    private final Set<ResourceType> types;
+    private final Pattern hostPattern;
+    private final Pattern urlPattern;
+
+    private BlockingRule(String hostGlob, String urlGlob, Set<ResourceType> types) {
+        this.hostGlob = hostGlob;
+        this.urlGlob = urlGlob;
+        this.types = Collections.unmodifiableSet(types);
+        this.hostPattern = (null == hostGlob) ? null : toPattern(hostGlob, true);
+        this.urlPattern = (null == urlGlob) ? null : toPattern(urlGlob, false);
+    }
+
+    /**
+     * Creates a rule blocking everything served by matching hosts
+     *
+     * @param glob Host glob (i.e. <code>*.doubleclick.net</code>)
+     * @return Rule
+     */
+    public static BlockingRule host(String glob) {
+        return new BlockingRule(checkGlob(glob), null, EnumSet.noneOf(ResourceType.class));
+    }
+
+    /**
+     * Creates a rule blocking matching URLs
+     *
+     * @param glob URL glob (i.e. <code>*&#47;ads/*</code>)
+     * @return Rule
+     */
+    public static BlockingRule url(String glob) {
+        return new BlockingRule(null, checkGlob(glob), EnumSet.noneOf(ResourceType.class));
+    }
+
+    /**
+     * Creates a rule blocking resources of some types wherever they come from
+     *
+     * @param types Types to block
+     * @return Rule
+     */
+    public static BlockingRule types(ResourceType... types) {
+        return new BlockingRule(null, null, toSet(types));
+    }
+
+    /**
+     * Narrows this rule to resources of some types
+     *
+     * @param resourceTypes Types the rule should apply to
+     * @return New rule
+     */
+    public BlockingRule ofTypes(ResourceType... resourceTypes) {
+        return new BlockingRule(this.hostGlob, this.urlGlob, toSet(resourceTypes));
+    }
+
+    /**
+     * Narrows this rule to matching hosts
+     *
+     * @param glob Host glob
+     * @return New rule
+     */
+    public BlockingRule onHost(String glob) {
+        return new BlockingRule(checkGlob(glob), this.urlGlob, withAll(this.types));
+    }
+
+    /**
+     * Checks whether a request is blocked by this rule
+     *
+     * @param uri Absolute URL of the request
+     * @param type Type of the resource
+     * @return True if the request should be blocked
+     */
+    public boolean matches(URI uri, ResourceType type) {
+        return matchesHost(uri.getHost())
+                && (null == this.urlPattern || this.urlPattern.matcher(uri.toString()).matches())
+                && (this.types.isEmpty() || this.types.contains(type));
+    }
+
+    /**
+     * Checks whether a whole host is blocked by this rule, which is all that can be told about a tunnelled (HTTPS)
+     * connection
+     *
+     * @param host Host name
+     * @return True if the rule only names hosts and <code>host</code> is one of them
+     */
+    public boolean blocksHost(String host) {
+        return null != this.hostPattern && null == this.urlPattern && this.types.isEmpty() && matchesHost(host);
+    }
+
+    private boolean matchesHost(String host) {
+        return null == this.hostPattern || (null != host && this.hostPattern.matcher(host).matches());
+    }
+
+    /**
+     * @return Host glob or null if the rule applies to all hosts
+     */
+    public String getHostGlob() {
+        return this.hostGlob;
+    }
+
+    /**
+     * @return URL glob or null if the rule applies to all URLs
+     */
+    public String getUrlGlob() {
+        return this.urlGlob;
+    }
+
+    /**
+     * @return Types the rule applies to; empty if it applies to all of them
+     */
+    public Set<ResourceType> getTypes() {
+        return this.types;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "BlockingRule[host=" + this.hostGlob + ", url=" + this.urlGlob + ", types=" + this.types + "]";
+    }
+
+    private static Set<ResourceType> withAll(Set<ResourceType> types) {
+        return types.isEmpty() ? EnumSet.noneOf(ResourceType.class) : EnumSet.copyOf(types);
+    }
+
+    private static Set<ResourceType> toSet(ResourceType... types) {
+        if (null == types || 0 == types.length) {
+            throw new IllegalArgumentException("At least one resource type is required");
+        }
+
+        return EnumSet.copyOf(Arrays.asList(types));
+    }
+
+    private static String checkGlob(String glob) {
+        if (null == glob || glob.trim().isEmpty()) {
+            throw new IllegalArgumentException("Blocking pattern cannot be empty");
+        }
+
+        return glob.trim();
+    }
+
+    private static Pattern toPattern(String glob, boolean host) {
+        StringBuilder regex = new StringBuilder();
+        String rest = glob;
+
+        //*.example.com should block example.com itself as well
+        if (host && rest.startsWith("*.")) {
+            regex.append("(?:.*\\.)?");
+            rest = rest.substring(2);
+        }
+
+        StringBuilder literal = new StringBuilder();
+        for (char c : rest.toCharArray()) {
+            if ('*' == c || '?' == c) {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(('*' == c) ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+}
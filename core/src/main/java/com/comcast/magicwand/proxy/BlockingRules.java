@@ -0,0 +1,128 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openqa.selenium.Proxy;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+/**
+ * Applies {@link BlockingRule}s to browsers that cannot be pointed at a {@link LocalProxy}, such as remote ones, by
+ * handing them a proxy auto-config script that sends blocked requests to a dead address.
+ *
+ * <p>
+ * Browsers only show the host of HTTPS requests to such scripts, and resource types can only be told from the URL
+ * extension, so this is coarser than the proxy and nothing gets counted.
+ * </p>
+ */
+public final class BlockingRules {
+
+    /** Nothing listens on the discard port of the loopback interface, so connections fail immediately */
+    static final String BLACKHOLE = "PROXY 127.0.0.1:9";
+
+    private BlockingRules() {
+    }
+
+    /**
+     * Points a session at a proxy auto-config script implementing the rules, unless it already has a proxy
+     *
+     * @param capabilities Capabilities of the session
+     * @param rules Rules to apply
+     * @return True if the script was set
+     */
+    public static boolean applyAutoConfig(DesiredCapabilities capabilities, Collection<BlockingRule> rules) {
+        if (rules.isEmpty() || null != capabilities.getCapability(CapabilityType.PROXY)) {
+            return false;
+        }
+
+        byte[] script = toAutoConfigScript(rules).getBytes(StandardCharsets.UTF_8);
+        Proxy proxy = new Proxy();
+        proxy.setProxyAutoconfigUrl("data:application/x-ns-proxy-autoconfig;base64,"
+                + Base64.encodeBase64String(script));
+        capabilities.setCapability(CapabilityType.PROXY, proxy);
+
+        return true;
+    }
+
+    /**
+     * Writes a proxy auto-config script blocking what the rules block. Rules restricted to types that cannot be told
+     * from a URL are left out.
+     *
+     * @param rules Rules to apply
+     * @return JavaScript source of the script
+     */
+    public static String toAutoConfigScript(Collection<BlockingRule> rules) {
+        StringBuilder rv = new StringBuilder("function FindProxyForURL(url, host) {\n");
+
+        for (BlockingRule rule : rules) {
+            String condition = toCondition(rule);
+            if (null != condition) {
+                rv.append("  if (").append(condition).append(") return \"").append(BLACKHOLE).append("\";\n");
+            }
+        }
+
+        return rv.append("  return \"DIRECT\";\n}\n").toString();
+    }
+
+    private static String toCondition(BlockingRule rule) {
+        List<String> parts = new ArrayList<>();
+
+        String host = rule.getHostGlob();
+        if (null != host) {
+            host = host.toLowerCase(Locale.ENGLISH);
+            if (host.startsWith("*.")) {
+                parts.add("(host == " + quote(host.substring(2)) + " || shExpMatch(host, " + quote(host) + "))");
+            } else {
+                parts.add("shExpMatch(host, " + quote(host) + ")");
+            }
+        }
+
+        if (null != rule.getUrlGlob()) {
+            parts.add("shExpMatch(url, " + quote(rule.getUrlGlob()) + ")");
+        }
+
+        if (!rule.getTypes().isEmpty()) {
+            StringBuilder extensions = new StringBuilder();
+            for (ResourceType type : rule.getTypes()) {
+                for (String extension : type.getExtensions()) {
+                    extensions.append((0 == extensions.length()) ? "" : "|").append(extension);
+                }
+            }
+            if (0 == extensions.length()) {
+                return null;
+            }
+            parts.add("/\\.(" + extensions + ")([?#]|$)/i.test(url)");
+        }
+
+        StringBuilder rv = new StringBuilder();
+        for (String part : parts) {
+            rv.append((0 == rv.length()) ? "" : " && ").append(part);
+        }
+
+        return rv.toString();
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
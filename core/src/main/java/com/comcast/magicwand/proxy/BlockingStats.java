@@ -0,0 +1,97 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running counts of what the {@link BlockingRule}s of one session kept off the network
+ */
+public class BlockingStats {
+
+    private final AtomicLong blockedRequests = new AtomicLong();
+    private final AtomicLong blockedTunnels = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final Map<ResourceType, AtomicLong> byType = new EnumMap<>(ResourceType.class);
+
+    /**
+     * Creates empty stats
+     */
+    public BlockingStats() {
+        for (ResourceType type : ResourceType.values()) {
+            this.byType.put(type, new AtomicLong());
+        }
+    }
+
+    void recordRequest(ResourceType type) {
+        this.blockedRequests.incrementAndGet();
+        this.byType.get(type).incrementAndGet();
+    }
+
+    void recordTunnel() {
+        this.blockedTunnels.incrementAndGet();
+    }
+
+    void addBytesSaved(long bytes) {
+        this.bytesSaved.addAndGet(bytes);
+    }
+
+    /**
+     * @return Number of HTTP requests answered locally instead of going upstream
+     */
+    public long getBlockedRequests() {
+        return this.blockedRequests.get();
+    }
+
+    /**
+     * Gets the number of blocked HTTP requests for a type of resource
+     *
+     * @param type Type of resource
+     * @return Number of requests
+     */
+    public long getBlockedRequests(ResourceType type) {
+        return this.byType.get(type).get();
+    }
+
+    /**
+     * @return Number of HTTPS tunnels refused because their whole host is blocked
+     */
+    public long getBlockedTunnels() {
+        return this.blockedTunnels.get();
+    }
+
+    /**
+     * Gets the number of bytes the blocked HTTP requests would have downloaded, as announced by upstream when asked
+     * for the headers of the resources in the background. Tunnels are not counted, since what would have gone
+     * through them is unknown.
+     *
+     * @return Bytes saved
+     */
+    public long getBytesSaved() {
+        return this.bytesSaved.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "BlockingStats[requests=" + getBlockedRequests() + ", tunnels=" + getBlockedTunnels()
+                + ", bytesSaved=" + getBytesSaved() + "]";
+    }
+}
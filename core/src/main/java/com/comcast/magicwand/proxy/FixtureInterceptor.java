@@ -0,0 +1,362 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+import com.comcast.magicwand.utils.SystemDetail;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ProxyInterceptor} recording the responses a session gets into a directory of fixture files, or answering
+ * the session from such a directory without going upstream.
+ *
+ * <p>
+ * Requests are matched on their method, URL and a hash of their body. A request made several times gets the
+ * recorded responses in the order they were recorded, the last one being repeated. Requests without a fixture are
+ * answered with <code>404 No Fixture</code> while replaying. Only plain HTTP is recorded: HTTPS goes through tunnels
+ * the proxy cannot look into, so those are passed along untouched in both modes.
+ * </p>
+ *
+ * <p>
+ * Fixtures are JSON files, one per response, that can be edited by hand. Deleting the directory is the simplest way
+ * to record a set again from scratch; <code>MAGICWAND_FIXTURE_MODE</code> (<code>record</code> or
+ * <code>replay</code>) overrides the mode every session was given.
+ * </p>
+ */
+public class FixtureInterceptor implements ProxyInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(FixtureInterceptor.class);
+
+    static final String MODE_PROP = "magicwand.fixtures.mode";
+    static final String MODE_ENV = "MAGICWAND_FIXTURE_MODE";
+
+    private static final String SUFFIX = ".json";
+    private static final List<String> TEXT_TYPES = Arrays.asList("text/", "json", "javascript", "xml");
+
+    private final File dir;
+    private final FixtureMode mode;
+    private final Map<String, List<JSONObject>> fixtures = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> sequences = new ConcurrentHashMap<>();
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong missing = new AtomicLong();
+
+    /**
+     * Creates an interceptor
+     *
+     * @param dir Directory of the fixture set
+     * @param mode Whether to record or replay the fixtures
+     */
+    public FixtureInterceptor(File dir, FixtureMode mode) {
+        this.dir = dir;
+        this.mode = mode;
+
+        if (FixtureMode.REPLAY == mode) {
+            load();
+        }
+    }
+
+    /**
+     * Creates the interceptor of a session
+     *
+     * @param ingredients Ingredients of the session
+     * @return Interceptor or null if the session does not use fixtures
+     */
+    public static FixtureInterceptor forIngredients(PhoenixDriverIngredients ingredients) {
+        if (null == ingredients.getFixtureDir()) {
+            return null;
+        }
+
+        FixtureMode mode = ingredients.getFixtureMode();
+        String override = SystemDetail.getSetting(MODE_PROP, MODE_ENV);
+        if (null != override) {
+            try {
+                mode = FixtureMode.valueOf(override.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Ignoring invalid value [{}] of {}", override, MODE_PROP);
+            }
+        }
+
+        return new FixtureInterceptor(ingredients.getFixtureDir(), mode);
+    }
+
+    /**
+     * @return Directory of the fixture set
+     */
+    public File getDir() {
+        return this.dir;
+    }
+
+    /**
+     * @return Whether fixtures are recorded or replayed
+     */
+    public FixtureMode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * @return Number of responses written to the fixture directory
+     */
+    public long getRecorded() {
+        return this.recorded.get();
+    }
+
+    /**
+     * @return Number of requests answered from the fixture directory
+     */
+    public long getReplayed() {
+        return this.replayed.get();
+    }
+
+    /**
+     * @return Number of requests answered with <code>404 No Fixture</code> while replaying
+     */
+    public long getMissing() {
+        return this.missing.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ProxyResponse intercept(ProxyRequest request) {
+        if (FixtureMode.REPLAY != this.mode) {
+            return null;
+        }
+
+        String key = getKey(request.getMethod(), request.getUri().toString(), hash(request));
+        List<JSONObject> responses = this.fixtures.get(key);
+
+        if (null == responses) {
+            this.missing.incrementAndGet();
+            LOG.warn("No fixture in {} for {} {}", this.dir, request.getMethod(), request.getUri());
+
+            ProxyResponse rv = new ProxyResponse(404, "No Fixture");
+            rv.setHeader("Content-Type", "text/plain");
+            rv.setBody(("No fixture for " + request.getMethod() + " " + request.getUri())
+                    .getBytes(StandardCharsets.UTF_8));
+            return rv;
+        }
+
+        int index = nextIndex(key);
+        try {
+            ProxyResponse rv = toResponse(responses.get(Math.min(index, responses.size() - 1)));
+            this.replayed.incrementAndGet();
+            return rv;
+        } catch (JSONException e) {
+            LOG.error("Invalid fixture for {} {}: {}", request.getMethod(), request.getUri(), e.toString());
+            return new ProxyResponse(500, "Invalid Fixture");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onResponse(ProxyRequest request, ProxyResponse response) {
+        if (FixtureMode.RECORD != this.mode) {
+            return;
+        }
+
+        String url = request.getUri().toString();
+        String bodyHash = hash(request);
+        String key = getKey(request.getMethod(), url, bodyHash);
+        int index = nextIndex(key);
+        File file = new File(this.dir, getFileName(request, key, index));
+
+        try {
+            JSONObject fixture = new JSONObject();
+            fixture.put("method", request.getMethod());
+            fixture.put("url", url);
+            fixture.put("bodySha1", bodyHash);
+            fixture.put("sequence", index);
+            fixture.put("status", response.getStatus());
+            fixture.put("reason", (null == response.getReason()) ? "" : response.getReason());
+
+            JSONArray headers = new JSONArray();
+            List<String> names = response.getHeaderNames();
+            for (int i = 0; i < names.size(); i++) {
+                //values line up with the names, as repeated names are listed once per value
+                String name = names.get(i);
+                int occurrence = Collections.frequency(names.subList(0, i), name);
+                headers.put(new JSONArray(Arrays.asList(name, response.getHeaders(name).get(occurrence))));
+            }
+            fixture.put("headers", headers);
+
+            byte[] body = response.getBody();
+            if (isText(response, body)) {
+                fixture.put("body", new String(body, StandardCharsets.UTF_8));
+            } else {
+                fixture.put("bodyBase64", Base64.encodeBase64String(body));
+            }
+
+            FileUtils.writeStringToFile(file, fixture.toString(2), StandardCharsets.UTF_8);
+            this.recorded.incrementAndGet();
+        } catch (IOException | JSONException e) {
+            LOG.error("Unable to record fixture {}: {}", file, e.toString());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean allowTunnel(String host, int port) {
+        return true;
+    }
+
+    private void load() {
+        File[] files = this.dir.listFiles();
+
+        if (null == files) {
+            LOG.warn("Fixture directory {} does not exist, every request will miss", this.dir);
+            return;
+        }
+
+        Map<String, List<JSONObject>> loaded = new ConcurrentHashMap<>();
+        for (File file : files) {
+            if (!file.getName().endsWith(SUFFIX)) {
+                continue;
+            }
+
+            try {
+                JSONObject fixture = new JSONObject(FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+                String key = getKey(fixture.getString("method"), fixture.getString("url"),
+                        fixture.getString("bodySha1"));
+
+                List<JSONObject> responses = loaded.get(key);
+                if (null == responses) {
+                    responses = new ArrayList<>();
+                    loaded.put(key, responses);
+                }
+                responses.add(fixture);
+            } catch (IOException | JSONException e) {
+                LOG.error("Ignoring unreadable fixture {}: {}", file, e.toString());
+            }
+        }
+
+        for (List<JSONObject> responses : loaded.values()) {
+            Collections.sort(responses, new Comparator<JSONObject>() {
+                @Override
+                public int compare(JSONObject o1, JSONObject o2) {
+                    return Integer.compare(o1.optInt("sequence"), o2.optInt("sequence"));
+                }
+            });
+        }
+
+        this.fixtures.putAll(loaded);
+        LOG.debug("Loaded fixtures for {} requests from {}", loaded.size(), this.dir);
+    }
+
+    private int nextIndex(String key) {
+        AtomicInteger sequence = this.sequences.get(key);
+
+        if (null == sequence) {
+            AtomicInteger created = new AtomicInteger();
+            sequence = this.sequences.putIfAbsent(key, created);
+            if (null == sequence) {
+                sequence = created;
+            }
+        }
+
+        return sequence.getAndIncrement();
+    }
+
+    private static ProxyResponse toResponse(JSONObject fixture) throws JSONException {
+        ProxyResponse rv = new ProxyResponse(fixture.getInt("status"), fixture.optString("reason"));
+
+        JSONArray headers = fixture.optJSONArray("headers");
+        for (int i = 0; null != headers && i < headers.length(); i++) {
+            JSONArray header = headers.getJSONArray(i);
+            rv.addHeader(header.getString(0), header.getString(1));
+        }
+
+        if (fixture.has("bodyBase64")) {
+            rv.setBody(Base64.decodeBase64(fixture.getString("bodyBase64")));
+        } else {
+            rv.setBody(fixture.optString("body").getBytes(StandardCharsets.UTF_8));
+        }
+
+        return rv;
+    }
+
+    private static String getKey(String method, String url, String bodyHash) {
+        return method.toUpperCase(Locale.ENGLISH) + " " + url + " " + bodyHash;
+    }
+
+    private static String hash(ProxyRequest request) {
+        return sha1(request.getBody());
+    }
+
+    private static String sha1(byte[] data) {
+        try {
+            return new String(Hex.encodeHex(MessageDigest.getInstance("SHA-1").digest(data)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //method, host and a hash of the key keep the names readable and unique
+    private static String getFileName(ProxyRequest request, String key, int index) {
+        String host = String.valueOf(request.getUri().getHost()).replaceAll("[^A-Za-z0-9.-]", "_");
+
+        return request.getMethod().toLowerCase(Locale.ENGLISH) + "-" + host + "-"
+                + sha1(key.getBytes(StandardCharsets.UTF_8)).substring(0, 16) + "-" + index + SUFFIX;
+    }
+
+    //bodies are kept readable when they are text that survives the trip through a string
+    private static boolean isText(ProxyResponse response, byte[] body) {
+        String type = response.getHeader("Content-Type");
+
+        if (null == type || null != response.getHeader("Content-Encoding")) {
+            return false;
+        }
+
+        String lower = type.toLowerCase(Locale.ENGLISH);
+        for (String text : TEXT_TYPES) {
+            if (lower.contains(text)) {
+                return Arrays.equals(body, new String(body, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        return false;
+    }
+}
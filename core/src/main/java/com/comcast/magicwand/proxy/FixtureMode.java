@@ -0,0 +1,26 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+/**
+ * What a {@link FixtureInterceptor} does with the traffic of a session
+ */
+public enum FixtureMode {
+    /** Requests go upstream and their responses are written to the fixture directory */
+    RECORD,
+    /** Requests are answered from the fixture directory and never go upstream */
+    REPLAY;
+}
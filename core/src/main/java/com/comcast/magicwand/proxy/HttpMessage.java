@@ -0,0 +1,254 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Headers and body shared by {@link ProxyRequest} and {@link ProxyResponse}. Bodies are always held in memory and
+ * sent with a <code>Content-Length</code>, so messages can be inspected, cached and recorded as a whole.
+ */
+public abstract class HttpMessage {
+
+    private static final int MAX_LINE = 64 * 1024;
+
+    private final List<String[]> headers = new ArrayList<>();
+    private byte[] body = new byte[0];
+
+    /**
+     * Gets the first value of a header
+     *
+     * @param name Case insensitive header name
+     * @return Value or null if the header is not present
+     */
+    public String getHeader(String name) {
+        for (String[] header : this.headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                return header[1];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets all values of a header
+     *
+     * @param name Case insensitive header name
+     * @return Values in the order they were received
+     */
+    public List<String> getHeaders(String name) {
+        List<String> rv = new ArrayList<>();
+
+        for (String[] header : this.headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                rv.add(header[1]);
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Gets the names of all headers, repeated for headers with several values
+     *
+     * @return Header names in the order they were received
+     */
+    public List<String> getHeaderNames() {
+        List<String> rv = new ArrayList<>();
+
+        for (String[] header : this.headers) {
+            rv.add(header[0]);
+        }
+
+        return Collections.unmodifiableList(rv);
+    }
+
+    /**
+     * Adds a header value, keeping the values already present
+     *
+     * @param name Header name
+     * @param value Header value
+     */
+    public void addHeader(String name, String value) {
+        this.headers.add(new String[] { name, value });
+    }
+
+    /**
+     * Replaces all values of a header
+     *
+     * @param name Case insensitive header name
+     * @param value New value; null just removes the header
+     */
+    public void setHeader(String name, String value) {
+        removeHeader(name);
+        if (null != value) {
+            addHeader(name, value);
+        }
+    }
+
+    /**
+     * Removes all values of a header
+     *
+     * @param name Case insensitive header name
+     */
+    public void removeHeader(String name) {
+        for (int i = this.headers.size() - 1; i >= 0; i--) {
+            if (this.headers.get(i)[0].equalsIgnoreCase(name)) {
+                this.headers.remove(i);
+            }
+        }
+    }
+
+    /**
+     * @return Body of the message; empty if there is none
+     */
+    public byte[] getBody() {
+        return this.body;
+    }
+
+    /**
+     * @param body Body of the message; null for none
+     */
+    public void setBody(byte[] body) {
+        this.body = (null == body) ? new byte[0] : body;
+    }
+
+    /**
+     * Writes the headers, with a <code>Content-Length</code> matching the body unless told otherwise, followed by the
+     * body
+     *
+     * @param out Stream to write to
+     * @param startLine Request or status line
+     * @param withBody False to leave the body (and the length headers) as they are, i.e. for HEAD responses
+     * @throws IOException If writing failed
+     */
+    void write(OutputStream out, String startLine, boolean withBody) throws IOException {
+        StringBuilder head = new StringBuilder(startLine).append("\r\n");
+
+        for (String[] header : this.headers) {
+            String name = header[0].toLowerCase(Locale.ENGLISH);
+            if (!withBody || (!"content-length".equals(name) && !"transfer-encoding".equals(name))) {
+                head.append(header[0]).append(": ").append(header[1]).append("\r\n");
+            }
+        }
+        if (withBody) {
+            head.append("Content-Length: ").append(this.body.length).append("\r\n");
+        }
+        head.append("\r\n");
+
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (withBody) {
+            out.write(this.body);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads headers up to the empty line that ends them
+     *
+     * @param in Stream to read from
+     * @throws IOException If the headers are malformed or the stream ended
+     */
+    void readHeaders(InputStream in) throws IOException {
+        String line;
+
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new IOException("Malformed header: " + line);
+            }
+            addHeader(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+        }
+    }
+
+    /**
+     * Reads a body framed by <code>Content-Length</code> or chunked transfer encoding
+     *
+     * @param in Stream to read from
+     * @throws IOException If the body is malformed or the stream ended early
+     */
+    void readBody(InputStream in) throws IOException {
+        String encoding = getHeader("Transfer-Encoding");
+        String length = getHeader("Content-Length");
+
+        if (null != encoding && encoding.toLowerCase(Locale.ENGLISH).contains("chunked")) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            int size;
+            while ((size = Integer.parseInt(readLine(in).split(";")[0].trim(), 16)) > 0) {
+                buffer.write(readFully(in, size));
+                readLine(in);
+            }
+            //trailers
+            while (!readLine(in).isEmpty()) {
+                continue;
+            }
+            setBody(buffer.toByteArray());
+        } else if (null != length) {
+            setBody(readFully(in, Integer.parseInt(length.trim())));
+        }
+    }
+
+    /**
+     * Reads a CRLF (or LF) terminated line
+     *
+     * @param in Stream to read from
+     * @return Line without its terminator
+     * @throws IOException If the stream ended or the line is too long
+     */
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+
+        while ('\n' != (c = in.read())) {
+            if (c < 0) {
+                throw new EOFException("Connection closed");
+            }
+            if (line.size() > MAX_LINE) {
+                throw new IOException("Line too long");
+            }
+            if ('\r' != c) {
+                line.write(c);
+            }
+        }
+
+        return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] readFully(InputStream in, int size) throws IOException {
+        byte[] rv = new byte[size];
+        int read = 0;
+
+        while (read < size) {
+            int n = in.read(rv, read, size - read);
+            if (n < 0) {
+                throw new EOFException("Connection closed after " + read + " of " + size + " bytes");
+            }
+            read += n;
+        }
+
+        return rv;
+    }
+}
@@ -0,0 +1,549 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.openqa.selenium.Proxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forward HTTP proxy listening on the loopback interface, which browsers of local sessions are pointed at so that
+ * {@link ProxyInterceptor}s can block, cache or replay their requests.
+ *
+ * <p>
+ * Plain HTTP requests are read whole, offered to the interceptors in order and, unless one of them answers, fetched
+ * from upstream over a connection that is kept alive for later requests to the same server. Requests go out with their
+ * method and headers as received, minus connection level headers. Bodies are read whole in both directions
+ * (see {@link HttpMessage}), so a streamed response, like server-sent events, only reaches the browser once it is
+ * complete.
+ * Interceptors that were asked before the response was produced observe it on its way back, so one further down the
+ * list answering does not hide the response from them; client connections are kept alive between requests. HTTPS goes
+ * through CONNECT tunnels whose content is passed along untouched, so interceptors only get to decide whether a tunnel
+ * to a host may be opened. Worker threads are daemons shared by every proxy in the JVM.
+ * </p>
+ */
+public class LocalProxy implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalProxy.class);
+
+    private static final String LOOPBACK = "127.0.0.1";
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT = 120000;
+    //as many connections as a browser opens to one host
+    private static final int MAX_IDLE_PER_ORIGIN = 6;
+
+    //connection level headers that are not passed from one side of the proxy to the other
+    private static final Set<String> HOP_BY_HOP = new HashSet<>(Arrays.asList("connection", "keep-alive",
+            "proxy-connection", "proxy-authenticate", "proxy-authorization", "te", "trailer", "transfer-encoding",
+            "upgrade", "host", "content-length"));
+
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread rv = new Thread(r, "magicwand-proxy-" + this.count.incrementAndGet());
+            rv.setDaemon(true);
+            return rv;
+        }
+    });
+
+    //addresses of the proxies of this JVM that are still listening
+    private static final Set<String> OPEN = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final List<ProxyInterceptor> interceptors;
+    private final ServerSocket server;
+    private final Set<Socket> sockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+    private final ConcurrentMap<String, Queue<Upstream>> idle = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    /**
+     * Starts a proxy on a free port
+     *
+     * @param interceptors Interceptors to consult, in order
+     * @throws IOException If the proxy could not listen
+     */
+    public LocalProxy(ProxyInterceptor... interceptors) throws IOException {
+        this(Arrays.asList(interceptors));
+    }
+
+    /**
+     * Starts a proxy on a free port
+     *
+     * @param interceptors Interceptors to consult, in order
+     * @throws IOException If the proxy could not listen
+     */
+    public LocalProxy(List<? extends ProxyInterceptor> interceptors) throws IOException {
+        this.interceptors = new CopyOnWriteArrayList<ProxyInterceptor>(interceptors);
+        this.server = new ServerSocket(0, 50, InetAddress.getByName(LOOPBACK));
+        OPEN.add(getAddress());
+
+        WORKERS.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+        LOG.debug("Proxy listening on {}", getAddress());
+    }
+
+    /**
+     * Adds an interceptor after the ones already registered
+     *
+     * @param interceptor Interceptor
+     */
+    public void addInterceptor(ProxyInterceptor interceptor) {
+        this.interceptors.add(interceptor);
+    }
+
+    /**
+     * @return Port the proxy listens on
+     */
+    public int getPort() {
+        return this.server.getLocalPort();
+    }
+
+    /**
+     * @return <code>host:port</code> browsers should use as their HTTP and SSL proxy
+     */
+    public String getAddress() {
+        return LOOPBACK + ":" + getPort();
+    }
+
+    /**
+     * Creates the proxy capability pointing a session at this proxy
+     *
+     * @return {@link Proxy}
+     */
+    public Proxy toSeleniumProxy() {
+        Proxy rv = new Proxy();
+        rv.setHttpProxy(getAddress());
+        rv.setSslProxy(getAddress());
+
+        return rv;
+    }
+
+    /**
+     * Tells whether a proxy capability points at a proxy started in this JVM
+     *
+     * @param proxy Proxy capability
+     * @return True if its HTTP proxy is a {@link LocalProxy} that is still listening
+     */
+    public static boolean isLocalProxy(Proxy proxy) {
+        return null != proxy && null != proxy.getHttpProxy() && OPEN.contains(proxy.getHttpProxy());
+    }
+
+    /**
+     * @return True if the proxy was closed
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Stops listening and drops all open connections
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        OPEN.remove(getAddress());
+        IOUtils.closeQuietly(this.server);
+
+        for (Socket socket : this.sockets) {
+            IOUtils.closeQuietly(socket);
+        }
+        this.idle.clear();
+    }
+
+    /**
+     * Fetches a request from upstream
+     *
+     * <p>
+     * The request is written out as received, minus its connection level headers, so any method and header the
+     * browser sent reaches the server. Connections to upstream servers are kept alive and reused by later requests
+     * to the same origin.
+     * </p>
+     *
+     * @param request Request to send
+     * @return Response from upstream
+     * @throws IOException If upstream could not be reached
+     */
+    protected ProxyResponse forward(ProxyRequest request) throws IOException {
+        URI uri = request.getUri();
+        boolean https = "https".equalsIgnoreCase(uri.getScheme());
+        int port = (uri.getPort() < 0) ? (https ? 443 : 80) : uri.getPort();
+        String origin = (https ? "https://" : "http://") + uri.getHost().toLowerCase(Locale.ENGLISH) + ":" + port;
+
+        Queue<Upstream> idle = this.idle.get(origin);
+        Upstream upstream;
+        while (null != idle && null != (upstream = idle.poll())) {
+            ProxyResponse rv = exchange(request, upstream, origin, true);
+            //null if the server had dropped the idle connection, in which case the request never reached it
+            if (null != rv) {
+                return rv;
+            }
+        }
+
+        Socket socket = new Socket();
+        this.sockets.add(socket);
+        try {
+            socket.connect(new InetSocketAddress(uri.getHost(), port), CONNECT_TIMEOUT);
+            socket.setSoTimeout(READ_TIMEOUT);
+            if (https) {
+                SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                        .createSocket(socket, uri.getHost(), port, true);
+                this.sockets.add(ssl);
+                this.sockets.remove(socket);
+                socket = ssl;
+                ssl.startHandshake();
+            }
+        } catch (IOException e) {
+            this.sockets.remove(socket);
+            IOUtils.closeQuietly(socket);
+            throw e;
+        }
+
+        return exchange(request, new Upstream(socket), origin, false);
+    }
+
+    private ProxyResponse exchange(ProxyRequest request, Upstream upstream, String origin, boolean reused)
+            throws IOException {
+        boolean keep = false;
+
+        try {
+            writeUpstream(request, upstream.out);
+
+            String statusLine;
+            try {
+                statusLine = HttpMessage.readLine(upstream.in);
+            } catch (IOException e) {
+                if (reused) {
+                    LOG.debug("Idle connection to {} was dropped: {}", origin, e.toString());
+                    return null;
+                }
+                throw e;
+            }
+
+            ProxyResponse raw = readStatus(statusLine);
+            raw.readHeaders(upstream.in);
+            //interim responses, like 100 Continue, are not passed on
+            while (raw.getStatus() >= 100 && raw.getStatus() < 200 && 101 != raw.getStatus()) {
+                raw = readStatus(HttpMessage.readLine(upstream.in));
+                raw.readHeaders(upstream.in);
+            }
+
+            boolean head = "HEAD".equalsIgnoreCase(request.getMethod());
+            boolean bodyless = head || raw.getStatus() < 200 || 204 == raw.getStatus() || 304 == raw.getStatus();
+            boolean framed = null != raw.getHeader("Content-Length") || null != raw.getHeader("Transfer-Encoding");
+
+            if (bodyless) {
+                keep = raw.getStatus() >= 200;
+            } else if (framed) {
+                raw.readBody(upstream.in);
+                keep = true;
+            } else {
+                //no framing, the body ends with the connection
+                raw.setBody(IOUtils.toByteArray(upstream.in));
+            }
+            keep = keep && statusLine.startsWith("HTTP/1.1")
+                    && !"close".equalsIgnoreCase(raw.getHeader("Connection"));
+
+            ProxyResponse rv = new ProxyResponse(raw.getStatus(), raw.getReason());
+            for (String name : distinct(raw.getHeaderNames())) {
+                String lower = name.toLowerCase(Locale.ENGLISH);
+                if (!HOP_BY_HOP.contains(lower) || (head && "content-length".equals(lower))) {
+                    for (String value : raw.getHeaders(name)) {
+                        rv.addHeader(name, value);
+                    }
+                }
+            }
+            rv.setBody(raw.getBody());
+
+            return rv;
+        } finally {
+            if (keep && !this.closed) {
+                release(origin, upstream);
+            } else {
+                this.sockets.remove(upstream.socket);
+                IOUtils.closeQuietly(upstream.socket);
+            }
+        }
+    }
+
+    private static void writeUpstream(ProxyRequest request, OutputStream out) throws IOException {
+        URI uri = request.getUri();
+        String target = (null == uri.getRawPath() || uri.getRawPath().isEmpty()) ? "/" : uri.getRawPath();
+        if (null != uri.getRawQuery()) {
+            target += "?" + uri.getRawQuery();
+        }
+
+        StringBuilder head = new StringBuilder(request.getMethod()).append(' ').append(target).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(uri.getHost());
+        if (uri.getPort() >= 0) {
+            head.append(':').append(uri.getPort());
+        }
+        head.append("\r\n");
+
+        for (String name : distinct(request.getHeaderNames())) {
+            if (!HOP_BY_HOP.contains(name.toLowerCase(Locale.ENGLISH))) {
+                for (String value : request.getHeaders(name)) {
+                    head.append(name).append(": ").append(value).append("\r\n");
+                }
+            }
+        }
+
+        byte[] body = request.getBody();
+        if (body.length > 0 || null != request.getHeader("Content-Length")
+                || null != request.getHeader("Transfer-Encoding")) {
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        head.append("\r\n");
+
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        out.flush();
+    }
+
+    private static ProxyResponse readStatus(String statusLine) throws IOException {
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+
+        try {
+            return new ProxyResponse(Integer.parseInt(parts[1]), (3 == parts.length) ? parts[2] : "");
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed status line: " + statusLine, e);
+        }
+    }
+
+    //header names once each, in the order they first appear; values of a name are then taken in their original order
+    private static Set<String> distinct(List<String> names) {
+        Set<String> seen = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        Set<String> rv = new LinkedHashSet<>();
+
+        for (String name : names) {
+            if (seen.add(name)) {
+                rv.add(name);
+            }
+        }
+
+        return rv;
+    }
+
+    private void release(String origin, Upstream upstream) {
+        Queue<Upstream> queue = this.idle.get(origin);
+        if (null == queue) {
+            Queue<Upstream> created = new ConcurrentLinkedQueue<>();
+            queue = this.idle.putIfAbsent(origin, created);
+            if (null == queue) {
+                queue = created;
+            }
+        }
+
+        if (queue.size() < MAX_IDLE_PER_ORIGIN) {
+            queue.add(upstream);
+        } else {
+            this.sockets.remove(upstream.socket);
+            IOUtils.closeQuietly(upstream.socket);
+        }
+    }
+
+    private void acceptConnections() {
+        while (!this.closed) {
+            try {
+                final Socket client = this.server.accept();
+                this.sockets.add(client);
+
+                WORKERS.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(client);
+                    }
+                });
+            } catch (IOException e) {
+                if (!this.closed) {
+                    LOG.error("Proxy on {} stopped accepting connections: {}", getAddress(), e.toString());
+                    close();
+                }
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try {
+            client.setSoTimeout(READ_TIMEOUT);
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = new BufferedOutputStream(client.getOutputStream());
+
+            ProxyRequest request;
+            while (!this.closed && null != (request = ProxyRequest.read(in))) {
+                if (request.isConnect()) {
+                    tunnel(request, client, in, out);
+                    return;
+                }
+
+                handle(request).write(out, "HEAD".equalsIgnoreCase(request.getMethod()));
+
+                if ("close".equalsIgnoreCase(request.getHeader("Connection"))
+                        || "close".equalsIgnoreCase(request.getHeader("Proxy-Connection"))) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug("Proxy connection dropped: {}", e.toString());
+        } finally {
+            IOUtils.closeQuietly(client);
+            this.sockets.remove(client);
+        }
+    }
+
+    private ProxyResponse handle(ProxyRequest request) throws IOException {
+        for (int i = 0; i < this.interceptors.size(); i++) {
+            ProxyResponse rv = this.interceptors.get(i).intercept(request);
+            if (null != rv) {
+                //interceptors ahead of the one that answered still get to see the response
+                for (ProxyInterceptor interceptor : this.interceptors.subList(0, i)) {
+                    interceptor.onResponse(request, rv);
+                }
+                return rv;
+            }
+        }
+
+        ProxyResponse rv;
+        try {
+            rv = forward(request);
+        } catch (IOException e) {
+            return errorResponse(502, "Bad Gateway", e);
+        }
+
+        for (ProxyInterceptor interceptor : this.interceptors) {
+            interceptor.onResponse(request, rv);
+        }
+
+        return rv;
+    }
+
+    private void tunnel(ProxyRequest request, Socket client, InputStream in, OutputStream out) throws IOException {
+        String host = request.getUri().getHost();
+        int port = (request.getUri().getPort() < 0) ? 443 : request.getUri().getPort();
+
+        for (ProxyInterceptor interceptor : this.interceptors) {
+            if (!interceptor.allowTunnel(host, port)) {
+                new ProxyResponse(403, "Forbidden").write(out, false);
+                return;
+            }
+        }
+
+        final Socket upstream = new Socket();
+        this.sockets.add(upstream);
+        try {
+            upstream.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        } catch (IOException e) {
+            this.sockets.remove(upstream);
+            IOUtils.closeQuietly(upstream);
+            errorResponse(502, "Bad Gateway", e).write(out, false);
+            return;
+        }
+
+        out.write("HTTP/1.1 200 Connection Established\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+
+        final OutputStream toClient = client.getOutputStream();
+        final Socket clientSocket = client;
+        WORKERS.execute(new Runnable() {
+            @Override
+            public void run() {
+                pump(upstream, toClient, clientSocket);
+            }
+        });
+
+        try {
+            client.setSoTimeout(0);
+            IOUtils.copy(in, upstream.getOutputStream());
+        } catch (IOException e) {
+            LOG.debug("Tunnel to {}:{} closed: {}", host, port, e.toString());
+        } finally {
+            IOUtils.closeQuietly(upstream);
+            this.sockets.remove(upstream);
+        }
+    }
+
+    private static void pump(Socket from, OutputStream to, Socket toSocket) {
+        try {
+            IOUtils.copy(from.getInputStream(), to);
+        } catch (IOException e) {
+            //one side went away, which ends the tunnel
+        } finally {
+            IOUtils.closeQuietly(toSocket);
+            IOUtils.closeQuietly(from);
+        }
+    }
+
+    /** Connection to an upstream server, with the streams that outlive a single exchange */
+    private static class Upstream {
+        final Socket socket;
+        final InputStream in;
+        final OutputStream out;
+
+        Upstream(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+    }
+
+    private static ProxyResponse errorResponse(int status, String reason, Exception cause) {
+        ProxyResponse rv = new ProxyResponse(status, reason);
+        rv.setHeader("Content-Type", "text/plain; charset=UTF-8");
+        rv.setBody(String.valueOf(cause.getMessage()).getBytes(StandardCharsets.UTF_8));
+
+        return rv;
+    }
+}
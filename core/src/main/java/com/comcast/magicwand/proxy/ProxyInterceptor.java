@@ -0,0 +1,52 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.io.IOException;
+
+/**
+ * Hook into the traffic going through a {@link LocalProxy}. Interceptors are consulted in order; the first one to
+ * answer a request keeps it from reaching the network. Implementations are called from many threads at once.
+ */
+public interface ProxyInterceptor {
+
+    /**
+     * Answers a request locally
+     *
+     * @param request Request from the browser
+     * @return Response to send instead of going upstream, or null to let the request through
+     * @throws IOException If the response could not be produced
+     */
+    ProxyResponse intercept(ProxyRequest request) throws IOException;
+
+    /**
+     * Observes a response fetched from upstream or answered by an interceptor further down the list, before it is sent
+     * to the browser
+     *
+     * @param request Request from the browser
+     * @param response Response to the request; interceptors may change it
+     */
+    void onResponse(ProxyRequest request, ProxyResponse response);
+
+    /**
+     * Decides whether a tunnel (used for HTTPS) may be opened. The content of tunnels is not visible to interceptors.
+     *
+     * @param host Host the browser wants to reach
+     * @param port Port the browser wants to reach
+     * @return True to open the tunnel; False to refuse it
+     */
+    boolean allowTunnel(String host, int port);
+}
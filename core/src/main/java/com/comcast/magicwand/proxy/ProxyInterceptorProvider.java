@@ -0,0 +1,34 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+
+/**
+ * Contributes a {@link ProxyInterceptor} to the proxy of every session. Implementations are found on the class path
+ * the same way wizard factories are, so adding a module that provides one is enough to put it to work; they need a
+ * public no-argument constructor.
+ */
+public interface ProxyInterceptorProvider {
+
+    /**
+     * Gets the interceptor a session should use
+     *
+     * @param ingredients Ingredients of the session
+     * @return Interceptor (which may be shared by all sessions) or null to stay out of this session
+     */
+    ProxyInterceptor getInterceptor(PhoenixDriverIngredients ingredients);
+}
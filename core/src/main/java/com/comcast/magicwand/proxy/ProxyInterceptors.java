@@ -0,0 +1,79 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.comcast.magicwand.builders.PhoenixDriverBuilder;
+import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+
+/**
+ * Gathers the {@link ProxyInterceptor}s a session's {@link LocalProxy} should run: a {@link BlockingInterceptor} for
+ * the blocking rules of the ingredients, a {@link FixtureInterceptor} for its fixtures, followed by the ones of every
+ * {@link ProxyInterceptorProvider} on the class path
+ */
+public final class ProxyInterceptors {
+
+    private static List<ProxyInterceptorProvider> providers;
+
+    private ProxyInterceptors() {
+    }
+
+    /**
+     * Gets the interceptors of a session
+     *
+     * @param ingredients Ingredients of the session
+     * @return Interceptors in the order they should be consulted; empty if the session needs no proxy
+     */
+    public static List<ProxyInterceptor> forIngredients(PhoenixDriverIngredients ingredients) {
+        List<ProxyInterceptor> rv = new ArrayList<>();
+
+        if (!ingredients.getBlockingRules().isEmpty()) {
+            rv.add(new BlockingInterceptor(ingredients.getBlockingRules()));
+        }
+
+        //ahead of the providers, so that responses answered by a cache are recorded as well
+        FixtureInterceptor fixtures = FixtureInterceptor.forIngredients(ingredients);
+        if (null != fixtures) {
+            rv.add(fixtures);
+        }
+
+        for (ProxyInterceptorProvider provider : getProviders()) {
+            ProxyInterceptor interceptor = provider.getInterceptor(ingredients);
+            if (null != interceptor) {
+                rv.add(interceptor);
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Gets the providers found on the class path; the class path is only scanned once
+     *
+     * @return Providers
+     */
+    public static synchronized List<ProxyInterceptorProvider> getProviders() {
+        if (null == providers) {
+            providers = Collections.unmodifiableList(
+                    PhoenixDriverBuilder.loadImplementations(ProxyInterceptorProvider.class));
+        }
+
+        return providers;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Request received by a {@link LocalProxy}
+ */
+public class ProxyRequest extends HttpMessage {
+
+    private final String method;
+    private final URI uri;
+
+    /**
+     * Creates a request
+     *
+     * @param method HTTP method
+     * @param uri Absolute URL, or <code>host:port</code> authority of a CONNECT
+     */
+    public ProxyRequest(String method, URI uri) {
+        this.method = method;
+        this.uri = uri;
+    }
+
+    /**
+     * @return HTTP method (<code>GET</code>, <code>CONNECT</code>...)
+     */
+    public String getMethod() {
+        return this.method;
+    }
+
+    /**
+     * @return Absolute URL of the request; for a CONNECT only the host and port are set
+     */
+    public URI getUri() {
+        return this.uri;
+    }
+
+    /**
+     * @return True if this request opens a tunnel (HTTPS) rather than asking for a resource
+     */
+    public boolean isConnect() {
+        return "CONNECT".equalsIgnoreCase(this.method);
+    }
+
+    /**
+     * Guesses the type of the requested resource
+     *
+     * @return {@link ResourceType}
+     */
+    public ResourceType getResourceType() {
+        return isConnect() ? ResourceType.OTHER : ResourceType.guess(this.uri.getPath(), getHeader("Accept"));
+    }
+
+    /**
+     * Reads the next request of a client connection
+     *
+     * @param in Stream of the client connection
+     * @return Request or null if the client closed the connection between requests
+     * @throws IOException If the request is malformed
+     */
+    static ProxyRequest read(InputStream in) throws IOException {
+        String line;
+        try {
+            line = readLine(in);
+        } catch (EOFException e) {
+            return null;
+        }
+
+        String[] parts = line.split(" ");
+        if (3 != parts.length) {
+            throw new IOException("Malformed request line: " + line);
+        }
+
+        URI uri;
+        try {
+            uri = "CONNECT".equalsIgnoreCase(parts[0]) ? new URI("https://" + parts[1]) : new URI(parts[1]);
+        } catch (URISyntaxException e) {
+            throw new IOException("Malformed request target: " + parts[1], e);
+        }
+        if (null == uri.getHost()) {
+            throw new IOException("Proxy requests need an absolute URL: " + parts[1]);
+        }
+
+        ProxyRequest rv = new ProxyRequest(parts[0], uri);
+        rv.readHeaders(in);
+        if (!rv.isConnect()) {
+            rv.readBody(in);
+        }
+
+        return rv;
+    }
+
+    void write(OutputStream out) throws IOException {
+        write(out, this.method + " " + this.uri + " HTTP/1.1", true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.method + " " + this.uri;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Response sent back by a {@link LocalProxy}, either fetched from upstream or produced by a {@link ProxyInterceptor}
+ */
+public class ProxyResponse extends HttpMessage {
+
+    private final int status;
+    private final String reason;
+
+    /**
+     * Creates a response
+     *
+     * @param status HTTP status code
+     * @param reason Reason phrase
+     */
+    public ProxyResponse(int status, String reason) {
+        this.status = status;
+        this.reason = (null == reason) ? "" : reason;
+    }
+
+    /**
+     * Creates an empty <code>204 No Content</code> response, the cheapest answer a browser accepts for a resource
+     *
+     * @return Response
+     */
+    public static ProxyResponse noContent() {
+        return new ProxyResponse(204, "No Content");
+    }
+
+    /**
+     * @return HTTP status code
+     */
+    public int getStatus() {
+        return this.status;
+    }
+
+    /**
+     * @return Reason phrase
+     */
+    public String getReason() {
+        return this.reason;
+    }
+
+    void write(OutputStream out, boolean headRequest) throws IOException {
+        boolean bodyless = headRequest || 204 == this.status || 304 == this.status;
+        write(out, "HTTP/1.1 " + this.status + " " + this.reason, !bodyless);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.status + " " + this.reason + " (" + getBody().length + " bytes)";
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Kind of resource a request is fetching, guessed from the extension of its path or, failing that, from its
+ * <code>Accept</code> header
+ */
+public enum ResourceType {
+    /** Pages and frames */
+    DOCUMENT("text/html", "html", "htm", "xhtml"),
+    /** JavaScript */
+    SCRIPT("javascript", "js"),
+    /** CSS */
+    STYLESHEET("text/css", "css"),
+    /** Pictures and icons */
+    IMAGE("image/", "png", "jpg", "jpeg", "gif", "webp", "svg", "ico", "bmp"),
+    /** Web fonts */
+    FONT("font", "woff", "woff2", "ttf", "otf", "eot"),
+    /** Audio and video */
+    MEDIA("video/", "mp4", "webm", "ogv", "mp3", "ogg", "wav", "m4a"),
+    /** Anything else (XHR, beacons, tunnels...) */
+    OTHER(null);
+
+    private final String accept;
+    private final List<String> extensions;
+
+    private ResourceType(String accept, String... extensions) {
+        this.accept = accept;
+        this.extensions = Collections.unmodifiableList(Arrays.asList(extensions));
+    }
+
+    /**
+     * Gets the path extensions that identify this type
+     *
+     * @return Lower case extensions without the dot; empty for types that cannot be told from the path
+     */
+    public List<String> getExtensions() {
+        return this.extensions;
+    }
+
+    /**
+     * Guesses the type of a request
+     *
+     * @param path Path of the request URL, may be null
+     * @param acceptHeader Value of the <code>Accept</code> header, may be null
+     * @return Guessed type; {@link #OTHER} if nothing gave it away
+     */
+    public static ResourceType guess(String path, String acceptHeader) {
+        if (null != path) {
+            int slash = path.lastIndexOf('/');
+            int dot = path.lastIndexOf('.');
+
+            if (dot > slash) {
+                String extension = path.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+                for (ResourceType type : values()) {
+                    if (type.extensions.contains(extension)) {
+                        return type;
+                    }
+                }
+            }
+        }
+
+        if (null != acceptHeader) {
+            //only the first media range says what the browser is after; the rest are fallbacks like */*
+            String first = acceptHeader.split(",")[0].trim().toLowerCase(Locale.ENGLISH);
+            for (ResourceType type : values()) {
+                if (null != type.accept && first.contains(type.accept)) {
+                    return type;
+                }
+            }
+        }
+
+        return OTHER;
+    }
+}
@@ -19,8 +19,13 @@
 
 package com.comcast.magicwand.utils;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public class SystemDetail
 {
+    private static final Logger LOG = LoggerFactory.getLogger(SystemDetail.class);
+
     /**
      * Determine if the system is running on Windows.
      * @author Bobby Jap
@@ -80,4 +85,45 @@ public class SystemDetail
     {
         return System.getProperty("os.name");
     }
+
+    /**
+     * Read a setting from a system property, falling back to an environment variable.
+     * @param property Name of the system property
+     * @param env Name of the environment variable
+     * @return The value, or null if neither is set to a non blank value
+     */
+    public static String getSetting(String property, String env)
+    {
+        String rv = System.getProperty(property);
+
+        if (null == rv || rv.trim().isEmpty()) {
+            rv = System.getenv(env);
+        }
+
+        return (null == rv || rv.trim().isEmpty()) ? null : rv;
+    }
+
+    /**
+     * Read a numeric setting from a system property, falling back to an environment variable.
+     * @param property Name of the system property
+     * @param env Name of the environment variable
+     * @param defaultValue Value to use if neither is set, or if the value is not a number
+     * @return The value
+     */
+    public static long getLongSetting(String property, String env, long defaultValue)
+    {
+        String value = getSetting(property, env);
+
+        if (null == value) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException nfe) {
+            LOG.warn("Ignoring invalid value [{}] of {}, using {}", value, property, defaultValue);
+            return defaultValue;
+        }
+    }
 }
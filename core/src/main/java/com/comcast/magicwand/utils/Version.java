@@ -0,0 +1,274 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable, pre-parsed representation of a dotted version string such as <code>2.53.1</code> or
+ * <code>4.0.0-beta</code>.
+ *
+ * <p>
+ * Versions are parsed once; the numeric value of every dot separated component is kept in an array so that
+ * comparisons do not need to split or parse strings again. Components that are not plain non-negative integers are
+ * compared as strings, the same way {@link VersionUtils#compare(String, String)} always has. Anything after the first
+ * <code>-</code> is treated as a qualifier, and a version with a qualifier is ordered before the same version without
+ * one (<code>1.0-beta &lt; 1.0</code>).
+ * </p>
+ *
+ * <p>
+ * Instances obtained through {@link #valueOf(String)} are interned, so parsing the same string repeatedly (like the
+ * keys of a driver bucket listing) returns the same object.
+ * </p>
+ */
+public final class Version implements Comparable<Version> {
+
+    /** Value stored in the component array for tokens that are not plain non-negative integers */
+    private static final int NOT_NUMERIC = -1;
+
+    /** Longest numeric component that is guaranteed to fit into a long */
+    private static final int MAX_DIGITS = 18;
+
+    /** Upper bound for the intern pool; versions parsed after the pool is full are simply not shared */
+    private static final int MAX_INTERNED = 8192;
+
+    private static final ConcurrentMap<String, Version> INTERNED = new ConcurrentHashMap<String, Version>();
+
+    private final String text;
+    private final String[] tokens;
+    private final long[] components;
+    private final String qualifier;
+    private final int hash;
+
+    private Version(String text) {
+        this.text = text;
+
+        String core = text;
+        String qual = null;
+        int dash = text.indexOf('-');
+        if (dash >= 0) {
+            core = text.substring(0, dash);
+            qual = text.substring(dash + 1);
+        }
+
+        this.qualifier = qual;
+        this.tokens = core.split("\\.");
+        this.components = new long[this.tokens.length];
+
+        for (int i = 0; i < this.tokens.length; i++) {
+            this.components[i] = parseComponent(this.tokens[i]);
+        }
+
+        this.hash = computeHash();
+    }
+
+    /**
+     * Parses a version string, returning a shared instance if the same string was parsed before
+     *
+     * @param text Version string to parse
+     * @return Parsed version
+     * @throws IllegalArgumentException If <code>text</code> is null
+     */
+    public static Version valueOf(String text) {
+        if (null == text) {
+            throw new IllegalArgumentException("Version string cannot be null");
+        }
+
+        Version rv = INTERNED.get(text);
+
+        if (null == rv) {
+            rv = new Version(text);
+
+            if (INTERNED.size() < MAX_INTERNED) {
+                Version existing = INTERNED.putIfAbsent(text, rv);
+                if (null != existing) {
+                    rv = existing;
+                }
+            }
+        }
+
+        return rv;
+    }
+
+    private static long parseComponent(String token) {
+        //long, so that build numbers and timestamps with more digits than an int holds still compare as numbers
+        if (token.isEmpty() || token.length() > MAX_DIGITS) {
+            return NOT_NUMERIC;
+        }
+
+        long value = 0;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_NUMERIC;
+            }
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    private int computeHash() {
+        int rv = 1;
+
+        for (int i = 0; i < this.tokens.length; i++) {
+            long component = this.components[i];
+            rv = 31 * rv + ((NOT_NUMERIC == component) ? this.tokens[i].hashCode()
+                    : (int) (component ^ (component >>> 32)));
+        }
+
+        return 31 * rv + ((null == this.qualifier) ? 0 : this.qualifier.hashCode());
+    }
+
+    /**
+     * Gets the number of dot separated components, not counting the qualifier
+     *
+     * @return Number of components
+     */
+    public int getComponentCount() {
+        return this.components.length;
+    }
+
+    /**
+     * Gets numeric value of a component
+     *
+     * @param index Zero based index of the component (0 is the major version)
+     * @return Value of the component, or -1 if the component does not exist or is not numeric; values too large for
+     *         an int are reported as {@link Integer#MAX_VALUE}
+     */
+    public int getComponent(int index) {
+        if (index < 0 || index >= this.components.length) {
+            return NOT_NUMERIC;
+        }
+
+        return toInt(this.components[index]);
+    }
+
+    private static int toInt(long component) {
+        return (int) Math.min(component, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the qualifier of this version
+     *
+     * @return Text after the first <code>-</code>, or null if there is none
+     */
+    public String getQualifier() {
+        return this.qualifier;
+    }
+
+    /**
+     * Checks whether this version falls into a range
+     *
+     * @param range Range expression, see {@link VersionRange#parse(String)}
+     * @return True if this version is within the range; False otherwise
+     */
+    public boolean isInRange(String range) {
+        return VersionRange.parse(range).contains(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo(Version other) {
+        if (this == other) {
+            return 0;
+        }
+
+        int len = Math.min(this.tokens.length, other.tokens.length);
+
+        for (int i = 0; i < len; i++) {
+            long lhs = this.components[i];
+            long rhs = other.components[i];
+
+            if (NOT_NUMERIC != lhs && NOT_NUMERIC != rhs) {
+                if (lhs != rhs) {
+                    return (lhs < rhs) ? -1 : 1;
+                }
+            }
+            else {
+                int res = this.tokens[i].compareTo(other.tokens[i]);
+                if (0 != res) {
+                    return (res < 0) ? -1 : 1;
+                }
+            }
+        }
+
+        if (this.tokens.length != other.tokens.length) {
+            return (this.tokens.length < other.tokens.length) ? -1 : 1;
+        }
+
+        if (null == this.qualifier || null == other.qualifier) {
+            if (this.qualifier == other.qualifier) {
+                return 0;
+            }
+            return (null == this.qualifier) ? 1 : -1;
+        }
+
+        int res = this.qualifier.compareTo(other.qualifier);
+
+        return (0 == res) ? 0 : ((res < 0) ? -1 : 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Version)) {
+            return false;
+        }
+
+        Version other = (Version) obj;
+
+        return this.hash == other.hash && 0 == compareTo(other);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.text;
+    }
+
+    /**
+     * Gets a copy of the numeric components of this version
+     *
+     * @return Component values; non numeric components are reported as -1, and values too large for an int as
+     *         {@link Integer#MAX_VALUE}
+     */
+    public int[] getComponents() {
+        int[] rv = new int[this.components.length];
+        for (int i = 0; i < rv.length; i++) {
+            rv[i] = toInt(this.components[i]);
+        }
+        return rv;
+    }
+}
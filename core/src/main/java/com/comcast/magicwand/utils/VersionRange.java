@@ -0,0 +1,162 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.utils;
+
+/**
+ * A range of {@link Version}s expressed using the maven notation:
+ * <ul>
+ * <li><code>[2.40,3.0)</code> - from 2.40 inclusive up to, but not including, 3.0</li>
+ * <li><code>(2.40,3.0]</code> - above 2.40, up to and including 3.0</li>
+ * <li><code>[2.40,)</code> - 2.40 or newer</li>
+ * <li><code>(,3.0)</code> - anything older than 3.0</li>
+ * <li><code>[2.40]</code> or <code>2.40</code> - exactly 2.40</li>
+ * </ul>
+ */
+public final class VersionRange {
+
+    private final Version lower;
+    private final boolean lowerInclusive;
+    private final Version upper;
+    private final boolean upperInclusive;
+    private final String spec;
+
+    private VersionRange(String spec, Version lower, boolean lowerInclusive, Version upper, boolean upperInclusive) {
+        this.spec = spec;
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+    }
+
+    /**
+     * Parses a range expression
+     *
+     * @param spec Range expression (i.e. <code>[2.40,3.0)</code>)
+     * @return Parsed range
+     * @throws IllegalArgumentException If the expression is not a valid range
+     */
+    public static VersionRange parse(String spec) {
+        if (null == spec || spec.trim().isEmpty()) {
+            throw new IllegalArgumentException("Version range cannot be empty");
+        }
+
+        String s = spec.trim();
+        char first = s.charAt(0);
+        char last = s.charAt(s.length() - 1);
+
+        if ('[' != first && '(' != first) {
+            Version exact = Version.valueOf(s);
+            return new VersionRange(spec, exact, true, exact, true);
+        }
+
+        if (']' != last && ')' != last) {
+            throw new IllegalArgumentException("Unterminated version range: " + spec);
+        }
+
+        boolean lowerInclusive = ('[' == first);
+        boolean upperInclusive = (']' == last);
+        String body = s.substring(1, s.length() - 1);
+        int comma = body.indexOf(',');
+
+        if (comma < 0) {
+            if (!lowerInclusive || !upperInclusive || body.trim().isEmpty()) {
+                throw new IllegalArgumentException("Single version ranges must be of the form [x]: " + spec);
+            }
+            Version exact = Version.valueOf(body.trim());
+            return new VersionRange(spec, exact, true, exact, true);
+        }
+
+        if (body.indexOf(',', comma + 1) >= 0) {
+            throw new IllegalArgumentException("Version range can only have two bounds: " + spec);
+        }
+
+        String lowerStr = body.substring(0, comma).trim();
+        String upperStr = body.substring(comma + 1).trim();
+
+        Version lower = lowerStr.isEmpty() ? null : Version.valueOf(lowerStr);
+        Version upper = upperStr.isEmpty() ? null : Version.valueOf(upperStr);
+
+        if (null != lower && null != upper && lower.compareTo(upper) > 0) {
+            throw new IllegalArgumentException("Lower bound is greater than upper bound: " + spec);
+        }
+
+        return new VersionRange(spec, lower, lowerInclusive, upper, upperInclusive);
+    }
+
+    /**
+     * Checks whether a version falls into this range
+     *
+     * @param version Version to check
+     * @return True if the version is within this range; False otherwise (including a null version)
+     */
+    public boolean contains(Version version) {
+        if (null == version) {
+            return false;
+        }
+
+        if (null != this.lower) {
+            int res = version.compareTo(this.lower);
+            if (res < 0 || (0 == res && !this.lowerInclusive)) {
+                return false;
+            }
+        }
+
+        if (null != this.upper) {
+            int res = version.compareTo(this.upper);
+            if (res > 0 || (0 == res && !this.upperInclusive)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether a version falls into this range
+     *
+     * @param version Version string to check
+     * @return True if the version is within this range; False otherwise (including a null version)
+     */
+    public boolean contains(String version) {
+        return (null != version) && contains(Version.valueOf(version));
+    }
+
+    /**
+     * Gets the lower bound of this range
+     *
+     * @return Lower bound or null if the range is unbounded from below
+     */
+    public Version getLower() {
+        return this.lower;
+    }
+
+    /**
+     * Gets the upper bound of this range
+     *
+     * @return Upper bound or null if the range is unbounded from above
+     */
+    public Version getUpper() {
+        return this.upper;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.spec;
+    }
+}
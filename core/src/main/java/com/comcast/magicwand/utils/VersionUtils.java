@@ -31,6 +31,7 @@ public class VersionUtils {
      * @param rhs The right hand side of the comparator
      *
      * @return -1, 0, or 1 based on the {@link Comparable} interface
+     * @see Version#compareTo(Version)
      */
     public static int compare(String lhs, String rhs) {
         if(lhs == rhs)
@@ -40,32 +41,18 @@ public class VersionUtils {
         if(null == rhs)
             return  1;
 
-        String[] lhsTokens = lhs.split("\\.");
-        String[] rhsTokens = rhs.split("\\.");
-
-        for(int i = 0; i < lhsTokens.length && i < rhsTokens.length; i++) {
-            try {
-                int lhsi = Integer.parseInt(lhsTokens[i]);
-                int rhsi = Integer.parseInt(rhsTokens[i]);
-
-                if(lhsi < rhsi)
-                    return -1;
-                if(lhsi > rhsi)
-                    return  1;
-            }
-            catch(NumberFormatException nfe) {
-                int res = lhsTokens[i].compareTo(rhsTokens[i]);
-                //normalize for odd string-compare results
-                if(0 != res)
-                    return res / Math.abs(res);
-            }
-        }
-
-        if(lhsTokens.length < rhsTokens.length)
-            return -1;
-        if(lhsTokens.length > rhsTokens.length)
-            return  1;
+        return Version.valueOf(lhs).compareTo(Version.valueOf(rhs));
+    }
 
-        return 0;
+    /**
+     * Checks whether a version provided in string form falls into a range
+     *
+     * @param version Version to check
+     * @param range Range expression, i.e. <code>[2.40,3.0)</code>. See {@link VersionRange#parse(String)}
+     *
+     * @return True if version is not null and is within the range; False otherwise
+     */
+    public static boolean isInRange(String version, String range) {
+        return VersionRange.parse(range).contains(version);
     }
 }
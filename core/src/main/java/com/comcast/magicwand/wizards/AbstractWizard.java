@@ -15,25 +15,43 @@
  */
 package com.comcast.magicwand.wizards;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import com.comcast.cookie.CookieHandler;
 import com.comcast.cookie.handlers.GeneralCookieHandler;
 import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+import com.comcast.magicwand.drivers.AbstractPhoenixDriver;
 import com.comcast.magicwand.drivers.PhoenixDriver;
 import com.comcast.magicwand.enums.DesktopOS;
 import com.comcast.magicwand.enums.MobileOS;
 import com.comcast.magicwand.enums.OSType;
+import com.comcast.magicwand.proxy.BlockingRules;
+import com.comcast.magicwand.proxy.LocalProxy;
+import com.comcast.magicwand.proxy.ProxyInterceptor;
+import com.comcast.magicwand.proxy.ProxyInterceptors;
 
+import org.apache.commons.io.IOUtils;
 import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A base class for all wizards. Contains some common functionality that all wizards should have
  *
  */
 public abstract class AbstractWizard {
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractWizard.class);
+
+    /**
+     * Driver config telling wizards that their browsers run on this machine (a local grid node, an emulator...) and
+     * can therefore be pointed at a {@link LocalProxy}
+     */
+    public static final String LOCAL_PROXY_REACHABLE = "localProxyReachable";
 
     protected PhoenixDriverIngredients ingredients;
     protected DesktopOS desktopOS;
@@ -42,6 +60,7 @@ public abstract class AbstractWizard {
     protected DesiredCapabilities customCapabilities;
     protected Map<String, Object> driverConfig;
     protected CookieHandler cookieHanlder;
+    protected LocalProxy sessionProxy;
 
     /**
      * Initializes some variables to be used by the wizards
@@ -51,7 +70,8 @@ public abstract class AbstractWizard {
      */
     protected AbstractWizard(PhoenixDriverIngredients ingredients, boolean initCapabilities) {
         this.ingredients = ingredients;
-        this.customCapabilities = ingredients.getDriverCapabilities();
+        //sessions get capabilities of their own, so a proxy or defaults added for one never leak into the next build
+        this.customCapabilities = new DesiredCapabilities(ingredients.getDriverCapabilities());
 
         this.desktopOS = ingredients.getDesktopOS();
         this.mobileOS = ingredients.getMobileOS();
@@ -77,6 +97,35 @@ public abstract class AbstractWizard {
      */
     public abstract PhoenixDriver createDriver() throws Throwable;
 
+    /**
+     * Checks whether the browsers of this wizard can reach a proxy listening on the loopback interface of this
+     * machine
+     *
+     * @return True if the {@link #LOCAL_PROXY_REACHABLE} driver config is set
+     */
+    protected boolean canReachLocalProxy() {
+        return Boolean.TRUE.equals(this.driverConfig.get(LOCAL_PROXY_REACHABLE));
+    }
+
+    /**
+     * Hands the proxy started by {@link #createCapabilities()} over to the driver, which closes it when it quits
+     *
+     * @param driver Driver created by this wizard
+     * @return <code>driver</code>
+     */
+    protected PhoenixDriver attachSessionProxy(PhoenixDriver driver) {
+        if (null != this.sessionProxy) {
+            if (driver instanceof AbstractPhoenixDriver) {
+                ((AbstractPhoenixDriver) driver).addSessionResource(this.sessionProxy);
+            } else {
+                IOUtils.closeQuietly(this.sessionProxy);
+            }
+            this.sessionProxy = null;
+        }
+
+        return driver;
+    }
+
     /**
      * Checks whether mobile device is requested
      *
@@ -87,7 +136,8 @@ public abstract class AbstractWizard {
     }
 
     /**
-     * Creates default desired capabilities based on a device type
+     * Adds default desired capabilities based on a device type to {@link #customCapabilities}, along with the proxy
+     * of the session
      */
     protected void createCapabilities() {
         DesiredCapabilities curCaps = null;
@@ -126,11 +176,41 @@ public abstract class AbstractWizard {
         // we need to iterate over each capability because
         // method DesiredCapabilities#merge is invoking
         // HashMap#putAll method which overwrites entries
-        DesiredCapabilities iDc = ingredients.getDriverCapabilities();
+        DesiredCapabilities iDc = this.customCapabilities;
         for (Entry<String, ?> cap : curCaps.asMap().entrySet()) {
             if (null == iDc.getCapability(cap.getKey())) {
                 iDc.setCapability(cap.getKey(), cap.getValue());
             }
         }
+
+        // remote browsers usually cannot reach a local proxy, so blocking rules travel as a proxy auto-config script
+        if (!startSessionProxy(iDc)) {
+            BlockingRules.applyAutoConfig(iDc, ingredients.getBlockingRules());
+
+            if (null != ingredients.getFixtureDir()) {
+                LOG.warn("Fixtures in {} are not used, the browser cannot reach a local proxy",
+                        ingredients.getFixtureDir());
+            }
+        }
+    }
+
+    private boolean startSessionProxy(DesiredCapabilities caps) {
+        if (!canReachLocalProxy() || null != caps.getCapability(CapabilityType.PROXY)) {
+            return false;
+        }
+
+        List<ProxyInterceptor> interceptors = ProxyInterceptors.forIngredients(this.ingredients);
+        if (interceptors.isEmpty()) {
+            return false;
+        }
+
+        try {
+            this.sessionProxy = new LocalProxy(interceptors);
+            caps.setCapability(CapabilityType.PROXY, this.sessionProxy.toSeleniumProxy());
+            return true;
+        } catch (IOException e) {
+            LOG.error("Unable to start session proxy: {}", e);
+            return false;
+        }
     }
 }
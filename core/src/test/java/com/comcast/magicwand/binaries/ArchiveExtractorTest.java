@@ -0,0 +1,200 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ArchiveExtractorTest {
+
+    private static final byte[] DRIVER = "driver binary".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NOTES = "release notes".getBytes(StandardCharsets.UTF_8);
+
+    private File root;
+    private File dst;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.root = Files.createTempDirectory("extractor").toFile();
+        this.dst = new File(this.root, "out");
+    }
+
+    @AfterMethod
+    public void teardown() {
+        FileUtils.deleteQuietly(this.root);
+    }
+
+    private static byte[] zip(Object... entries) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ZipOutputStream zos = new ZipOutputStream(baos);
+
+        for (int i = 0; i < entries.length; i += 2) {
+            zos.putNextEntry(new ZipEntry((String) entries[i]));
+            zos.write((byte[]) entries[i + 1]);
+            zos.closeEntry();
+        }
+        zos.close();
+
+        return baos.toByteArray();
+    }
+
+    private static void tarHeader(ByteArrayOutputStream out, String name, int mode, long size, char type) {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(100, nameBytes.length));
+        octal(header, 100, 8, mode);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, 0);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+        long checksum = 8 * ' ';
+        for (int i = 0; i < header.length; i++) {
+            checksum += (i >= 148 && i < 156) ? 0 : (header[i] & 0xff);
+        }
+        octal(header, 148, 8, checksum);
+
+        out.write(header, 0, header.length);
+    }
+
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String s = String.format("%0" + (length - 1) + "o", value);
+        System.arraycopy(s.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+    }
+
+    private static void tarData(ByteArrayOutputStream out, byte[] data) {
+        out.write(data, 0, data.length);
+        out.write(new byte[(512 - data.length % 512) % 512], 0, (512 - data.length % 512) % 512);
+    }
+
+    private static byte[] tarGz(boolean longName) throws IOException {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        StringBuilder deep = new StringBuilder("geckodriver-v0.11.1");
+        while (deep.length() < 120) {
+            deep.append("/nested");
+        }
+        String driverPath = longName ? deep + "/geckodriver" : "geckodriver";
+
+        tarHeader(tar, "docs/", 0755, 0, '5');
+        tarHeader(tar, "docs/NOTES", 0644, NOTES.length, '0');
+        tarData(tar, NOTES);
+        if (longName) {
+            byte[] name = (driverPath + "\0").getBytes(StandardCharsets.UTF_8);
+            tarHeader(tar, "././@LongLink", 0, name.length, 'L');
+            tarData(tar, name);
+        }
+        tarHeader(tar, driverPath.substring(0, Math.min(100, driverPath.length())), 0755, DRIVER.length, '0');
+        tarData(tar, DRIVER);
+        tarHeader(tar, "link", 0777, 0, '2');
+        tar.write(new byte[1024], 0, 1024);
+
+        ByteArrayOutputStream rv = new ByteArrayOutputStream();
+        GZIPOutputStream gz = new GZIPOutputStream(rv);
+        gz.write(tar.toByteArray());
+        gz.close();
+
+        return rv.toByteArray();
+    }
+
+    @Test
+    public void testZipFileSelectiveFlattened() throws IOException {
+        File archive = new File(this.root, "chromedriver_linux64.zip");
+        FileUtils.writeByteArrayToFile(archive, zip("dir/chromedriver", DRIVER, "NOTES", NOTES));
+
+        List<File> files = new ArchiveExtractor().only("chromedriver").executable("chromedriver").flatten()
+                .extract(archive, this.dst);
+
+        File driver = new File(this.dst, "chromedriver");
+        Assert.assertEquals(files, Arrays.asList(driver));
+        Assert.assertEquals(FileUtils.readFileToByteArray(driver), DRIVER);
+        Assert.assertTrue(driver.canExecute());
+        Assert.assertFalse(new File(this.dst, "NOTES").exists());
+    }
+
+    @Test
+    public void testZipStreamKeepsLayout() throws IOException {
+        List<File> files = new ArchiveExtractor().extract(
+                new ByteArrayInputStream(zip("dir/chromedriver", DRIVER, "NOTES", NOTES)),
+                ArchiveExtractor.Format.ZIP, this.dst);
+
+        Assert.assertEquals(files.size(), 2);
+        Assert.assertEquals(FileUtils.readFileToByteArray(new File(this.dst, "dir/chromedriver")), DRIVER);
+        Assert.assertEquals(FileUtils.readFileToByteArray(new File(this.dst, "NOTES")), NOTES);
+    }
+
+    @DataProvider(name = "slipData")
+    public Object[][] slipData() {
+        return new Object[][] { { "../evil" }, { "dir/../../evil" }, { "/tmp/evil" } };
+    }
+
+    @Test(dataProvider = "slipData", expectedExceptions = IOException.class)
+    public void testZipSlipIsRejected(String name) throws IOException {
+        new ArchiveExtractor().extract(new ByteArrayInputStream(zip(name, DRIVER)), ArchiveExtractor.Format.ZIP,
+                this.dst);
+    }
+
+    @Test
+    public void testTarGzModesAndSelection() throws IOException {
+        File archive = new File(this.root, "geckodriver-v0.11.1-linux64.tar.gz");
+        FileUtils.writeByteArrayToFile(archive, tarGz(false));
+
+        List<File> files = new ArchiveExtractor().extract(archive, this.dst);
+
+        Assert.assertEquals(files.size(), 2);
+        Assert.assertEquals(FileUtils.readFileToByteArray(new File(this.dst, "docs/NOTES")), NOTES);
+        Assert.assertFalse(new File(this.dst, "docs/NOTES").canExecute());
+        Assert.assertEquals(FileUtils.readFileToByteArray(new File(this.dst, "geckodriver")), DRIVER);
+        Assert.assertTrue(new File(this.dst, "geckodriver").canExecute());
+        Assert.assertFalse(new File(this.dst, "link").exists());
+    }
+
+    @Test
+    public void testTarGzLongNames() throws IOException {
+        List<File> files = new ArchiveExtractor().only("geckodriver").flatten()
+                .extract(new ByteArrayInputStream(tarGz(true)), ArchiveExtractor.Format.TAR_GZ, this.dst);
+
+        Assert.assertEquals(files, Arrays.asList(new File(this.dst, "geckodriver")));
+        Assert.assertEquals(FileUtils.readFileToByteArray(files.get(0)), DRIVER);
+    }
+
+    @Test
+    public void testFormatDetection() {
+        Assert.assertEquals(ArchiveExtractor.Format.fromFileName("a.ZIP"), ArchiveExtractor.Format.ZIP);
+        Assert.assertEquals(ArchiveExtractor.Format.fromFileName("a.tar.gz"), ArchiveExtractor.Format.TAR_GZ);
+        Assert.assertEquals(ArchiveExtractor.Format.fromFileName("a.tgz"), ArchiveExtractor.Format.TAR_GZ);
+        Assert.assertEquals(ArchiveExtractor.Format.fromFileName("a.tar"), ArchiveExtractor.Format.TAR);
+        Assert.assertNull(ArchiveExtractor.Format.fromFileName("chromedriver.exe"));
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.comcast.magicwand.utils.Version;
+
+public class BucketIndexTest {
+
+    private static final DriverBinarySpec CHROME = new DriverBinarySpec("chromedriver")
+            .withPlatform("linux", "64")
+            .withArtifactPattern("{version}/chromedriver_{os}{arch}.zip");
+
+    private static final DriverBinarySpec IE = new DriverBinarySpec("IEDriverServer")
+            .withPlatform("win", "x64")
+            .withArtifactPattern("{major}.{minor}/IEDriverServer_{arch}_{version}.zip");
+
+    private static BucketIndex index(DriverBinarySpec spec, String... keys) {
+        BucketIndex.Builder builder = new BucketIndex.Builder(spec);
+
+        for (String key : keys) {
+            builder.key(key, null);
+        }
+
+        return builder.build();
+    }
+
+    @Test
+    public void testPlatforms() {
+        BucketIndex index = index(CHROME, "2.18/chromedriver_linux64.zip", "2.18/chromedriver_mac32.zip",
+                "2.19/chromedriver_linux64.zip", "2.19/chromedriver_win32.zip", "2.19/notes.txt", "LATEST_RELEASE");
+
+        Assert.assertEquals(index.size(), 4);
+        Assert.assertEquals(index.getVersions("linux", "64"), Arrays.asList(Version.valueOf("2.18"),
+                Version.valueOf("2.19")));
+        Assert.assertEquals(index.getVersions("win", "32"), Arrays.asList(Version.valueOf("2.19")));
+        Assert.assertTrue(index.getVersions("linux", "32").isEmpty());
+        Assert.assertEquals(index.getArtifact(Version.valueOf("2.18"), "mac", "32"), "2.18/chromedriver_mac32.zip");
+        Assert.assertNull(index.getArtifact(Version.valueOf("2.18"), "win", "32"));
+    }
+
+    @Test
+    public void testArchitectures() {
+        BucketIndex index = index(IE, "2.47/IEDriverServer_Win32_2.47.0.zip", "2.47/IEDriverServer_x64_2.47.0.zip",
+                "2.48/IEDriverServer_x64_2.48.0.zip", "2.46/IEDriverServer_x64_2.47.0.zip",
+                "2.47/selenium-server-2.47.0.jar");
+
+        Assert.assertEquals(index.getVersions("win", "x64"), Arrays.asList(Version.valueOf("2.47.0"),
+                Version.valueOf("2.48.0")));
+        Assert.assertEquals(index.getVersions("win", "Win32"), Arrays.asList(Version.valueOf("2.47.0")));
+    }
+
+    @Test
+    public void testChecksums() {
+        BucketIndex.Builder builder = new BucketIndex.Builder(CHROME);
+        builder.key("2.18/chromedriver_linux64.zip", "D41D8CD98F00B204E9800998ECF8427E");
+        builder.key("2.19/chromedriver_linux64.zip", "d41d8cd98f00b204e9800998ecf8427e-2");
+        BucketIndex index = BucketIndex.parse(builder.build().toText());
+
+        Assert.assertEquals(index.getChecksum(Version.valueOf("2.18"), "linux", "64"),
+                Checksum.parse("md5:d41d8cd98f00b204e9800998ecf8427e"));
+        Assert.assertNull(index.getChecksum(Version.valueOf("2.19"), "linux", "64"));
+        Assert.assertNull(index.getChecksum(Version.valueOf("2.20"), "linux", "64"));
+    }
+
+    @Test
+    public void testTextRoundTrip() {
+        BucketIndex index = index(IE, "2.47/IEDriverServer_Win32_2.47.0.zip", "2.48/IEDriverServer_x64_2.48.0.zip");
+        BucketIndex parsed = BucketIndex.parse(index.toText());
+
+        Assert.assertEquals(parsed.toText(), index.toText());
+        Assert.assertEquals(parsed.getArtifact(Version.valueOf("2.48.0"), "win", "x64"),
+                "2.48/IEDriverServer_x64_2.48.0.zip");
+        Assert.assertEquals(BucketIndex.parse("").size(), 0);
+    }
+}
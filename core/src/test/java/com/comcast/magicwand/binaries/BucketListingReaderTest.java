@@ -0,0 +1,117 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class BucketListingReaderTest {
+
+    private StandInBucketServer bucket;
+
+    private static class KeyCollector implements BucketListingReader.KeyHandler {
+        private final List<String> keys = new ArrayList<>();
+        private final List<String> etags = new ArrayList<>();
+
+        @Override
+        public void key(String key, String etag) {
+            this.keys.add(key);
+            this.etags.add(etag);
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.bucket = new StandInBucketServer();
+
+        for (String key : Arrays.asList("2.18/chromedriver_linux64.zip", "2.18/chromedriver_mac32.zip",
+                "2.19/chromedriver_linux64.zip", "2.19/chromedriver_mac32.zip", "2.19/notes.txt", "LATEST_RELEASE")) {
+            this.bucket.put(key, new byte[] { 1 });
+        }
+    }
+
+    @AfterMethod
+    public void teardown() {
+        this.bucket.stop();
+    }
+
+    @DataProvider(name = "pageData")
+    public Object[][] pageData() {
+        return new Object[][] {
+            { Integer.MAX_VALUE, false, 1 },
+            { 2, true, 3 },
+            { 2, false, 3 },
+            { 1, false, 5 },
+        };
+    }
+
+    @Test(dataProvider = "pageData")
+    public void testPagination(int pageSize, boolean sendNextMarker, int expectedRequests) throws IOException {
+        this.bucket.setPageSize(pageSize, sendNextMarker);
+
+        KeyCollector collector = new KeyCollector();
+        Assert.assertTrue(new BucketListingReader(this.bucket.getUrl()).list("2.", collector));
+
+        Assert.assertEquals(collector.keys, Arrays.asList("2.18/chromedriver_linux64.zip",
+                "2.18/chromedriver_mac32.zip", "2.19/chromedriver_linux64.zip", "2.19/chromedriver_mac32.zip",
+                "2.19/notes.txt"));
+        Assert.assertEquals(this.bucket.getHits(""), expectedRequests);
+    }
+
+    @Test
+    public void testMissingBucket() throws IOException {
+        this.bucket.stop();
+        StandInBucketServer empty = new StandInBucketServer();
+
+        try {
+            Assert.assertFalse(new BucketListingReader(empty.getUrl() + "/missing/").list("", new KeyCollector()));
+        }
+        finally {
+            empty.stop();
+        }
+    }
+
+    @Test
+    public void testKeysOfOtherElementsIgnored() throws IOException {
+        String xml = "<ListBucketResult><Name>chromedriver</Name><Key>not-a-content</Key><IsTruncated>true"
+                + "</IsTruncated><Contents><Key>a</Key><ETag>\"x\"</ETag></Contents><Contents><Key>b</Key>"
+                + "</Contents></ListBucketResult>";
+        KeyCollector collector = new KeyCollector();
+
+        String next = BucketListingReader.readPage(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+                collector);
+
+        Assert.assertEquals(collector.keys, Arrays.asList("a", "b"));
+        Assert.assertEquals(collector.etags, Arrays.asList("x", null));
+        Assert.assertEquals(next, "b");
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testInvalidListing() throws IOException {
+        BucketListingReader.readPage(new ByteArrayInputStream("<ListBucketResult><Contents>".getBytes(
+                StandardCharsets.UTF_8)), new KeyCollector());
+    }
+}
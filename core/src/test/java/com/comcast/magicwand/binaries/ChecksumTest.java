@@ -0,0 +1,70 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ChecksumTest {
+
+    private static final byte[] CONTENT = "chromedriver".getBytes(StandardCharsets.UTF_8);
+
+    @DataProvider(name = "parseData")
+    public Object[][] parseData() {
+        return new Object[][] {
+            { "md5:6b9c5ff5c2f4a2ac2ba8c7a8a0fcd2bb", Checksum.MD5 },
+            { "sha1:ADC83B19E793491B1C6EA0FD8B46CD9F32E592FC", Checksum.SHA1 },
+            { "SHA-256:2c26b46b68ffc68ff99b453c1d30413413422d706483bfa0f98a5e886266e7ae", Checksum.SHA256 },
+        };
+    }
+
+    @Test(dataProvider = "parseData")
+    public void testParse(String value, String algorithm) {
+        Checksum c = Checksum.parse(value);
+
+        Assert.assertEquals(c.getAlgorithm(), algorithm);
+        Assert.assertEquals(c.getHex(), value.substring(value.indexOf(':') + 1).toLowerCase());
+        Assert.assertEquals(Checksum.parse(c.toString()), c);
+    }
+
+    @DataProvider(name = "invalidData")
+    public Object[][] invalidData() {
+        return new Object[][] {
+            { "6b9c5ff5c2f4a2ac2ba8c7a8a0fcd2bb" },
+            { "crc32:1234abcd" },
+            { "md5:6b9c5ff5" },
+            { "sha1:zzc83b19e793491b1c6ea0fd8b46cd9f32e592fc" },
+        };
+    }
+
+    @Test(dataProvider = "invalidData", expectedExceptions = IllegalArgumentException.class)
+    public void testParseInvalid(String value) {
+        Checksum.parse(value);
+    }
+
+    @Test
+    public void testMatches() throws NoSuchAlgorithmException {
+        Checksum c = new Checksum(Checksum.SHA256, Checksum.toHex(MessageDigest.getInstance("SHA-256").digest(CONTENT)));
+
+        Assert.assertTrue(c.matches(c.newDigest().digest(CONTENT)));
+        Assert.assertFalse(c.matches(c.newDigest().digest(new byte[0])));
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.comcast.magicwand.utils.Version;
+
+public class DriverBinaryManagerTest {
+
+    private static final byte[] CONTENT_2_18 = "chromedriver 2.18".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONTENT_2_19 = "chromedriver 2.19".getBytes(StandardCharsets.UTF_8);
+
+    private File root;
+    private DriverCache cache;
+    private StandInBucketServer bucket;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.root = Files.createTempDirectory("driver-manager").toFile();
+        this.cache = new DriverCache(new File(this.root, "cache"), DriverCache.DEFAULT_MAX_SIZE);
+
+        this.bucket = new StandInBucketServer();
+        this.bucket.put("LATEST_RELEASE", "2.19\n".getBytes(StandardCharsets.UTF_8));
+        this.bucket.put("2.18/chromedriver_linux64.zip", StandInBucketServer.zip("chromedriver", CONTENT_2_18));
+        this.bucket.put("2.19/chromedriver_linux64.zip", StandInBucketServer.zip("chromedriver", CONTENT_2_19));
+    }
+
+    @AfterMethod
+    public void teardown() {
+        this.bucket.stop();
+        FileUtils.deleteQuietly(this.root);
+    }
+
+    private DriverBinarySpec spec(String version) {
+        return new DriverBinarySpec("chromedriver")
+                .withPlatform("linux", "64")
+                .withVersion(version)
+                .withArtifactPattern("{version}/chromedriver_{os}{arch}.zip")
+                .withLatestPointer("LATEST_RELEASE")
+                .withUpstreamUrl(this.bucket.getUrl());
+    }
+
+    private DriverBinaryManager manager(List<BinarySource> sources, boolean offline) {
+        return new DriverBinaryManager(this.cache, sources, offline);
+    }
+
+    @Test
+    public void testLatestFromUpstream() throws IOException {
+        DriverBinaryManager m = manager(new ArrayList<BinarySource>(), false);
+
+        File driver = m.resolve(spec(null));
+
+        Assert.assertEquals(FileUtils.readFileToByteArray(driver), CONTENT_2_19);
+        Assert.assertTrue(driver.canExecute());
+    }
+
+    @Test
+    public void testRangeUsesListing() throws IOException {
+        DriverBinaryManager m = manager(new ArrayList<BinarySource>(), false);
+
+        Assert.assertEquals(m.resolveVersion(spec("[2.0,2.19)")), Version.valueOf("2.18"));
+        Assert.assertEquals(FileUtils.readFileToByteArray(m.resolve(spec("[2.0,2.19)"))), CONTENT_2_18);
+        // the bucket index is cached, so the second resolution does not list the bucket again
+        Assert.assertEquals(this.bucket.getHits(""), 1);
+    }
+
+    @Test
+    public void testCachedRangeSkipsSources() throws IOException {
+        File first = manager(new ArrayList<BinarySource>(), false).resolve(spec("[2.0,2.19)"));
+
+        // no source can answer, so the binary has to come from the cache without resolving the range
+        DriverBinaryManager offline = manager(new ArrayList<BinarySource>(), true);
+
+        Assert.assertEquals(offline.resolve(spec("[2.0,2.19)")), first);
+        Assert.assertEquals(offline.resolve(spec("[2.18,2.20)")), first);
+    }
+
+    @Test
+    public void testCachedDriverSkipsDownload() throws IOException {
+        DriverBinaryManager m = manager(new ArrayList<BinarySource>(), false);
+
+        File first = m.resolve(spec("2.19"));
+        File second = m.resolve(spec("2.19"));
+
+        Assert.assertEquals(second, first);
+        Assert.assertEquals(this.bucket.getHits("2.19/chromedriver_linux64.zip"), 1);
+    }
+
+    @Test
+    public void testConcurrentResolveDownloadsOnce() throws Exception {
+        final DriverBinaryManager[] managers = {
+            manager(new ArrayList<BinarySource>(), false),
+            new DriverBinaryManager(new DriverCache(this.cache.getRoot(), DriverCache.DEFAULT_MAX_SIZE),
+                    new ArrayList<BinarySource>(), false)
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<File>> results = new ArrayList<>();
+
+            for (int i = 0; i < 8; i++) {
+                final DriverBinaryManager m = managers[i % managers.length];
+
+                results.add(pool.submit(new Callable<File>() {
+                    @Override
+                    public File call() throws IOException {
+                        return m.resolve(spec("2.19"));
+                    }
+                }));
+            }
+
+            for (Future<File> f : results) {
+                Assert.assertEquals(FileUtils.readFileToByteArray(f.get()), CONTENT_2_19);
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        Assert.assertEquals(this.bucket.getHits("2.19/chromedriver_linux64.zip"), 1);
+    }
+
+    @Test
+    public void testOfflineUsesOnlyMirror() throws IOException {
+        File mirror = new File(this.root, "mirror");
+        FileUtils.writeByteArrayToFile(new File(mirror, "2.18/chromedriver_linux64.zip"),
+                StandInBucketServer.zip("chromedriver", CONTENT_2_18));
+
+        DriverBinaryManager m = manager(DriverBinaryManager.parseSources(mirror.toURI().toString()), true);
+
+        Assert.assertEquals(FileUtils.readFileToByteArray(m.resolve(spec("[2.0,)"))), CONTENT_2_18);
+        Assert.assertEquals(this.bucket.getHits(""), 0);
+
+        try {
+            m.resolve(spec("2.19"));
+            Assert.fail("offline manager should not reach the upstream bucket");
+        }
+        catch (IOException expected) {
+            Assert.assertEquals(this.bucket.getHits("2.19/chromedriver_linux64.zip"), 0);
+        }
+    }
+
+    @Test
+    public void testFallsThroughToNextSource() throws IOException {
+        StandInBucketServer mirror = new StandInBucketServer();
+
+        try {
+            mirror.put("LATEST_RELEASE", "2.19".getBytes(StandardCharsets.UTF_8));
+
+            DriverBinaryManager m = manager(DriverBinaryManager.parseSources(mirror.getUrl()), false);
+
+            Assert.assertEquals(FileUtils.readFileToByteArray(m.resolve(spec(null))), CONTENT_2_19);
+            Assert.assertEquals(mirror.getHits("2.19/chromedriver_linux64.zip"), 1);
+            Assert.assertEquals(this.bucket.getHits("LATEST_RELEASE"), 0);
+        }
+        finally {
+            mirror.stop();
+        }
+    }
+
+    private static String sha256(byte[] content) throws NoSuchAlgorithmException {
+        return Checksum.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+
+    @Test
+    public void testPublishedChecksumMismatch() throws Exception {
+        StandInBucketServer mirror = new StandInBucketServer();
+
+        try {
+            byte[] zip = StandInBucketServer.zip("chromedriver", CONTENT_2_19);
+            mirror.put("2.19/chromedriver_linux64.zip", Arrays.copyOf(zip, zip.length - 10));
+            mirror.put("2.19/chromedriver_linux64.zip.sha256", (sha256(zip) + "  chromedriver_linux64.zip\n")
+                    .getBytes(StandardCharsets.UTF_8));
+
+            DriverBinaryManager m = manager(DriverBinaryManager.parseSources(mirror.getUrl()), true);
+
+            try {
+                m.resolve(spec("2.19"));
+                Assert.fail("Truncated archive was accepted");
+            }
+            catch (IOException expected) {
+                Assert.assertNull(this.cache.get(new DriverCacheKey("chromedriver", "2.19", "linux", "64")));
+            }
+
+            mirror.put("2.19/chromedriver_linux64.zip", zip);
+            Assert.assertEquals(FileUtils.readFileToByteArray(m.resolve(spec("2.19"))), CONTENT_2_19);
+        }
+        finally {
+            mirror.stop();
+        }
+    }
+
+    @Test
+    public void testPinnedChecksum() throws Exception {
+        Properties pins = new Properties();
+        pins.setProperty("chromedriver/2.18/linux-64", "sha256:" + sha256(CONTENT_2_18));
+        pins.setProperty("chromedriver/2.19/linux-64",
+                "sha256:" + sha256(StandInBucketServer.zip("chromedriver", CONTENT_2_19)));
+
+        DriverBinaryManager m = new DriverBinaryManager(this.cache, new ArrayList<BinarySource>(), false, pins);
+
+        // the bucket publishes a matching MD5, but the pinned checksum wins
+        try {
+            m.resolve(spec("2.18"));
+            Assert.fail("Archive not matching the pinned checksum was accepted");
+        }
+        catch (IOException expected) {
+            Assert.assertNull(this.cache.get(new DriverCacheKey("chromedriver", "2.18", "linux", "64")));
+        }
+
+        Assert.assertEquals(FileUtils.readFileToByteArray(m.resolve(spec("2.19"))), CONTENT_2_19);
+    }
+
+    @Test
+    public void testMavenRepository() throws IOException {
+        StandInBucketServer repo = new StandInBucketServer();
+
+        try {
+            String dir = "org/example/drivers/chromedriver/";
+            repo.put(dir + "maven-metadata.xml", ("<metadata><versioning><release>2.18</release>"
+                    + "<versions><version>2.17</version><version>2.18</version></versions></versioning></metadata>")
+                    .getBytes(StandardCharsets.UTF_8));
+            repo.put(dir + "2.18/chromedriver-2.18-linux-64.zip", StandInBucketServer.zip("chromedriver", CONTENT_2_18));
+
+            List<BinarySource> sources = DriverBinaryManager.parseSources("maven:" + repo.getUrl() + "#org.example.drivers");
+            DriverBinaryManager m = manager(sources, true);
+
+            Assert.assertEquals(m.resolveVersion(spec(null)), Version.valueOf("2.18"));
+            Assert.assertEquals(m.resolveVersion(spec("(,2.18)")), Version.valueOf("2.17"));
+            Assert.assertEquals(FileUtils.readFileToByteArray(m.resolve(spec(null))), CONTENT_2_18);
+        }
+        finally {
+            repo.stop();
+        }
+    }
+
+    @Test
+    public void testFallbackVersion() throws IOException {
+        DriverBinaryManager m = manager(Arrays.<BinarySource>asList(new HttpMirrorSource(this.bucket.getUrl() + "/none")), true);
+
+        Assert.assertEquals(m.resolveVersion(spec(null).withFallbackVersion("2.18")), Version.valueOf("2.18"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidSource() {
+        DriverBinaryManager.parseSources("ftp://example.com/drivers");
+    }
+}
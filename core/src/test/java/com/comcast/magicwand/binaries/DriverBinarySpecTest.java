@@ -0,0 +1,68 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.comcast.magicwand.utils.Version;
+
+public class DriverBinarySpecTest {
+
+    private static final DriverBinarySpec CHROME = new DriverBinarySpec("chromedriver")
+            .withPlatform("linux", "64")
+            .withArtifactPattern("{version}/chromedriver_{os}{arch}.zip");
+
+    private static final DriverBinarySpec IE = new DriverBinarySpec("IEDriverServer")
+            .withPlatform("win", "x64")
+            .withArtifactPattern("{major}.{minor}/IEDriverServer_{arch}_{version}.zip");
+
+    @Test
+    public void testArtifactPath() {
+        Assert.assertEquals(CHROME.getArtifactPath(Version.valueOf("2.19")), "2.19/chromedriver_linux64.zip");
+        Assert.assertEquals(IE.getArtifactPath(Version.valueOf("2.47.0")), "2.47/IEDriverServer_x64_2.47.0.zip");
+        Assert.assertEquals(IE.getArtifactName(Version.valueOf("2.47.0")), "IEDriverServer_x64_2.47.0.zip");
+    }
+
+    @DataProvider(name = "matchData")
+    public Object[][] matchData() {
+        return new Object[][] {
+            { CHROME, "2.19/chromedriver_linux64.zip", "2.19" },
+            { CHROME, "2.19/chromedriver_linux32.zip", null },
+            { CHROME, "2.19/chromedriver_mac32.zip", null },
+            { CHROME, "LATEST_RELEASE", null },
+            { IE, "2.47/IEDriverServer_x64_2.47.0.zip", "2.47.0" },
+            { IE, "2.47/IEDriverServer_Win32_2.47.0.zip", null },
+            { IE, "2.46/IEDriverServer_x64_2.47.0.zip", null },
+            { IE, "2.47/selenium-server-2.47.0.jar", null },
+        };
+    }
+
+    @Test(dataProvider = "matchData")
+    public void testMatchArtifactPath(DriverBinarySpec spec, String path, String expected) {
+        Version actual = spec.matchArtifactPath(path);
+
+        Assert.assertEquals((null == actual) ? null : actual.toString(), expected);
+    }
+
+    @Test
+    public void testExactVersion() {
+        Assert.assertTrue(new DriverBinarySpec("d").withVersion("2.19").isExactVersion());
+        Assert.assertFalse(new DriverBinarySpec("d").withVersion("[2.19,3)").isExactVersion());
+        Assert.assertFalse(new DriverBinarySpec("d").isExactVersion());
+    }
+}
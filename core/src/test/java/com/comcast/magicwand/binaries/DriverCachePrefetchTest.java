@@ -0,0 +1,139 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DriverCachePrefetchTest {
+
+    private File root;
+    private StandInBucketServer bucket;
+    private DriverBinaryManager manager;
+    private Map<String, DriverBinaryProvider> providers;
+
+    private class TestProvider implements DriverBinaryProvider {
+        @Override
+        public String getDriverName() {
+            return "chromedriver";
+        }
+
+        @Override
+        public DriverBinarySpec createBinarySpec(String version, String os, String arch) {
+            return new DriverBinarySpec("chromedriver")
+                    .withPlatform((null == os) ? "linux" : os, (null == arch) ? "64" : arch)
+                    .withVersion(version)
+                    .withArtifactPattern("{version}/chromedriver_{os}{arch}.zip")
+                    .withLatestPointer("LATEST_RELEASE")
+                    .withUpstreamUrl(DriverCachePrefetchTest.this.bucket.getUrl());
+        }
+
+        @Override
+        public List<DriverBinarySpec> getDefaultBinarySpecs() {
+            return Collections.singletonList(createBinarySpec(null, null, null));
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.root = Files.createTempDirectory("driver-prefetch").toFile();
+        DriverCache cache = new DriverCache(new File(this.root, "cache"), DriverCache.DEFAULT_MAX_SIZE);
+        this.manager = new DriverBinaryManager(cache, new ArrayList<BinarySource>(), false);
+
+        this.bucket = new StandInBucketServer();
+        this.bucket.put("LATEST_RELEASE", "2.19\n".getBytes(StandardCharsets.UTF_8));
+        for (String platform : Arrays.asList("linux64", "mac32")) {
+            for (String version : Arrays.asList("2.18", "2.19")) {
+                this.bucket.put(version + "/chromedriver_" + platform + ".zip", StandInBucketServer.zip(
+                        "chromedriver", (version + platform).getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+
+        this.providers = DriverCachePrefetch.index(Collections.<DriverBinaryProvider>singletonList(new TestProvider()));
+    }
+
+    @AfterMethod
+    public void teardown() {
+        this.bucket.stop();
+        FileUtils.deleteQuietly(this.root);
+    }
+
+    @Test
+    public void testParseManifest() throws IOException {
+        String manifest = "# drivers baked into the image\n\nchromedriver\nchromedriver latest mac 32\n"
+                + "  chromedriver [2.0,2.19)  \n";
+        List<DriverBinarySpec> specs = DriverCachePrefetch.parseManifest(new StringReader(manifest), this.providers);
+
+        Assert.assertEquals(specs.size(), 3);
+        Assert.assertNull(specs.get(0).getVersion());
+        Assert.assertEquals(specs.get(0).getOs(), "linux");
+        Assert.assertNull(specs.get(1).getVersion());
+        Assert.assertEquals(specs.get(1).getOs(), "mac");
+        Assert.assertEquals(specs.get(1).getArch(), "32");
+        Assert.assertEquals(specs.get(2).getVersion(), "[2.0,2.19)");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownDriver() throws IOException {
+        DriverCachePrefetch.parseManifest(new StringReader("geckodriver 0.9\n"), this.providers);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingArch() throws IOException {
+        DriverCachePrefetch.parseManifest(new StringReader("chromedriver 2.19 linux\n"), this.providers);
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        List<DriverBinarySpec> specs = DriverCachePrefetch.parseManifest(new StringReader(
+                "chromedriver 2.18\nchromedriver latest mac 32\nchromedriver 2.17\n"), this.providers);
+        DriverCachePrefetch prefetch = new DriverCachePrefetch(this.manager, 4);
+
+        List<DriverCachePrefetch.Result> results = prefetch.prefetch(specs);
+
+        Assert.assertEquals(results.size(), 3);
+        Assert.assertFalse(results.get(0).isCached());
+        Assert.assertEquals(FileUtils.readFileToString(results.get(0).getBinary(), "UTF-8"), "2.18linux64");
+        Assert.assertEquals(results.get(1).getVersion().toString(), "2.19");
+        Assert.assertEquals(FileUtils.readFileToString(results.get(1).getBinary(), "UTF-8"), "2.19mac32");
+        Assert.assertNotNull(results.get(2).getFailure());
+        Assert.assertTrue(results.get(2).toString().startsWith("failed"));
+
+        List<DriverBinarySpec> defaults = DriverCachePrefetch.getDefaultSpecs(this.providers.values());
+        Assert.assertFalse(prefetch.prefetch(defaults).get(0).isCached());
+
+        results = prefetch.prefetch(DriverCachePrefetch.getDefaultSpecs(this.providers.values()));
+
+        Assert.assertEquals(results.size(), 1);
+        Assert.assertTrue(results.get(0).isCached());
+        Assert.assertTrue(results.get(0).toString().startsWith("cached"));
+        Assert.assertEquals(this.bucket.getHits("2.19/chromedriver_linux64.zip"), 1);
+    }
+}
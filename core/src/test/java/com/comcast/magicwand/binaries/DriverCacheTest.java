@@ -0,0 +1,215 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DriverCacheTest {
+
+    private File root;
+
+    @BeforeMethod
+    public void createRoot() throws IOException {
+        this.root = Files.createTempDirectory("driver-cache").toFile();
+    }
+
+    @AfterMethod
+    public void deleteRoot() {
+        FileUtils.deleteQuietly(this.root);
+    }
+
+    private File stage(DriverCache cache, String name, int size) throws IOException {
+        File staging = cache.createStagingDirectory();
+        FileUtils.writeByteArrayToFile(new File(staging, name), new byte[size]);
+        return staging;
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        DriverCache cache = new DriverCache(this.root, DriverCache.DEFAULT_MAX_SIZE);
+        DriverCacheKey key = new DriverCacheKey("chromedriver", "2.19", "linux", "64");
+
+        Assert.assertNull(cache.get(key));
+
+        File published = cache.put(key, stage(cache, "chromedriver", 128), "chromedriver");
+
+        Assert.assertTrue(published.isFile());
+        Assert.assertTrue(published.canExecute());
+        Assert.assertEquals(published.getParentFile(), cache.getEntryDirectory(key));
+        Assert.assertEquals(new DriverCache(this.root, DriverCache.DEFAULT_MAX_SIZE).get(key), published);
+    }
+
+    @Test
+    public void testCorruptEntryIsRemoved() throws IOException {
+        DriverCache cache = new DriverCache(this.root, DriverCache.DEFAULT_MAX_SIZE);
+        DriverCacheKey key = new DriverCacheKey("chromedriver", "2.19", "linux", "64");
+
+        File published = cache.put(key, stage(cache, "chromedriver", 128), "chromedriver");
+        FileUtils.writeByteArrayToFile(published, new byte[] { 1, 2, 3 });
+
+        Assert.assertNull(cache.get(key));
+        Assert.assertFalse(cache.getEntryDirectory(key).exists());
+    }
+
+    @Test
+    public void testTamperedContentIsDetected() throws IOException {
+        DriverCacheKey key = new DriverCacheKey("chromedriver", "2.19", "linux", "64");
+        DriverCache writer = new DriverCache(this.root, DriverCache.DEFAULT_MAX_SIZE);
+
+        File published = writer.put(key, stage(writer, "chromedriver", 128), "chromedriver");
+        byte[] data = new byte[128];
+        data[7] = 42;
+        FileUtils.writeByteArrayToFile(published, data);
+
+        Assert.assertNull(new DriverCache(this.root, DriverCache.DEFAULT_MAX_SIZE).get(key));
+    }
+
+    @Test
+    public void testConcurrentPublishKeepsFirstEntry() throws IOException {
+        DriverCache cache = new DriverCache(this.root, DriverCache.DEFAULT_MAX_SIZE);
+        DriverCacheKey key = new DriverCacheKey("IEDriverServer", "2.47.0", "win", "x64");
+
+        File first = stage(cache, "IEDriverServer.exe", 64);
+        File second = stage(cache, "IEDriverServer.exe", 64);
+
+        File a = cache.put(key, first, "IEDriverServer.exe");
+        File b = cache.put(key, second, "IEDriverServer.exe");
+
+        Assert.assertEquals(a, b);
+        Assert.assertFalse(second.exists());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        DriverCache cache = new DriverCache(this.root, 2500);
+        DriverCacheKey oldest = new DriverCacheKey("chromedriver", "2.17", "linux", "64");
+        DriverCacheKey used = new DriverCacheKey("chromedriver", "2.18", "linux", "64");
+        DriverCacheKey newest = new DriverCacheKey("chromedriver", "2.19", "linux", "64");
+
+        cache.put(oldest, stage(cache, "chromedriver", 1000), "chromedriver");
+        cache.put(used, stage(cache, "chromedriver", 1000), "chromedriver");
+
+        // make sure access times differ regardless of file system timestamp resolution
+        new File(cache.getEntryDirectory(oldest), DriverCache.MANIFEST_NAME).setLastModified(1000L);
+        new File(cache.getEntryDirectory(used), DriverCache.MANIFEST_NAME).setLastModified(2000L);
+
+        cache.put(newest, stage(cache, "chromedriver", 1000), "chromedriver");
+
+        Assert.assertNull(cache.get(oldest));
+        Assert.assertNotNull(cache.get(used));
+        Assert.assertNotNull(cache.get(newest));
+    }
+
+    /**
+     * Holds the lock of an entry in a separate JVM until its standard input is closed
+     */
+    public static class LockHolder {
+        public static void main(String[] args) throws IOException {
+            DriverCache cache = new DriverCache(new File(args[0]), DriverCache.DEFAULT_MAX_SIZE);
+            DriverCache.EntryLock lock = cache.lock(new DriverCacheKey("chromedriver", "2.19", "linux", "64"));
+
+            System.out.println("locked");
+            System.out.flush();
+
+            while (-1 != System.in.read()) {
+                // wait for the parent to close stdin
+            }
+            lock.close();
+        }
+    }
+
+    private static Thread lockInBackground(final DriverCache cache, final DriverCacheKey key,
+            final CountDownLatch acquired) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    cache.lock(key).close();
+                    acquired.countDown();
+                }
+                catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+
+        return t;
+    }
+
+    @Test
+    public void testLockExcludesOtherThreads() throws Exception {
+        DriverCacheKey key = new DriverCacheKey("chromedriver", "2.19", "linux", "64");
+        DriverCache cache = new DriverCache(this.root, DriverCache.DEFAULT_MAX_SIZE);
+        CountDownLatch acquired = new CountDownLatch(1);
+
+        DriverCache.EntryLock lock = cache.lock(key);
+        try {
+            // a second cache instance on the same root shares the lock
+            lockInBackground(new DriverCache(this.root, DriverCache.DEFAULT_MAX_SIZE), key, acquired);
+            Assert.assertFalse(acquired.await(300, TimeUnit.MILLISECONDS));
+
+            // other keys are not affected
+            cache.lock(new DriverCacheKey("chromedriver", "2.20", "linux", "64")).close();
+        }
+        finally {
+            lock.close();
+        }
+
+        Assert.assertTrue(acquired.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLockExcludesOtherProcesses() throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process holder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                LockHolder.class.getName(), this.root.getAbsolutePath()).redirectErrorStream(true).start();
+
+        try {
+            BufferedReader out = new BufferedReader(new InputStreamReader(holder.getInputStream(), "UTF-8"));
+            String line;
+            while (null != (line = out.readLine()) && !"locked".equals(line)) {
+                // skip logging of the child
+            }
+            Assert.assertEquals(line, "locked");
+
+            CountDownLatch acquired = new CountDownLatch(1);
+            lockInBackground(new DriverCache(this.root, DriverCache.DEFAULT_MAX_SIZE),
+                    new DriverCacheKey("chromedriver", "2.19", "linux", "64"), acquired);
+            Assert.assertFalse(acquired.await(500, TimeUnit.MILLISECONDS));
+
+            holder.getOutputStream().close();
+            Assert.assertTrue(acquired.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals(holder.waitFor(), 0);
+        }
+        finally {
+            holder.destroy();
+        }
+    }
+}
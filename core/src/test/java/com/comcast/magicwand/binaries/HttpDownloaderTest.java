@@ -0,0 +1,175 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class HttpDownloaderTest {
+
+    private static final String KEY = "2.19/chromedriver_linux64.zip";
+
+    private StandInBucketServer server;
+    private byte[] content;
+    private HttpDownloader downloader;
+    private RecordingListener listener;
+
+    private static class RecordingListener implements DownloadListener {
+        final List<String> events = new ArrayList<>();
+        long lastProgress = -1;
+
+        @Override
+        public void started(URL url, long totalBytes) {
+            this.events.add("started " + totalBytes);
+        }
+
+        @Override
+        public void progress(URL url, long bytesRead, long totalBytes) {
+            Assert.assertTrue(bytesRead > this.lastProgress);
+            this.lastProgress = bytesRead;
+        }
+
+        @Override
+        public void retrying(URL url, long bytesRead, int attempt, IOException cause) {
+            this.events.add("retrying " + bytesRead + " " + attempt);
+        }
+
+        @Override
+        public void finished(URL url, long bytesRead) {
+            this.events.add("finished " + bytesRead);
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.content = new byte[200 * 1024];
+        new Random(42).nextBytes(this.content);
+
+        this.server = new StandInBucketServer();
+        this.server.put(KEY, this.content);
+
+        this.listener = new RecordingListener();
+        this.downloader = new HttpDownloader(1000, 300, 2, 10);
+        this.downloader.addListener(this.listener);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        this.server.stop();
+    }
+
+    private byte[] download() throws IOException {
+        InputStream is = this.downloader.open(new URL(this.server.getUrl() + "/" + KEY));
+
+        try {
+            return IOUtils.toByteArray(is);
+        }
+        finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    @Test
+    public void testDownload() throws IOException {
+        Assert.assertEquals(download(), this.content);
+        Assert.assertEquals(this.listener.events, listOf("started 204800", "finished 204800"));
+        Assert.assertEquals(this.listener.lastProgress, 204800);
+    }
+
+    @DataProvider(name = "dropData")
+    public Object[][] dropData() {
+        return new Object[][] {
+            { false },
+            { true },
+        };
+    }
+
+    @Test(dataProvider = "dropData")
+    public void testResumeAfterDroppedConnections(boolean ignoreRange) throws IOException {
+        this.server.dropConnections(KEY, 64 * 1024, 2, ignoreRange);
+
+        Assert.assertEquals(download(), this.content);
+        Assert.assertEquals(this.server.getHits(KEY), 3);
+        Assert.assertEquals(this.listener.events.get(this.listener.events.size() - 1), "finished 204800");
+
+        // with ranges every retry resumes where the previous connection stopped; without them the second connection
+        // fails again before getting past the data that was already read
+        List<String> retries = new ArrayList<>();
+        for (String event : this.listener.events) {
+            if (event.startsWith("retrying")) {
+                retries.add(event);
+            }
+        }
+        Assert.assertEquals(retries.size(), 2);
+        Assert.assertEquals(retries.get(0), "retrying 65536 1");
+        Assert.assertEquals(retries.get(1), ignoreRange ? "retrying 65536 2" : "retrying 131072 1");
+    }
+
+    @Test(dataProvider = "dropData")
+    public void testReplacedFileIsNotStitched(boolean ignoreRange) throws IOException {
+        byte[] replacement = new byte[this.content.length];
+        new Random(7).nextBytes(replacement);
+        this.server.dropConnections(KEY, 64 * 1024, 1, ignoreRange);
+        this.server.replaceOnDrop(replacement);
+
+        try {
+            download();
+            Assert.fail("Download of a file replaced half way through succeeded");
+        }
+        catch (IOException expected) {
+            // retrying would only stitch the files together again
+            Assert.assertEquals(this.server.getHits(KEY), 2);
+        }
+    }
+
+    @Test
+    public void testGivesUpAfterRetries() throws IOException {
+        this.server.dropConnections(KEY, 0, 10, false);
+
+        try {
+            download();
+            Assert.fail("Download succeeded although every connection was dropped");
+        }
+        catch (IOException expected) {
+            Assert.assertEquals(this.server.getHits(KEY), 3);
+        }
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        Assert.assertNull(this.downloader.open(new URL(this.server.getUrl() + "/missing")));
+        Assert.assertTrue(this.listener.events.isEmpty());
+    }
+
+    private static List<String> listOf(String... values) {
+        List<String> rv = new ArrayList<>();
+        for (String v : values) {
+            rv.add(v);
+        }
+        return rv;
+    }
+}
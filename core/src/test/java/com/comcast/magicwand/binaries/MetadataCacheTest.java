@@ -0,0 +1,171 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MetadataCacheTest {
+
+    private static final long TTL = 60 * 1000;
+
+    private File dir;
+    private DeferredExecutor executor;
+    private MetadataCache cache;
+
+    private static class DeferredExecutor implements Executor {
+        private Runnable pending;
+
+        @Override
+        public void execute(Runnable command) {
+            Assert.assertNull(this.pending, "only one refresh should be scheduled");
+            this.pending = command;
+        }
+
+        boolean runPending() {
+            Runnable r = this.pending;
+            this.pending = null;
+
+            if (null != r) {
+                r.run();
+            }
+            return null != r;
+        }
+    }
+
+    private static class CountingLoader implements Callable<String> {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final String value;
+
+        CountingLoader(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String call() throws IOException {
+            this.calls.incrementAndGet();
+
+            if (null == this.value) {
+                throw new IOException("offline");
+            }
+            return this.value;
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.dir = Files.createTempDirectory("metadata").toFile();
+        this.executor = new DeferredExecutor();
+        this.cache = new MetadataCache(this.dir, this.executor);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        FileUtils.deleteQuietly(this.dir);
+    }
+
+    @Test
+    public void testMissLoadsSynchronously() {
+        CountingLoader loader = new CountingLoader("2.19");
+
+        Assert.assertEquals(this.cache.get("latest", TTL, loader), "2.19");
+        Assert.assertEquals(this.cache.get("latest", TTL, loader), "2.19");
+        Assert.assertEquals(loader.calls.get(), 1);
+        Assert.assertFalse(this.executor.runPending());
+    }
+
+    @Test
+    public void testStaleValueIsServedWhileRefreshing() throws IOException {
+        File f = new File(this.dir, "latest");
+        FileUtils.writeStringToFile(f, "2.18");
+        Assert.assertTrue(f.setLastModified(System.currentTimeMillis() - 2 * TTL));
+
+        CountingLoader loader = new CountingLoader("2.19");
+
+        Assert.assertEquals(this.cache.get("latest", TTL, loader), "2.18");
+        Assert.assertEquals(this.cache.get("latest", TTL, loader), "2.18");
+        Assert.assertEquals(loader.calls.get(), 0);
+
+        Assert.assertTrue(this.executor.runPending());
+        Assert.assertEquals(loader.calls.get(), 1);
+        Assert.assertEquals(this.cache.get("latest", TTL, loader), "2.19");
+    }
+
+    @Test
+    public void testFailedRefreshKeepsStaleValue() throws IOException {
+        File f = new File(this.dir, "latest");
+        FileUtils.writeStringToFile(f, "2.18");
+        Assert.assertTrue(f.setLastModified(System.currentTimeMillis() - 2 * TTL));
+
+        Assert.assertEquals(this.cache.get("latest", TTL, new CountingLoader(null)), "2.18");
+        Assert.assertTrue(this.executor.runPending());
+        Assert.assertEquals(FileUtils.readFileToString(f), "2.18");
+    }
+
+    @Test
+    public void testNonBlockingMissUsesDefault() {
+        CountingLoader loader = new CountingLoader("fetched");
+
+        Assert.assertEquals(this.cache.getNonBlocking("table", TTL, loader, "bundled"), "bundled");
+        Assert.assertEquals(loader.calls.get(), 0);
+
+        Assert.assertTrue(this.executor.runPending());
+        Assert.assertEquals(this.cache.getNonBlocking("table", TTL, loader, "bundled"), "fetched");
+    }
+
+    @Test
+    public void testMissWithFailingLoader() {
+        Assert.assertNull(this.cache.get("latest", TTL, new CountingLoader(null)));
+        Assert.assertFalse(new File(this.dir, "latest").exists());
+    }
+
+    @Test
+    public void testFailedLoadIsRemembered() {
+        CountingLoader failing = new CountingLoader(null);
+
+        Assert.assertNull(this.cache.get("latest", TTL, failing));
+        Assert.assertNull(this.cache.get("latest", TTL, failing));
+        Assert.assertEquals(this.cache.getNonBlocking("latest", TTL, failing, "bundled"), "bundled");
+        Assert.assertFalse(this.executor.runPending());
+        Assert.assertEquals(failing.calls.get(), 1);
+
+        CountingLoader other = new CountingLoader("2.19");
+        Assert.assertEquals(this.cache.get("other", TTL, other), "2.19");
+        Assert.assertEquals(other.calls.get(), 1);
+    }
+
+    @Test
+    public void testFailedLoadIsRetriedOnceExpired() {
+        MetadataCache cache = new MetadataCache(this.dir, this.executor, 0);
+        CountingLoader failing = new CountingLoader(null);
+
+        Assert.assertNull(cache.get("latest", TTL, failing));
+        Assert.assertNull(cache.get("latest", TTL, failing));
+        Assert.assertEquals(failing.calls.get(), 2);
+
+        Assert.assertEquals(cache.get("latest", TTL, new CountingLoader("2.19")), "2.19");
+    }
+}
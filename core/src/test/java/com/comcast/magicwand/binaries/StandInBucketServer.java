@@ -0,0 +1,223 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.binaries;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for a storage bucket: serves files by key and answers <code>?prefix=</code> with a bucket listing,
+ * split into pages of {@link #setPageSize(int, boolean)} keys. Downloads can be made to stall part way through with
+ * {@link #dropConnections(String, int, int, boolean)}.
+ */
+class StandInBucketServer implements HttpHandler {
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private volatile int pageSize = Integer.MAX_VALUE;
+    private volatile boolean sendNextMarker;
+    private volatile String dropKey;
+    private volatile int dropAfter;
+    private volatile boolean ignoreRange;
+    private volatile byte[] replacement;
+    private final AtomicInteger drops = new AtomicInteger();
+
+    StandInBucketServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", this);
+        this.server.start();
+    }
+
+    static byte[] zip(String name, byte[] content) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ZipOutputStream zos = new ZipOutputStream(baos);
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(content);
+        zos.closeEntry();
+        zos.close();
+
+        return baos.toByteArray();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    void put(String key, byte[] content) {
+        this.files.put(key, content);
+    }
+
+    int getHits(String key) {
+        AtomicInteger rv = this.hits.get(key);
+
+        return (null == rv) ? 0 : rv.get();
+    }
+
+    void setPageSize(int pageSize, boolean sendNextMarker) {
+        this.pageSize = pageSize;
+        this.sendNextMarker = sendNextMarker;
+    }
+
+    /**
+     * Makes the next downloads of a file stop after part of it was sent, leaving the client waiting on a dead
+     * connection until its read timeout expires
+     *
+     * @param key File to drop downloads of
+     * @param after Number of bytes sent before dropping
+     * @param times Number of downloads to drop
+     * @param ignoreRange True to always send the file from the start, like servers without range support
+     */
+    void dropConnections(String key, int after, int times, boolean ignoreRange) {
+        this.dropKey = key;
+        this.dropAfter = after;
+        this.drops.set(times);
+        this.ignoreRange = ignoreRange;
+    }
+
+    /**
+     * Makes every dropped download replace the file, as if it was republished while being downloaded
+     *
+     * @param content New content of the dropped file
+     */
+    void replaceOnDrop(byte[] content) {
+        this.replacement = content;
+    }
+
+    void stop() {
+        this.server.stop(0);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String key = exchange.getRequestURI().getPath().substring(1);
+        String query = exchange.getRequestURI().getRawQuery();
+        byte[] body;
+
+        if (key.isEmpty() && null != query && query.startsWith("prefix=")) {
+            Map<String, String> params = new HashMap<>();
+            for (String param : query.split("&")) {
+                int eq = param.indexOf('=');
+                params.put(param.substring(0, eq), URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+            }
+            body = listing(params.get("prefix"), params.get("marker"));
+        }
+        else {
+            body = this.files.get(key);
+        }
+
+        this.hits.putIfAbsent(key, new AtomicInteger());
+        this.hits.get(key).incrementAndGet();
+
+        if (null == body) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        String etag = "\"" + md5(body) + "\"";
+        int start = 0;
+
+        if (null != range && !this.ignoreRange && range.startsWith("bytes=") && range.endsWith("-")
+                && (null == ifRange || ifRange.equals(etag))) {
+            start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + start + "-" + (body.length - 1) + "/" + body.length);
+        }
+
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.sendResponseHeaders((0 == start) ? 200 : 206, body.length - start);
+        OutputStream os = exchange.getResponseBody();
+
+        if (key.equals(this.dropKey) && this.drops.getAndDecrement() > 0) {
+            if (null != this.replacement) {
+                this.files.put(key, this.replacement);
+            }
+            os.write(body, start, Math.min(this.dropAfter, body.length - start));
+            os.flush();
+            try {
+                // closing a fixed length response early fails and abandons the exchange
+                os.close();
+            }
+            catch (IOException expected) {
+                return;
+            }
+        }
+
+        os.write(body, start, body.length - start);
+        os.close();
+    }
+
+    private static String md5(byte[] content) {
+        try {
+            return Checksum.toHex(MessageDigest.getInstance("MD5").digest(content));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] listing(String prefix, String marker) {
+        StringBuilder keys = new StringBuilder();
+        String last = null;
+        int count = 0;
+        boolean truncated = false;
+
+        for (String key : new TreeSet<>(this.files.keySet())) {
+            if (!key.startsWith(prefix) || (null != marker && key.compareTo(marker) <= 0)) {
+                continue;
+            }
+            if (count == this.pageSize) {
+                truncated = true;
+                break;
+            }
+            keys.append("<Contents><Key>").append(key).append("</Key><ETag>\"").append(md5(this.files.get(key)))
+                    .append("\"</ETag></Contents>");
+            last = key;
+            count++;
+        }
+
+        StringBuilder sb = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?><ListBucketResult>");
+        sb.append("<Prefix>").append(prefix).append("</Prefix>");
+        sb.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (truncated && this.sendNextMarker) {
+            sb.append("<NextMarker>").append(last).append("</NextMarker>");
+        }
+        sb.append(keys).append("</ListBucketResult>");
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -18,10 +18,12 @@ package com.comcast.magicwand.builders;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Iterator;
 
+import org.openqa.selenium.Dimension;
 import org.openqa.selenium.remote.BrowserType;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.AfterTest;
@@ -218,4 +220,17 @@ public class PhoenixDriverIngredientsTest {
         assertEquals(i.getBrowser(), BrowserType.CHROME, "Unexpected Browser Type");
         assertNull(i.getMobileOS(), "Mobile OS should've been null");
     }
+
+    @Test
+    public void testWindowSize() {
+        assertNull(new PhoenixDriverIngredients().getWindowSize(), "Window should be left alone by default");
+
+        PhoenixDriverIngredients i = new PhoenixDriverIngredients().withHeadless();
+        assertTrue(i.isHeadless(), "Headless was requested");
+        assertEquals(i.getWindowSize(), PhoenixDriverIngredients.DEFAULT_WINDOW_SIZE, "Unexpected headless size");
+
+        i = new PhoenixDriverIngredients().withLeanLaunch().withWindowSize(800, 600);
+        assertTrue(i.isLeanLaunch(), "Lean launch was requested");
+        assertEquals(i.getWindowSize(), new Dimension(800, 600), "Unexpected window size");
+    }
 }
@@ -18,6 +18,7 @@ package com.comcast.magicwand.drivers;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -30,6 +31,8 @@ import java.util.Set;
 
 import org.mockito.Mockito;
 import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.NoSuchWindowException;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
@@ -44,6 +47,8 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.comcast.cookie.CookieHandler;
+import com.comcast.magicwand.metrics.PageLoadMetrics;
+import com.comcast.magicwand.metrics.PageLoadTiming;
 
 public class AbstractPhoenixDriverTest {
 
@@ -319,6 +324,124 @@ public class AbstractPhoenixDriverTest {
         Assert.assertEquals(expected, actual);
     }
 
+    /** Metrics counting the pages they are asked to measure */
+    private static class CountingMetrics extends PageLoadMetrics {
+        int captures;
+
+        @Override
+        public PageLoadTiming capture(WebDriver driver) {
+            this.captures++;
+            return null;
+        }
+    }
+
+    @Test
+    public void testGetMeasuresPageLoad() {
+        CountingMetrics metrics = new CountingMetrics();
+        this.myTestObj.setPageLoadMetrics(metrics);
+
+        this.myTestObj.get("test");
+
+        verify(this.webDriverMock).get("test");
+        Assert.assertEquals(metrics.captures, 1);
+    }
+
+    @Test
+    public void testNavigateMeasuresPageLoad() {
+        final Navigation navigation = mock(Navigation.class);
+        CountingMetrics metrics = new CountingMetrics();
+        this.myTestObj.setPageLoadMetrics(metrics);
+        when(this.webDriverMock.navigate()).thenReturn(navigation);
+
+        this.myTestObj.navigate().to("test");
+        this.myTestObj.navigate().back();
+        this.myTestObj.navigate().refresh();
+
+        verify(navigation).to("test");
+        verify(navigation).back();
+        verify(navigation).refresh();
+        Assert.assertEquals(metrics.captures, 3);
+    }
+
+    @Test
+    public void testSwitchesElided() {
+        final TargetLocator locator = mock(TargetLocator.class);
+        when(this.webDriverMock.switchTo()).thenReturn(locator);
+        when(this.webDriverMock.getWindowHandle()).thenReturn("w1");
+        this.myTestObj.getSessionState().setEnabled(true);
+
+        this.myTestObj.switchTo().defaultContent();
+        this.myTestObj.switchTo().defaultContent();
+        this.myTestObj.switchTo().window("w1");
+        this.myTestObj.switchTo().window("w1");
+        Assert.assertEquals(this.myTestObj.getWindowHandle(), "w1");
+        Assert.assertEquals(this.myTestObj.getWindowHandle(), "w1");
+
+        //entering a frame means the next window switch has to go through, which leaves the frame again
+        this.myTestObj.switchTo().frame("f");
+        this.myTestObj.switchTo().window("w1");
+        this.myTestObj.switchTo().defaultContent();
+        this.myTestObj.switchTo().defaultContent();
+
+        verify(locator, times(1)).defaultContent();
+        verify(locator, times(1)).frame("f");
+        verify(locator, times(2)).window("w1");
+        verify(this.webDriverMock, times(1)).getWindowHandle();
+
+        SessionState state = this.myTestObj.getSessionState();
+        Assert.assertEquals(state.getElidedFrameSwitches(), 3);
+        Assert.assertEquals(state.getElidedWindowSwitches(), 1);
+        Assert.assertEquals(state.getElidedWindowHandles(), 1);
+        Assert.assertEquals(state.getElidedCalls(), 5);
+    }
+
+    @Test
+    public void testSessionStateInvalidated() {
+        final TargetLocator locator = mock(TargetLocator.class);
+        when(this.webDriverMock.switchTo()).thenReturn(locator);
+        when(this.webDriverMock.navigate()).thenReturn(mock(Navigation.class));
+        this.myTestObj.getSessionState().setEnabled(true);
+
+        this.myTestObj.switchTo().defaultContent();
+        this.myTestObj.get("test");
+        this.myTestObj.switchTo().defaultContent();
+        this.myTestObj.navigate().back();
+        this.myTestObj.switchTo().defaultContent();
+        this.myTestObj.close();
+        this.myTestObj.switchTo().defaultContent();
+
+        //missing elements leave the state alone, other errors do not
+        when(this.webDriverMock.findElement(Mockito.any(By.class))).thenThrow(new NoSuchElementException("none"));
+        try {
+            this.myTestObj.findElement(By.id("x"));
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        this.myTestObj.switchTo().defaultContent();
+
+        when(this.webDriverMock.findElements(Mockito.any(By.class))).thenThrow(new NoSuchWindowException("gone"));
+        try {
+            this.myTestObj.findElements(By.id("x"));
+        } catch (NoSuchWindowException e) {
+            // expected
+        }
+        this.myTestObj.switchTo().defaultContent();
+
+        verify(locator, times(5)).defaultContent();
+    }
+
+    @Test
+    public void testSessionStateDisabled() {
+        final TargetLocator locator = mock(TargetLocator.class);
+        when(this.webDriverMock.switchTo()).thenReturn(locator);
+
+        this.myTestObj.switchTo().defaultContent();
+        this.myTestObj.switchTo().defaultContent();
+
+        verify(locator, times(2)).defaultContent();
+        Assert.assertEquals(this.myTestObj.getSessionState().getElidedCalls(), 0);
+    }
+
     @Test
     public void testNavigateNull() {
         Navigation actual;
@@ -407,6 +530,23 @@ public class AbstractPhoenixDriverTest {
         Assert.assertEquals(this.webDriverMock, actual);
     }
 
+    @Test
+    public void testScriptCacheForgottenOnNavigation() {
+        when(this.webDriverMock.executeScript(Mockito.anyString(), Mockito.<Object>anyVararg())).thenReturn("ok");
+
+        ScriptCache cache = this.myTestObj.getScriptCache();
+        cache.register("echo", "function(a) { return a; }");
+
+        cache.call("echo", "a");
+        cache.call("echo", "b");
+        this.myTestObj.get("test");
+        cache.call("echo", "c");
+
+        verify(this.webDriverMock, times(1)).executeScript(Mockito.eq(ScriptCache.CALL_SCRIPT),
+            Mockito.<Object>anyVararg());
+        Assert.assertEquals(cache.getInstalls(), 2);
+    }
+
     @Test
     public void testClearAllCookies() {
         this.myTestObj.clearAllCookies();
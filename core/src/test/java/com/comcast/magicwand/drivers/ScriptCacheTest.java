@@ -0,0 +1,164 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers;
+
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ScriptCacheTest {
+
+    //stands in for the page: remembers the token of the last installation until it "navigates"
+    private static class FakePage implements Answer<Object> {
+        String token;
+        final List<String> scripts = new ArrayList<>();
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            String script = (String) args[0];
+            this.scripts.add(script);
+
+            if (ScriptCache.CALL_SCRIPT.equals(script)) {
+                if (!args[1].equals(this.token)) {
+                    return ScriptCache.MISSING;
+                }
+            }
+            else {
+                this.token = (String) args[1];
+            }
+
+            return args[2] + ":" + (args.length > 3 ? args[3] : null);
+        }
+
+        int count(boolean calls) {
+            int rv = 0;
+            for (String script : this.scripts) {
+                if (calls == ScriptCache.CALL_SCRIPT.equals(script)) {
+                    rv++;
+                }
+            }
+            return rv;
+        }
+    }
+
+    private RemoteWebDriver driver;
+    private FakePage page;
+    private ScriptCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        this.driver = mock(RemoteWebDriver.class);
+        this.page = new FakePage();
+        when(this.driver.executeScript(anyString(), anyVararg())).thenAnswer(this.page);
+
+        this.cache = new ScriptCache(this.driver);
+        this.cache.register("serialize", "function(el) { return el.outerHTML; }");
+    }
+
+    @Test
+    public void testInstalledOncePerDocument() {
+        Assert.assertEquals(this.cache.call("serialize", "a"), "f0:a");
+        Assert.assertEquals(this.cache.call("serialize", "b"), "f0:b");
+        Assert.assertEquals(this.cache.call("serialize", "c"), "f0:c");
+
+        Assert.assertEquals(this.page.count(false), 1);
+        Assert.assertEquals(this.page.count(true), 2);
+        Assert.assertTrue(this.page.scripts.get(0).contains("function(el) { return el.outerHTML; }"));
+        Assert.assertEquals(this.cache.getCalls(), 3);
+        Assert.assertEquals(this.cache.getInstalls(), 1);
+        Assert.assertEquals(this.cache.getMisses(), 0);
+    }
+
+    @Test
+    public void testReinstalledAfterUnseenNavigation() {
+        this.cache.call("serialize", "a");
+        this.page.token = null;
+
+        Assert.assertEquals(this.cache.call("serialize", "b"), "f0:b");
+        Assert.assertEquals(this.cache.call("serialize", "c"), "f0:c");
+
+        Assert.assertEquals(this.cache.getInstalls(), 2);
+        Assert.assertEquals(this.cache.getMisses(), 1);
+    }
+
+    @Test
+    public void testInvalidateSkipsTheProbe() {
+        this.cache.call("serialize", "a");
+        this.cache.invalidate();
+        this.page.token = null;
+
+        this.cache.call("serialize", "b");
+
+        Assert.assertEquals(this.page.count(true), 0);
+        Assert.assertEquals(this.cache.getInstalls(), 2);
+        Assert.assertEquals(this.cache.getMisses(), 0);
+    }
+
+    @Test
+    public void testRegisteringReinstalls() {
+        this.cache.call("serialize", "a");
+        this.cache.register("serialize", "function(el) { return el.outerHTML; }");
+        this.cache.call("serialize", "a");
+        Assert.assertEquals(this.cache.getInstalls(), 1);
+
+        this.cache.register("visible", "function(el) { return el.offsetWidth > 0; }");
+        Assert.assertTrue(this.cache.isRegistered("visible"));
+        Assert.assertEquals(this.cache.call("visible", "x"), "f1:x");
+
+        Assert.assertEquals(this.cache.getInstalls(), 2);
+        String install = this.page.scripts.get(this.page.scripts.size() - 1);
+        Assert.assertTrue(install.contains("s.fns.f0 = "));
+        Assert.assertTrue(install.contains("s.fns.f1 = "));
+    }
+
+    @Test
+    public void testPhoenixDriverUnwrapped() {
+        PhoenixDriver phoenix = mock(PhoenixDriver.class);
+        when(phoenix.getDriver()).thenReturn(this.driver);
+
+        ScriptCache wrapped = new ScriptCache(phoenix);
+        wrapped.register("serialize", "function(el) { return el.outerHTML; }");
+
+        Assert.assertEquals(wrapped.call("serialize", "a"), "f0:a");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownScript() {
+        this.cache.call("missing");
+    }
+
+    @Test(expectedExceptions = WebDriverException.class)
+    public void testDriverWithoutScripts() {
+        ScriptCache plain = new ScriptCache(mock(WebDriver.class));
+        plain.register("serialize", "function(el) { return el.outerHTML; }");
+
+        plain.call("serialize", "a");
+    }
+}
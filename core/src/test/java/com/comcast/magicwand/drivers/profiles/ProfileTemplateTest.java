@@ -0,0 +1,129 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.profiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ProfileTemplateTest {
+
+    private File root;
+    private File templateDir;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.root = Files.createTempDirectory("profile-template").toFile();
+        this.templateDir = new File(this.root, "template");
+
+        write("prefs.js", "user_pref(\"browser.startup.homepage\", \"about:blank\");");
+        write("cache2/entries/0A1B2C", "cached response");
+        write("extensions/helper@example.com.xpi", "packed extension");
+        write("lock", "");
+    }
+
+    @AfterMethod
+    public void teardown() {
+        FileUtils.deleteQuietly(this.root);
+    }
+
+    private void write(String path, String content) throws IOException {
+        FileUtils.writeStringToFile(new File(this.templateDir, path), content, StandardCharsets.UTF_8);
+    }
+
+    private String read(File dir, String path) throws IOException {
+        return FileUtils.readFileToString(new File(dir, path), StandardCharsets.UTF_8);
+    }
+
+    @DataProvider(name = "linkedPaths")
+    public Object[][] linkedPaths() {
+        return new Object[][] {
+            { "extensions/helper@example.com.xpi", true },
+            { "Default/Extensions/helper.CRX", true },
+            { "cache2/entries/0A1B2C", false },
+            { "Default/Cache/data_1", false },
+            { "Default/Cache/index", false },
+            { "Default/GPUCache/index", false },
+            { "prefs.js", false },
+            { "Default/Preferences", false },
+            { "cache2", false },
+        };
+    }
+
+    @Test(dataProvider = "linkedPaths")
+    public void testIsLinked(String path, boolean expected) {
+        Assert.assertEquals(ProfileTemplate.isLinked(Paths.get(path)), expected);
+    }
+
+    @Test
+    public void testCloneLinksExtensionsAndCopiesTheRest() throws IOException {
+        ProfileTemplate template = new ProfileTemplate("test", this.templateDir);
+        File clone = new File(this.root, "clone");
+
+        template.cloneTo(clone);
+
+        Assert.assertEquals(read(clone, "cache2/entries/0A1B2C"), "cached response");
+        Assert.assertEquals(read(clone, "extensions/helper@example.com.xpi"), "packed extension");
+        Assert.assertFalse(new File(clone, "lock").exists());
+        Assert.assertTrue(Files.isSameFile(new File(clone, "extensions/helper@example.com.xpi").toPath(),
+                new File(this.templateDir, "extensions/helper@example.com.xpi").toPath()));
+
+        //writing to the copied preferences or cache must not reach the template
+        FileUtils.writeStringToFile(new File(clone, "cache2/entries/0A1B2C"), "changed", StandardCharsets.UTF_8);
+        Assert.assertEquals(read(this.templateDir, "cache2/entries/0A1B2C"), "cached response");
+        FileUtils.writeStringToFile(new File(clone, "prefs.js"), "changed", StandardCharsets.UTF_8);
+        Assert.assertEquals(read(this.templateDir, "prefs.js"),
+                "user_pref(\"browser.startup.homepage\", \"about:blank\");");
+    }
+
+    @Test
+    public void testCloneCopiesWhenLinksAreNotSupported() throws IOException {
+        ProfileTemplate template = new ProfileTemplate("test", this.templateDir) {
+            @Override
+            protected void link(Path link, Path existing) throws IOException {
+                throw new FileSystemException(link.toString(), existing.toString(), "Invalid cross-device link");
+            }
+        };
+        File clone = new File(this.root, "clone");
+
+        template.cloneTo(clone);
+
+        Assert.assertEquals(read(clone, "extensions/helper@example.com.xpi"), "packed extension");
+        Assert.assertFalse(Files.isSameFile(new File(clone, "extensions/helper@example.com.xpi").toPath(),
+                new File(this.templateDir, "extensions/helper@example.com.xpi").toPath()));
+    }
+
+    @Test
+    public void testCopyProfileSkipsLockFiles() throws IOException {
+        File copy = new File(this.root, "copy");
+
+        ProfileTemplate.copyProfile(this.templateDir, copy);
+
+        Assert.assertTrue(new File(copy, "prefs.js").isFile());
+        Assert.assertFalse(new File(copy, "lock").exists());
+    }
+}
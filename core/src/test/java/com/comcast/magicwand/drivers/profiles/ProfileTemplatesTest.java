@@ -0,0 +1,106 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.profiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ProfileTemplatesTest {
+
+    private File root;
+    private ProfileTemplates templates;
+
+    private static class CountingPreparer implements ProfilePreparer {
+        int calls = 0;
+        boolean fail = false;
+
+        @Override
+        public void prepare(File dir) throws IOException {
+            this.calls++;
+            FileUtils.writeStringToFile(new File(dir, "prefs.js"), "prefs", StandardCharsets.UTF_8);
+            if (this.fail) {
+                throw new IOException("Preparation failed");
+            }
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.root = Files.createTempDirectory("profile-templates").toFile();
+        this.templates = new ProfileTemplates(this.root);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        FileUtils.deleteQuietly(this.root);
+    }
+
+    @Test
+    public void testTemplateIsPreparedOnce() throws IOException {
+        CountingPreparer preparer = new CountingPreparer();
+
+        ProfileTemplate first = this.templates.get("firefox-default", preparer);
+        ProfileTemplate second = this.templates.get("firefox-default", preparer);
+
+        Assert.assertSame(second, first);
+        Assert.assertEquals(preparer.calls, 1);
+        Assert.assertTrue(new File(first.getDirectory(), "prefs.js").isFile());
+    }
+
+    @Test
+    public void testFailedPreparationIsRetried() throws IOException {
+        CountingPreparer preparer = new CountingPreparer();
+        preparer.fail = true;
+
+        try {
+            this.templates.get("chrome-1", preparer);
+            Assert.fail("Preparation should have failed");
+        } catch (IOException e) {
+            //expected
+        }
+
+        preparer.fail = false;
+        ProfileTemplate template = this.templates.get("chrome-1", preparer);
+
+        Assert.assertEquals(preparer.calls, 2);
+        Assert.assertTrue(template.getDirectory().isDirectory());
+    }
+
+    @Test
+    public void testClonesAreIndependent() throws IOException {
+        ProfileTemplate template = this.templates.get("chrome-1", new CountingPreparer());
+
+        File first = this.templates.createClone(template);
+        File second = this.templates.createClone(template);
+
+        Assert.assertNotEquals(second, first);
+        Assert.assertTrue(first.getAbsolutePath().startsWith(this.root.getAbsolutePath()));
+        Assert.assertTrue(new File(second, "prefs.js").isFile());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidName() throws IOException {
+        this.templates.get("../escape", new CountingPreparer());
+    }
+}
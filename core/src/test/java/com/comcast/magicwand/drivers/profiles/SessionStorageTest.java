@@ -0,0 +1,216 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.profiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SessionStorageTest {
+
+    private static final long LIMIT = 1024 * 1024;
+
+    private File ram;
+    private File disk;
+
+    private static class SizedStorage extends SessionStorage {
+        private final long usable;
+
+        SizedStorage(File ramDir, File diskDir, long usable) {
+            super(ramDir, diskDir, LIMIT);
+            this.usable = usable;
+        }
+
+        @Override
+        protected long getUsableSpace(File dir) {
+            return this.usable;
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.ram = Files.createTempDirectory("session-ram").toFile();
+        this.disk = Files.createTempDirectory("session-disk").toFile();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        FileUtils.deleteQuietly(this.ram);
+        FileUtils.deleteQuietly(this.disk);
+    }
+
+    @Test
+    public void testSessionIsPlacedInRam() throws IOException {
+        SessionDirectory session = new SizedStorage(this.ram, this.disk, 10 * LIMIT).allocate("chrome");
+
+        try {
+            Assert.assertTrue(session.isRamBacked());
+            Assert.assertEquals(session.getRoot().getParentFile(), this.ram);
+            Assert.assertTrue(session.getProfileDir().isDirectory());
+            Assert.assertTrue(session.getCacheDir().isDirectory());
+            Assert.assertTrue(session.getDownloadDir().isDirectory());
+            Assert.assertEquals(session.getLimit(), LIMIT);
+            Assert.assertEquals(session.getCacheLimit(), LIMIT / 2);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testFullRamFallsBackToDisk() throws IOException {
+        SessionDirectory session = new SizedStorage(this.ram, this.disk, LIMIT - 1).allocate("firefox");
+
+        try {
+            Assert.assertFalse(session.isRamBacked());
+            Assert.assertEquals(session.getRoot().getParentFile(), this.disk);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testMissingRamDirFallsBackToDisk() throws IOException {
+        File missing = new File(this.ram, "missing");
+        SessionDirectory session = new SizedStorage(missing, this.disk, 10 * LIMIT).allocate("phantomjs");
+
+        try {
+            Assert.assertFalse(session.isRamBacked());
+            Assert.assertFalse(missing.exists());
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testLiveSessionsReserveTheirLimit() throws IOException {
+        SessionStorage storage = new SizedStorage(this.ram, this.disk, LIMIT + LIMIT / 2);
+        SessionDirectory first = storage.allocate("chrome");
+        SessionDirectory second = storage.allocate("chrome");
+
+        try {
+            Assert.assertTrue(first.isRamBacked());
+            Assert.assertFalse(second.isRamBacked());
+        } finally {
+            first.close();
+            second.close();
+        }
+
+        SessionDirectory third = storage.allocate("chrome");
+        try {
+            Assert.assertTrue(third.isRamBacked(), "Closed sessions should no longer reserve space");
+        } finally {
+            third.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentSessionsDoNotShareRoom() throws Exception {
+        final SessionStorage storage = new SizedStorage(this.ram, this.disk, 3 * LIMIT + LIMIT / 2);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<SessionDirectory>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<SessionDirectory>() {
+                    @Override
+                    public SessionDirectory call() throws Exception {
+                        start.await();
+                        return storage.allocate("chrome");
+                    }
+                }));
+            }
+            start.countDown();
+
+            List<SessionDirectory> sessions = new ArrayList<>();
+            for (Future<SessionDirectory> future : futures) {
+                sessions.add(future.get(10, TimeUnit.SECONDS));
+            }
+
+            int inRam = 0;
+            for (SessionDirectory session : sessions) {
+                if (session.isRamBacked()) {
+                    inRam++;
+                }
+                session.close();
+            }
+            Assert.assertEquals(inRam, 3);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCloseDeletesSession() throws IOException {
+        SessionDirectory session = new SizedStorage(this.ram, this.disk, 10 * LIMIT).allocate("chrome");
+        FileUtils.writeStringToFile(new File(session.getDownloadDir(), "report.csv"), "a,b", "UTF-8");
+
+        Assert.assertTrue(SessionStorage.getLive().contains(session));
+        session.close();
+        session.close();
+
+        Assert.assertTrue(session.isClosed());
+        Assert.assertFalse(session.getRoot().exists());
+        Assert.assertFalse(SessionStorage.getLive().contains(session));
+    }
+
+    @Test
+    public void testStaleSessionsAreSwept() throws IOException {
+        File stale = new File(this.ram, SessionStorage.DIR_PREFIX + Integer.MAX_VALUE + "-chrome-1");
+        File foreign = new File(this.ram, "unrelated");
+        FileUtils.forceMkdir(new File(stale, SessionDirectory.CACHE_DIR_NAME));
+        FileUtils.forceMkdir(foreign);
+
+        SessionDirectory session = new SizedStorage(this.ram, this.disk, 10 * LIMIT).allocate("chrome");
+        try {
+            Assert.assertFalse(stale.exists());
+            Assert.assertTrue(foreign.exists());
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testForIngredients() {
+        Assert.assertNull(SessionStorage.forIngredients(new PhoenixDriverIngredients()));
+
+        SessionStorage storage =
+                SessionStorage.forIngredients(new PhoenixDriverIngredients().withRamStorage(this.ram, LIMIT));
+        Assert.assertNotNull(storage);
+        Assert.assertEquals(storage.getLimit(), LIMIT);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testLimitMustBePositive() {
+        new PhoenixDriverIngredients().withRamStorage(0);
+    }
+}
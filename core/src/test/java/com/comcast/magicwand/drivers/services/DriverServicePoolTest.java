@@ -0,0 +1,219 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.FileUtils;
+import org.openqa.selenium.remote.service.DriverService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DriverServicePoolTest {
+
+    private HttpServer server;
+    private DriverServicePool pool;
+    private FakeServiceFactory factory;
+    private volatile String sessions = "[]";
+    private File registryDir;
+
+    /** Service that pretends to run a driver, answering its status endpoint through a local server */
+    private static class FakeService extends DriverService {
+        int starts = 0;
+        int stops = 0;
+        boolean running = false;
+
+        FakeService(File executable, int port) throws IOException {
+            super(executable, port, ImmutableList.<String>of(), ImmutableMap.<String, String>of());
+        }
+
+        @Override
+        public boolean isRunning() {
+            return this.running;
+        }
+
+        @Override
+        public void start() {
+            this.starts++;
+            this.running = true;
+        }
+
+        @Override
+        public void stop() {
+            this.stops++;
+            this.running = false;
+        }
+    }
+
+    private static class FakeServiceFactory implements DriverServiceFactory<FakeService> {
+        final List<FakeService> created = new ArrayList<>();
+        int port;
+
+        FakeServiceFactory(int port) {
+            this.port = port;
+        }
+
+        @Override
+        public FakeService createService(File executable) throws IOException {
+            FakeService service = new FakeService(executable, this.port);
+            this.created.add(service);
+            return service;
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/status", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        this.server.createContext("/sessions", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = ("{\"status\":0,\"value\":" + sessions + "}").getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        this.server.start();
+
+        this.pool = new DriverServicePool();
+        this.factory = new FakeServiceFactory(this.server.getAddress().getPort());
+    }
+
+    @AfterMethod
+    public void teardown() {
+        this.pool.shutdown();
+        this.server.stop(0);
+        FileUtils.deleteQuietly(this.registryDir);
+    }
+
+    @Test
+    public void testServiceIsShared() throws IOException {
+        FakeService first = this.pool.acquire(new File("drivers/chromedriver"), this.factory);
+        FakeService second = this.pool.acquire(new File("drivers/../drivers/chromedriver"), this.factory);
+
+        Assert.assertSame(second, first);
+        Assert.assertEquals(first.starts, 1);
+        Assert.assertEquals(this.factory.created.size(), 1);
+        Assert.assertEquals(this.pool.size(), 1);
+    }
+
+    @Test
+    public void testServicesAreKeyedByExecutableAndVariant() throws IOException {
+        FakeService v219 = this.pool.acquire(new File("2.19/chromedriver"), this.factory);
+        FakeService v220 = this.pool.acquire(new File("2.20/chromedriver"), this.factory);
+        FakeService withArgs = this.pool.acquire(new File("2.20/chromedriver"), "--verbose", this.factory);
+
+        Assert.assertNotSame(v220, v219);
+        Assert.assertNotSame(withArgs, v220);
+        Assert.assertEquals(this.pool.size(), 3);
+    }
+
+    @Test
+    public void testCrashedServiceIsRestarted() throws IOException {
+        FakeService crashed = this.pool.acquire(new File("chromedriver"), this.factory);
+        crashed.running = false;
+
+        FakeService restarted = this.pool.acquire(new File("chromedriver"), this.factory);
+
+        Assert.assertNotSame(restarted, crashed);
+        Assert.assertEquals(crashed.stops, 1);
+        Assert.assertTrue(restarted.isRunning());
+        Assert.assertEquals(this.pool.size(), 1);
+    }
+
+    @Test
+    public void testUnresponsiveServiceIsRestarted() throws IOException {
+        FakeService hung = this.pool.acquire(new File("chromedriver"), this.factory);
+        this.server.removeContext("/status");
+
+        FakeService restarted = this.pool.acquire(new File("chromedriver"), this.factory);
+
+        Assert.assertNotSame(restarted, hung);
+        Assert.assertEquals(hung.stops, 1);
+    }
+
+    @Test
+    public void testShutdownStopsServices() throws IOException {
+        FakeService chrome = this.pool.acquire(new File("chromedriver"), this.factory);
+        FakeService ie = this.pool.acquire(new File("IEDriverServer.exe"), this.factory);
+
+        this.pool.shutdown();
+
+        Assert.assertFalse(chrome.isRunning());
+        Assert.assertFalse(ie.isRunning());
+        Assert.assertEquals(this.pool.size(), 0);
+    }
+
+    @Test
+    public void testIdleServiceIsStopped() throws IOException {
+        this.pool = new DriverServicePool(null, 1000);
+        FakeService service = this.pool.acquire(new File("chromedriver"), this.factory);
+        long now = System.currentTimeMillis();
+
+        Assert.assertEquals(this.pool.reapIdle(now), 0);
+
+        this.sessions = "[{\"id\":\"abc\",\"capabilities\":{}}]";
+        Assert.assertEquals(this.pool.reapIdle(now + 5000), 0);
+        Assert.assertTrue(service.isRunning());
+
+        this.sessions = "[]";
+        Assert.assertEquals(this.pool.reapIdle(now + 5000), 1);
+        Assert.assertFalse(service.isRunning());
+        Assert.assertEquals(this.pool.size(), 0);
+    }
+
+    @Test
+    public void testProcessesLeftBehindAreReaped() throws IOException {
+        this.registryDir = Files.createTempDirectory("reaper").toFile();
+        FakeProcessReaper reaper = new FakeProcessReaper(this.registryDir);
+        reaper.add(200, FakeProcessReaper.OWN_PID, "/drivers/chromedriver --port=" + this.server.getAddress().getPort());
+        reaper.add(201, 200, "chrome --type=browser");
+        reaper.add(300, FakeProcessReaper.OWN_PID, "/drivers/chromedriver --port=1");
+        this.pool = new DriverServicePool(reaper, 0);
+
+        FakeService crashed = this.pool.acquire(new File("/drivers/chromedriver"), this.factory);
+        Assert.assertEquals(reaper.getTracked(), Collections.singleton(200));
+
+        crashed.running = false;
+        this.pool.acquire(new File("/drivers/chromedriver"), this.factory);
+
+        Assert.assertEquals(reaper.killed, Arrays.asList(200, 201));
+        Assert.assertTrue(reaper.getTracked().isEmpty());
+    }
+}
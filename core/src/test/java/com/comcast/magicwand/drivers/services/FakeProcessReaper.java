@@ -0,0 +1,59 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.services;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reaper working on made up processes, recording what it would have killed
+ */
+class FakeProcessReaper extends ProcessReaper {
+    static final int OWN_PID = 100;
+
+    final Map<Integer, String[]> processes = new LinkedHashMap<>();
+    final List<Integer> killed = new ArrayList<>();
+
+    FakeProcessReaper(File registryDir) {
+        super(registryDir, OWN_PID);
+        add(OWN_PID, 1, "java -jar tests.jar");
+    }
+
+    void add(int pid, int ppid, String command) {
+        this.processes.put(pid, new String[] { Integer.toString(ppid), command });
+    }
+
+    @Override
+    protected ProcessTable captureProcesses() {
+        ProcessTable rv = new ProcessTable();
+
+        for (Map.Entry<Integer, String[]> e : this.processes.entrySet()) {
+            rv.add(e.getKey(), Integer.parseInt(e.getValue()[0]), e.getValue()[1]);
+        }
+
+        return rv;
+    }
+
+    @Override
+    protected void kill(Collection<Integer> pids) {
+        this.killed.addAll(pids);
+        this.processes.keySet().removeAll(pids);
+    }
+}
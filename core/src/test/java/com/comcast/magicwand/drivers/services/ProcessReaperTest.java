@@ -0,0 +1,114 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ProcessReaperTest {
+
+    private static final String CHROMEDRIVER = "/drivers/chromedriver/2.19/chromedriver";
+
+    private File registryDir;
+    private FakeProcessReaper reaper;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.registryDir = Files.createTempDirectory("reaper").toFile();
+        this.reaper = new FakeProcessReaper(this.registryDir);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        FileUtils.deleteQuietly(this.registryDir);
+    }
+
+    private File getRegistry(int pid) {
+        return new File(this.registryDir, pid + ".pids");
+    }
+
+    @Test
+    public void testTrackChildrenOfThisJvm() throws IOException {
+        this.reaper.add(200, FakeProcessReaper.OWN_PID, CHROMEDRIVER + " --port=4711");
+        this.reaper.add(201, 200, "chrome --type=browser");
+        this.reaper.add(300, 1, CHROMEDRIVER + " --port=4712");
+
+        Assert.assertEquals(this.reaper.track(new File(CHROMEDRIVER), 4711), Collections.singleton(200));
+        Assert.assertTrue(this.reaper.track(new File(CHROMEDRIVER), 4711).isEmpty());
+
+        Assert.assertEquals(FileUtils.readLines(getRegistry(FakeProcessReaper.OWN_PID), StandardCharsets.UTF_8),
+                Arrays.asList("200\t" + CHROMEDRIVER + " --port=4711"));
+    }
+
+    @Test
+    public void testTrackOnlyTheProcessOfTheService() {
+        //another version of the same driver, and a private instance of the same one on another port
+        this.reaper.add(200, FakeProcessReaper.OWN_PID, CHROMEDRIVER + " --port=4711");
+        this.reaper.add(201, FakeProcessReaper.OWN_PID, "/drivers/chromedriver/2.20/chromedriver --port=4712");
+        this.reaper.add(202, FakeProcessReaper.OWN_PID, CHROMEDRIVER + " --port=47110");
+
+        Assert.assertEquals(this.reaper.track(new File(CHROMEDRIVER), 4712), Collections.<Integer>emptySet());
+        Assert.assertEquals(this.reaper.track(new File(CHROMEDRIVER), 4711), Collections.singleton(200));
+        Assert.assertEquals(this.reaper.getTracked(), Collections.singleton(200));
+    }
+
+    @Test
+    public void testReapKillsTrees() {
+        this.reaper.add(200, FakeProcessReaper.OWN_PID, CHROMEDRIVER + " --port=4711");
+        this.reaper.add(201, 200, "chrome --type=browser");
+        this.reaper.add(202, 201, "chrome --type=renderer");
+        this.reaper.track(new File(CHROMEDRIVER), 4711);
+
+        Assert.assertEquals(this.reaper.getProcessTrees(Arrays.asList(200)), new HashSet<>(Arrays.asList(200, 201, 202)));
+
+        this.reaper.reapAll();
+
+        Assert.assertEquals(this.reaper.killed, Arrays.asList(200, 201, 202));
+        Assert.assertTrue(this.reaper.getTracked().isEmpty());
+        Assert.assertFalse(getRegistry(FakeProcessReaper.OWN_PID).exists());
+    }
+
+    @Test
+    public void testSweepKillsProcessesOfDeadJvms() throws IOException {
+        //process 500 (gone) left chromedriver 600 behind, while 601 was recycled for something else
+        FileUtils.writeLines(getRegistry(500), "UTF-8",
+                Arrays.asList("600\t" + CHROMEDRIVER + " --port=4711", "601\t" + CHROMEDRIVER + " --port=4712"));
+        this.reaper.add(600, 1, CHROMEDRIVER + " --port=4711");
+        this.reaper.add(650, 600, "chrome --type=browser");
+        this.reaper.add(601, 1, "vim");
+
+        //process 700 is still running, its processes are left alone
+        FileUtils.writeLines(getRegistry(700), "UTF-8", Arrays.asList("800\tphantomjs"));
+        this.reaper.add(700, 1, "java -jar other-tests.jar");
+        this.reaper.add(800, 700, "phantomjs");
+
+        Assert.assertEquals(this.reaper.sweep(), 2);
+        Assert.assertEquals(this.reaper.killed, Arrays.asList(600, 650));
+        Assert.assertFalse(getRegistry(500).exists());
+        Assert.assertTrue(getRegistry(700).exists());
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.drivers.services;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ProcessTableTest {
+
+    private static final String PS_OUTPUT =
+            "    1     0 /sbin/init\n"
+            + "  100     1 java -jar tests.jar\n"
+            + "  200   100 /home/ci/.cache/magic-wand/drivers/chromedriver/2.19/chromedriver --port=4711\n"
+            + "  201   200 /opt/google/chrome/chrome --type=browser\n"
+            + "  202   201 /opt/google/chrome/chrome --type=renderer\n"
+            + "  300     1 bash\n";
+
+    @Test
+    public void testParsePs() throws IOException {
+        ProcessTable table = ProcessTable.parsePs(new StringReader(PS_OUTPUT));
+
+        Assert.assertTrue(table.isRunning(201));
+        Assert.assertFalse(table.isRunning(999));
+        Assert.assertEquals(table.getCommand(201), "/opt/google/chrome/chrome --type=browser");
+        Assert.assertEquals(table.getChildren(100), Arrays.asList(200));
+    }
+
+    @Test
+    public void testParseWmic() throws IOException {
+        String output = "\r\n"
+                + "Node,CommandLine,ParentProcessId,ProcessId\r\n"
+                + "AGENT,,0,4\r\n"
+                + "AGENT,\"C:\\drivers\\IEDriverServer.exe\" --port=4711,a,b,100,200\r\n"
+                + "AGENT,\"C:\\Program Files\\Internet Explorer\\iexplore.exe\" -noframemerging,200,201\r\n";
+
+        ProcessTable table = ProcessTable.parseWmic(new StringReader(output));
+
+        Assert.assertTrue(table.isRunning(4));
+        Assert.assertEquals(table.getCommand(200), "\"C:\\drivers\\IEDriverServer.exe\" --port=4711,a,b");
+        Assert.assertEquals(table.getChildren(200), Arrays.asList(201));
+    }
+
+    @Test
+    public void testGetTrees() throws IOException {
+        ProcessTable table = ProcessTable.parsePs(new StringReader(PS_OUTPUT));
+
+        Assert.assertEquals(new ArrayList<>(table.getTrees(Arrays.asList(200, 999))), Arrays.asList(200, 201, 202));
+        Assert.assertTrue(table.getTrees(Arrays.asList(999)).isEmpty());
+    }
+
+    @Test
+    public void testCurrentPidIsRunning() throws IOException {
+        int pid = ProcessTable.getCurrentPid();
+
+        Assert.assertTrue(pid > 0);
+        Assert.assertTrue(ProcessTable.capture().isRunning(pid));
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testEmpty() throws JSONException {
+        Histogram histogram = new Histogram();
+
+        Assert.assertEquals(histogram.getCount(), 0);
+        Assert.assertEquals(histogram.getMin(), 0);
+        Assert.assertEquals(histogram.getMax(), 0);
+        Assert.assertEquals(histogram.getPercentile(50), 0);
+        Assert.assertEquals(histogram.toJson().getLong("count"), 0);
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 100; i >= 1; i--) {
+            histogram.record(i);
+        }
+        histogram.record(-1);
+
+        Assert.assertEquals(histogram.getCount(), 100);
+        Assert.assertEquals(histogram.getMin(), 1);
+        Assert.assertEquals(histogram.getMax(), 100);
+        Assert.assertEquals(histogram.getMean(), 50.5, 0.001);
+        Assert.assertEquals(histogram.getPercentile(50), 50);
+        Assert.assertEquals(histogram.getPercentile(90), 90);
+        Assert.assertEquals(histogram.getPercentile(99), 99);
+        Assert.assertEquals(histogram.getPercentile(100), 100);
+    }
+
+    @Test
+    public void testSampledPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 10 * Histogram.MAX_SAMPLES; i++) {
+            histogram.record(i % 1000);
+        }
+
+        Assert.assertEquals(histogram.getCount(), 10 * Histogram.MAX_SAMPLES);
+        Assert.assertEquals(histogram.getPercentile(50), 500, 50);
+        Assert.assertEquals(histogram.getMax(), 999);
+    }
+
+    @Test
+    public void testBuckets() throws JSONException {
+        Histogram histogram = new Histogram();
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(5);
+        histogram.record(7);
+        histogram.record(8);
+
+        JSONObject buckets = histogram.toJson().getJSONObject("buckets");
+        Assert.assertEquals(buckets.getLong("le_0"), 1);
+        Assert.assertEquals(buckets.getLong("le_1"), 1);
+        Assert.assertEquals(buckets.getLong("le_7"), 2);
+        Assert.assertEquals(buckets.getLong("le_15"), 1);
+        Assert.assertEquals(buckets.length(), 4);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new Histogram().getPercentile(0);
+    }
+}
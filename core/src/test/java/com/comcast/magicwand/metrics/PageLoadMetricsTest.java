@@ -0,0 +1,135 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.metrics;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.mockito.Mockito;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class PageLoadMetricsTest {
+
+    private static PageLoadTiming timing(String url, long ttfb) {
+        return new PageLoadTiming(url, ttfb, ttfb * 2, ttfb * 3, 1000, 10, -1);
+    }
+
+    @Test
+    public void testDefaultPatterns() {
+        PageLoadMetrics metrics = new PageLoadMetrics();
+
+        Assert.assertEquals(metrics.getPattern("http://Example.com"), "example.com/");
+        Assert.assertEquals(metrics.getPattern("https://example.com/items/1234?sort=asc#top"), "example.com/items/{id}");
+        Assert.assertEquals(metrics.getPattern("http://example.com:8080/a/3f2504e0-4f89-11d3-9a0c-0305e82c3301/b/"),
+                "example.com:8080/a/{id}/b/");
+        Assert.assertEquals(metrics.getPattern("http://example.com/assets/deadbeef01/app.js"),
+                "example.com/assets/{id}/app.js");
+        Assert.assertNull(metrics.getPattern("about:blank"));
+        Assert.assertNull(metrics.getPattern("data:text/html,hello"));
+        Assert.assertNull(metrics.getPattern(null));
+    }
+
+    @Test
+    public void testCustomPatterns() {
+        PageLoadMetrics metrics = new PageLoadMetrics().addUrlPattern("search", ".*/search\\?.*");
+
+        Assert.assertEquals(metrics.getPattern("http://example.com/search?q=1"), "search");
+        Assert.assertEquals(metrics.getPattern("http://example.com/other"), "example.com/other");
+    }
+
+    @Test
+    public void testRecordAndReport() throws IOException, JSONException {
+        PageLoadMetrics metrics = new PageLoadMetrics();
+        for (int i = 1; i <= 10; i++) {
+            metrics.record(timing("http://example.com/items/" + i, i * 10));
+        }
+        metrics.record(timing("http://example.com/", 5));
+        metrics.record(timing("about:blank", 5));
+
+        Assert.assertEquals(metrics.getPatterns().size(), 2);
+        Assert.assertEquals(metrics.getHistogram("example.com/items/{id}", "timeToFirstByte").getPercentile(90), 90);
+        Assert.assertEquals(metrics.getHistogram("example.com/items/{id}", "load").getMax(), 300);
+        Assert.assertEquals(metrics.getHistogram("example.com/items/{id}", "resourceTransferSize").getCount(), 0);
+
+        File report = File.createTempFile("page-metrics", ".json");
+        try {
+            metrics.writeReport(report);
+
+            JSONObject json = new JSONObject(FileUtils.readFileToString(report, StandardCharsets.UTF_8));
+            JSONObject ttfb = json.getJSONObject("pages").getJSONObject("example.com/items/{id}")
+                    .getJSONObject("timeToFirstByte");
+            Assert.assertEquals(ttfb.getLong("count"), 10);
+            Assert.assertEquals(ttfb.getLong("p50"), 50);
+            Assert.assertEquals(ttfb.getLong("p95"), 100);
+        } finally {
+            FileUtils.deleteQuietly(report);
+        }
+
+        metrics.reset();
+        Assert.assertTrue(metrics.getPatterns().isEmpty());
+    }
+
+    @Test
+    public void testCapture() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("url", "http://example.com/");
+        result.put("ttfb", 12L);
+        result.put("domContentLoaded", 34L);
+        result.put("load", 56.4);
+        result.put("transferSize", -1L);
+        result.put("resourceCount", 3L);
+        result.put("resourceTransferSize", 789L);
+
+        RemoteWebDriver driver = mock(RemoteWebDriver.class);
+        when(driver.executeScript(Mockito.anyString())).thenReturn(result);
+
+        PageLoadMetrics metrics = new PageLoadMetrics();
+        PageLoadTiming timing = metrics.capture(driver);
+
+        Assert.assertEquals(timing.getTimeToFirstByte(), 12);
+        Assert.assertEquals(timing.getDomContentLoaded(), 34);
+        Assert.assertEquals(timing.getLoad(), 56);
+        Assert.assertEquals(timing.getResourceTransferSize(), 789);
+        Assert.assertEquals(metrics.getHistogram("example.com/", "resourceCount").getMax(), 3);
+        Assert.assertEquals(metrics.getHistogram("example.com/", "transferSize").getCount(), 0);
+    }
+
+    @Test
+    public void testCaptureFailures() {
+        RemoteWebDriver driver = mock(RemoteWebDriver.class);
+        PageLoadMetrics metrics = new PageLoadMetrics();
+
+        when(driver.executeScript(Mockito.anyString())).thenReturn(null);
+        Assert.assertNull(metrics.capture(driver));
+
+        when(driver.executeScript(Mockito.anyString())).thenThrow(new WebDriverException("no javascript"));
+        Assert.assertNull(metrics.capture(driver));
+
+        Assert.assertTrue(metrics.getPatterns().isEmpty());
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.openqa.selenium.Proxy;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class BlockingRuleTest {
+
+    private static boolean matches(BlockingRule rule, String url) {
+        URI uri = URI.create(url);
+        return rule.matches(uri, ResourceType.guess(uri.getPath(), null));
+    }
+
+    @Test
+    public void testHostRule() {
+        BlockingRule rule = BlockingRule.host("*.DoubleClick.net");
+
+        Assert.assertTrue(matches(rule, "http://ad.doubleclick.net/x.js"));
+        Assert.assertTrue(matches(rule, "http://doubleclick.net/"));
+        Assert.assertFalse(matches(rule, "http://notdoubleclick.net/"));
+        Assert.assertFalse(matches(rule, "http://example.com/doubleclick.net"));
+        Assert.assertTrue(rule.blocksHost("stats.g.doubleclick.net"));
+    }
+
+    @Test
+    public void testUrlRule() {
+        BlockingRule rule = BlockingRule.url("*/analytics/*.js");
+
+        Assert.assertTrue(matches(rule, "http://example.com/static/analytics/ga.js"));
+        Assert.assertFalse(matches(rule, "http://example.com/static/app.js"));
+        Assert.assertFalse(rule.blocksHost("example.com"), "URL rules cannot block whole hosts");
+    }
+
+    @Test
+    public void testTypeRule() {
+        BlockingRule rule = BlockingRule.types(ResourceType.IMAGE, ResourceType.FONT);
+
+        Assert.assertTrue(matches(rule, "http://example.com/logo.PNG"));
+        Assert.assertTrue(matches(rule, "http://example.com/fonts/a.woff2"));
+        Assert.assertFalse(matches(rule, "http://example.com/index.html"));
+        Assert.assertTrue(rule.matches(URI.create("http://example.com/avatar"), ResourceType.guess("/avatar",
+                "image/webp,image/*,*/*;q=0.8")));
+        Assert.assertFalse(rule.blocksHost("example.com"));
+    }
+
+    @Test
+    public void testNarrowedRule() {
+        BlockingRule rule = BlockingRule.host("cdn.example.com").ofTypes(ResourceType.MEDIA);
+
+        Assert.assertTrue(matches(rule, "http://cdn.example.com/intro.mp4"));
+        Assert.assertFalse(matches(rule, "http://cdn.example.com/app.css"));
+        Assert.assertFalse(matches(rule, "http://www.example.com/intro.mp4"));
+    }
+
+    @Test
+    public void testGuessResourceType() {
+        Assert.assertEquals(ResourceType.guess("/a/b.css", null), ResourceType.STYLESHEET);
+        Assert.assertEquals(ResourceType.guess("/a/b", "text/html,application/xhtml+xml"), ResourceType.DOCUMENT);
+        Assert.assertEquals(ResourceType.guess("/api/items", "*/*"), ResourceType.OTHER);
+        Assert.assertEquals(ResourceType.guess(null, null), ResourceType.OTHER);
+    }
+
+    @Test
+    public void testAutoConfigScript() {
+        String script = BlockingRules.toAutoConfigScript(Arrays.asList(BlockingRule.host("*.ads.com"),
+                BlockingRule.types(ResourceType.IMAGE), BlockingRule.types(ResourceType.OTHER)));
+
+        Assert.assertTrue(script.startsWith("function FindProxyForURL(url, host) {"), script);
+        Assert.assertTrue(script.contains("host == \"ads.com\" || shExpMatch(host, \"*.ads.com\")"), script);
+        Assert.assertTrue(script.contains("png|jpg"), script);
+        Assert.assertEquals(script.split(BlockingRules.BLACKHOLE, -1).length, 3, "OTHER cannot be expressed");
+        Assert.assertTrue(script.contains("return \"DIRECT\";"), script);
+    }
+
+    @Test
+    public void testApplyAutoConfig() {
+        DesiredCapabilities dc = new DesiredCapabilities();
+        Assert.assertFalse(BlockingRules.applyAutoConfig(dc, Collections.<BlockingRule>emptyList()));
+        Assert.assertNull(dc.getCapability(CapabilityType.PROXY));
+
+        Assert.assertTrue(BlockingRules.applyAutoConfig(dc, Arrays.asList(BlockingRule.host("ads.com"))));
+        Proxy proxy = (Proxy) dc.getCapability(CapabilityType.PROXY);
+        Assert.assertTrue(proxy.getProxyAutoconfigUrl().startsWith("data:application/x-ns-proxy-autoconfig;base64,"));
+
+        Assert.assertFalse(BlockingRules.applyAutoConfig(dc, Arrays.asList(BlockingRule.host("other.com"))),
+                "An existing proxy should be left alone");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmptyPattern() {
+        BlockingRule.host(" ");
+    }
+}
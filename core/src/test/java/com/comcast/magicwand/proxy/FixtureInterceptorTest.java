@@ -0,0 +1,195 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FixtureInterceptorTest {
+
+    private HttpServer server;
+    private LocalProxy proxy;
+    private File dir;
+    private String base;
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.upstreamRequests.set(0);
+        this.dir = Files.createTempDirectory("fixtures").toFile();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int count = upstreamRequests.incrementAndGet();
+                String path = exchange.getRequestURI().getPath();
+                byte[] body;
+
+                if (path.endsWith("binary")) {
+                    exchange.getResponseHeaders().add("Content-Type", "image/png");
+                    body = new byte[] { (byte) 0x89, 'P', 'N', 'G', 0, (byte) 0xff };
+                } else {
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    exchange.getResponseHeaders().add("Set-Cookie", "a=1");
+                    exchange.getResponseHeaders().add("Set-Cookie", "b=2");
+                    String request = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8);
+                    body = ("{\"count\":" + count + ",\"echo\":\"" + request + "\"}").getBytes(StandardCharsets.UTF_8);
+                }
+
+                exchange.sendResponseHeaders(201, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        this.server.start();
+        this.base = "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        if (null != this.proxy) {
+            this.proxy.close();
+        }
+        this.server.stop(0);
+        FileUtils.deleteQuietly(this.dir);
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        java.net.Proxy via = new java.net.Proxy(java.net.Proxy.Type.HTTP,
+                new InetSocketAddress("127.0.0.1", this.proxy.getPort()));
+        return (HttpURLConnection) new URL(this.base + path).openConnection(via);
+    }
+
+    private String get(String path) throws IOException {
+        return read(open(path));
+    }
+
+    private String post(String path, String body) throws IOException {
+        HttpURLConnection conn = open(path);
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return read(conn);
+    }
+
+    private static String read(HttpURLConnection conn) throws IOException {
+        InputStream in = (conn.getResponseCode() >= 400) ? conn.getErrorStream() : conn.getInputStream();
+        return (null == in) ? "" : IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+
+    private void record() throws IOException {
+        FixtureInterceptor recorder = new FixtureInterceptor(this.dir, FixtureMode.RECORD);
+        this.proxy = new LocalProxy(recorder);
+
+        Assert.assertEquals(get("/api/items"), "{\"count\":1,\"echo\":\"\"}");
+        Assert.assertEquals(get("/api/items"), "{\"count\":2,\"echo\":\"\"}");
+        Assert.assertEquals(post("/api/items", "one"), "{\"count\":3,\"echo\":\"one\"}");
+        Assert.assertEquals(post("/api/items", "two"), "{\"count\":4,\"echo\":\"two\"}");
+        Assert.assertEquals(open("/logo.binary").getResponseCode(), 201);
+
+        Assert.assertEquals(recorder.getRecorded(), 5);
+        Assert.assertEquals(this.dir.list().length, 5);
+
+        this.proxy.close();
+        this.server.stop(0);
+    }
+
+    @Test
+    public void testReplaysWithoutUpstream() throws IOException {
+        record();
+
+        FixtureInterceptor player = new FixtureInterceptor(this.dir, FixtureMode.REPLAY);
+        this.proxy = new LocalProxy(player);
+
+        //repeated requests get the recorded responses in order, the last one being repeated
+        Assert.assertEquals(get("/api/items"), "{\"count\":1,\"echo\":\"\"}");
+        Assert.assertEquals(get("/api/items"), "{\"count\":2,\"echo\":\"\"}");
+        Assert.assertEquals(get("/api/items"), "{\"count\":2,\"echo\":\"\"}");
+
+        //bodies tell requests apart
+        Assert.assertEquals(post("/api/items", "two"), "{\"count\":4,\"echo\":\"two\"}");
+        Assert.assertEquals(post("/api/items", "one"), "{\"count\":3,\"echo\":\"one\"}");
+
+        HttpURLConnection conn = open("/api/items");
+        Assert.assertEquals(conn.getResponseCode(), 201);
+        int cookies = 0;
+        for (int i = 1; null != conn.getHeaderFieldKey(i); i++) {
+            cookies += "set-cookie".equalsIgnoreCase(conn.getHeaderFieldKey(i)) ? 1 : 0;
+        }
+        Assert.assertEquals(cookies, 2);
+
+        conn = open("/logo.binary");
+        Assert.assertEquals(IOUtils.toByteArray(conn.getInputStream()),
+                new byte[] { (byte) 0x89, 'P', 'N', 'G', 0, (byte) 0xff });
+
+        Assert.assertEquals(player.getReplayed(), 7);
+        Assert.assertEquals(this.upstreamRequests.get(), 5);
+    }
+
+    @Test
+    public void testUnknownRequestsMiss() throws IOException {
+        record();
+
+        FixtureInterceptor player = new FixtureInterceptor(this.dir, FixtureMode.REPLAY);
+        this.proxy = new LocalProxy(player);
+
+        HttpURLConnection conn = open("/api/other");
+        Assert.assertEquals(conn.getResponseCode(), 404);
+        Assert.assertEquals(post("/api/items", "three"), "No fixture for POST " + this.base + "/api/items");
+        Assert.assertEquals(player.getMissing(), 2);
+    }
+
+    @Test
+    public void testMissingDirectory() throws IOException {
+        FixtureInterceptor player = new FixtureInterceptor(new File(this.dir, "missing"), FixtureMode.REPLAY);
+        this.proxy = new LocalProxy(player);
+
+        Assert.assertEquals(open("/api/items").getResponseCode(), 404);
+        Assert.assertEquals(this.upstreamRequests.get(), 0);
+    }
+
+    @Test
+    public void testForIngredients() {
+        Assert.assertNull(FixtureInterceptor.forIngredients(new PhoenixDriverIngredients()));
+
+        FixtureInterceptor rv = FixtureInterceptor.forIngredients(
+                new PhoenixDriverIngredients().withFixtures(this.dir, FixtureMode.RECORD));
+        Assert.assertEquals(rv.getDir(), this.dir);
+        Assert.assertEquals(rv.getMode(), FixtureMode.RECORD);
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.proxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.openqa.selenium.Proxy;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class LocalProxyTest {
+
+    private HttpServer server;
+    private LocalProxy proxy;
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+    private final Set<Integer> upstreamConnections =
+            Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    /** Interceptor that does not reach out to upstream to size blocked resources */
+    private static class FixedSizeBlocking extends BlockingInterceptor {
+        FixedSizeBlocking(BlockingRule... rules) {
+            super(Arrays.asList(rules));
+        }
+
+        @Override
+        protected long probeSize(URI uri) {
+            return 1234;
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.upstreamRequests.set(0);
+        this.upstreamConnections.clear();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                upstreamRequests.incrementAndGet();
+                upstreamConnections.add(exchange.getRemoteAddress().getPort());
+                byte[] body = exchange.getRequestURI().getPath().endsWith("echo")
+                        ? IOUtils.toByteArray(exchange.getRequestBody())
+                        : "hello".getBytes(StandardCharsets.UTF_8);
+
+                exchange.getResponseHeaders().add("X-Upstream", "yes");
+                exchange.getResponseHeaders().add("X-Method", exchange.getRequestMethod());
+                for (String name : Arrays.asList("Origin", "Via")) {
+                    if (exchange.getRequestHeaders().containsKey(name)) {
+                        exchange.getResponseHeaders().add("X-" + name, exchange.getRequestHeaders().getFirst(name));
+                    }
+                }
+                exchange.sendResponseHeaders(exchange.getRequestURI().getPath().endsWith("missing") ? 404 : 200,
+                        body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        this.server.start();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        if (null != this.proxy) {
+            this.proxy.close();
+        }
+        this.server.stop(0);
+    }
+
+    private String upstream(String path) {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + path;
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        java.net.Proxy via = new java.net.Proxy(java.net.Proxy.Type.HTTP,
+                new InetSocketAddress("127.0.0.1", this.proxy.getPort()));
+        return (HttpURLConnection) new URL(upstream(path)).openConnection(via);
+    }
+
+    private static String read(HttpURLConnection conn) throws IOException {
+        InputStream in = (conn.getResponseCode() >= 400) ? conn.getErrorStream() : conn.getInputStream();
+        return (null == in) ? "" : IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+
+    private String connect(String authority) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", this.proxy.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("CONNECT " + authority + " HTTP/1.1\r\nHost: " + authority + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+
+            return HttpMessage.readLine(socket.getInputStream());
+        }
+    }
+
+    @Test
+    public void testForwardsRequests() throws IOException {
+        this.proxy = new LocalProxy();
+
+        HttpURLConnection conn = open("/index.html");
+        Assert.assertEquals(conn.getResponseCode(), 200);
+        Assert.assertEquals(conn.getHeaderField("X-Upstream"), "yes");
+        Assert.assertEquals(read(conn), "hello");
+
+        conn = open("/missing");
+        Assert.assertEquals(conn.getResponseCode(), 404);
+        Assert.assertEquals(read(conn), "hello");
+    }
+
+    @Test
+    public void testForwardsBodies() throws IOException {
+        this.proxy = new LocalProxy();
+
+        HttpURLConnection conn = open("/echo");
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write("payload".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Assert.assertEquals(read(conn), "payload");
+    }
+
+    @Test
+    public void testForwardsAnyMethodAndHeader() throws IOException {
+        this.proxy = new LocalProxy();
+
+        //neither PATCH nor these headers can be sent through HttpURLConnection
+        try (Socket socket = new Socket("127.0.0.1", this.proxy.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("PATCH " + upstream("/echo") + " HTTP/1.1\r\nOrigin: http://app.example.com\r\n"
+                    + "Via: 1.1 corporate\r\nContent-Length: 5\r\nConnection: close\r\n\r\npatch")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+
+            String response = IOUtils.toString(socket.getInputStream(), StandardCharsets.ISO_8859_1);
+            Assert.assertTrue(response.startsWith("HTTP/1.1 200 "), response);
+            Assert.assertTrue(response.contains("X-method: PATCH\r\n"), response);
+            Assert.assertTrue(response.contains("X-origin: http://app.example.com\r\n"), response);
+            Assert.assertTrue(response.contains("X-via: 1.1 corporate\r\n"), response);
+            Assert.assertTrue(response.endsWith("\r\n\r\npatch"), response);
+        }
+    }
+
+    @Test
+    public void testReusesUpstreamConnections() throws IOException {
+        this.proxy = new LocalProxy();
+
+        for (int i = 0; i < 3; i++) {
+            HttpURLConnection conn = open("/index.html");
+            Assert.assertEquals(read(conn), "hello");
+            conn.disconnect();
+        }
+
+        Assert.assertEquals(this.upstreamRequests.get(), 3);
+        Assert.assertEquals(this.upstreamConnections.size(), 1);
+    }
+
+    @Test
+    public void testBlocksMatchingRequests() throws IOException, InterruptedException {
+        FixedSizeBlocking blocking = new FixedSizeBlocking(BlockingRule.types(ResourceType.IMAGE));
+        this.proxy = new LocalProxy(blocking);
+
+        HttpURLConnection conn = open("/img/logo.png");
+        Assert.assertEquals(conn.getResponseCode(), 204);
+        conn = open("/index.html");
+        Assert.assertEquals(conn.getResponseCode(), 200);
+        read(conn);
+
+        Assert.assertEquals(this.upstreamRequests.get(), 1);
+        BlockingStats stats = blocking.getStats();
+        Assert.assertEquals(stats.getBlockedRequests(), 1);
+        Assert.assertEquals(stats.getBlockedRequests(ResourceType.IMAGE), 1);
+
+        for (int i = 0; i < 100 && 0 == stats.getBytesSaved(); i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(stats.getBytesSaved(), 1234);
+    }
+
+    @Test
+    public void testInterceptorsSeeResponses() throws IOException {
+        final AtomicInteger seen = new AtomicInteger();
+        this.proxy = new LocalProxy(new ProxyInterceptor() {
+            @Override
+            public ProxyResponse intercept(ProxyRequest request) {
+                if (request.getUri().getPath().endsWith("local")) {
+                    ProxyResponse rv = new ProxyResponse(200, "OK");
+                    rv.setBody("stub".getBytes(StandardCharsets.UTF_8));
+                    return rv;
+                }
+                return null;
+            }
+
+            @Override
+            public void onResponse(ProxyRequest request, ProxyResponse response) {
+                seen.incrementAndGet();
+                response.setHeader("X-Seen", "true");
+            }
+
+            @Override
+            public boolean allowTunnel(String host, int port) {
+                return true;
+            }
+        });
+
+        HttpURLConnection conn = open("/local");
+        Assert.assertEquals(read(conn), "stub");
+        conn = open("/remote");
+        Assert.assertEquals(read(conn), "hello");
+        Assert.assertEquals(conn.getHeaderField("X-Seen"), "true");
+
+        Assert.assertEquals(seen.get(), 1);
+        Assert.assertEquals(this.upstreamRequests.get(), 1);
+    }
+
+    @Test
+    public void testRecordsResponsesAnsweredFurtherDown() throws IOException {
+        File dir = Files.createTempDirectory("fixtures").toFile();
+        try {
+            FixtureInterceptor fixtures = new FixtureInterceptor(dir, FixtureMode.RECORD);
+            //stands in for a cache that answers repeated requests without going upstream
+            this.proxy = new LocalProxy(fixtures, new ProxyInterceptor() {
+                private boolean seen;
+
+                @Override
+                public synchronized ProxyResponse intercept(ProxyRequest request) {
+                    if (!this.seen) {
+                        return null;
+                    }
+                    ProxyResponse rv = new ProxyResponse(200, "OK");
+                    rv.setHeader("X-Cache", "HIT");
+                    rv.setBody("hello".getBytes(StandardCharsets.UTF_8));
+                    return rv;
+                }
+
+                @Override
+                public synchronized void onResponse(ProxyRequest request, ProxyResponse response) {
+                    this.seen = true;
+                }
+
+                @Override
+                public boolean allowTunnel(String host, int port) {
+                    return true;
+                }
+            });
+
+            Assert.assertEquals(read(open("/cached.js")), "hello");
+            HttpURLConnection conn = open("/cached.js");
+            Assert.assertEquals(read(conn), "hello");
+            Assert.assertEquals(conn.getHeaderField("X-Cache"), "HIT");
+
+            Assert.assertEquals(this.upstreamRequests.get(), 1);
+            Assert.assertEquals(fixtures.getRecorded(), 2);
+            Assert.assertEquals(dir.listFiles().length, 2);
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    @Test
+    public void testTunnels() throws IOException {
+        FixedSizeBlocking blocking = new FixedSizeBlocking(BlockingRule.host("*.ads.example.com"));
+        this.proxy = new LocalProxy(blocking);
+
+        Assert.assertEquals(connect("pixel.ads.example.com:443"), "HTTP/1.1 403 Forbidden");
+        Assert.assertEquals(blocking.getStats().getBlockedTunnels(), 1);
+
+        String authority = "127.0.0.1:" + this.server.getAddress().getPort();
+        try (Socket socket = new Socket("127.0.0.1", this.proxy.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write(("CONNECT " + authority + " HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+
+            Assert.assertEquals(HttpMessage.readLine(in), "HTTP/1.1 200 Connection Established");
+            Assert.assertEquals(HttpMessage.readLine(in), "");
+
+            //anything can go through the tunnel, plain HTTP included
+            out.write(("GET /tunnelled HTTP/1.1\r\nHost: " + authority + "\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            Assert.assertTrue(IOUtils.toString(in, StandardCharsets.ISO_8859_1).endsWith("hello"));
+        }
+    }
+
+    @Test
+    public void testUnreachableUpstream() throws IOException {
+        this.proxy = new LocalProxy();
+        java.net.Proxy via = new java.net.Proxy(java.net.Proxy.Type.HTTP,
+                new InetSocketAddress("127.0.0.1", this.proxy.getPort()));
+
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:1/").openConnection(via);
+        Assert.assertEquals(conn.getResponseCode(), 502);
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        this.proxy = new LocalProxy();
+        Assert.assertEquals(this.proxy.toSeleniumProxy().getHttpProxy(), this.proxy.getAddress());
+        Assert.assertTrue(LocalProxy.isLocalProxy(this.proxy.toSeleniumProxy()));
+        Assert.assertFalse(LocalProxy.isLocalProxy(new Proxy().setHttpProxy("proxy.example.com:8080")));
+        Assert.assertFalse(LocalProxy.isLocalProxy(null));
+
+        Proxy seleniumProxy = this.proxy.toSeleniumProxy();
+        this.proxy.close();
+        Assert.assertTrue(this.proxy.isClosed());
+        Assert.assertFalse(LocalProxy.isLocalProxy(seleniumProxy));
+        try (Socket socket = new Socket("127.0.0.1", this.proxy.getPort())) {
+            //the freed port can be picked as the local end of this very socket, which then connects to itself
+            Assert.assertEquals(socket.getLocalPort(), socket.getPort(), "Proxy should no longer listen");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class SystemDetailTest {
+
+    private static final String PROP = "magicwand.test.setting";
+    private static final String ENV = "MAGICWAND_TEST_SETTING_NOT_SET";
+
+    @AfterMethod
+    public void teardown() {
+        System.clearProperty(PROP);
+    }
+
+    @Test
+    public void testGetSetting() {
+        Assert.assertNull(SystemDetail.getSetting(PROP, ENV));
+
+        System.setProperty(PROP, "  ");
+        Assert.assertNull(SystemDetail.getSetting(PROP, ENV));
+
+        System.setProperty(PROP, "value");
+        Assert.assertEquals(SystemDetail.getSetting(PROP, ENV), "value");
+    }
+
+    @Test
+    public void testGetLongSetting() {
+        Assert.assertEquals(SystemDetail.getLongSetting(PROP, ENV, 42), 42);
+
+        System.setProperty(PROP, " 1000 ");
+        Assert.assertEquals(SystemDetail.getLongSetting(PROP, ENV, 42), 1000);
+
+        System.setProperty(PROP, "soon");
+        Assert.assertEquals(SystemDetail.getLongSetting(PROP, ENV, 42), 42);
+    }
+}
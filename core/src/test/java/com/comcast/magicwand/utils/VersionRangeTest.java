@@ -0,0 +1,62 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class VersionRangeTest {
+
+    @DataProvider(name = "ranges")
+    public Object[][] ranges() {
+        return new Object[][] {
+            new Object[] { "[2.40,3.0)" , "2.40"   , true  } ,
+            new Object[] { "[2.40,3.0)" , "2.53.1" , true  } ,
+            new Object[] { "[2.40,3.0)" , "3.0"    , false } ,
+            new Object[] { "[2.40,3.0)" , "2.39"   , false } ,
+            new Object[] { "(2.40,3.0]" , "2.40"   , false } ,
+            new Object[] { "(2.40,3.0]" , "3.0"    , true  } ,
+            new Object[] { "[2.40,)"    , "99.1"   , true  } ,
+            new Object[] { "(,2.40)"    , "2.9"    , true  } ,
+            new Object[] { "[2.47]"     , "2.47"   , true  } ,
+            new Object[] { "2.47"       , "2.47.1" , false } ,
+            new Object[] { "[2.40,3.0)" , null     , false }
+        };
+    }
+
+    @Test(dataProvider = "ranges")
+    public void testContains(String range, String version, boolean expected) {
+        Assert.assertEquals(VersionRange.parse(range).contains(version), expected);
+        Assert.assertEquals(VersionUtils.isInRange(version, range), expected);
+    }
+
+    @DataProvider(name = "invalid")
+    public Object[][] invalid() {
+        return new Object[][] {
+            new Object[] { "" },
+            new Object[] { "[2.40,3.0" },
+            new Object[] { "[3.0,2.0]" },
+            new Object[] { "[1,2,3]" },
+            new Object[] { "(2.40)" }
+        };
+    }
+
+    @Test(dataProvider = "invalid", expectedExceptions = IllegalArgumentException.class)
+    public void testInvalid(String range) {
+        VersionRange.parse(range);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class VersionTest {
+
+    @DataProvider(name = "versions")
+    public Object[][] versions() {
+        return new Object[][] {
+            new Object[] { "1.2.3"      , "1.2.3"     , 0  } ,
+            new Object[] { "1.2"        , "1.2.0"     , -1 } ,
+            new Object[] { "a.b.c"      , "1.2.3"     , 1  } ,
+            new Object[] { "1.2"        , "1.1"       , 1  } ,
+            new Object[] { "2.9"        , "2.10"      , -1 } ,
+            new Object[] { "2.53.01"    , "2.53.1"    , 0  } ,
+            new Object[] { "1.0-beta"   , "1.0"       , -1 } ,
+            new Object[] { "1.0-alpha"  , "1.0-beta"  , -1 } ,
+            new Object[] { "1.1-alpha"  , "1.0"       , 1  } ,
+            new Object[] { "1.9"        , "1.20190101123456", -1 } ,
+            new Object[] { "3.9999999999", "3.10000000000", -1 } ,
+            new Object[] { "3.0012345678901", "3.12345678901", 0 }
+        };
+    }
+
+    @Test(dataProvider = "versions")
+    public void testCompareTo(String lhs, String rhs, Integer expected) {
+        Version l = Version.valueOf(lhs);
+        Version r = Version.valueOf(rhs);
+
+        Assert.assertEquals(Integer.valueOf(l.compareTo(r)), expected);
+        Assert.assertEquals(Integer.valueOf(r.compareTo(l)), Integer.valueOf(-expected));
+        Assert.assertEquals(l.equals(r), 0 == expected);
+        if (0 == expected) {
+            Assert.assertEquals(l.hashCode(), r.hashCode());
+        }
+    }
+
+    @Test
+    public void testInterned() {
+        Assert.assertSame(Version.valueOf("2.47.0"), Version.valueOf("2.47.0"));
+    }
+
+    @Test
+    public void testComponents() {
+        Version v = Version.valueOf("2.53.x-SNAPSHOT");
+
+        Assert.assertEquals(v.getComponentCount(), 3);
+        Assert.assertEquals(v.getComponent(0), 2);
+        Assert.assertEquals(v.getComponent(1), 53);
+        Assert.assertEquals(v.getComponent(2), -1);
+        Assert.assertEquals(v.getComponent(3), -1);
+        Assert.assertEquals(v.getQualifier(), "SNAPSHOT");
+        Assert.assertEquals(v.toString(), "2.53.x-SNAPSHOT");
+
+        Assert.assertEquals(Version.valueOf("1.20190101123456").getComponent(1), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testSort() {
+        List<Version> versions = new ArrayList<Version>();
+        for (String s : new String[] { "2.53.1", "2.9.0", "2.53.0", "2.10.0", "2.53.1-rc1" }) {
+            versions.add(Version.valueOf(s));
+        }
+
+        Collections.sort(versions);
+
+        Assert.assertEquals(versions.toString(), "[2.9.0, 2.10.0, 2.53.0, 2.53.1-rc1, 2.53.1]");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNull() {
+        Version.valueOf(null);
+    }
+}
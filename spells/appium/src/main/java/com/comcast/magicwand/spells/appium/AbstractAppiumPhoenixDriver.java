@@ -26,20 +26,26 @@ import io.appium.java_client.TouchAction;
 import io.appium.java_client.TouchShortcuts;
 
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.openqa.selenium.ScreenOrientation;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.html5.Location;
+import org.openqa.selenium.remote.DriverCommand;
 import org.openqa.selenium.remote.ExecuteMethod;
 import org.openqa.selenium.remote.Response;
 
 import com.comcast.cookie.CookieHandler;
 import com.comcast.cookie.handlers.GeneralCookieHandler;
 import com.comcast.magicwand.drivers.AbstractPhoenixDriver;
+import com.comcast.magicwand.drivers.SessionState;
 import com.google.gson.JsonObject;
 
 /**
@@ -50,6 +56,11 @@ import com.google.gson.JsonObject;
  */
 public abstract class AbstractAppiumPhoenixDriver extends AbstractPhoenixDriver {
 
+    /** Commands that only read where the session is, passed through {@link #execute(String, Map)} */
+    private static final Set<String> QUERY_COMMANDS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            DriverCommand.GET_CURRENT_CONTEXT_HANDLE, DriverCommand.GET_CONTEXT_HANDLES,
+            DriverCommand.GET_CURRENT_WINDOW_HANDLE, DriverCommand.GET_WINDOW_HANDLES)));
+
     protected AppiumDriver driver;
     CookieHandler cookieHandler = new GeneralCookieHandler();
 
@@ -77,7 +88,14 @@ public abstract class AbstractAppiumPhoenixDriver extends AbstractPhoenixDriver
      * @return Response of the execution
      */
     public Response execute(String driverCommand, Map<String, ?> parameters) {
-        return this.driver.execute(driverCommand, parameters);
+        try {
+            return this.driver.execute(driverCommand, parameters);
+        } finally {
+            //raw commands may switch contexts or windows behind the mirror's back
+            if (!QUERY_COMMANDS.contains(driverCommand)) {
+                getSessionState().invalidate();
+            }
+        }
     }
 
     /**
@@ -93,7 +111,11 @@ public abstract class AbstractAppiumPhoenixDriver extends AbstractPhoenixDriver
      * @see InteractsWithApps#resetApp()
      */
     public void resetApp() {
-        this.driver.resetApp();
+        try {
+            this.driver.resetApp();
+        } finally {
+            getSessionState().invalidate();
+        }
     }
 
     /**
@@ -111,7 +133,11 @@ public abstract class AbstractAppiumPhoenixDriver extends AbstractPhoenixDriver
      * @param appPath Path to the application to install
      */
     public void installApp(String appPath) {
-        this.driver.installApp(appPath);
+        try {
+            this.driver.installApp(appPath);
+        } finally {
+            getSessionState().invalidate();
+        }
     }
 
     /**
@@ -119,21 +145,33 @@ public abstract class AbstractAppiumPhoenixDriver extends AbstractPhoenixDriver
      * @param bundleId Bundle id of an app to remove
      */
     public void removeApp(String bundleId) {
-        this.driver.removeApp(bundleId);
+        try {
+            this.driver.removeApp(bundleId);
+        } finally {
+            getSessionState().invalidate();
+        }
     }
 
     /**
      * @see InteractsWithApps#launchApp()
      */
     public void launchApp() {
-        this.driver.launchApp();
+        try {
+            this.driver.launchApp();
+        } finally {
+            getSessionState().invalidate();
+        }
     }
 
     /**
      * @see InteractsWithApps#closeApp()
      */
     public void closeApp() {
-        this.driver.closeApp();
+        try {
+            this.driver.closeApp();
+        } finally {
+            getSessionState().invalidate();
+        }
     }
 
     /**
@@ -141,7 +179,11 @@ public abstract class AbstractAppiumPhoenixDriver extends AbstractPhoenixDriver
      * @param seconds Number of seconds to run the app for
      */
     public void runAppInBackground(int seconds) {
-        this.driver.runAppInBackground(seconds);
+        try {
+            this.driver.runAppInBackground(seconds);
+        } finally {
+            getSessionState().invalidate();
+        }
     }
 
     /**
@@ -290,13 +332,27 @@ public abstract class AbstractAppiumPhoenixDriver extends AbstractPhoenixDriver
     }
 
     /**
-     * Switches contexts
+     * Switches contexts; switching to the context the session is known to be in is skipped, see
+     * {@link #getSessionState()}
      *
      * @param name Name of the context to switch to
      * @return Reference of a web driver with a new context
      */
     public WebDriver context(String name) {
-        return this.driver.context(name);
+        SessionState state = getSessionState();
+
+        if (state.elideContextSwitch(name)) {
+            return this.driver;
+        }
+
+        try {
+            WebDriver rv = this.driver.context(name);
+            state.contextSwitched(name);
+            return rv;
+        } catch (WebDriverException e) {
+            state.invalidate();
+            throw e;
+        }
     }
 
     /**
@@ -314,7 +370,15 @@ public abstract class AbstractAppiumPhoenixDriver extends AbstractPhoenixDriver
      * @return Name of the current context
      */
     public String getContext() {
-        return this.driver.getContext();
+        SessionState state = getSessionState();
+        String rv = state.elideGetContext();
+
+        if (null == rv) {
+            rv = this.driver.getContext();
+            state.contextFetched(rv);
+        }
+
+        return rv;
     }
 
     /**
@@ -20,7 +20,7 @@ import java.net.URL;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import com.comcast.magicwand.utils.VersionUtils;
+import com.comcast.magicwand.utils.Version;
 import com.comcast.magicwand.builders.PhoenixDriverIngredients;
 import com.comcast.magicwand.spells.appium.dawg.meta.MetaAppiumDevice.FamilyType;
 import com.comcast.magicwand.spells.appium.dawg.utils.AppiumServerController;
@@ -53,6 +53,9 @@ public class AppiumDriverBuilder {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AppiumDriverBuilder.class);
 
+    /** Android versions older than this one are automated through Selendroid */
+    private static final Version MIN_APPIUM_ANDROID_VERSION = Version.valueOf("4.4");
+
     private String host;
     private Integer port;
     private FamilyType familyType;
@@ -180,8 +183,8 @@ public class AppiumDriverBuilder {
 
     private void validateAutomationName() {
         if ((this.familyType == FamilyType.ANDROID) && (null == this.automationName)) {
-            this.automationName = (VersionUtils.compare(this.platformVersion, "4.4") < 0) ? "Selendroid"
-                    : "Appium";
+            this.automationName = (Version.valueOf(this.platformVersion).compareTo(MIN_APPIUM_ANDROID_VERSION) < 0)
+                    ? "Selendroid" : "Appium";
         }
     }
 
@@ -16,7 +16,9 @@
 package com.comcast.magicwand.spells.appium;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import io.appium.java_client.AppiumDriver;
@@ -34,6 +36,7 @@ import java.util.Set;
 
 import org.openqa.selenium.ScreenOrientation;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.html5.Location;
 import org.openqa.selenium.remote.ExecuteMethod;
@@ -296,6 +299,69 @@ public class AbstractAppiumPhoenixDriverTest {
         Assert.assertEquals(expected, actual);
     }
 
+    @Test
+    public void testContextSwitchesElided() {
+        this.myTestObj.getSessionState().setEnabled(true);
+        when(this.appiumDriverMock.getContext()).thenReturn("NATIVE_APP");
+
+        Assert.assertEquals(this.myTestObj.getContext(), "NATIVE_APP");
+        Assert.assertEquals(this.myTestObj.getContext(), "NATIVE_APP");
+        this.myTestObj.context("NATIVE_APP");
+        this.myTestObj.context("WEBVIEW_1");
+        this.myTestObj.context("WEBVIEW_1");
+
+        verify(this.appiumDriverMock, times(1)).getContext();
+        verify(this.appiumDriverMock, never()).context("NATIVE_APP");
+        verify(this.appiumDriverMock, times(1)).context("WEBVIEW_1");
+        Assert.assertEquals(this.myTestObj.getSessionState().getElidedContextSwitches(), 3);
+    }
+
+    @Test
+    public void testAppStateChangesInvalidate() {
+        this.myTestObj.getSessionState().setEnabled(true);
+        when(this.appiumDriverMock.getContext()).thenReturn("NATIVE_APP");
+
+        this.myTestObj.context("WEBVIEW_1");
+        this.myTestObj.resetApp();
+        this.myTestObj.context("WEBVIEW_1");
+        this.myTestObj.launchApp();
+        this.myTestObj.context("WEBVIEW_1");
+        this.myTestObj.closeApp();
+        this.myTestObj.context("WEBVIEW_1");
+        this.myTestObj.runAppInBackground(1);
+        this.myTestObj.context("WEBVIEW_1");
+        this.myTestObj.execute("switchToContext", new HashMap<String, Object>());
+        this.myTestObj.context("WEBVIEW_1");
+
+        verify(this.appiumDriverMock, times(6)).context("WEBVIEW_1");
+        Assert.assertEquals(this.myTestObj.getSessionState().getElidedContextSwitches(), 0);
+
+        this.myTestObj.execute("getCurrentContextHandle", new HashMap<String, Object>());
+        this.myTestObj.context("WEBVIEW_1");
+        verify(this.appiumDriverMock, times(6)).context("WEBVIEW_1");
+
+        this.myTestObj.resetApp();
+        Assert.assertEquals(this.myTestObj.getContext(), "NATIVE_APP");
+        verify(this.appiumDriverMock, times(1)).getContext();
+    }
+
+    @Test
+    public void testContextSwitchFailureInvalidates() {
+        this.myTestObj.getSessionState().setEnabled(true);
+        this.myTestObj.context("WEBVIEW_1");
+        when(this.appiumDriverMock.context("NATIVE_APP")).thenThrow(new WebDriverException("gone"));
+
+        try {
+            this.myTestObj.context("NATIVE_APP");
+            Assert.fail("Expected the failure to go through");
+        } catch (WebDriverException e) {
+            // expected
+        }
+
+        this.myTestObj.context("WEBVIEW_1");
+        verify(this.appiumDriverMock, times(2)).context("WEBVIEW_1");
+    }
+
     @Test
     public void testGetContextHandles() {
         Set<String> expected = new HashSet<String>();
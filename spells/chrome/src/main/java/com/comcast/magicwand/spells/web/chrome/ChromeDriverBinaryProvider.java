@@ -0,0 +1,59 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.web.chrome;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.comcast.magicwand.binaries.DriverBinaryProvider;
+import com.comcast.magicwand.binaries.DriverBinarySpec;
+
+/**
+ * Describes the chromedriver binaries used by {@link ChromePhoenixDriver}
+ */
+public class ChromeDriverBinaryProvider implements DriverBinaryProvider {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDriverName() {
+        return ChromePhoenixDriver.DRIVER_NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DriverBinarySpec createBinarySpec(String version, String os, String arch) {
+        if (null == os || null == arch) {
+            ChromePlatformSpecifics cps = new ChromePlatformSpecifics(version);
+
+            return ChromePhoenixDriver.createBinarySpec(cps.getVersion(), cps.getOs(), cps.getArch(),
+                    cps.getExtension());
+        }
+
+        return ChromePhoenixDriver.createBinarySpec(version, os, arch, "win".equals(os) ? ".exe" : "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<DriverBinarySpec> getDefaultBinarySpecs() {
+        return Collections.singletonList(createBinarySpec(null, null, null));
+    }
+}
@@ -15,24 +15,32 @@
  */
 package com.comcast.magicwand.spells.web.chrome;
 
-import java.net.URL;
-import java.nio.file.Paths;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipEntry;
+import java.util.Set;
 
+import com.comcast.magicwand.binaries.DriverBinaryManager;
+import com.comcast.magicwand.binaries.DriverBinarySpec;
 import com.comcast.magicwand.utils.SystemDetail;
 import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+import com.comcast.magicwand.drivers.profiles.ProfilePreparer;
+import com.comcast.magicwand.drivers.profiles.ProfileTemplate;
+import com.comcast.magicwand.drivers.profiles.ProfileTemplates;
+import com.comcast.magicwand.drivers.profiles.SessionDirectory;
+import com.comcast.magicwand.drivers.profiles.SessionStorage;
+import com.comcast.magicwand.drivers.services.DriverServiceFactory;
+import com.comcast.magicwand.drivers.services.DriverServicePool;
 import com.comcast.magicwand.drivers.web.AbstractWebPhoenixDriver;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.openqa.selenium.Dimension;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,34 +54,88 @@ import org.slf4j.LoggerFactory;
 public class ChromePhoenixDriver extends AbstractWebPhoenixDriver<ChromeDriver> {
     private static final Logger LOG = LoggerFactory.getLogger(ChromePhoenixDriver.class);
 
-    private static final String LATEST_KNOWN_VERSION = "2.19";
+    static final String LATEST_KNOWN_VERSION = "2.19";
     private static final String DRIVER_BASE_URL = "https://chromedriver.storage.googleapis.com";
-    private static final String DRIVER_URL_FORMAT = DRIVER_BASE_URL+"/%s/chromedriver%s.zip";
-    private static final String LATEST_RELEASE_URL = DRIVER_BASE_URL+"/LATEST_RELEASE";
+    private static final String DRIVER_ARTIFACT_PATTERN = "{version}/chromedriver_{os}{arch}.zip";
+    private static final String LATEST_RELEASE_PATH = "LATEST_RELEASE";
+
+    static final String DRIVER_NAME = "chromedriver";
 
     public static final String CHROME_DRIVER_VERSION = "chromeDriverVersion";
 
+    /**
+     * Driver config naming a Chrome user-data-dir (with extensions, preferences, a seeded disk cache...) every session
+     * should start from. It is prepared once per JVM and each session gets its own clone.
+     */
+    public static final String CHROME_PROFILE_TEMPLATE = "chromeProfileTemplate";
+    private static final String TEMPLATE_PREFIX = "chrome-";
+
+    /** User agent capability of PhantomJS, honored by headless sessions so PhantomJS suites can switch over */
+    static final String PHANTOMJS_USER_AGENT = "phantomjs.page.settings.userAgent";
+
+    private static final String[] HEADLESS_ARGUMENTS = {
+        "--headless", "--disable-gpu", "--hide-scrollbars", "--mute-audio"
+    };
+    private static final String[] LEAN_ARGUMENTS = {
+        "--disable-extensions", "--disable-gpu", "--disable-background-networking", "--disable-component-update",
+        "--disable-default-apps", "--disable-sync", "--disable-translate", "--metrics-recording-only",
+        "--no-first-run", "--safebrowsing-disable-auto-update"
+    };
+
+    private static final DriverServiceFactory<ChromeDriverService> SERVICE_FACTORY =
+            new DriverServiceFactory<ChromeDriverService>() {
+                @Override
+                public ChromeDriverService createService(File executable) {
+                    return new ChromeDriverService.Builder()
+                            .usingDriverExecutable(executable)
+                            .usingAnyFreePort()
+                            .build();
+                }
+            };
+
     private ChromeDriver webDriver;
+    private File driverExecutable;
+    private File userDataDir;
+    private SessionDirectory sessionDir;
 
     /**
      * Gets the latest known version of chromedriver.
-     * 
+     *
+     * The value is cached on disk and refreshed in the background once a day, so this only goes to the network when
+     * it was never retrieved before.
+     *
      * @return Latest known version
      */
     public static String getLatestVersion() {
-        String latest = LATEST_KNOWN_VERSION; 
+        ChromePlatformSpecifics cps = new ChromePlatformSpecifics(LATEST_KNOWN_VERSION);
+        DriverBinarySpec spec = createBinarySpec(null, cps.getOs(), cps.getArch(), cps.getExtension());
+        String latest = ChromeVersionResolver.getDefault().getLatestRelease(spec, LATEST_RELEASE_PATH);
 
-        try {
-            URL url = new URL(LATEST_RELEASE_URL);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            IOUtils.copy(url.openStream(), baos);
-            latest = baos.toString();
-        } catch (IOException e) {
-            LOG.error("Error retrieving url[{}]: {}", LATEST_RELEASE_URL, e);
+        if (null == latest) {
+            LOG.error("Error retrieving latest chromedriver version, using {}", LATEST_KNOWN_VERSION);
+            latest = LATEST_KNOWN_VERSION;
         }
         return latest;
     }
 
+    /**
+     * Describes the chromedriver binary for a platform
+     *
+     * @param version chromedriver version
+     * @param os Operating system the driver is built for
+     * @param arch Architecture the driver is built for
+     * @param extension Extension of the chromedriver executable
+     * @return {@link DriverBinarySpec}
+     */
+    static DriverBinarySpec createBinarySpec(String version, String os, String arch, String extension) {
+        return new DriverBinarySpec(DRIVER_NAME)
+                .withBinaryName(DRIVER_NAME + extension)
+                .withPlatform(os, arch)
+                .withVersion(version)
+                .withArtifactPattern(DRIVER_ARTIFACT_PATTERN)
+                .withUpstreamUrl(DRIVER_BASE_URL);
+    }
+
     /**
      * Get current OS Type
      * @return String representation of OS Type. Returned values include:<br>
@@ -127,21 +189,177 @@ public class ChromePhoenixDriver extends AbstractWebPhoenixDriver<ChromeDriver>
 
     /**
      * Creates an instance of a {@link ChromeDriver}
+     *
+     * The session is started on the pooled chromedriver service of the executable found by
+     * {@link #verify(PhoenixDriverIngredients)}, so no new chromedriver process is spawned if one is already running.
+     *
      * @param dc Desired Capabilities used to create chrome driver
      *
      * @return {@link ChromeDriver}
      */
     protected ChromeDriver createDriver(DesiredCapabilities dc) {
         LOG.debug("Desired Capabilities are: {}", dc);
-        ChromeDriver cd = null;
-        if (null == dc) {
-            cd = new ChromeDriver();
+        DesiredCapabilities capabilities = (null == dc) ? DesiredCapabilities.chrome() : dc;
+
+        if (null == this.driverExecutable) {
+            return new ChromeDriver(capabilities);
         }
-        else {
-            cd = new ChromeDriver(dc);
+
+        ChromeDriverService service;
+        try {
+            service = getServicePool().acquire(this.driverExecutable, SERVICE_FACTORY);
+        } catch (IOException e) {
+            throw new WebDriverException("Unable to start chromedriver " + this.driverExecutable, e);
+        }
+
+        return new SharedChromeDriver(service, capabilities, this.userDataDir, this.sessionDir);
+    }
+
+    /**
+     * Gets the registry the profile templates are kept in
+     *
+     * @return {@link ProfileTemplates}
+     * @throws IOException If the registry could not be created
+     */
+    protected ProfileTemplates getProfileTemplates() throws IOException {
+        return ProfileTemplates.getDefault();
+    }
+
+    /**
+     * Clones the template of a user-data-dir for a session, preparing the template if needed
+     *
+     * @param templateDir user-data-dir the template is based on
+     * @param target Directory to clone into; null to clone next to the template
+     * @return Directory of the clone
+     * @throws IOException If the template could not be prepared or cloned
+     */
+    protected File createUserDataDir(final File templateDir, File target) throws IOException {
+        ProfileTemplates templates = getProfileTemplates();
+        String name = TEMPLATE_PREFIX + Integer.toHexString(templateDir.getAbsolutePath().hashCode());
+
+        ProfileTemplate template = templates.get(name, new ProfilePreparer() {
+            @Override
+            public void prepare(File dir) throws IOException {
+                ProfileTemplate.copyProfile(templateDir, dir);
+            }
+        });
+
+        if (null == target) {
+            return templates.createClone(template);
+        }
+
+        template.cloneTo(target);
+        return target;
+    }
+
+    /**
+     * Gets the storage sessions place their profile, cache and downloads in
+     *
+     * @param i Ingredients of the driver
+     * @return {@link SessionStorage} or null if the ingredients did not ask for it
+     */
+    protected SessionStorage getSessionStorage(PhoenixDriverIngredients i) {
+        return SessionStorage.forIngredients(i);
+    }
+
+    private static ChromeOptions getOptions(DesiredCapabilities dc) {
+        Object raw = dc.getCapability(ChromeOptions.CAPABILITY);
+
+        if (null != raw && !(raw instanceof ChromeOptions)) {
+            LOG.error("Unable to add arguments to chrome options of type {}", raw.getClass());
+            return null;
+        }
+
+        if (raw instanceof SessionChromeOptions) {
+            return (ChromeOptions) raw;
+        }
+
+        //options of the ingredients are shared by every session built from them, so arguments go on a layer of our own
+        ChromeOptions rv = new SessionChromeOptions((ChromeOptions) raw);
+        dc.setCapability(ChromeOptions.CAPABILITY, rv);
+
+        return rv;
+    }
+
+    /**
+     * Translates the headless, lean launch and window size ingredients into chrome arguments
+     *
+     * @param dc Capabilities of the session
+     * @param i Ingredients of the driver
+     * @return Capabilities with the arguments added
+     */
+    static DesiredCapabilities withLaunchOptions(DesiredCapabilities dc, PhoenixDriverIngredients i) {
+        DesiredCapabilities rv = (null == dc) ? DesiredCapabilities.chrome() : dc;
+        Dimension size = i.getWindowSize();
+        Set<String> args = new LinkedHashSet<>();
+
+        if (i.isHeadless()) {
+            Collections.addAll(args, HEADLESS_ARGUMENTS);
+
+            Object userAgent = rv.getCapability(PHANTOMJS_USER_AGENT);
+            if (null != userAgent) {
+                args.add("--user-agent=" + userAgent);
+            }
+        }
+        if (i.isLeanLaunch()) {
+            Collections.addAll(args, LEAN_ARGUMENTS);
+        }
+        if (null != size) {
+            args.add("--window-size=" + size.getWidth() + "," + size.getHeight());
+        }
+
+        ChromeOptions options = args.isEmpty() ? null : getOptions(rv);
+        if (null != options) {
+            options.addArguments(args.toArray(new String[args.size()]));
+        }
+
+        return rv;
+    }
+
+    private static DesiredCapabilities withSessionDirs(DesiredCapabilities dc, File userDataDir,
+            SessionDirectory session) {
+        DesiredCapabilities rv = (null == dc) ? DesiredCapabilities.chrome() : dc;
+        //chrome options cannot be read back, so the preferences of caller supplied options are left alone
+        boolean ownOptions = (null == rv.getCapability(ChromeOptions.CAPABILITY));
+        ChromeOptions options = getOptions(rv);
+
+        if (null == options) {
+            return rv;
+        }
+
+        if (null != userDataDir) {
+            options.addArguments("--user-data-dir=" + userDataDir.getAbsolutePath());
         }
 
-        return cd;
+        if (null != session) {
+            options.addArguments("--disk-cache-dir=" + session.getCacheDir().getAbsolutePath(),
+                    "--disk-cache-size=" + session.getCacheLimit());
+
+            if (ownOptions) {
+                options.setExperimentalOption("prefs", Collections.singletonMap("download.default_directory",
+                        session.getDownloadDir().getAbsolutePath()));
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Gets the pool of running chromedriver services
+     *
+     * @return {@link DriverServicePool}
+     */
+    protected DriverServicePool getServicePool() {
+        return DriverServicePool.getDefault();
+    }
+
+    /**
+     * Gets the manager used to retrieve drivers
+     *
+     * @return {@link DriverBinaryManager}
+     */
+    protected DriverBinaryManager getBinaryManager() {
+        return DriverBinaryManager.getDefault();
     }
 
     /**
@@ -154,83 +372,55 @@ public class ChromePhoenixDriver extends AbstractWebPhoenixDriver<ChromeDriver>
 
         LOG.debug("Using cps[{}, {}, {}]", cps.getSuffix(), cps.getExtension(), cps.getVersion());
 
-        String version = cps.getVersion();
-        String osName = cps.getSuffix();
-        String pwd = System.getProperty("user.dir");
-
-        //determine the driver name
-        String driverName = String.format("chromedriver%s-%s", osName, version);
-        String driverTargetDir = Paths.get(pwd, "target", "drivers").toString();
-        File driver = Paths.get(driverTargetDir, driverName + cps.getExtension()).toFile();
-
-        if (!driver.exists()) {
-            LOG.debug("No cached chromedriver driver found");
-
-            /* Download chromedriver zip */
-            File zipDriver = Paths.get(driverTargetDir, driverName+".zip").toFile();
-            if (!zipDriver.exists()) {
-                String driverURL = String.format(DRIVER_URL_FORMAT, version, osName);
-                try {
-                    URL driverZipURL = new URL(driverURL);
-                    LOG.debug("Will download driver package [{}]", driverURL);
-
-                    FileUtils.copyURLToFile(driverZipURL, zipDriver);
-                } catch (IOException e) {
-                    LOG.error("Error downloading [{}]: {}", driverURL, e);
-                    return false;
-                }
-            }
+        File driver;
+        try {
+            driver = getBinaryManager().resolve(
+                    createBinarySpec(cps.getVersion(), cps.getOs(), cps.getArch(), cps.getExtension()));
+        } catch (IOException e) {
+            LOG.error("Error retrieving chromedriver {}: {}", cps.getVersion(), e);
+            return false;
+        }
 
-            /* Exctract chromedriver zip */
+        LOG.debug("Will use driver at [{}]", driver);
+        this.driverExecutable = driver;
+
+        SessionStorage storage = getSessionStorage(i);
+        if (null != storage) {
             try {
-                extractZip(zipDriver, driverTargetDir);
+                this.sessionDir = storage.allocate("chrome");
+                this.userDataDir = this.sessionDir.getProfileDir();
             } catch (IOException e) {
-                LOG.error("Error extracting [{}]: {}", zipDriver, driverTargetDir, e);
-                return false;
+                LOG.error("Unable to allocate session directory, using chrome defaults: {}", e);
             }
+        }
 
-            /* For caching purposes, rename chromedriver to keep os and version info */
-            File genericDriver = Paths.get(driverTargetDir, "chromedriver" + cps.getExtension()).toFile();
+        String templateDir = (String) driverConfigs.get(CHROME_PROFILE_TEMPLATE);
+        if (null != templateDir) {
             try {
-                FileUtils.moveFile(genericDriver, driver);
+                File target = (null == this.sessionDir) ? null : this.sessionDir.getProfileDir();
+                this.userDataDir = createUserDataDir(new File(templateDir), target);
             } catch (IOException e) {
-                LOG.error("Error moving [{}] to [{}]: {}", genericDriver, driver, e);
-                return false;
+                LOG.error("Unable to clone chrome profile template {}, using a fresh profile: {}", templateDir, e);
             }
-
-            driver.setExecutable(true);
         }
 
-        LOG.debug("Will use driver at [{}]", driver);
-        systemSetProperty("webdriver.chrome.driver", driver.toString());
-
-        this.webDriver = this.createDriver(i.getDriverCapabilities());
-
-        return true;
-    }
-
-    private void extractZip(File sourceZipFile, String destinationDir) throws IOException {
-        LOG.debug("Extracting [{}] to dir [{}]", sourceZipFile, destinationDir);
-        ZipInputStream zis = null;
-        ZipEntry entry;
+        DesiredCapabilities dc = new DesiredCapabilities(i.getDriverCapabilities());
+        if (null != this.userDataDir || null != this.sessionDir) {
+            dc = withSessionDirs(dc, this.userDataDir, this.sessionDir);
+        }
+        dc = withLaunchOptions(dc, i);
 
         try {
-            zis = new ZipInputStream(FileUtils.openInputStream(sourceZipFile));
-
-            while (null != (entry = zis.getNextEntry())) {
-                File dst = Paths.get(destinationDir, entry.getName()).toFile();
-
-                FileOutputStream output = FileUtils.openOutputStream(dst);
-                try {
-                    IOUtils.copy(zis, output);
-                    output.close();
-                } finally {
-                    IOUtils.closeQuietly(output);
-                }
+            applyProxy(dc, i);
+            this.webDriver = this.createDriver(dc);
+        } catch (RuntimeException e) {
+            closeSessionResources();
+            if (null != this.sessionDir) {
+                this.sessionDir.close();
             }
-            zis.close();
-        } finally {
-            IOUtils.closeQuietly(zis);
+            throw e;
         }
+
+        return true;
     }
 }
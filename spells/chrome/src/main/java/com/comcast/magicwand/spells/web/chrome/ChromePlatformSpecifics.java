@@ -32,7 +32,7 @@ class ChromePlatformSpecifics {
     /**
      * Retrieves default environment values for chrome driver versions.
      *
-     * Default values are based off of the OS type, as well as the latest version retrieved from the chromedriver repository.  Environment variables are also taken into considration to override the default system values.
+     * Default values are based off of the OS type, as well as the chromedriver version matching the installed Chrome (or the latest version retrieved from the chromedriver repository).  Environment variables are also taken into considration to override the default system values.
      */
     public ChromePlatformSpecifics(String version) {
         this(version, null, null);
@@ -60,9 +60,6 @@ class ChromePlatformSpecifics {
         if (null == this.version) {
             this.version = env.get(DRIVER_VERSION_ENV_NAME);
         }
-        if (null == this.version) {
-            this.version = ChromePhoenixDriver.getLatestVersion();
-        }
         if (null == this.artifact) {
             this.artifact = env.get(OS_SUFFIX_ENV_NAME);
         }
@@ -75,6 +72,10 @@ class ChromePlatformSpecifics {
         if (null == this.extension) {
             this.extension = SystemDetail.deviceIsRunningWindows() ? ".exe" : "";
         }
+        if (null == this.version) {
+            this.version = ChromeVersionResolver.getDefault().resolve(getOs(), getArch(),
+                    ChromePhoenixDriver.LATEST_KNOWN_VERSION);
+        }
     }
 
     /**
@@ -86,6 +87,28 @@ class ChromePlatformSpecifics {
         return this.artifact;
     }
 
+    /**
+     * Gets the operating system part of the suffix (i.e. <code>linux</code> for <code>_linux64</code>)
+     *
+     * @return Operating system the driver is built for
+     */
+    public String getOs() {
+        String rv = this.artifact.replaceAll("^_+", "").replaceAll("[0-9]+$", "");
+
+        return rv.isEmpty() ? "unknown" : rv;
+    }
+
+    /**
+     * Gets the architecture part of the suffix (i.e. <code>64</code> for <code>_linux64</code>)
+     *
+     * @return Architecture the driver is built for
+     */
+    public String getArch() {
+        String rv = this.artifact.replaceAll("^.*?([0-9]*)$", "$1");
+
+        return rv.isEmpty() ? "unknown" : rv;
+    }
+
     /**
      * Retrieves the artifact string with the suggested basename
      *
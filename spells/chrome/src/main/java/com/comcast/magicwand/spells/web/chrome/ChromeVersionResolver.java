@@ -0,0 +1,383 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.web.chrome;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.comcast.cookie.utils.IProcessBuilder;
+import com.comcast.cookie.utils.SystemProcess;
+import com.comcast.magicwand.binaries.DriverBinaryManager;
+import com.comcast.magicwand.binaries.DriverBinarySpec;
+import com.comcast.magicwand.binaries.MetadataCache;
+import com.comcast.magicwand.utils.SystemDetail;
+import com.comcast.magicwand.utils.Version;
+
+/**
+ * Picks a chromedriver version without going to the network on every build
+ *
+ * <p>
+ * The version of the locally installed Chrome is detected first and mapped to a compatible chromedriver using a
+ * compatibility table taken from the chromedriver release notes. The table ships with magic-wand and is refreshed in
+ * the background. If Chrome is not installed (or is newer than the table), the <code>LATEST_RELEASE</code> pointers of
+ * the chromedriver bucket are used; their values are cached on disk and refreshed in the background once stale, and
+ * failed lookups are not repeated for {@link MetadataCache#FAILURE_TTL} milliseconds.
+ * </p>
+ */
+class ChromeVersionResolver {
+    private static final Logger LOG = LoggerFactory.getLogger(ChromeVersionResolver.class);
+
+    private static final String CHROME_BINARY_ENV_NAME = "MAGICWAND_CHROME_BINARY";
+    private static final String LATEST_RELEASE = "LATEST_RELEASE";
+    private static final String NOTES_PATH_FORMAT = "%s/notes.txt";
+    private static final String COMPATIBILITY_NAME = "chromedriver-compatibility.properties";
+    private static final String METADATA_PREFIX = "chromedriver-";
+
+    private static final long LATEST_RELEASE_TTL = 24L * 60 * 60 * 1000;
+    private static final long COMPATIBILITY_TTL = 7L * 24 * 60 * 60 * 1000;
+    private static final long DETECT_TIMEOUT = 10 * 1000;
+
+    /** First Chrome release whose chromedriver is published under a LATEST_RELEASE_&lt;major&gt; pointer */
+    private static final int FIRST_VERSIONED_POINTER = 70;
+
+    private static final Pattern CHROME_VERSION = Pattern.compile("\\b([0-9]+)\\.[0-9]+\\.[0-9]+\\.[0-9]+\\b");
+    private static final Pattern NOTES_ENTRY = Pattern
+            .compile("ChromeDriver v?([0-9][0-9.]*)[^\\n]*\\n\\s*Supports Chrome v([0-9]+)-([0-9]+)");
+
+    private static final String[][] MAC_COMMANDS = {
+        { "/Applications/Google Chrome.app/Contents/MacOS/Google Chrome", "--version" }
+    };
+    private static final String[][] WINDOWS_COMMANDS = {
+        { "reg", "query", "HKEY_CURRENT_USER\\Software\\Google\\Chrome\\BLBeacon", "/v", "version" },
+        { "reg", "query",
+            "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Google\\Update\\Clients\\{8A69D345-D564-463c-AFF1-A69D9E530F96}",
+            "/v", "pv" }
+    };
+    private static final String[][] LINUX_COMMANDS = {
+        { "google-chrome", "--version" },
+        { "google-chrome-stable", "--version" },
+        { "chromium-browser", "--version" },
+        { "chromium", "--version" }
+    };
+
+    private static ChromeVersionResolver defaultResolver;
+
+    private final DriverBinaryManager manager;
+    private final MetadataCache metadata;
+
+    private boolean detected = false;
+    private Integer installedMajor;
+
+    /**
+     * Creates a resolver
+     *
+     * @param manager Manager used to read release pointers and notes
+     * @param metadata Cache for release pointers and the compatibility table
+     */
+    ChromeVersionResolver(DriverBinaryManager manager, MetadataCache metadata) {
+        this.manager = manager;
+        this.metadata = metadata;
+    }
+
+    /**
+     * @return Resolver using the default driver binary manager and metadata cache
+     */
+    static synchronized ChromeVersionResolver getDefault() {
+        if (null == defaultResolver) {
+            defaultResolver = new ChromeVersionResolver(DriverBinaryManager.getDefault(), MetadataCache.getDefault());
+        }
+
+        return defaultResolver;
+    }
+
+    /**
+     * Picks a chromedriver version for this machine
+     *
+     * @param os Operating system the driver is built for
+     * @param arch Architecture the driver is built for
+     * @param fallback Version to use if nothing else can be determined
+     * @return chromedriver version
+     */
+    String resolve(String os, String arch, String fallback) {
+        DriverBinarySpec spec = ChromePhoenixDriver.createBinarySpec(null, os, arch, "");
+        Integer major = getInstalledChromeMajor();
+        String rv = null;
+
+        if (null != major) {
+            rv = findCompatibleDriver(spec, major);
+
+            if (null == rv && major >= FIRST_VERSIONED_POINTER) {
+                rv = getLatestRelease(spec, LATEST_RELEASE + "_" + major);
+            }
+            LOG.debug("Installed Chrome {} maps to chromedriver {}", major, rv);
+        }
+
+        if (null == rv) {
+            rv = getLatestRelease(spec, LATEST_RELEASE);
+        }
+
+        if (null == rv) {
+            LOG.warn("Unable to determine a chromedriver version, using {}", fallback);
+            rv = fallback;
+        }
+
+        return rv;
+    }
+
+    /**
+     * Reads a release pointer, using the cached value if there is one
+     *
+     * @param spec chromedriver spec used to reach the sources
+     * @param pointer Name of the pointer (i.e. <code>LATEST_RELEASE</code>)
+     * @return Version the pointer refers to, or null if it could not be read
+     */
+    String getLatestRelease(final DriverBinarySpec spec, final String pointer) {
+        return this.metadata.get(METADATA_PREFIX + pointer, LATEST_RELEASE_TTL, new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return ChromeVersionResolver.this.manager.readResource(spec, pointer).trim();
+            }
+        });
+    }
+
+    /**
+     * Finds the newest chromedriver supporting a Chrome release
+     *
+     * @param spec chromedriver spec used to reach the sources when refreshing the table
+     * @param chromeMajor Major version of Chrome
+     * @return chromedriver version, or null if the compatibility table has no match
+     */
+    String findCompatibleDriver(DriverBinarySpec spec, int chromeMajor) {
+        Version best = null;
+
+        for (Map.Entry<Object, Object> e : loadCompatibilityTable(spec).entrySet()) {
+            String[] bounds = ((String) e.getValue()).trim().split("-");
+
+            try {
+                if (2 == bounds.length && Integer.parseInt(bounds[0]) <= chromeMajor
+                        && chromeMajor <= Integer.parseInt(bounds[1])) {
+                    Version candidate = Version.valueOf(((String) e.getKey()).trim());
+
+                    if (null == best || best.compareTo(candidate) < 0) {
+                        best = candidate;
+                    }
+                }
+            }
+            catch (NumberFormatException nfe) {
+                LOG.warn("Ignoring invalid compatibility entry {}={}", e.getKey(), e.getValue());
+            }
+        }
+
+        return (null == best) ? null : best.toString();
+    }
+
+    private Properties loadCompatibilityTable(final DriverBinarySpec spec) {
+        Properties rv = readBundledTable();
+        String bundled = toText(rv);
+
+        String cached = this.metadata.getNonBlocking(METADATA_PREFIX + COMPATIBILITY_NAME, COMPATIBILITY_TTL,
+                new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        return fetchCompatibilityTable(spec);
+                    }
+                }, bundled);
+
+        try {
+            rv.load(new StringReader(cached));
+        }
+        catch (IOException ioe) {
+            LOG.warn("Unable to read cached compatibility table: {}", ioe.toString());
+        }
+
+        return rv;
+    }
+
+    private String fetchCompatibilityTable(DriverBinarySpec spec) throws IOException {
+        String latest = getLatestRelease(spec, LATEST_RELEASE);
+
+        if (null == latest) {
+            return null;
+        }
+
+        Properties table = parseReleaseNotes(this.manager.readResource(spec, String.format(NOTES_PATH_FORMAT, latest)));
+
+        return table.isEmpty() ? null : toText(table);
+    }
+
+    /**
+     * Builds a compatibility table from chromedriver release notes
+     *
+     * @param notes Content of <code>notes.txt</code>
+     * @return chromedriver version mapped to <code>oldest-newest</code> supported Chrome major version
+     */
+    static Properties parseReleaseNotes(String notes) {
+        Properties rv = new Properties();
+        Matcher m = NOTES_ENTRY.matcher(notes);
+
+        while (m.find()) {
+            rv.setProperty(m.group(1), m.group(2) + "-" + m.group(3));
+        }
+
+        return rv;
+    }
+
+    private static Properties readBundledTable() {
+        Properties rv = new Properties();
+        InputStream is = ChromeVersionResolver.class.getResourceAsStream(COMPATIBILITY_NAME);
+
+        if (null == is) {
+            LOG.warn("Bundled chromedriver compatibility table is missing");
+            return rv;
+        }
+
+        try {
+            rv.load(is);
+        }
+        catch (IOException ioe) {
+            LOG.warn("Unable to read bundled compatibility table: {}", ioe.toString());
+        }
+        finally {
+            IOUtils.closeQuietly(is);
+        }
+
+        return rv;
+    }
+
+    private static String toText(Properties p) {
+        StringWriter sw = new StringWriter();
+
+        try {
+            p.store(sw, null);
+        }
+        catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+
+        return sw.toString();
+    }
+
+    private synchronized Integer getInstalledChromeMajor() {
+        if (!this.detected) {
+            String version = detectInstalledChrome();
+            Matcher m = (null == version) ? null : CHROME_VERSION.matcher(version);
+
+            this.installedMajor = (null != m && m.find()) ? Integer.valueOf(m.group(1)) : null;
+            this.detected = true;
+
+            LOG.debug("Detected installed Chrome [{}]", version);
+        }
+
+        return this.installedMajor;
+    }
+
+    /**
+     * Detects the version of the locally installed Chrome
+     *
+     * @return Output of the first version query that mentions a Chrome version, or null if Chrome was not found
+     */
+    protected String detectInstalledChrome() {
+        String binary = System.getenv(CHROME_BINARY_ENV_NAME);
+
+        if (null != binary) {
+            return run(binary, "--version");
+        }
+
+        String[][] commands;
+
+        if (SystemDetail.deviceIsRunningMac()) {
+            commands = MAC_COMMANDS;
+        }
+        else if (SystemDetail.deviceIsRunningWindows()) {
+            commands = WINDOWS_COMMANDS;
+        }
+        else {
+            commands = LINUX_COMMANDS;
+        }
+
+        for (String[] cmd : commands) {
+            String output = run(cmd);
+
+            if (null != output && CHROME_VERSION.matcher(output).find()) {
+                return output;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Runs a command and collects its output
+     *
+     * @param cmd Command to run
+     * @return Standard output of the command, or null if it failed or did not finish in time
+     */
+    protected String run(String... cmd) {
+        IProcessBuilder pb = new SystemProcess().command(cmd);
+        final Process p;
+
+        try {
+            p = pb.start();
+        }
+        catch (IOException ioe) {
+            LOG.trace("Unable to run {}: {}", pb.command(), ioe.toString());
+            return null;
+        }
+
+        final StringWriter output = new StringWriter();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    IOUtils.copy(p.getInputStream(), output, "UTF-8");
+                }
+                catch (IOException ioe) {
+                    LOG.trace("Unable to read process output: {}", ioe.toString());
+                }
+            }
+        }, "magicwand-chrome-version");
+
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            reader.join(DETECT_TIMEOUT);
+            if (reader.isAlive()) {
+                LOG.warn("{} did not finish within {} ms", pb.command(), DETECT_TIMEOUT);
+                return null;
+            }
+            return (0 == p.waitFor()) ? output.toString() : null;
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        finally {
+            p.destroy();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.web.chrome;
+
+import java.io.IOException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openqa.selenium.chrome.ChromeOptions;
+
+/**
+ * {@link ChromeOptions} of a single session, layered over the options handed over in the capabilities of the
+ * ingredients, if any. Arguments added to it follow the arguments of the shared options, which are never modified, so
+ * that later sessions built from the same ingredients do not inherit them. Other settings only apply when there are no
+ * shared options.
+ *
+ * <p>
+ * Public because the options are serialized by calling {@link #toJson()} reflectively.
+ * </p>
+ */
+public class SessionChromeOptions extends ChromeOptions {
+
+    private final ChromeOptions shared;
+
+    /**
+     * Creates options for a session
+     *
+     * @param shared Options of the ingredients; may be null
+     */
+    SessionChromeOptions(ChromeOptions shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JSONObject toJson() throws IOException, JSONException {
+        if (null == this.shared) {
+            return super.toJson();
+        }
+
+        JSONObject rv = this.shared.toJson();
+        JSONArray own = super.toJson().getJSONArray("args");
+
+        JSONArray args = rv.optJSONArray("args");
+        if (null == args) {
+            args = new JSONArray();
+            rv.put("args", args);
+        }
+        for (int i = 0; i < own.length(); i++) {
+            args.put(own.get(i));
+        }
+
+        return rv;
+    }
+}
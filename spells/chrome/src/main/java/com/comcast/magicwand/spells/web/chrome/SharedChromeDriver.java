@@ -0,0 +1,67 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.web.chrome;
+
+import java.io.File;
+
+import com.comcast.magicwand.drivers.profiles.SessionDirectory;
+import com.comcast.magicwand.drivers.services.SharedServiceCommandExecutor;
+
+import org.apache.commons.io.FileUtils;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
+
+/**
+ * {@link ChromeDriver} whose session runs on a pooled chromedriver service; quitting it leaves the service running
+ */
+class SharedChromeDriver extends ChromeDriver {
+
+    private final File userDataDir;
+    private final SessionDirectory sessionDir;
+
+    /**
+     * Starts a session on a running service
+     *
+     * @param service Pooled service
+     * @param capabilities Capabilities of the session
+     * @param userDataDir Profile cloned for this session, deleted when it quits; may be null
+     * @param sessionDir Directory holding the profile, cache and downloads of this session, deleted when it quits;
+     *            may be null
+     */
+    SharedChromeDriver(ChromeDriverService service, Capabilities capabilities, File userDataDir,
+            SessionDirectory sessionDir) {
+        super(service, capabilities);
+        setCommandExecutor(new SharedServiceCommandExecutor(service));
+        this.userDataDir = userDataDir;
+        this.sessionDir = sessionDir;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void quit() {
+        try {
+            super.quit();
+        } finally {
+            FileUtils.deleteQuietly(this.userDataDir);
+            if (null != this.sessionDir) {
+                this.sessionDir.close();
+            }
+        }
+    }
+}
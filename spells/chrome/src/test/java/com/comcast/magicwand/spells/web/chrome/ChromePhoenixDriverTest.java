@@ -15,6 +15,7 @@
  */
 package com.comcast.magicwand.spells.web.chrome;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -22,7 +23,10 @@ import java.util.List;
 import com.comcast.magicwand.builders.PhoenixDriverIngredients;
 import com.comcast.magicwand.spells.web.chrome.ChromePlatformSpecifics;
 
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.mockito.Mockito;
+import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.slf4j.Logger;
@@ -175,4 +179,57 @@ public class ChromePhoenixDriverTest {
             Assert.assertEquals(cdMock, this.myTestObj.getDriver(), failMsg);
         }
     }
+
+    private static List<String> getArguments(DesiredCapabilities dc) throws IOException, JSONException {
+        JSONArray args = ((ChromeOptions) dc.getCapability(ChromeOptions.CAPABILITY)).toJson().getJSONArray("args");
+        List<String> rv = new ArrayList<String>();
+
+        for (int i = 0; i < args.length(); i++) {
+            rv.add(args.getString(i));
+        }
+
+        return rv;
+    }
+
+    @Test
+    public void testHeadlessLaunchOptions() throws IOException, JSONException {
+        DesiredCapabilities dc = DesiredCapabilities.chrome();
+        dc.setCapability(ChromePhoenixDriver.PHANTOMJS_USER_AGENT, "agent/1.0");
+
+        PhoenixDriverIngredients i = new PhoenixDriverIngredients().withHeadless().withLeanLaunch();
+        List<String> args = getArguments(ChromePhoenixDriver.withLaunchOptions(dc, i));
+
+        Assert.assertTrue(args.contains("--headless"), args.toString());
+        Assert.assertTrue(args.contains("--disable-extensions"), args.toString());
+        Assert.assertTrue(args.contains("--user-agent=agent/1.0"), args.toString());
+        Assert.assertTrue(args.contains("--window-size=1366,768"), args.toString());
+        Assert.assertEquals(args.indexOf("--disable-gpu"), args.lastIndexOf("--disable-gpu"));
+    }
+
+    @Test
+    public void testDefaultLaunchOptions() {
+        DesiredCapabilities dc = ChromePhoenixDriver.withLaunchOptions(DesiredCapabilities.chrome(),
+                new PhoenixDriverIngredients());
+
+        Assert.assertNull(dc.getCapability(ChromeOptions.CAPABILITY));
+    }
+
+    @Test
+    public void testLaunchOptionsLeaveSharedOptionsAlone() throws IOException, JSONException {
+        ChromeOptions shared = new ChromeOptions();
+        shared.addArguments("--lang=fr");
+        PhoenixDriverIngredients i = new PhoenixDriverIngredients().withHeadless()
+                .addDriverCapability(ChromeOptions.CAPABILITY, shared);
+
+        for (int n = 0; n < 2; n++) {
+            DesiredCapabilities dc = new DesiredCapabilities(i.getDriverCapabilities());
+            List<String> args = getArguments(ChromePhoenixDriver.withLaunchOptions(dc, i));
+
+            Assert.assertEquals(args.get(0), "--lang=fr");
+            Assert.assertEquals(args.indexOf("--headless"), args.lastIndexOf("--headless"), args.toString());
+        }
+
+        Assert.assertEquals(shared.toJson().getJSONArray("args").length(), 1);
+        Assert.assertSame(i.getDriverCapabilities().getCapability(ChromeOptions.CAPABILITY), shared);
+    }
 }
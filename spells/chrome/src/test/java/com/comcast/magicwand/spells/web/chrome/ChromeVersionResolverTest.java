@@ -0,0 +1,136 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.web.chrome;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.comcast.magicwand.binaries.BinarySource;
+import com.comcast.magicwand.binaries.DirectorySource;
+import com.comcast.magicwand.binaries.DriverBinaryManager;
+import com.comcast.magicwand.binaries.DriverCache;
+import com.comcast.magicwand.binaries.MetadataCache;
+
+public class ChromeVersionResolverTest {
+
+    private static final Executor INLINE = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File root;
+    private File mirror;
+    private File metadataDir;
+
+    private class TestResolver extends ChromeVersionResolver {
+        private final String installed;
+
+        TestResolver(String installed) {
+            super(new DriverBinaryManager(new DriverCache(new File(root, "cache"), DriverCache.DEFAULT_MAX_SIZE),
+                    Arrays.<BinarySource>asList(new DirectorySource(mirror)), true),
+                    new MetadataCache(metadataDir, INLINE));
+            this.installed = installed;
+        }
+
+        @Override
+        protected String detectInstalledChrome() {
+            return this.installed;
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.root = Files.createTempDirectory("chrome-resolver").toFile();
+        this.mirror = new File(this.root, "mirror");
+        this.metadataDir = new File(this.root, "metadata");
+
+        FileUtils.writeStringToFile(new File(this.mirror, "LATEST_RELEASE"), "2.46");
+        FileUtils.writeStringToFile(new File(this.mirror, "LATEST_RELEASE_75"), "75.0.3770.140");
+    }
+
+    @AfterMethod
+    public void teardown() {
+        FileUtils.deleteQuietly(this.root);
+    }
+
+    @Test
+    public void testInstalledChromeUsesCompatibilityTable() {
+        Assert.assertEquals(new TestResolver("Google Chrome 45.0.2454.101").resolve("linux", "64", "2.19"), "2.20");
+        Assert.assertEquals(new TestResolver("Chromium 71.0.3578.98 Built on Ubuntu").resolve("linux", "64", "2.19"),
+                "2.46");
+    }
+
+    @Test
+    public void testNewerChromeUsesVersionedPointer() {
+        Assert.assertEquals(new TestResolver("Google Chrome 75.0.3770.100").resolve("linux", "64", "2.19"),
+                "75.0.3770.140");
+    }
+
+    @Test
+    public void testWithoutChromeUsesCachedLatestRelease() throws IOException {
+        Assert.assertEquals(new TestResolver(null).resolve("linux", "64", "2.19"), "2.46");
+
+        // the cached value is served even after the mirror changes
+        FileUtils.writeStringToFile(new File(this.mirror, "LATEST_RELEASE"), "2.99");
+        Assert.assertEquals(new TestResolver(null).resolve("linux", "64", "2.19"), "2.46");
+    }
+
+    @Test
+    public void testFallbackWhenNothingIsKnown() {
+        FileUtils.deleteQuietly(this.mirror);
+
+        Assert.assertEquals(new TestResolver(null).resolve("linux", "64", "2.19"), "2.19");
+    }
+
+    @Test
+    public void testFailedLookupIsNotRetriedRightAway() throws IOException {
+        FileUtils.deleteQuietly(this.mirror);
+        ChromeVersionResolver resolver = new TestResolver(null);
+        Assert.assertEquals(resolver.resolve("linux", "64", "2.19"), "2.19");
+
+        // the mirror coming back is only noticed once the failure has expired
+        FileUtils.writeStringToFile(new File(this.mirror, "LATEST_RELEASE"), "2.46");
+        Assert.assertEquals(resolver.resolve("linux", "64", "2.19"), "2.19");
+        Assert.assertEquals(new TestResolver(null).resolve("linux", "64", "2.19"), "2.46");
+    }
+
+    @Test
+    public void testParseReleaseNotes() {
+        String notes = "----------ChromeDriver v2.46 (2019-02-01)----------\n"
+                + "Supports Chrome v71-73\n"
+                + "Resolved issue 1: ...\n\n"
+                + "----------ChromeDriver v2.45 (2018-12-10)----------\n"
+                + "Supports Chrome v70-72\n";
+
+        Properties table = ChromeVersionResolver.parseReleaseNotes(notes);
+
+        Assert.assertEquals(table.size(), 2);
+        Assert.assertEquals(table.getProperty("2.46"), "71-73");
+        Assert.assertEquals(table.getProperty("2.45"), "70-72");
+    }
+}
@@ -15,14 +15,29 @@
  */
 package com.comcast.magicwand.spells.web.firefox;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
 import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+import com.comcast.magicwand.drivers.profiles.ProfilePreparer;
+import com.comcast.magicwand.drivers.profiles.ProfileTemplate;
+import com.comcast.magicwand.drivers.profiles.ProfileTemplates;
+import com.comcast.magicwand.drivers.profiles.SessionDirectory;
+import com.comcast.magicwand.drivers.profiles.SessionStorage;
 import com.comcast.magicwand.drivers.web.AbstractWebPhoenixDriver;
 
+import org.apache.commons.io.FileUtils;
+import org.openqa.selenium.Dimension;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.firefox.FirefoxBinary;
 import org.openqa.selenium.firefox.FirefoxDriver;
 import org.openqa.selenium.firefox.FirefoxProfile;
 import org.openqa.selenium.firefox.internal.ProfilesIni;
 import org.openqa.selenium.remote.DesiredCapabilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Web Driver for controlling Firefox browser
@@ -31,7 +46,22 @@ import org.openqa.selenium.remote.DesiredCapabilities;
  *
  */
 public class FirefoxPhoenixDriver extends AbstractWebPhoenixDriver<FirefoxDriver> {
+    private static final Logger LOG = LoggerFactory.getLogger(FirefoxPhoenixDriver.class);
+
+    /**
+     * Driver config naming the directory of a Firefox profile (with extensions, prefs, a seeded <code>cache2</code>
+     * directory...) to use instead of the <code>default</code> profile of the current user
+     */
+    public static final String FIREFOX_PROFILE_TEMPLATE = "firefoxProfileTemplate";
+
+    private static final String DEFAULT_PROFILE = "default";
+    private static final String TEMPLATE_PREFIX = "firefox-";
+
+    private static final int KILOBYTE = 1024;
+    private static final int ONLY_PROFILE_EXTENSIONS = 1;
+
     private FirefoxDriver webDriver;
+    private SessionDirectory sessionDir;
 
     /**
      * {@inheritDoc}
@@ -48,7 +78,11 @@ public class FirefoxPhoenixDriver extends AbstractWebPhoenixDriver<FirefoxDriver
      */
     protected FirefoxDriver createDriver(final DesiredCapabilities dc) {
         // no need to check if dc is null as we at least have the firefox profile set
-        return new FirefoxDriver(dc);
+        if (null == this.sessionDir) {
+            return new FirefoxDriver(dc);
+        }
+
+        return new SessionFirefoxDriver(dc, this.sessionDir);
     }
 
     /**
@@ -59,6 +93,142 @@ public class FirefoxPhoenixDriver extends AbstractWebPhoenixDriver<FirefoxDriver
         return new ProfilesIni();
     }
 
+    /**
+     * Gets the registry the profile templates are kept in
+     *
+     * @return {@link ProfileTemplates}
+     * @throws IOException If the registry could not be created
+     */
+    protected ProfileTemplates getProfileTemplates() throws IOException {
+        return ProfileTemplates.getDefault();
+    }
+
+    /**
+     * Creates the profile of a session.
+     *
+     * The profile is cloned from a template prepared once per JVM, either from <code>templateDir</code> or from the
+     * <code>default</code> profile of the current user, instead of having selenium copy the whole profile twice for
+     * every session.
+     *
+     * @param templateDir Directory of the profile to base the template on; null for the <code>default</code> profile
+     * @return {@link FirefoxProfile}
+     * @throws IOException If the template could not be prepared
+     */
+    protected FirefoxProfile createProfile(final String templateDir) throws IOException {
+        String name = TEMPLATE_PREFIX + ((null == templateDir)
+                ? DEFAULT_PROFILE : Integer.toHexString(new File(templateDir).getAbsolutePath().hashCode()));
+
+        ProfileTemplate template = getProfileTemplates().get(name, new ProfilePreparer() {
+            @Override
+            public void prepare(File dir) throws IOException {
+                FirefoxProfile model = (null == templateDir)
+                        ? createProfilesIni().getProfile(DEFAULT_PROFILE)
+                        : new FirefoxProfile(new File(templateDir));
+                if (null == model) {
+                    model = new FirefoxProfile();
+                }
+
+                //lays the profile out the way selenium would for a session, webdriver extension included
+                File laidOut = model.layoutOnDisk();
+                try {
+                    FileUtils.copyDirectory(laidOut, dir);
+                } finally {
+                    model.clean(laidOut);
+                }
+            }
+        });
+
+        return new TemplateFirefoxProfile(template);
+    }
+
+    /**
+     * Gets the storage sessions place their profile, cache and downloads in
+     *
+     * @param i Ingredients of the driver
+     * @return {@link SessionStorage} or null if the ingredients did not ask for it
+     */
+    protected SessionStorage getSessionStorage(PhoenixDriverIngredients i) {
+        return SessionStorage.forIngredients(i);
+    }
+
+    /**
+     * Copies a profile handed over in the capabilities of the ingredients, so that the preferences of one session are
+     * not set on it
+     *
+     * @param fp Profile to copy
+     * @return Copy; <code>fp</code> itself if it could not be copied
+     */
+    private static FirefoxProfile copyProfile(FirefoxProfile fp) {
+        try {
+            return FirefoxProfile.fromJson(fp.toJson());
+        } catch (IOException e) {
+            LOG.error("Unable to copy the Firefox profile, session preferences are set on the shared one: {}", e);
+            return fp;
+        }
+    }
+
+    private static void applySessionPrefs(FirefoxProfile fp, SessionDirectory session) {
+        fp.setPreference("browser.cache.disk.parent_directory", session.getCacheDir().getAbsolutePath());
+        fp.setPreference("browser.cache.disk.smart_size.enabled", false);
+        fp.setPreference("browser.cache.disk.capacity", (int) Math.min(Integer.MAX_VALUE,
+                session.getCacheLimit() / KILOBYTE));
+        fp.setPreference("browser.download.dir", session.getDownloadDir().getAbsolutePath());
+        fp.setPreference("browser.download.folderList", 2);
+        fp.setPreference("browser.download.useDownloadDir", true);
+    }
+
+    private static void applyLeanPrefs(FirefoxProfile fp) {
+        //extensions installed system wide or in the application directory stay out; the webdriver one is in the profile
+        fp.setPreference("extensions.enabledScopes", ONLY_PROFILE_EXTENSIONS);
+        fp.setPreference("extensions.update.enabled", false);
+        fp.setPreference("layers.acceleration.disabled", true);
+        fp.setPreference("gfx.direct2d.disabled", true);
+        fp.setPreference("app.update.enabled", false);
+        fp.setPreference("app.update.auto", false);
+        fp.setPreference("browser.search.update", false);
+        fp.setPreference("browser.safebrowsing.enabled", false);
+        fp.setPreference("browser.safebrowsing.malware.enabled", false);
+        fp.setPreference("datareporting.healthreport.uploadEnabled", false);
+        fp.setPreference("datareporting.policy.dataSubmissionEnabled", false);
+        fp.setPreference("toolkit.telemetry.enabled", false);
+        fp.setPreference("network.prefetch-next", false);
+        fp.setPreference("browser.startup.page", 0);
+    }
+
+    /**
+     * Creates the Firefox binary of a headless session
+     *
+     * @param configured Value of the {@link FirefoxDriver#BINARY} capability, if any
+     * @return {@link FirefoxBinary}
+     */
+    protected FirefoxBinary createBinary(Object configured) {
+        if (configured instanceof FirefoxBinary) {
+            return (FirefoxBinary) configured;
+        }
+        if (null != configured) {
+            return new FirefoxBinary(new File(configured.toString()));
+        }
+
+        return new FirefoxBinary();
+    }
+
+    /**
+     * Makes Firefox run without a display. Honored by Firefox 55 and later; older versions still need one.
+     *
+     * @param dc Capabilities of the session
+     * @param size Size of the headless screen; may be null
+     */
+    private void applyHeadless(DesiredCapabilities dc, Dimension size) {
+        FirefoxBinary binary = createBinary(dc.getCapability(FirefoxDriver.BINARY));
+
+        binary.setEnvironmentProperty("MOZ_HEADLESS", "1");
+        if (null != size) {
+            binary.setEnvironmentProperty("MOZ_HEADLESS_WIDTH", String.valueOf(size.getWidth()));
+            binary.setEnvironmentProperty("MOZ_HEADLESS_HEIGHT", String.valueOf(size.getHeight()));
+        }
+        dc.setCapability(FirefoxDriver.BINARY, binary);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -67,16 +237,74 @@ public class FirefoxPhoenixDriver extends AbstractWebPhoenixDriver<FirefoxDriver
 
         if (this.verifyIngredients(i)) {
             rv = true;
-            ProfilesIni allProfiles = this.createProfilesIni();
-            FirefoxProfile fp = allProfiles.getProfile("default");
+            //the profile, proxy and binary of this session must not end up in the ingredients used by later builds
+            DesiredCapabilities dc = new DesiredCapabilities(i.getDriverCapabilities());
 
-            DesiredCapabilities dc = i.getDriverCapabilities();
+            SessionStorage storage = getSessionStorage(i);
+            if (null != storage) {
+                try {
+                    this.sessionDir = storage.allocate("firefox");
+                } catch (IOException e) {
+                    LOG.error("Unable to allocate session directory, using Firefox defaults: {}", e);
+                }
+            }
 
             if (null == dc.getCapability(FirefoxDriver.PROFILE)) {
+                Map<String, Object> configs = i.getDriverConfigs();
+                String templateDir = (String) configs.get(FIREFOX_PROFILE_TEMPLATE);
+                FirefoxProfile fp;
+
+                try {
+                    fp = createProfile(templateDir);
+                } catch (IOException e) {
+                    LOG.error("Unable to prepare Firefox profile template, copying the profile instead: {}", e);
+                    fp = (null == templateDir)
+                            ? this.createProfilesIni().getProfile(DEFAULT_PROFILE)
+                            : new FirefoxProfile(new File(templateDir));
+                }
+
+                if (null != this.sessionDir && fp instanceof TemplateFirefoxProfile) {
+                    ((TemplateFirefoxProfile) fp).setProfileDir(this.sessionDir.getProfileDir());
+                }
                 dc.setCapability(FirefoxDriver.PROFILE, fp);
             }
 
-            this.webDriver = createDriver(dc);
+            Object profile = dc.getCapability(FirefoxDriver.PROFILE);
+            if ((null != this.sessionDir || i.isLeanLaunch()) && profile instanceof FirefoxProfile
+                    && profile == i.getDriverCapabilities().getCapability(FirefoxDriver.PROFILE)) {
+                profile = copyProfile((FirefoxProfile) profile);
+                dc.setCapability(FirefoxDriver.PROFILE, profile);
+            }
+            if (null != this.sessionDir && profile instanceof FirefoxProfile) {
+                applySessionPrefs((FirefoxProfile) profile, this.sessionDir);
+            }
+            if (i.isLeanLaunch() && profile instanceof FirefoxProfile) {
+                applyLeanPrefs((FirefoxProfile) profile);
+            }
+
+            Dimension size = i.getWindowSize();
+            try {
+                if (i.isHeadless()) {
+                    applyHeadless(dc, size);
+                }
+                applyProxy(dc, i);
+
+                this.webDriver = createDriver(dc);
+            } catch (RuntimeException e) {
+                closeSessionResources();
+                if (null != this.sessionDir) {
+                    this.sessionDir.close();
+                }
+                throw e;
+            }
+
+            if (null != size) {
+                try {
+                    this.webDriver.manage().window().setSize(size);
+                } catch (WebDriverException e) {
+                    LOG.error("Unable to resize the Firefox window to {}: {}", size, e);
+                }
+            }
         }
 
         return rv;
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.web.firefox;
+
+import com.comcast.magicwand.drivers.profiles.SessionDirectory;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.firefox.FirefoxDriver;
+
+/**
+ * {@link FirefoxDriver} whose profile, cache and downloads live in a {@link SessionDirectory} that is deleted when
+ * it quits
+ */
+class SessionFirefoxDriver extends FirefoxDriver {
+
+    private final SessionDirectory sessionDir;
+
+    /**
+     * Starts a session
+     *
+     * @param capabilities Capabilities of the session
+     * @param sessionDir Directory of the session
+     */
+    SessionFirefoxDriver(Capabilities capabilities, SessionDirectory sessionDir) {
+        super(capabilities);
+        this.sessionDir = sessionDir;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void quit() {
+        try {
+            super.quit();
+        } finally {
+            this.sessionDir.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.web.firefox;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.comcast.magicwand.drivers.profiles.ProfileTemplate;
+
+import org.apache.commons.io.FileUtils;
+import org.openqa.selenium.firefox.FirefoxProfile;
+import org.openqa.selenium.firefox.UnableToCreateProfileException;
+
+/**
+ * {@link FirefoxProfile} laid out on disk by cloning a {@link ProfileTemplate} instead of copying a model profile
+ */
+class TemplateFirefoxProfile extends FirefoxProfile {
+
+    private final ProfileTemplate template;
+    private File profileDir;
+
+    /**
+     * Creates a profile backed by a template
+     *
+     * @param template Prepared profile
+     */
+    TemplateFirefoxProfile(ProfileTemplate template) {
+        super(template.getDirectory());
+        this.template = template;
+    }
+
+    /**
+     * Lays the profile out in a given directory instead of a new temporary one
+     *
+     * @param profileDir Directory to lay the profile out in; null to let selenium pick one
+     */
+    void setProfileDir(File profileDir) {
+        this.profileDir = profileDir;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public File layoutOnDisk() {
+        if (null == this.profileDir) {
+            return super.layoutOnDisk();
+        }
+
+        //same steps as FirefoxProfile.layoutOnDisk(), in a directory of our choosing
+        try {
+            FileUtils.forceMkdir(this.profileDir);
+            copyModel(null, this.profileDir);
+            installExtensions(this.profileDir);
+            deleteLockFiles(this.profileDir);
+            deleteExtensionsCacheIfItExists(this.profileDir);
+            updateUserPrefs(this.profileDir);
+        } catch (IOException e) {
+            throw new UnableToCreateProfileException(e);
+        }
+
+        return this.profileDir;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void copyModel(File sourceDir, File profileDir) throws IOException {
+        this.template.cloneTo(profileDir);
+    }
+}
@@ -15,14 +15,19 @@
  */
 package com.comcast.magicwand.spells.web.firefox;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
 import com.comcast.magicwand.builders.PhoenixDriverIngredients;
 
+import org.apache.commons.io.FileUtils;
 import org.mockito.Mockito;
 import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.firefox.FirefoxProfile;
 import org.openqa.selenium.firefox.internal.ProfilesIni;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.testng.Assert;
@@ -35,6 +40,7 @@ public class FirefoxPhoenixDriverTest {
         boolean verifyIngredientsReturn = false;
         ProfilesIni createProfilesIniReturn;
         FirefoxDriver createFirefoxDriverReturn;
+        DesiredCapabilities createdWith;
 
         public void setVerifyIngredientsReturn(boolean rv) {
             this.verifyIngredientsReturn = rv;
@@ -60,8 +66,14 @@ public class FirefoxPhoenixDriverTest {
 
         @Override
         protected FirefoxDriver createDriver(DesiredCapabilities dc) {
+            this.createdWith = dc;
             return this.createFirefoxDriverReturn;
         }
+
+        @Override
+        protected FirefoxProfile createProfile(String templateDir) {
+            return new FirefoxProfile();
+        }
     }
 
     private class TestData {
@@ -134,4 +146,33 @@ public class FirefoxPhoenixDriverTest {
             Assert.assertEquals(fdMock, this.myTestObj.getDriver());
         }
     }
+
+    @Test
+    public void testVerifyLeavesIngredientsAlone() throws IOException {
+        PhoenixDriverIngredients ingredients = new PhoenixDriverIngredients().withLeanLaunch();
+        this.myTestObj.setVerifyIngredientsReturn(true);
+        this.myTestObj.setCreateFirefoxDriver(Mockito.mock(FirefoxDriver.class, Mockito.RETURNS_DEEP_STUBS));
+
+        Assert.assertTrue(this.myTestObj.verify(ingredients));
+        Assert.assertNotNull(this.myTestObj.createdWith.getCapability(FirefoxDriver.PROFILE));
+        Assert.assertNull(ingredients.getDriverCapabilities().getCapability(FirefoxDriver.PROFILE));
+
+        FirefoxProfile shared = new FirefoxProfile();
+        ingredients.addDriverCapability(FirefoxDriver.PROFILE, shared);
+
+        Assert.assertTrue(this.myTestObj.verify(ingredients));
+        FirefoxProfile used = (FirefoxProfile) this.myTestObj.createdWith.getCapability(FirefoxDriver.PROFILE);
+        Assert.assertNotSame(used, shared);
+        Assert.assertTrue(getUserPrefs(used).contains("\"gfx.direct2d.disabled\", true"));
+        Assert.assertFalse(getUserPrefs(shared).contains("gfx.direct2d.disabled"));
+    }
+
+    private static String getUserPrefs(FirefoxProfile fp) throws IOException {
+        File dir = fp.layoutOnDisk();
+        try {
+            return FileUtils.readFileToString(new File(dir, "user.js"), StandardCharsets.UTF_8);
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
 }
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.web.iexplore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.comcast.magicwand.binaries.DriverBinaryProvider;
+import com.comcast.magicwand.binaries.DriverBinarySpec;
+import com.comcast.magicwand.utils.SystemDetail;
+
+/**
+ * Describes the IEDriverServer binaries used by {@link IePhoenixDriver}
+ */
+public class IeDriverBinaryProvider implements DriverBinaryProvider {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDriverName() {
+        return IePhoenixDriver.IE_DRIVER_NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DriverBinarySpec createBinarySpec(String version, String os, String arch) {
+        if (null != os && !IePhoenixDriver.IE_DRIVER_OS.equals(os)) {
+            throw new IllegalArgumentException("IEDriverServer is only built for Windows, not " + os);
+        }
+
+        IePlatformSpecifics ips = new IePlatformSpecifics(version, arch);
+
+        return IePhoenixDriver.createBinarySpec(ips.getVersion(), ips.getArch());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Both architectures are fetched on Windows hosts, since either may be requested through the ingredients.
+     */
+    @Override
+    public List<DriverBinarySpec> getDefaultBinarySpecs() {
+        List<DriverBinarySpec> rv = new ArrayList<>();
+
+        if (SystemDetail.deviceIsRunningWindows()) {
+            rv.add(createBinarySpec(null, null, IePlatformSpecifics.BIT_32));
+            rv.add(createBinarySpec(null, null, IePlatformSpecifics.BIT_64));
+        }
+
+        return rv;
+    }
+}
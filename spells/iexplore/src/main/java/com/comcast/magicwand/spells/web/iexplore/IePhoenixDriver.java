@@ -16,37 +16,22 @@
 package com.comcast.magicwand.spells.web.iexplore;
 
 import java.io.File;
-import java.nio.file.Paths;
 import java.io.IOException;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.BufferedInputStream;
-import java.net.URL;
 import java.util.Map;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipEntry;
 
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathFactory;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import com.comcast.magicwand.utils.VersionUtils;
+import com.comcast.magicwand.binaries.DriverBinaryManager;
+import com.comcast.magicwand.binaries.DriverBinarySpec;
+import com.comcast.magicwand.utils.Version;
 import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+import com.comcast.magicwand.drivers.services.DriverServiceFactory;
+import com.comcast.magicwand.drivers.services.DriverServicePool;
 import com.comcast.magicwand.drivers.web.AbstractWebPhoenixDriver;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.FilenameUtils;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.ie.InternetExplorerDriver;
+import org.openqa.selenium.ie.InternetExplorerDriverService;
 import org.openqa.selenium.remote.DesiredCapabilities;
-import org.w3c.dom.Node;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,13 +48,24 @@ public class IePhoenixDriver extends AbstractWebPhoenixDriver<InternetExplorerDr
     private static final String IE_DRIVER_ARCH_KEY = "ieDriverArch";
 
     static final String IE_HTTP_BASE_URL = "https://selenium-release.storage.googleapis.com";
-    private static final String IE_HTTP_DRIVER_PATH_FORMAT = IE_HTTP_BASE_URL + "/%s/IEDriverServer_%s_%s.zip"; //(version, arch, fullVersion)
-    private static final String IE_ZIP_FILE_FORMAT = "IEDriverServer_%s_%s.zip"; //dump to ${user.dir}/target/drivers/iexplore/%s/IEDriverServer_%s_%s.zip
+    private static final String IE_ARTIFACT_PATTERN = "{major}.{minor}/IEDriverServer_{arch}_{version}.zip";
+    static final String IE_DRIVER_NAME = "IEDriverServer";
+    static final String IE_DRIVER_OS = "win";
     private static final String IE_EXE_FILE_NAME = "IEDriverServer.exe";
-    private static final String IE_XML_DRIVER_LISTING_URL = "https://selenium-release.storage.googleapis.com";
-    private static final String IE_XML_DRIVER_LISTING_XPATH = "/ListBucketResult/Contents/Key/text()";
+
+    private static final DriverServiceFactory<InternetExplorerDriverService> SERVICE_FACTORY =
+            new DriverServiceFactory<InternetExplorerDriverService>() {
+                @Override
+                public InternetExplorerDriverService createService(File executable) {
+                    return new InternetExplorerDriverService.Builder()
+                            .usingDriverExecutable(executable)
+                            .usingAnyFreePort()
+                            .build();
+                }
+            };
 
     private WebDriver webDriver;
+    private File driverExecutable;
 
     /**
      * {@inheritDoc}
@@ -81,61 +77,81 @@ public class IePhoenixDriver extends AbstractWebPhoenixDriver<InternetExplorerDr
 
     /**
      * Creates an instance of a driver
+     *
+     * The session is started on the pooled IEDriverServer service of the executable found by
+     * {@link #verify(PhoenixDriverIngredients)}, so no new IEDriverServer process is spawned if one is already running.
+     *
      * @param dc Desired Capabilities to use when creating a driver
      *
      * @return driver
      */
     protected InternetExplorerDriver createDriver(final DesiredCapabilities dc) {
-        InternetExplorerDriver ied = null;
+        DesiredCapabilities capabilities = (null == dc) ? DesiredCapabilities.internetExplorer() : dc;
 
-        if (null == dc) {
-            ied = new InternetExplorerDriver();
+        if (null == this.driverExecutable) {
+            return new InternetExplorerDriver(capabilities);
         }
-        else {
-            ied = new InternetExplorerDriver(dc);
+
+        InternetExplorerDriverService service;
+        try {
+            service = getServicePool().acquire(this.driverExecutable, SERVICE_FACTORY);
+        }
+        catch(IOException ioe) {
+            throw new WebDriverException("Unable to start IEDriverServer " + this.driverExecutable, ioe);
         }
 
-        return ied;
+        return new SharedInternetExplorerDriver(service, capabilities);
     }
 
     /**
-     * Determines if lhs > rhs in a version-wise comparison.
+     * Gets the pool of running IEDriverServer services
      *
-     * If the lhs is null, then it always returns that rhs is greater.  If rhs is null anyway, no changes are made.
+     * @return {@link DriverServicePool}
+     */
+    protected DriverServicePool getServicePool() {
+        return DriverServicePool.getDefault();
+    }
+
+    /**
+     * Describes the IEDriverServer binary
      *
-     * @param current The current version.
-     * @param test The version that is being tested.
-     * @return whether test is greater than current
+     * @param version Version (i.e. <code>2.47</code>) or null for the latest version
+     * @param arch Architecture (<code>Win32</code> or <code>x64</code>)
+     * @return {@link DriverBinarySpec}
      */
-    private static boolean versionGreater(String lhs, String rhs) {
-        return VersionUtils.compare(lhs, rhs) < 1;
+    static DriverBinarySpec createBinarySpec(String version, String arch) {
+        return new DriverBinarySpec(IE_DRIVER_NAME)
+                .withBinaryName(IE_EXE_FILE_NAME)
+                .withPlatform(IE_DRIVER_OS, arch)
+                .withVersion(toRange(version))
+                .withArtifactPattern(IE_ARTIFACT_PATTERN)
+                .withUpstreamUrl(IE_HTTP_BASE_URL);
     }
 
-    private static void extract(File src, String dstDir) throws IOException {
-        ZipInputStream zis = null;
-        ZipEntry entry;
+    //Releases are grouped by major.minor, so 2.47 stands for the highest 2.47.x; full versions are used as is
+    private static String toRange(String version) {
+        if (null == version) {
+            return null;
+        }
 
-        try {
-            zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(src)));
+        Version v = Version.valueOf(version);
+        int major = v.getComponent(0);
+        int minor = v.getComponent(1);
 
-            while(null != (entry = zis.getNextEntry())) {
-                File dst = Paths.get(dstDir, entry.getName()).toFile();
-                FileOutputStream fos = new FileOutputStream(dst);
+        if (2 != v.getComponentCount() || major < 0 || minor < 0 || null != v.getQualifier()) {
+            return version;
+        }
 
-                try {
-                    IOUtils.copy(zis, fos);
-                    fos.close();
-                }
-                finally {
-                    IOUtils.closeQuietly(fos);
-                }
-            }
+        return "[" + version + "," + major + "." + (minor + 1) + ")";
+    }
 
-            zis.close();
-        }
-        finally {
-            IOUtils.closeQuietly(zis);
-        }
+    /**
+     * Gets the manager used to retrieve drivers
+     *
+     * @return {@link DriverBinaryManager}
+     */
+    protected DriverBinaryManager getBinaryManager() {
+        return DriverBinaryManager.getDefault();
     }
 
     private IePlatformSpecifics createIePlatformSpecifics(String version, String arch) {
@@ -159,67 +175,12 @@ public class IePhoenixDriver extends AbstractWebPhoenixDriver<InternetExplorerDr
         }
 
         try {
-            XPath xpath = XPathFactory.newInstance().newXPath();
-
-            String pwd = System.getProperty("user.dir");
-            String version = ips.getVersion();
-            String arch = ips.getArch();
-
-            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(IE_XML_DRIVER_LISTING_URL);
-
-            NodeList nodes = (NodeList)xpath.evaluate(IE_XML_DRIVER_LISTING_XPATH, doc, XPathConstants.NODESET);
-
-            String highestVersion = null;
-            String needle = version + "/IEDriverServer_" + arch + "_";
-
-            for(int idx = 0; idx < nodes.getLength(); idx++) {
-                Node n = nodes.item(idx);
-
-                String text = n.getTextContent();
-
-                if(text.startsWith(needle)) {
-                    text = text.substring(needle.length(), text.length());
-
-                    if(IePhoenixDriver.versionGreater(highestVersion, text)) {
-                        highestVersion = text;
-                    }
-                }
-            }
-
-            if (null != highestVersion) {
-                highestVersion = FilenameUtils.removeExtension(highestVersion);
-
-                URL url = new URL(String.format(IE_HTTP_DRIVER_PATH_FORMAT, version, arch, highestVersion));
-                String zipName = String.format(IE_ZIP_FILE_FORMAT, arch, highestVersion);
-
-                File ieSaveDir = new File(Paths.get(pwd, "target", "drivers", "iexplore", version).toString());
-
-                LOGGER.debug("Will read from \"{}\"", url);
-                File zipFile = new File(Paths.get(pwd, "target", "drivers", "iexplore", version, zipName).toString());
-                FileUtils.copyURLToFile(url, zipFile);
-
-                extract(zipFile, ieSaveDir.getAbsolutePath());
-
-                File exe = Paths.get(pwd, "target", "drivers", "iexplore", version, IE_EXE_FILE_NAME).toFile();
-
-                if(exe.exists()) {
-                    exe.setExecutable(true);
-                    systemSetProperty("webdriver.ie.driver", exe.getAbsolutePath());
-                    this.webDriver = this.createDriver(i.getDriverCapabilities());
-                    rv = true;
-                }
-                else {
-                    LOGGER.error("Extracted zip archive did nto contain \"{}\".", IE_EXE_FILE_NAME);
-                }
-            } else {
-                LOGGER.error("Unable to find any IE Drivers from [{}]", IE_XML_DRIVER_LISTING_XPATH);
-            }
-        }
-        catch(ParserConfigurationException | SAXException | XPathExpressionException err) {
-            throw new RuntimeException(err);
+            this.driverExecutable = getBinaryManager().resolve(createBinarySpec(ips.getVersion(), ips.getArch()));
+            this.webDriver = this.createDriver(i.getDriverCapabilities());
+            rv = true;
         }
         catch(IOException ioe) {
-            LOGGER.error("IO failure: {}", ioe);
+            LOGGER.error("Unable to retrieve IE driver {} for {}: {}", ips.getVersion(), ips.getArch(), ioe);
         }
         return rv;
     }
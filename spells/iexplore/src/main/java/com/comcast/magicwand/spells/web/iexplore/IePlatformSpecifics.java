@@ -18,20 +18,12 @@ package com.comcast.magicwand.spells.web.iexplore;
 import java.util.Map;
 import java.io.IOException;
 
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathFactory;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Node;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.comcast.magicwand.binaries.DriverBinaryManager;
+import com.comcast.magicwand.binaries.MetadataCache;
+import com.comcast.magicwand.utils.Version;
 import com.comcast.magicwand.utils.SystemDetail;
 
 public class IePlatformSpecifics {
@@ -39,18 +31,24 @@ public class IePlatformSpecifics {
 
     private static final String DRIVER_VERSION_ENV_NAME = "MAGICWAND_IE_VERSION";
     private static final String ARCH_ENV_NAME = "MAGICWAND_IE_ARCH";
-    private static final String IE_XML_VERSIONS_URL = IePhoenixDriver.IE_HTTP_BASE_URL + "/?delimiter=/&prefix=";
-    private static final String IE_XML_VERSIONS_XPATH = "/ListBucketResult/CommonPrefixes/Prefix/text()";
     private static final String IE_LAST_KNOWN_GOOD = "2.47";
 
     public static final String MAGICWAND_WINDOW_OS_OVERRIDE_PROP = "magicwand.iexplore.force_windows";
     private static final String OS_ARCH_PROP = "sun.arch.data.model";
-    private static final String BIT_32 = "Win32";
-    private static final String BIT_64 = "x64";
+    static final String BIT_32 = "Win32";
+    static final String BIT_64 = "x64";
 
+    /**
+     * Platform configurations for the default version; versions are only resolved once {@link #getVersion()} is called
+     */
     public static final IePlatformSpecifics WIN32 = new IePlatformSpecifics(null, BIT_32);
     public static final IePlatformSpecifics WIN64 = new IePlatformSpecifics(null, BIT_64);
 
+    //Latest version resolved in this JVM; shared by every instance, so the lookup happens at most once
+    private static volatile String latestVersion;
+    //Time of the last failed lookup, which is not repeated for MetadataCache.FAILURE_TTL milliseconds
+    private static long latestVersionFailedAt;
+
     private String arch;
     private String version;
 
@@ -62,54 +60,58 @@ public class IePlatformSpecifics {
 
         if(null == this.version)
             this.version = env.get(DRIVER_VERSION_ENV_NAME);
-        if(null == this.version)
-            this.version = IePlatformSpecifics.getLatestVersion();
-        if(null == this.version)
-            this.version = IE_LAST_KNOWN_GOOD;
         if(null == this.arch)
             this.arch = env.get(ARCH_ENV_NAME);
         if(null == this.arch)
-            this.arch = (System.getProperty(OS_ARCH_PROP).equals("32")) ? "Win32" : "x64";
+            this.arch = ("32".equals(System.getProperty(OS_ARCH_PROP))) ? BIT_32 : BIT_64;
     }
 
-    private static String getLatestVersion() {
-        String versionString = null;
-        try {
-            XPath xpath = XPathFactory.newInstance().newXPath();
-
-            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(IE_XML_VERSIONS_URL);
-
-            NodeList nodes = (NodeList)xpath.evaluate(IE_XML_VERSIONS_XPATH, doc, XPathConstants.NODESET);
-
-            double maxVersion = 0.0;
-
-            for(int i = 0; i < nodes.getLength(); i++) {
-                Node el = (Node)nodes.item(i);
-                String text = el.getTextContent();
-                text = text.substring(0, text.length()-1);
-
-                try {
-                    double version = Double.parseDouble(text);
-
-                    if(version > maxVersion) {
-                        maxVersion = version;
-                        versionString = text;
+    /**
+     * Gets the latest IE driver version, looking it up on first use; a failed lookup is only retried once
+     * {@link MetadataCache#FAILURE_TTL} has passed
+     *
+     * @return Latest version as <code>major.minor</code>, or null if it could not be retrieved
+     */
+    protected String getLatestVersion() {
+        if (null == latestVersion) {
+            synchronized (IePlatformSpecifics.class) {
+                if (null == latestVersion
+                        && System.currentTimeMillis() - latestVersionFailedAt >= MetadataCache.FAILURE_TTL) {
+                    latestVersion = resolveLatestVersion();
+                    if (null == latestVersion) {
+                        latestVersionFailedAt = System.currentTimeMillis();
                     }
                 }
-                catch(NumberFormatException nfe) { //don't do anything, we expect at least one error
-                }
             }
         }
-        catch(ParserConfigurationException | XPathExpressionException xpe) {
-            throw new RuntimeException(xpe);
+
+        return latestVersion;
+    }
+
+    private static String resolveLatestVersion() {
+        String versionString = null;
+        try {
+            Version latest = DriverBinaryManager.getDefault().resolveVersion(IePhoenixDriver.createBinarySpec(null, BIT_32));
+
+            versionString = latest.getComponent(0) + "." + latest.getComponent(1);
         }
-        catch(SAXException | IOException err) {
-            LOGGER.error("Error reading url[{}]", IE_XML_VERSIONS_URL, err);
+        catch(IOException err) {
+            LOGGER.error("Error retrieving latest IE driver version", err);
         }
         return versionString;
     }
 
-    public String getVersion() {
+    /**
+     * Gets the driver version, resolving the latest version if none was requested
+     *
+     * @return Requested version, latest version, or the last known good version if the latest one is unavailable
+     */
+    public synchronized String getVersion() {
+        if(null == this.version)
+            this.version = this.getLatestVersion();
+        if(null == this.version)
+            return IE_LAST_KNOWN_GOOD;
+
         return this.version;
     }
 
@@ -123,13 +125,13 @@ public class IePlatformSpecifics {
     public boolean isValid() {
         boolean rv = false;
 
-        if(SystemDetail.deviceIsRunningWindows() || System.getProperty(MAGICWAND_WINDOW_OS_OVERRIDE_PROP).equalsIgnoreCase("true")) {
+        if(SystemDetail.deviceIsRunningWindows() || Boolean.getBoolean(MAGICWAND_WINDOW_OS_OVERRIDE_PROP)) {
             //Windows always works with BIT32
             if(this.arch.equals(BIT_32)) {
                 rv = true;
             }
             //If the desired arch and system arch are both 64-bit, then valid
-            else if(System.getProperty(OS_ARCH_PROP).equalsIgnoreCase("64") && this.arch.equalsIgnoreCase(BIT_64)) {
+            else if("64".equals(System.getProperty(OS_ARCH_PROP)) && this.arch.equalsIgnoreCase(BIT_64)) {
                 rv = true;
             }
             else {
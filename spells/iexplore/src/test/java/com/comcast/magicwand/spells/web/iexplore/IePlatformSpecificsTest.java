@@ -0,0 +1,72 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.web.iexplore;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class IePlatformSpecificsTest {
+
+    private static class CountingIePlatformSpecifics extends IePlatformSpecifics {
+        int lookups = 0;
+
+        public CountingIePlatformSpecifics(String version, String arch) {
+            super(version, arch);
+        }
+
+        @Override
+        protected String getLatestVersion() {
+            this.lookups++;
+            return "2.53";
+        }
+    }
+
+    @Test
+    public void testVersionResolvedLazily() {
+        CountingIePlatformSpecifics ips = new CountingIePlatformSpecifics(null, "Win32");
+
+        Assert.assertEquals(ips.getArch(), "Win32");
+        Assert.assertEquals(ips.lookups, 0);
+
+        Assert.assertEquals(ips.getVersion(), "2.53");
+        Assert.assertEquals(ips.getVersion(), "2.53");
+        Assert.assertEquals(ips.lookups, 1);
+    }
+
+    @Test
+    public void testRequestedVersionSkipsLookup() {
+        CountingIePlatformSpecifics ips = new CountingIePlatformSpecifics("2.47", "x64");
+
+        Assert.assertEquals(ips.getVersion(), "2.47");
+        Assert.assertEquals(ips.lookups, 0);
+    }
+
+    @Test
+    public void testInvalidPlatformSkipsLookup() {
+        String prev = System.getProperty(IePlatformSpecifics.MAGICWAND_WINDOW_OS_OVERRIDE_PROP, "false");
+        System.setProperty(IePlatformSpecifics.MAGICWAND_WINDOW_OS_OVERRIDE_PROP, "false");
+
+        try {
+            CountingIePlatformSpecifics ips = new CountingIePlatformSpecifics(null, "linux");
+
+            Assert.assertFalse(ips.isValid());
+            Assert.assertEquals(ips.lookups, 0);
+        }
+        finally {
+            System.setProperty(IePlatformSpecifics.MAGICWAND_WINDOW_OS_OVERRIDE_PROP, prev);
+        }
+    }
+}
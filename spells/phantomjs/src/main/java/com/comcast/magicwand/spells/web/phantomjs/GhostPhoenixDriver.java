@@ -15,12 +15,31 @@
  */
 package com.comcast.magicwand.spells.web.phantomjs;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
 import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+import com.comcast.magicwand.drivers.profiles.SessionDirectory;
+import com.comcast.magicwand.drivers.profiles.SessionStorage;
+import com.comcast.magicwand.drivers.services.DriverServiceFactory;
+import com.comcast.magicwand.drivers.services.DriverServicePool;
 import com.comcast.magicwand.drivers.web.AbstractWebPhoenixDriver;
+import com.comcast.magicwand.proxy.LocalProxy;
 
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.Proxy;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.phantomjs.PhantomJSDriver;
+import org.openqa.selenium.phantomjs.PhantomJSDriverService;
+import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Web Driver for controlling PhantomJS browser
@@ -30,8 +49,12 @@ import org.openqa.selenium.remote.DesiredCapabilities;
  */
 
 public class GhostPhoenixDriver extends AbstractWebPhoenixDriver<PhantomJSDriver> {
+    private static final Logger LOG = LoggerFactory.getLogger(GhostPhoenixDriver.class);
+
+    private static final long KILOBYTE = 1024;
 
     private PhantomJSDriver webDriver;
+    private SessionDirectory sessionDir;
 
     /**
      * {@inheritDoc}
@@ -50,7 +73,34 @@ public class GhostPhoenixDriver extends AbstractWebPhoenixDriver<PhantomJSDriver
 
         if (this.verifyIngredients(ingredients)) {
             rv = true;
-            this.webDriver = createDriver(ingredients.getDriverCapabilities());
+
+            SessionStorage storage = getSessionStorage(ingredients);
+            if (null != storage) {
+                try {
+                    this.sessionDir = storage.allocate("phantomjs");
+                } catch (IOException e) {
+                    LOG.error("Unable to allocate session directory, using PhantomJS defaults: {}", e);
+                }
+            }
+
+            try {
+                this.webDriver = createDriver(ingredients.getDriverCapabilities());
+            } catch (RuntimeException e) {
+                if (null != this.sessionDir) {
+                    this.sessionDir.close();
+                }
+                throw e;
+            }
+
+            //same window as headless Chrome and Firefox sessions, so suites can move between them
+            Dimension size = ingredients.getWindowSize();
+            if (null != size) {
+                try {
+                    this.webDriver.manage().window().setSize(size);
+                } catch (WebDriverException e) {
+                    LOG.error("Unable to resize the PhantomJS window to {}: {}", size, e);
+                }
+            }
         }
 
         return rv;
@@ -58,17 +108,184 @@ public class GhostPhoenixDriver extends AbstractWebPhoenixDriver<PhantomJSDriver
 
     /**
      * Creates an instance of a PhantomJS driver
+     *
+     * The session is started on a pooled PhantomJS service, so no new phantomjs process is spawned if one running the
+     * same executable with the same command line is already available. Sessions given a {@link SessionDirectory}
+     * get a phantomjs process of their own instead, since its disk cache and local storage are per process, and so do
+     * sessions behind a {@link LocalProxy}, which listens on a port no later session will ask for again.
+     *
      * @param driverCapabilities Desired capabilities to use when creating the driver
      * @return Instance of a {@link PhantomJSDriver}
      */
     protected PhantomJSDriver createDriver(final DesiredCapabilities driverCapabilities) {
-        PhantomJSDriver ghostDriver = null;
-        if (null == driverCapabilities) {
-            ghostDriver = new PhantomJSDriver();
+        //the session arguments go on a copy, the capabilities given are usually those of the ingredients
+        final DesiredCapabilities capabilities = (null == driverCapabilities)
+                ? DesiredCapabilities.phantomjs() : new DesiredCapabilities(driverCapabilities);
+        File executable = findExecutable(capabilities);
+
+        if (null != this.sessionDir) {
+            capabilities.setCapability(PhantomJSDriverService.PHANTOMJS_CLI_ARGS, withSessionArguments(
+                    getArguments(capabilities, PhantomJSDriverService.PHANTOMJS_CLI_ARGS), this.sessionDir));
+        }
+
+        if (null == executable) {
+            return (null == this.sessionDir)
+                    ? new PhantomJSDriver(capabilities)
+                    : new SessionPhantomJSDriver(capabilities, this.sessionDir);
         }
-        else {
-            ghostDriver = new PhantomJSDriver(driverCapabilities);
+
+        final String[] cliArgs = getArguments(capabilities, PhantomJSDriverService.PHANTOMJS_CLI_ARGS);
+        final String[] ghostArgs = getArguments(capabilities, PhantomJSDriverService.PHANTOMJS_GHOSTDRIVER_CLI_ARGS);
+        final Object ghostDriverPath = capabilities.getCapability(PhantomJSDriverService.PHANTOMJS_GHOSTDRIVER_PATH_PROPERTY);
+        final Proxy proxy = getProxy(capabilities);
+
+        DriverServiceFactory<PhantomJSDriverService> factory = new DriverServiceFactory<PhantomJSDriverService>() {
+            @Override
+            public PhantomJSDriverService createService(File exe) {
+                PhantomJSDriverService.Builder builder = new PhantomJSDriverService.Builder()
+                        .usingPhantomJSExecutable(exe)
+                        .usingAnyFreePort()
+                        .withProxy(proxy)
+                        .usingCommandLineArguments(cliArgs)
+                        .usingGhostDriverCommandLineArguments(ghostArgs);
+
+                if (null != ghostDriverPath) {
+                    builder.usingGhostDriver(new File(ghostDriverPath.toString()));
+                }
+
+                return builder.build();
+            }
+        };
+
+        //Everything that ends up on the phantomjs command line needs its own service
+        String variant = Arrays.toString(cliArgs) + Arrays.toString(ghostArgs) + ghostDriverPath
+                + ((null == proxy) ? "" : proxy.getProxyType() + " " + proxy.getHttpProxy());
+
+        PhantomJSDriverService service;
+        try {
+            if (null != this.sessionDir) {
+                return new SessionPhantomJSDriver(factory.createService(executable), capabilities, this.sessionDir);
+            }
+            if (LocalProxy.isLocalProxy(proxy)) {
+                return new PhantomJSDriver(factory.createService(executable), capabilities);
+            }
+            service = getServicePool().acquire(executable, variant, factory);
+        } catch (IOException e) {
+            throw new WebDriverException("Unable to start phantomjs " + executable, e);
         }
-        return ghostDriver;
+
+        return new SharedPhantomJSDriver(service, capabilities);
+    }
+
+    /**
+     * Gets the pool of running PhantomJS services
+     *
+     * @return {@link DriverServicePool}
+     */
+    protected DriverServicePool getServicePool() {
+        return DriverServicePool.getDefault();
+    }
+
+    /**
+     * Gets the storage sessions place their cache, local storage and cookies in
+     *
+     * @param i Ingredients of the driver
+     * @return {@link SessionStorage} or null if the ingredients did not ask for it
+     */
+    protected SessionStorage getSessionStorage(PhoenixDriverIngredients i) {
+        return SessionStorage.forIngredients(i);
+    }
+
+    /**
+     * Points the disk cache, local storage and cookie jar of phantomjs at a session directory, capping the cache
+     * and local storage so that together they stay within the limit of the session
+     *
+     * @param cliArgs Command line arguments of the session
+     * @param session Directory of the session
+     * @return Arguments with the session arguments appended
+     */
+    static String[] withSessionArguments(String[] cliArgs, SessionDirectory session) {
+        String[] extra = new String[] {
+            "--disk-cache=true",
+            "--disk-cache-path=" + session.getCacheDir().getAbsolutePath(),
+            "--max-disk-cache-size=" + (session.getCacheLimit() / KILOBYTE),
+            "--local-storage-path=" + session.getProfileDir().getAbsolutePath(),
+            "--local-storage-quota=" + ((session.getLimit() - session.getCacheLimit()) / KILOBYTE),
+            "--cookies-file=" + new File(session.getProfileDir(), "cookies.txt").getAbsolutePath()
+        };
+
+        String[] rv = Arrays.copyOf(cliArgs, cliArgs.length + extra.length);
+        System.arraycopy(extra, 0, rv, cliArgs.length, extra.length);
+
+        return rv;
+    }
+
+    /**
+     * Finds the phantomjs executable, either named by the <code>phantomjs.binary.path</code> capability or system
+     * property, or on the PATH
+     *
+     * @param capabilities Capabilities of the session
+     * @return Executable or null if it could not be found
+     */
+    File findExecutable(Capabilities capabilities) {
+        Object path = capabilities.getCapability(PhantomJSDriverService.PHANTOMJS_EXECUTABLE_PATH_PROPERTY);
+
+        if (null == path) {
+            path = System.getProperty(PhantomJSDriverService.PHANTOMJS_EXECUTABLE_PATH_PROPERTY);
+        }
+
+        if (null != path) {
+            return new File(path.toString());
+        }
+
+        String name = this.isRunningWindows() ? "phantomjs.exe" : "phantomjs";
+        String searchPath = System.getenv("PATH");
+
+        if (null != searchPath) {
+            for (String dir : searchPath.split(File.pathSeparator)) {
+                File candidate = new File(dir, name);
+                if (candidate.isFile() && candidate.canExecute()) {
+                    return candidate;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Proxy getProxy(Capabilities capabilities) {
+        Object value = capabilities.getCapability(CapabilityType.PROXY);
+
+        if (value instanceof Proxy) {
+            return (Proxy) value;
+        }
+        if (value instanceof Map) {
+            return new Proxy((Map<String, ?>) value);
+        }
+
+        return null;
+    }
+
+    private static String[] getArguments(Capabilities capabilities, String name) {
+        Object value = capabilities.getCapability(name);
+
+        if (value instanceof String[]) {
+            return (String[]) value;
+        }
+        if (value instanceof Collection) {
+            Collection<?> values = (Collection<?>) value;
+            String[] rv = new String[values.size()];
+            int i = 0;
+            for (Object v : values) {
+                rv[i++] = String.valueOf(v);
+            }
+            return rv;
+        }
+        if (null != value) {
+            return new String[] { value.toString() };
+        }
+
+        return new String[0];
     }
 }
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.web.phantomjs;
+
+import com.comcast.magicwand.drivers.profiles.SessionDirectory;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.phantomjs.PhantomJSDriver;
+import org.openqa.selenium.phantomjs.PhantomJSDriverService;
+
+/**
+ * {@link PhantomJSDriver} running on a phantomjs process of its own, whose cache, local storage and cookies live in a
+ * {@link SessionDirectory} that is deleted when it quits
+ */
+class SessionPhantomJSDriver extends PhantomJSDriver {
+
+    private final SessionDirectory sessionDir;
+
+    /**
+     * Starts a session on a service created from the capabilities
+     *
+     * @param capabilities Capabilities of the session
+     * @param sessionDir Directory of the session
+     */
+    SessionPhantomJSDriver(Capabilities capabilities, SessionDirectory sessionDir) {
+        super(capabilities);
+        this.sessionDir = sessionDir;
+    }
+
+    /**
+     * Starts a session on a service that is stopped when the session quits
+     *
+     * @param service Service dedicated to this session
+     * @param capabilities Capabilities of the session
+     * @param sessionDir Directory of the session
+     */
+    SessionPhantomJSDriver(PhantomJSDriverService service, Capabilities capabilities, SessionDirectory sessionDir) {
+        super(service, capabilities);
+        this.sessionDir = sessionDir;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void quit() {
+        try {
+            super.quit();
+        } finally {
+            this.sessionDir.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.web.phantomjs;
+
+import com.comcast.magicwand.drivers.services.SharedServiceCommandExecutor;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.phantomjs.PhantomJSDriver;
+import org.openqa.selenium.phantomjs.PhantomJSDriverService;
+
+/**
+ * {@link PhantomJSDriver} whose session runs on a pooled PhantomJS service; quitting it leaves the service running
+ */
+class SharedPhantomJSDriver extends PhantomJSDriver {
+
+    /**
+     * Starts a session on a running service
+     *
+     * @param service Pooled service
+     * @param capabilities Capabilities of the session
+     */
+    SharedPhantomJSDriver(PhantomJSDriverService service, Capabilities capabilities) {
+        super(service, capabilities);
+        setCommandExecutor(new SharedServiceCommandExecutor(getCustomCommands(), service));
+    }
+}
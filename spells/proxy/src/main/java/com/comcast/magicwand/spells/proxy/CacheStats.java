@@ -0,0 +1,91 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.proxy;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running counts of how well the {@link CachingInterceptor} shared by the sessions of this JVM is doing
+ */
+public class CacheStats {
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    void recordHit(long bytes) {
+        this.hits.incrementAndGet();
+        this.bytesServed.addAndGet(bytes);
+    }
+
+    void recordMiss() {
+        this.misses.incrementAndGet();
+    }
+
+    void recordStore() {
+        this.stores.incrementAndGet();
+    }
+
+    /**
+     * @return Number of requests answered from the cache
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return Number of cacheable requests that had to go upstream, including those whose entry was stale
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return Number of responses put into the cache
+     */
+    public long getStores() {
+        return this.stores.get();
+    }
+
+    /**
+     * @return Number of body bytes answered from the cache instead of being downloaded
+     */
+    public long getBytesServed() {
+        return this.bytesServed.get();
+    }
+
+    /**
+     * Gets the share of cacheable requests answered from the cache
+     *
+     * @return Ratio between 0 and 1; 0 if there were no cacheable requests yet
+     */
+    public double getHitRatio() {
+        long h = getHits();
+        long total = h + getMisses();
+
+        return (0 == total) ? 0 : (double) h / total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("CacheStats[hits=%d, misses=%d, hitRatio=%.2f, stores=%d, bytesServed=%d]", getHits(),
+                getMisses(), getHitRatio(), getStores(), getBytesServed());
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.proxy;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.comcast.magicwand.proxy.ProxyResponse;
+
+/**
+ * Immutable copy of an upstream response kept by a {@link ResponseStore}
+ */
+final class CachedResponse {
+
+    /** Rough per entry overhead, so that many tiny responses still count against the memory limit */
+    private static final int OVERHEAD = 128;
+
+    private final int status;
+    private final String reason;
+    private final List<String[]> headers;
+    private final byte[] body;
+    private final long storedAt;
+    private final long expiresAt;
+
+    CachedResponse(int status, String reason, List<String[]> headers, byte[] body, long storedAt, long expiresAt) {
+        this.status = status;
+        this.reason = reason;
+        this.headers = headers;
+        this.body = body;
+        this.storedAt = storedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Copies a response
+     *
+     * @param response Response from upstream
+     * @param storedAt Time the response was generated upstream, in milliseconds
+     * @param expiresAt Time the response stops being fresh, in milliseconds
+     * @return Copy of the response
+     */
+    static CachedResponse of(ProxyResponse response, long storedAt, long expiresAt) {
+        List<String[]> headers = new ArrayList<>();
+        Set<String> copied = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+        for (String name : response.getHeaderNames()) {
+            if (copied.add(name)) {
+                for (String value : response.getHeaders(name)) {
+                    headers.add(new String[] { name, value });
+                }
+            }
+        }
+
+        byte[] body = response.getBody();
+        String reason = (null == response.getReason()) ? "" : response.getReason();
+        return new CachedResponse(response.getStatus(), reason, headers,
+                Arrays.copyOf(body, body.length), storedAt, expiresAt);
+    }
+
+    /**
+     * Creates a response for the browser
+     *
+     * @param now Current time in milliseconds
+     * @return New response with an <code>Age</code> header
+     */
+    ProxyResponse toResponse(long now) {
+        ProxyResponse rv = new ProxyResponse(this.status, this.reason);
+
+        for (String[] header : this.headers) {
+            rv.addHeader(header[0], header[1]);
+        }
+        rv.setHeader("Age", String.valueOf(Math.max(0, (now - this.storedAt) / 1000)));
+        rv.setBody(this.body);
+
+        return rv;
+    }
+
+    boolean isFresh(long now) {
+        return now < this.expiresAt;
+    }
+
+    int getBodyLength() {
+        return this.body.length;
+    }
+
+    /**
+     * @return Approximate number of bytes the entry takes in memory
+     */
+    long getSize() {
+        long rv = OVERHEAD + this.body.length + 2 * this.reason.length();
+
+        for (String[] header : this.headers) {
+            rv += 2 * (header[0].length() + header[1].length());
+        }
+
+        return rv;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(this.status);
+        out.writeUTF(this.reason);
+        out.writeLong(this.storedAt);
+        out.writeLong(this.expiresAt);
+        out.writeInt(this.headers.size());
+        for (String[] header : this.headers) {
+            out.writeUTF(header[0]);
+            out.writeUTF(header[1]);
+        }
+        out.writeInt(this.body.length);
+        out.write(this.body);
+    }
+
+    static CachedResponse readFrom(DataInputStream in) throws IOException {
+        int status = in.readInt();
+        String reason = in.readUTF();
+        long storedAt = in.readLong();
+        long expiresAt = in.readLong();
+
+        int count = in.readInt();
+        List<String[]> headers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            headers.add(new String[] { in.readUTF(), in.readUTF() });
+        }
+
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+
+        return new CachedResponse(status, reason, headers, body, storedAt, expiresAt);
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.proxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import com.comcast.magicwand.proxy.HttpMessage;
+import com.comcast.magicwand.proxy.ProxyInterceptor;
+import com.comcast.magicwand.proxy.ProxyRequest;
+import com.comcast.magicwand.proxy.ProxyResponse;
+import com.comcast.magicwand.utils.SystemDetail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ProxyInterceptor} keeping cacheable responses so that every session of the JVM, not just the one that
+ * downloaded a resource first, starts with a warm cache.
+ *
+ * <p>
+ * Only plain HTTP <code>GET</code> requests are cached; tunnels (HTTPS) are passed along untouched. Responses are kept
+ * while they are fresh according to <code>Cache-Control</code>, <code>Expires</code> or, lacking both, a tenth of the
+ * time since <code>Last-Modified</code> (at most a day). Responses that set cookies, are private, vary on anything but
+ * <code>Accept-Encoding</code> or must be revalidated are never kept, and entries are not revalidated: stale entries
+ * are fetched again. Responses answered from the cache carry <code>X-Cache: HIT</code>.
+ * </p>
+ */
+public class CachingInterceptor implements ProxyInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(CachingInterceptor.class);
+
+    static final String MEMORY_PROP = "magicwand.proxy.cache.memory";
+    static final String MEMORY_ENV = "MAGICWAND_PROXY_CACHE_MEMORY";
+    static final String DISK_PROP = "magicwand.proxy.cache.disk";
+    static final String DISK_ENV = "MAGICWAND_PROXY_CACHE_DISK";
+
+    private static final long DEFAULT_MEMORY_LIMIT = 64L * 1024 * 1024;
+    private static final long DEFAULT_DISK_LIMIT = 512L * 1024 * 1024;
+    private static final long MAX_HEURISTIC_LIFETIME = TimeUnit.DAYS.toMillis(1);
+
+    private static final String X_CACHE = "X-Cache";
+    private static final Set<Integer> CACHEABLE_STATUSES = new HashSet<>(Arrays.asList(200, 203, 301));
+
+    private static CachingInterceptor defaultInterceptor;
+
+    private final ResponseStore store;
+    private final CacheStats stats = new CacheStats();
+
+    /**
+     * Creates an interceptor
+     *
+     * @param store Store to keep responses in
+     */
+    CachingInterceptor(ResponseStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Gets the interceptor shared by the sessions of this JVM. It keeps up to
+     * <code>MAGICWAND_PROXY_CACHE_MEMORY</code> bytes in memory (64MB by default) and
+     * <code>MAGICWAND_PROXY_CACHE_DISK</code> bytes in a temporary directory (512MB by default), which is deleted
+     * when the JVM exits.
+     *
+     * @return Interceptor
+     */
+    public static synchronized CachingInterceptor getDefault() {
+        if (null == defaultInterceptor) {
+            long memoryLimit = SystemDetail.getLongSetting(MEMORY_PROP, MEMORY_ENV, DEFAULT_MEMORY_LIMIT);
+            long diskLimit = SystemDetail.getLongSetting(DISK_PROP, DISK_ENV, DEFAULT_DISK_LIMIT);
+            File overflowDir = null;
+
+            if (diskLimit > 0) {
+                try {
+                    overflowDir = Files.createTempDirectory("magicwand-proxy-cache-").toFile();
+                } catch (IOException e) {
+                    LOG.warn("Unable to create proxy cache directory, keeping responses in memory only: {}", e);
+                }
+            }
+
+            final CachingInterceptor rv = new CachingInterceptor(new ResponseStore(memoryLimit, overflowDir, diskLimit));
+            Runtime.getRuntime().addShutdownHook(new Thread("magicwand-proxy-cache-cleanup") {
+                @Override
+                public void run() {
+                    LOG.info("Proxy cache: {}", rv.getStats());
+                    rv.store.close();
+                }
+            });
+
+            LOG.debug("Caching proxy responses with {} bytes of memory and {} bytes of disk", memoryLimit, diskLimit);
+            defaultInterceptor = rv;
+        }
+
+        return defaultInterceptor;
+    }
+
+    /**
+     * @return Hit and miss counts of this cache
+     */
+    public CacheStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * @return Store holding the responses
+     */
+    ResponseStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ProxyResponse intercept(ProxyRequest request) {
+        if (!canStore(request) || !canServe(request)) {
+            return null;
+        }
+
+        String key = getKey(request);
+        CachedResponse cached = this.store.get(key);
+        long now = currentTimeMillis();
+
+        if (null == cached || !cached.isFresh(now)) {
+            if (null != cached) {
+                this.store.remove(key);
+            }
+            this.stats.recordMiss();
+            return null;
+        }
+
+        this.stats.recordHit(cached.getBodyLength());
+
+        ProxyResponse rv = cached.toResponse(now);
+        rv.setHeader(X_CACHE, "HIT");
+        return rv;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onResponse(ProxyRequest request, ProxyResponse response) {
+        if (!canStore(request)) {
+            return;
+        }
+
+        long now = currentTimeMillis();
+        long lifetime = getFreshnessLifetime(response, now);
+
+        if (lifetime > 0 && isStorable(response)) {
+            long storedAt = now - TimeUnit.SECONDS.toMillis(parseSeconds(response.getHeader("Age")));
+            this.store.put(getKey(request), CachedResponse.of(response, storedAt, storedAt + lifetime));
+            this.stats.recordStore();
+        }
+
+        response.setHeader(X_CACHE, "MISS");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean allowTunnel(String host, int port) {
+        return true;
+    }
+
+    /**
+     * @return Current time in milliseconds
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static boolean canStore(ProxyRequest request) {
+        return "GET".equals(request.getMethod()) && null == request.getHeader("Authorization")
+                && null == request.getHeader("Range") && !hasDirective(request, "no-store");
+    }
+
+    //browsers send these when the user (or a test) asks for a reload
+    private static boolean canServe(ProxyRequest request) {
+        String pragma = request.getHeader("Pragma");
+
+        return !hasDirective(request, "no-cache") && 0 != getDirective(request, "max-age", -1)
+                && !(null != pragma && pragma.toLowerCase(Locale.ENGLISH).contains("no-cache"));
+    }
+
+    private static boolean isStorable(ProxyResponse response) {
+        if (!CACHEABLE_STATUSES.contains(response.getStatus()) || null != response.getHeader("Set-Cookie")
+                || hasDirective(response, "no-store") || hasDirective(response, "no-cache")
+                || hasDirective(response, "private")) {
+            return false;
+        }
+
+        for (String vary : response.getHeaders("Vary")) {
+            for (String name : vary.split(",")) {
+                String trimmed = name.trim();
+                if (!trimmed.isEmpty() && !"accept-encoding".equalsIgnoreCase(trimmed)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static long getFreshnessLifetime(ProxyResponse response, long now) {
+        long sMaxAge = getDirective(response, "s-maxage", -1);
+        if (sMaxAge >= 0) {
+            return TimeUnit.SECONDS.toMillis(sMaxAge);
+        }
+
+        long maxAge = getDirective(response, "max-age", -1);
+        if (maxAge >= 0) {
+            return TimeUnit.SECONDS.toMillis(maxAge);
+        }
+
+        long date = parseDate(response.getHeader("Date"));
+        if (date < 0) {
+            date = now;
+        }
+
+        String expires = response.getHeader("Expires");
+        if (null != expires) {
+            //invalid dates, like 0, mean already expired
+            long expiresAt = parseDate(expires);
+            return (expiresAt < 0) ? 0 : expiresAt - date;
+        }
+
+        long lastModified = parseDate(response.getHeader("Last-Modified"));
+        return (lastModified < 0) ? 0 : Math.min((date - lastModified) / 10, MAX_HEURISTIC_LIFETIME);
+    }
+
+    //responses vary on Accept-Encoding at most, so entries are kept per encoding the browser accepts
+    private static String getKey(ProxyRequest request) {
+        String encoding = request.getHeader("Accept-Encoding");
+
+        return request.getUri() + " " + ((null == encoding) ? "" : encoding.replace(" ", ""));
+    }
+
+    private static boolean hasDirective(HttpMessage message, String directive) {
+        return getDirective(message, directive, -1) >= 0;
+    }
+
+    /**
+     * Looks a directive up in the <code>Cache-Control</code> headers of a message
+     *
+     * @param message Request or response
+     * @param directive Name of the directive
+     * @param defaultValue Value if the directive is not present
+     * @return Number of seconds of the directive, 0 if it has no value, or <code>defaultValue</code>
+     */
+    private static long getDirective(HttpMessage message, String directive, long defaultValue) {
+        for (String header : message.getHeaders("Cache-Control")) {
+            for (String token : header.split(",")) {
+                String[] parts = token.trim().split("=", 2);
+
+                if (directive.equalsIgnoreCase(parts[0].trim())) {
+                    return (2 == parts.length) ? parseSeconds(parts[1]) : 0;
+                }
+            }
+        }
+
+        return defaultValue;
+    }
+
+    private static long parseSeconds(String value) {
+        if (null == value) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(value.trim().replace("\"", "")));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    //-1 for missing or invalid dates
+    private static long parseDate(String value) {
+        if (null == value) {
+            return -1;
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+        try {
+            return format.parse(value.trim()).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.proxy;
+
+import com.comcast.magicwand.builders.PhoenixDriverIngredients;
+import com.comcast.magicwand.proxy.ProxyInterceptor;
+import com.comcast.magicwand.proxy.ProxyInterceptorProvider;
+import com.comcast.magicwand.utils.SystemDetail;
+
+/**
+ * Puts the {@link CachingInterceptor} shared by the JVM in front of every session, unless
+ * <code>MAGICWAND_PROXY_CACHE</code> is set to <code>false</code>
+ */
+public class CachingProxyProvider implements ProxyInterceptorProvider {
+
+    static final String ENABLED_PROP = "magicwand.proxy.cache";
+    static final String ENABLED_ENV = "MAGICWAND_PROXY_CACHE";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ProxyInterceptor getInterceptor(PhoenixDriverIngredients ingredients) {
+        if ("false".equalsIgnoreCase(SystemDetail.getSetting(ENABLED_PROP, ENABLED_ENV))) {
+            return null;
+        }
+
+        return CachingInterceptor.getDefault();
+    }
+}
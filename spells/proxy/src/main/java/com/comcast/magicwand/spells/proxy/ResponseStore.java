@@ -0,0 +1,217 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Least recently used store of {@link CachedResponse}s bounded by bytes. Entries pushed out of memory are written to
+ * an overflow directory, itself bounded, and brought back into memory when they are asked for again.
+ */
+class ResponseStore implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseStore.class);
+
+    private final long memoryLimit;
+    private final File overflowDir;
+    private final long diskLimit;
+
+    private final LinkedHashMap<String, CachedResponse> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, File> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memorySize;
+    private long diskSize;
+    private long nextFile;
+    private boolean closed;
+
+    /**
+     * Creates a store
+     *
+     * @param memoryLimit Maximum number of bytes kept in memory
+     * @param overflowDir Directory for entries that do not fit in memory; null to drop them instead
+     * @param diskLimit Maximum number of bytes kept in the overflow directory
+     */
+    ResponseStore(long memoryLimit, File overflowDir, long diskLimit) {
+        this.memoryLimit = memoryLimit;
+        this.overflowDir = overflowDir;
+        this.diskLimit = diskLimit;
+    }
+
+    /**
+     * Gets an entry, moving it back into memory if it was in the overflow directory
+     *
+     * @param key Key of the entry
+     * @return Entry or null if there is none
+     */
+    synchronized CachedResponse get(String key) {
+        CachedResponse rv = this.memory.get(key);
+
+        if (null == rv) {
+            File file = this.disk.remove(key);
+
+            if (null != file) {
+                this.diskSize -= file.length();
+                rv = read(file);
+                FileUtils.deleteQuietly(file);
+
+                if (null != rv) {
+                    putInMemory(key, rv);
+                }
+            }
+        }
+
+        return rv;
+    }
+
+    /**
+     * Adds or replaces an entry
+     *
+     * @param key Key of the entry
+     * @param response Entry
+     */
+    synchronized void put(String key, CachedResponse response) {
+        if (this.closed) {
+            return;
+        }
+
+        remove(key);
+
+        if (response.getSize() > this.memoryLimit) {
+            spill(key, response);
+        } else {
+            putInMemory(key, response);
+        }
+    }
+
+    /**
+     * Removes an entry
+     *
+     * @param key Key of the entry
+     */
+    synchronized void remove(String key) {
+        CachedResponse old = this.memory.remove(key);
+        if (null != old) {
+            this.memorySize -= old.getSize();
+        }
+
+        File file = this.disk.remove(key);
+        if (null != file) {
+            this.diskSize -= file.length();
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    /**
+     * @return Number of entries, in memory and on disk
+     */
+    synchronized int size() {
+        return this.memory.size() + this.disk.size();
+    }
+
+    /**
+     * @return Number of bytes kept in memory
+     */
+    synchronized long getMemorySize() {
+        return this.memorySize;
+    }
+
+    /**
+     * @return Number of bytes kept in the overflow directory
+     */
+    synchronized long getDiskSize() {
+        return this.diskSize;
+    }
+
+    /**
+     * Drops every entry and deletes the overflow directory
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        this.memory.clear();
+        this.disk.clear();
+        this.memorySize = 0;
+        this.diskSize = 0;
+
+        if (null != this.overflowDir) {
+            FileUtils.deleteQuietly(this.overflowDir);
+        }
+    }
+
+    private void putInMemory(String key, CachedResponse response) {
+        this.memory.put(key, response);
+        this.memorySize += response.getSize();
+
+        Iterator<Map.Entry<String, CachedResponse>> it = this.memory.entrySet().iterator();
+        while (this.memorySize > this.memoryLimit && it.hasNext()) {
+            Map.Entry<String, CachedResponse> eldest = it.next();
+            it.remove();
+            this.memorySize -= eldest.getValue().getSize();
+            spill(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void spill(String key, CachedResponse response) {
+        if (null == this.overflowDir || response.getSize() > this.diskLimit) {
+            return;
+        }
+
+        File file = new File(this.overflowDir, "entry-" + (this.nextFile++) + ".bin");
+        try {
+            FileUtils.forceMkdir(this.overflowDir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                response.writeTo(out);
+            }
+        } catch (IOException e) {
+            LOG.debug("Unable to move cache entry to disk: {}", e.toString());
+            FileUtils.deleteQuietly(file);
+            return;
+        }
+
+        this.disk.put(key, file);
+        this.diskSize += file.length();
+
+        Iterator<Map.Entry<String, File>> it = this.disk.entrySet().iterator();
+        while (this.diskSize > this.diskLimit && it.hasNext()) {
+            File eldest = it.next().getValue();
+            it.remove();
+            this.diskSize -= eldest.length();
+            FileUtils.deleteQuietly(eldest);
+        }
+    }
+
+    private static CachedResponse read(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return CachedResponse.readFrom(in);
+        } catch (IOException e) {
+            LOG.debug("Unable to read cache entry from disk: {}", e.toString());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.proxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.comcast.magicwand.proxy.LocalProxy;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CachingInterceptorTest {
+
+    private HttpServer server;
+    private TestInterceptor interceptor;
+    private LocalProxy proxy;
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+
+    /** Interceptor whose clock is moved by the tests */
+    private static class TestInterceptor extends CachingInterceptor {
+        private long now = System.currentTimeMillis();
+
+        TestInterceptor() {
+            super(new ResponseStore(1024 * 1024, null, 0));
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return this.now;
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.upstreamRequests.set(0);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                upstreamRequests.incrementAndGet();
+                String path = exchange.getRequestURI().getPath();
+
+                if (path.endsWith("no-store")) {
+                    exchange.getResponseHeaders().add("Cache-Control", "no-store");
+                } else if (path.endsWith("cookie")) {
+                    exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+                    exchange.getResponseHeaders().add("Set-Cookie", "session=1");
+                } else if (path.endsWith("last-modified")) {
+                    exchange.getResponseHeaders().add("Last-Modified", httpDate(TimeUnit.DAYS.toMillis(30)));
+                } else if (path.endsWith("max-age")) {
+                    exchange.getResponseHeaders().add("Cache-Control", "public, max-age=60");
+                }
+
+                byte[] body = ("hello " + upstreamRequests.get()).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        this.server.start();
+
+        this.interceptor = new TestInterceptor();
+        this.proxy = new LocalProxy(this.interceptor);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        this.proxy.close();
+        this.server.stop(0);
+    }
+
+    private static String httpDate(long ago) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(System.currentTimeMillis() - ago));
+    }
+
+    private HttpURLConnection open(LocalProxy via, String path) throws IOException {
+        java.net.Proxy p = new java.net.Proxy(java.net.Proxy.Type.HTTP,
+                new InetSocketAddress("127.0.0.1", via.getPort()));
+        URL url = new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + path);
+        return (HttpURLConnection) url.openConnection(p);
+    }
+
+    private String fetch(String path) throws IOException {
+        return read(open(this.proxy, path));
+    }
+
+    private static String read(HttpURLConnection conn) throws IOException {
+        try (InputStream in = conn.getInputStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testServesFreshResponsesFromCache() throws IOException {
+        Assert.assertEquals(fetch("/max-age"), "hello 1");
+
+        HttpURLConnection conn = open(this.proxy, "/max-age");
+        Assert.assertEquals(read(conn), "hello 1");
+        Assert.assertEquals(conn.getHeaderField("X-Cache"), "HIT");
+        Assert.assertNotNull(conn.getHeaderField("Age"));
+        Assert.assertEquals(this.upstreamRequests.get(), 1);
+
+        CacheStats stats = this.interceptor.getStats();
+        Assert.assertEquals(stats.getHits(), 1);
+        Assert.assertEquals(stats.getMisses(), 1);
+        Assert.assertEquals(stats.getStores(), 1);
+        Assert.assertEquals(stats.getHitRatio(), 0.5, 0.001);
+        Assert.assertEquals(stats.getBytesServed(), "hello 1".length());
+    }
+
+    @Test
+    public void testSharedBetweenSessions() throws IOException {
+        Assert.assertEquals(fetch("/max-age"), "hello 1");
+
+        LocalProxy other = new LocalProxy(this.interceptor);
+        try {
+            Assert.assertEquals(read(open(other, "/max-age")), "hello 1");
+        } finally {
+            other.close();
+        }
+
+        Assert.assertEquals(this.upstreamRequests.get(), 1);
+    }
+
+    @Test
+    public void testDoesNotKeepUncacheableResponses() throws IOException {
+        Assert.assertEquals(fetch("/no-store"), "hello 1");
+        Assert.assertEquals(fetch("/no-store"), "hello 2");
+        Assert.assertEquals(fetch("/cookie"), "hello 3");
+        Assert.assertEquals(fetch("/cookie"), "hello 4");
+        Assert.assertEquals(fetch("/plain"), "hello 5");
+        Assert.assertEquals(fetch("/plain"), "hello 6");
+
+        Assert.assertEquals(this.interceptor.getStats().getStores(), 0);
+        Assert.assertEquals(this.interceptor.getStats().getHits(), 0);
+    }
+
+    @Test
+    public void testStaleResponsesAreFetchedAgain() throws IOException {
+        Assert.assertEquals(fetch("/max-age"), "hello 1");
+
+        this.interceptor.now += TimeUnit.SECONDS.toMillis(61);
+        Assert.assertEquals(fetch("/max-age"), "hello 2");
+        Assert.assertEquals(fetch("/max-age"), "hello 2");
+    }
+
+    @Test
+    public void testHeuristicFreshness() throws IOException {
+        Assert.assertEquals(fetch("/last-modified"), "hello 1");
+
+        this.interceptor.now += TimeUnit.HOURS.toMillis(23);
+        Assert.assertEquals(fetch("/last-modified"), "hello 1");
+
+        this.interceptor.now += TimeUnit.HOURS.toMillis(2);
+        Assert.assertEquals(fetch("/last-modified"), "hello 2");
+    }
+
+    @Test
+    public void testReloadBypassesCache() throws IOException {
+        Assert.assertEquals(fetch("/max-age"), "hello 1");
+
+        HttpURLConnection conn = open(this.proxy, "/max-age");
+        conn.setRequestProperty("Cache-Control", "no-cache");
+        Assert.assertEquals(read(conn), "hello 2");
+
+        Assert.assertEquals(fetch("/max-age"), "hello 2");
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.proxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ResponseStoreTest {
+
+    private File dir;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        this.dir = Files.createTempDirectory("response-store-test").toFile();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        FileUtils.deleteQuietly(this.dir);
+    }
+
+    private static CachedResponse response(String body, int padding) {
+        byte[] bytes = (body + new String(new char[padding]).replace('\0', ' ')).getBytes(StandardCharsets.UTF_8);
+        return new CachedResponse(200, "OK", Collections.singletonList(new String[] { "Content-Type", "text/plain" }),
+                bytes, 0, Long.MAX_VALUE);
+    }
+
+    private static String body(CachedResponse response) {
+        return new String(response.toResponse(0).getBody(), StandardCharsets.UTF_8).trim();
+    }
+
+    @Test
+    public void testOverflowsToDisk() {
+        long size = response("body0", 1000).getSize();
+        ResponseStore store = new ResponseStore(3 * size, this.dir, 100 * size);
+
+        for (int i = 0; i < 5; i++) {
+            store.put("key" + i, response("body" + i, 1000));
+        }
+
+        Assert.assertEquals(store.size(), 5);
+        Assert.assertTrue(store.getMemorySize() <= 3 * size);
+        Assert.assertTrue(store.getDiskSize() > 0);
+
+        //brought back into memory, pushing another entry out
+        Assert.assertEquals(body(store.get("key0")), "body0");
+        Assert.assertEquals(store.size(), 5);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(body(store.get("key" + i)), "body" + i);
+        }
+    }
+
+    @Test
+    public void testDiskLimitDropsLeastRecentlyUsed() {
+        long size = response("body0", 1000).getSize();
+        ResponseStore store = new ResponseStore(size, this.dir, 2 * size);
+
+        for (int i = 0; i < 4; i++) {
+            store.put("key" + i, response("body" + i, 1000));
+        }
+
+        Assert.assertNull(store.get("key0"));
+        Assert.assertEquals(body(store.get("key3")), "body3");
+        Assert.assertEquals(body(store.get("key2")), "body2");
+    }
+
+    @Test
+    public void testMemoryOnly() {
+        long size = response("body0", 1000).getSize();
+        ResponseStore store = new ResponseStore(2 * size, null, 0);
+
+        for (int i = 0; i < 3; i++) {
+            store.put("key" + i, response("body" + i, 1000));
+        }
+
+        Assert.assertNull(store.get("key0"));
+        Assert.assertEquals(store.size(), 2);
+        Assert.assertEquals(store.getDiskSize(), 0);
+    }
+
+    @Test
+    public void testCloseDeletesOverflow() {
+        long size = response("body0", 1000).getSize();
+        ResponseStore store = new ResponseStore(size, this.dir, 10 * size);
+        store.put("key0", response("body0", 1000));
+        store.put("key1", response("body1", 1000));
+        Assert.assertTrue(this.dir.exists());
+
+        store.close();
+
+        Assert.assertFalse(this.dir.exists());
+        Assert.assertNull(store.get("key1"));
+    }
+}
@@ -15,12 +15,14 @@
  */
 package com.comcast.magicwand.spells.saucelabs;
 
+import java.io.Closeable;
 import java.util.Map;
 
 import com.comcast.cookie.CookieHandler;
 import com.comcast.magicwand.drivers.AbstractPhoenixDriver;
 import com.saucelabs.ci.sauceconnect.SauceTunnelManager;
 
+import org.apache.commons.io.IOUtils;
 import org.openqa.selenium.WebDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,28 +39,49 @@ public class SaucePhoenixDriver extends AbstractPhoenixDriver {
 
     private WebDriver driver;
     private CookieHandler cookieHandler;
-    private String username;
-    private String vpnOptions;
-    private SauceTunnelManager vpnManager;
+    private Closeable vpnTunnel;
 
     /**
      * Creates an instance of the driver
      *
      * @param driver Underlying remote driver
      * @param cookieHandler cookie handler to use for clearing cookies
+     * @param vpnTunnel Lease on the shared VPN tunnel the driver uses, released when the driver quits; may be null
+     */
+    public SaucePhoenixDriver(WebDriver driver, CookieHandler cookieHandler, SauceTunnelPool.Lease vpnTunnel) {
+        this.driver = driver;
+        this.cookieHandler = cookieHandler;
+        this.vpnTunnel = vpnTunnel;
+    }
+
+    /**
+     * Creates an instance of the driver owning a VPN tunnel of its own
+     *
+     * @param driver Underlying remote driver
+     * @param cookieHandler cookie handler to use for clearing cookies
      * @param vpnManager Reference to {@link SauceTunnelManager} used to establish and terminate VPN Connections
      * @param customDriverConfig Reference to the custom driver configurations. This is used for some VPN configuration
+     * @deprecated Tunnels opened per driver fight over the port; use
+     *             {@link #SaucePhoenixDriver(WebDriver, CookieHandler, SauceTunnelPool.Lease)} with a tunnel from
+     *             {@link SauceTunnelPool}
      */
-    public SaucePhoenixDriver(WebDriver driver, CookieHandler cookieHandler, SauceTunnelManager vpnManager, Map<String, Object> customDriverConfig) {
+    @Deprecated
+    public SaucePhoenixDriver(WebDriver driver, CookieHandler cookieHandler, final SauceTunnelManager vpnManager,
+            Map<String, Object> customDriverConfig) {
         this.driver = driver;
         this.cookieHandler = cookieHandler;
-        this.vpnManager = vpnManager;
-        getVPNArgs(customDriverConfig);
-    }
 
-    private void getVPNArgs(Map<String, Object> customDriverConfig) {
-        this.username = (String) customDriverConfig.get(SauceProvider.USERNAME);
-        this.vpnOptions = (String) customDriverConfig.get(SauceProvider.VPN_OPTIONS);
+        if (null != vpnManager) {
+            final String username = (String) customDriverConfig.get(SauceProvider.USERNAME);
+            final String vpnOptions = (String) customDriverConfig.get(SauceProvider.VPN_OPTIONS);
+
+            this.vpnTunnel = new Closeable() {
+                @Override
+                public void close() {
+                    vpnManager.closeTunnelsForPlan(username, vpnOptions, null);
+                }
+            };
+        }
     }
 
     /**
@@ -77,13 +100,13 @@ public class SaucePhoenixDriver extends AbstractPhoenixDriver {
     }
 
     /**
-     * Closes a VPN tunnel if one exists
+     * Releases the VPN tunnel if the driver has one; a shared tunnel stays open for the other drivers using it
      */
-    public void closeVPNConnection() {
-        if (null != this.vpnManager) {
-            LOG.debug("Disconnecting VPN tunnel");
-            this.vpnManager.closeTunnelsForPlan(username, vpnOptions, null);
-            this.vpnManager = null;
+    public synchronized void closeVPNConnection() {
+        if (null != this.vpnTunnel) {
+            LOG.debug("Releasing VPN tunnel");
+            IOUtils.closeQuietly(this.vpnTunnel);
+            this.vpnTunnel = null;
         }
     }
 
@@ -92,8 +115,12 @@ public class SaucePhoenixDriver extends AbstractPhoenixDriver {
      */
     @Override
     public void quit() {
-        super.quit();
-        closeVPNConnection();
+        try {
+            super.quit();
+        }
+        finally {
+            closeVPNConnection();
+        }
     }
 
     /**
@@ -101,15 +128,11 @@ public class SaucePhoenixDriver extends AbstractPhoenixDriver {
      */
     @Override
     public void close() {
-        super.close();
-        closeVPNConnection();
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    protected void finalize() throws Throwable {
-        closeVPNConnection();
+        try {
+            super.close();
+        }
+        finally {
+            closeVPNConnection();
+        }
     }
 }
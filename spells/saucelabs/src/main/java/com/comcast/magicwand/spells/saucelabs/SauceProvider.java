@@ -16,32 +16,28 @@
 package com.comcast.magicwand.spells.saucelabs;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.comcast.cookie.CookieHandler;
 import com.comcast.cookie.handlers.GeneralCookieHandler;
-import com.comcast.drivethru.api.HTTPRequestManager;
-import com.comcast.drivethru.api.HTTPRequestManager.Builder;
-import com.comcast.drivethru.api.HTTPRequestManager.METHOD;
-import com.comcast.drivethru.constants.ServerStatusCodes;
-import com.comcast.drivethru.model.ResponseContainer;
 import com.comcast.magicwand.builders.PhoenixDriverIngredients;
 import com.comcast.magicwand.drivers.PhoenixDriver;
 import com.comcast.magicwand.enums.DesktopOS;
 import com.comcast.magicwand.exceptions.FlyingPhoenixException;
-import com.saucelabs.ci.sauceconnect.SauceConnectFourManager;
-import com.saucelabs.ci.sauceconnect.SauceTunnelManager;
 
-import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.io.IOUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.openqa.selenium.WebDriver;
@@ -65,6 +61,7 @@ public class SauceProvider {
     private static final String DEFAULT_SAUCE_STORAGE_URL = "https://saucelabs.com/rest/v1/storage";
 
     private static final int ZERO_FILE_UPLOAD_SIZE = 0;
+    private static final int DEFAULT_UPLOAD_THREADS = 4;
 
     private static final Logger LOG = LoggerFactory.getLogger(SauceProvider.class);
 
@@ -79,6 +76,7 @@ public class SauceProvider {
     public static final String COOKIE_HANDLER     = "cookieHandler";
     public static final String SAUCE_STOTAGE_URL  = "sauceStorageUrl";
     public static final String SAUCE_FILES_UPLOAD = "sauceFilesUpload";
+    public static final String SAUCE_UPLOAD_THREADS = "sauceUploadThreads";
 
     private String username;
     private String apiKey;
@@ -292,12 +290,14 @@ public class SauceProvider {
 
         URL remoteAddress = generateSauceURL();
 
-        try {
-            SauceTunnelManager vpnManager = initSauceConnect();
+        SauceTunnelPool.Lease tunnel = initSauceConnect(false);
+        boolean started = false;
 
+        try {
             WebDriver driver = createWebDriver(remoteAddress);
-            SaucePhoenixDriver spd = new SaucePhoenixDriver(driver, cookieHandler, vpnManager, this.driverCustomConfig);
+            SaucePhoenixDriver spd = new SaucePhoenixDriver(driver, cookieHandler, tunnel);
             LOG.debug("Driver is: " + spd);
+            started = true;
             return spd;
         }
         catch (UnreachableBrowserException e) {
@@ -305,14 +305,35 @@ public class SauceProvider {
             throw new FlyingPhoenixException("Errors while validating builder parameters"
                     , new SauceException("There was an error creating a sauce driver", e));
         }
+        finally {
+            if (!started && null != tunnel) {
+                tunnel.close();
+            }
+        }
+    }
+
+    /**
+     * Starts opening the SauceConnect tunnel of this provider in the background, so that the drivers built later with
+     * the same user, port and options do not wait for it. Does nothing unless the '{@value #VPN}' property is set.
+     * @throws FlyingPhoenixException If the tunnel settings are invalid
+     */
+    public void openTunnelAhead() throws FlyingPhoenixException {
+        if (null == this.username || null == this.apiKey) {
+            throw new FlyingPhoenixException("Errors while validating builder parameters"
+                    , new SauceException("Username and API Key must be provided"));
+        }
+
+        initSauceConnect(true);
     }
 
     /**
-     * Sets up a tunnel via SauceConnect
-     * @return
+     * Gets a lease on a tunnel via SauceConnect, shared with the other drivers of this JVM using the same user, port
+     * and options
+     * @param ahead True to only start opening the tunnel in the background
+     * @return Lease on the tunnel or null if the driver is not configured to use one (or <code>ahead</code> is set)
      * @throws FlyingPhoenixException
      */
-    private SauceTunnelManager initSauceConnect() throws FlyingPhoenixException {
+    private SauceTunnelPool.Lease initSauceConnect(boolean ahead) throws FlyingPhoenixException {
         if (false == this.useVpn) {
             LOG.warn("Driver is not configured to establish a VPN connection. "
                     + "Please make sure that '{}' property is set to 'true'", SauceProvider.VPN);
@@ -361,23 +382,25 @@ public class SauceProvider {
             throw new FlyingPhoenixException(msg);
         }
 
-        SauceTunnelManager vpnManager = new SauceConnectFourManager(vpnQm);
+        if (ahead) {
+            SauceTunnelPool.getDefault().openAhead(username, apiKey, vpnPort, vpnOptions, vpnQm);
+            return null;
+        }
 
         try {
-            vpnManager.openConnection(username, apiKey, vpnPort, null, vpnOptions, null, !useVpn, null);
+            return SauceTunnelPool.getDefault().acquire(username, apiKey, vpnPort, vpnOptions, vpnQm);
         }
         catch (IOException e) {
-            vpnManager = null;
             String msg = "There was an error while establishing a VPN connection to SauceLabs";
             LOG.error(msg, e);
             throw new FlyingPhoenixException(msg, e);
         }
-
-        return vpnManager;
     }
 
     /**
-     * Upload files to sauce storage and return response of file uploads as SauceResponse
+     * Upload files to sauce storage and return response of file uploads as SauceResponse. Files already stored under
+     * the same name with the same MD5 are not uploaded again; the others are streamed from disk, up to
+     * the number given by the {@value #SAUCE_UPLOAD_THREADS} driver config (4 by default) at a time.
      *
      * @return SauceResponse holding response of file uploads
      */
@@ -385,59 +408,12 @@ public class SauceProvider {
         SauceResponse sauceResponse = new SauceResponse();
         StringBuilder failureReason = new StringBuilder();
         Map<String, Boolean> fileUploadStatus = new HashMap<String, Boolean>();
+        List<File> files = new ArrayList<File>();
         for (Object filePath : this.filesToUpload) {
             if (filePath instanceof String) {
                 File file = new File((String) filePath);
                 if (file.isFile() && file.exists()) {
-                    // Reset upload status to false each time before upload
-                    boolean uploadStatus = false;
-                    try {
-                        String authString = username + ":" + apiKey;
-                        /* Encoding authentication string */
-                        String authStringEnc = new Base64().encodeAsString(new String(authString).getBytes());
-                        LOG.debug("Base64 encoded auth string: " + authStringEnc);
-
-                        // Setting request headers
-                        Map<String, String> headers = new HashMap<String, String>();
-                        headers.put("Accept", "application/octet-stream");
-                        headers.put("Authorization", "Basic " + authStringEnc);
-                        headers.put("Content-type", "application/json");
-
-                        // Converts file content to byte data
-                        byte[] data = IOUtils.toByteArray(new FileInputStream(file));
-
-                        // Uploading file to sauce storage by sending multi-part encoded HTTP POST request to SauceLabs
-                        Builder builder = new HTTPRequestManager.Builder();
-                        HTTPRequestManager helper = builder
-                                .url(this.sauceStorageUrlStr + "/" + username + "/" + file.getName()
-                                        + "?overwrite=true").method(METHOD.POST).contentType("multipart/form-data")
-                                .headers(headers).data(data).build();
-                        LOG.info("Uploading file {} to sauce storage", file.getName());
-
-                        ResponseContainer response = doSendRequest(helper);
-                        LOG.info("Response - {}", response.getResponseBody());
-                        if (ServerStatusCodes.OK == response.getStatusCode()) {
-                            String responseBody = response.getResponseBody();
-                            if (null != responseBody) {
-                                JSONObject jsonResponse = new JSONObject(responseBody);
-                                int size = (Integer) jsonResponse.get("size");
-                                if (ZERO_FILE_UPLOAD_SIZE < size) {
-                                    uploadStatus = true;
-                                }
-                            }
-                        }
-                    }
-                    catch (JSONException | IOException e) {
-                        failureReason.append(String.format("Exception while uploading file %s to sauce storage",
-                                file.getName()));
-                        LOG.error("Exception while uploading file {} to sauce storage", file.getName());
-                    }
-
-                    fileUploadStatus.put(file.getName(), uploadStatus);
-                    if (!uploadStatus) {
-                        failureReason.append(String.format("Failed uploading file %s", file.getName()));
-                    }
-
+                    files.add(file);
                 }
                 else {
                     failureReason.append(String.format(
@@ -452,6 +428,11 @@ public class SauceProvider {
                 LOG.error("Invalid data type: {} not a file name", filePath.getClass().getName());
             }
         }
+
+        if (!files.isEmpty()) {
+            uploadFiles(files, fileUploadStatus, failureReason);
+        }
+
         if (this.filesToUpload.size() > 0 && failureReason.length() <= 0) {
             sauceResponse.setSuccess(true);
         }
@@ -461,15 +442,88 @@ public class SauceProvider {
         return sauceResponse;
     }
 
-    /**
-     * Sends HTTP request. Also, to support unit testing, http request-response handling refactored to separate API
-     *
-     * @param requestManager
-     * @return HTTP Response container
-     * @throws IOException
-     */
-    protected ResponseContainer doSendRequest(HTTPRequestManager requestManager) throws IOException {
-        ResponseContainer response = requestManager.sendRequest();
-        return response;
+    private void uploadFiles(List<File> files, Map<String, Boolean> fileUploadStatus, StringBuilder failureReason) {
+        final SauceStorage storage = new SauceStorage(this.sauceStorageUrlStr, this.username, this.apiKey);
+        final Map<String, String> stored = listStoredFiles(storage);
+        List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+
+        for (final File file : files) {
+            tasks.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException, JSONException {
+                    return uploadFile(storage, file, stored);
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(getUploadThreads(),
+                tasks.size())));
+
+        try {
+            List<Future<Boolean>> results = executor.invokeAll(tasks);
+
+            for (int i = 0; i < files.size(); i++) {
+                String name = files.get(i).getName();
+                boolean uploadStatus = false;
+
+                try {
+                    uploadStatus = results.get(i).get();
+                }
+                catch (ExecutionException e) {
+                    failureReason.append(String.format("Exception while uploading file %s to sauce storage", name));
+                    LOG.error("Exception while uploading file {} to sauce storage", name, e.getCause());
+                }
+
+                fileUploadStatus.put(name, uploadStatus);
+                if (!uploadStatus) {
+                    failureReason.append(String.format("Failed uploading file %s", name));
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failureReason.append("Interrupted while uploading files to sauce storage");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<String, String> listStoredFiles(SauceStorage storage) {
+        try {
+            return storage.listFiles();
+        }
+        catch (JSONException | IOException e) {
+            LOG.warn("Unable to list sauce storage, uploading every file: {}", e.toString());
+            return Collections.emptyMap();
+        }
+    }
+
+    private boolean uploadFile(SauceStorage storage, File file, Map<String, String> stored) throws IOException,
+            JSONException {
+        String md5 = SauceStorage.md5(file);
+
+        if (md5.equals(stored.get(file.getName()))) {
+            LOG.info("File {} is already in sauce storage (md5 {}), skipping upload", file.getName(), md5);
+            return true;
+        }
+
+        LOG.info("Uploading file {} to sauce storage", file.getName());
+        JSONObject response = storage.upload(file);
+        LOG.info("Response - {}", response);
+
+        String storedMd5 = SauceStorage.normalizeMd5(response.optString("md5", null));
+        if (null != storedMd5 && !md5.equals(storedMd5)) {
+            LOG.error("Sauce storage has md5 {} for file {}, expected {}", storedMd5, file.getName(), md5);
+            return false;
+        }
+
+        return ZERO_FILE_UPLOAD_SIZE < response.optLong("size", ZERO_FILE_UPLOAD_SIZE);
+    }
+
+    private int getUploadThreads() {
+        Object threads = this.driverCustomConfig.get(SAUCE_UPLOAD_THREADS);
+
+        return (threads instanceof Integer) ? ((Integer) threads).intValue() : DEFAULT_UPLOAD_THREADS;
     }
 }
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.saucelabs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Client of the Sauce storage REST API (<code>/rest/v1/storage/:username</code>) that streams uploads from disk
+ * instead of reading whole files into memory
+ */
+class SauceStorage {
+
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final int READ_TIMEOUT = 300000;
+
+    private final String userUrl;
+    private final String authorization;
+
+    /**
+     * @param storageUrl Base URL of the storage API
+     * @param username Sauce user
+     * @param apiKey Access key of the user
+     */
+    SauceStorage(String storageUrl, String username, String apiKey) {
+        this.userUrl = storageUrl + "/" + username;
+        String auth = username + ":" + apiKey;
+        this.authorization = "Basic " + Base64.encodeBase64String(auth.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Lists the files kept in the storage of the user
+     *
+     * @return MD5 hex digests of the stored files, keyed by name
+     * @throws IOException If the listing could not be fetched
+     * @throws JSONException If the listing could not be parsed
+     */
+    Map<String, String> listFiles() throws IOException, JSONException {
+        HttpURLConnection conn = open(new URL(this.userUrl));
+        Map<String, String> rv = new HashMap<>();
+
+        try {
+            conn.setRequestMethod("GET");
+            JSONArray files = new JSONObject(readResponse(conn)).optJSONArray("files");
+
+            if (null != files) {
+                for (int i = 0; i < files.length(); i++) {
+                    JSONObject file = files.getJSONObject(i);
+                    String name = file.optString("name", null);
+                    String md5 = file.optString("md5", null);
+
+                    if (null != name && null != md5) {
+                        rv.put(name, normalizeMd5(md5));
+                    }
+                }
+            }
+        } finally {
+            conn.disconnect();
+        }
+
+        return rv;
+    }
+
+    /**
+     * Uploads a file, replacing the stored file of the same name
+     *
+     * @param file File to upload
+     * @return Answer of the storage, holding the <code>size</code> and <code>md5</code> of the stored file
+     * @throws IOException If the upload failed
+     * @throws JSONException If the answer could not be parsed
+     */
+    JSONObject upload(File file) throws IOException, JSONException {
+        URL url = new URL(this.userUrl + "/" + URLEncoder.encode(file.getName(), "UTF-8").replace("+", "%20")
+                + "?overwrite=true");
+        HttpURLConnection conn = open(url);
+
+        try {
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/octet-stream");
+            //fixed length keeps HttpURLConnection from buffering the whole body
+            conn.setFixedLengthStreamingMode(file.length());
+
+            try (InputStream in = new FileInputStream(file); OutputStream out = conn.getOutputStream()) {
+                IOUtils.copyLarge(in, out);
+            }
+
+            return new JSONObject(readResponse(conn));
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Computes the digest Sauce storage reports for a file, reading it in chunks
+     *
+     * @param file File to digest
+     * @return Lower case MD5 hex digest
+     * @throws IOException If the file could not be read
+     */
+    static String md5(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return DigestUtils.md5Hex(in);
+        }
+    }
+
+    /**
+     * Brings an MD5 hex digest reported by the storage to the case of {@link #md5(File)}
+     *
+     * @param md5 Hex digest, in any case
+     * @return Lower case hex digest or null if <code>md5</code> is null
+     */
+    static String normalizeMd5(String md5) {
+        return (null == md5) ? null : md5.toLowerCase(Locale.ENGLISH);
+    }
+
+    private HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        conn.setRequestProperty("Authorization", this.authorization);
+        conn.setRequestProperty("Accept", "application/json");
+
+        return conn;
+    }
+
+    private static String readResponse(HttpURLConnection conn) throws IOException {
+        int code = conn.getResponseCode();
+
+        if (HttpURLConnection.HTTP_OK != code) {
+            throw new IOException("Sauce storage answered " + code + " " + conn.getResponseMessage() + " for "
+                    + conn.getURL());
+        }
+
+        try (InputStream in = conn.getInputStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+}
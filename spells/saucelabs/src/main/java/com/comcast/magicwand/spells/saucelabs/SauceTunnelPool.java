@@ -0,0 +1,442 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.saucelabs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.comcast.magicwand.utils.SystemDetail;
+import com.saucelabs.ci.sauceconnect.SauceConnectFourManager;
+import com.saucelabs.ci.sauceconnect.SauceTunnelManager;
+
+/**
+ * Per-JVM pool of Sauce Connect tunnels, keyed by user, port and options.
+ *
+ * <p>
+ * A tunnel is opened by the first driver that needs it (or ahead of time by {@link #openAhead}) and shared by every
+ * driver asking for the same user, port and options after that, instead of each driver paying the tunnel startup and
+ * fighting the others for the port. Drivers hold a {@link Lease} on the tunnel; a tunnel without leases is closed
+ * once it was unused for <code>magicwand.sauce.tunnel.idleTimeout</code> milliseconds
+ * (<code>MAGICWAND_SAUCE_TUNNEL_IDLE_TIMEOUT</code>, 5 minutes by default, 0 to keep it until the JVM exits). All
+ * tunnels are closed when the JVM exits.
+ * </p>
+ */
+public class SauceTunnelPool {
+    private static final Logger LOG = LoggerFactory.getLogger(SauceTunnelPool.class);
+
+    public static final String IDLE_TIMEOUT_PROP = "magicwand.sauce.tunnel.idleTimeout";
+    public static final String IDLE_TIMEOUT_ENV = "MAGICWAND_SAUCE_TUNNEL_IDLE_TIMEOUT";
+
+    static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+    private static final long MAX_IDLE_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private static SauceTunnelPool defaultPool;
+    private static ScheduledExecutorService idleChecker;
+
+    private final Map<String, Tunnel> tunnels = new HashMap<>();
+    private final long idleTimeout;
+
+    /**
+     * Creates a pool
+     *
+     * @param idleTimeout Time in milliseconds after which a tunnel without leases is closed by {@link #reapIdle()}; 0
+     *            to keep tunnels until {@link #shutdown()}
+     */
+    public SauceTunnelPool(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Gets the pool shared by this JVM, which is shut down when the JVM exits
+     *
+     * @return Default pool
+     */
+    public static synchronized SauceTunnelPool getDefault() {
+        if (null == defaultPool) {
+            long idle = SystemDetail.getLongSetting(IDLE_TIMEOUT_PROP, IDLE_TIMEOUT_ENV, DEFAULT_IDLE_TIMEOUT);
+
+            final SauceTunnelPool pool = new SauceTunnelPool(idle);
+
+            Runtime.getRuntime().addShutdownHook(new Thread("magicwand-sauce-tunnels-shutdown") {
+                @Override
+                public void run() {
+                    pool.shutdown();
+                }
+            });
+
+            if (idle > 0) {
+                long interval = Math.min(idle, MAX_IDLE_CHECK_INTERVAL);
+                idleChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "magicwand-sauce-tunnels-idle");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+                idleChecker.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        pool.reapIdle();
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+            }
+
+            defaultPool = pool;
+        }
+
+        return defaultPool;
+    }
+
+    /**
+     * Gets a lease on an open tunnel, opening the tunnel if needed. Waits for a tunnel that is still being opened by
+     * another driver or by {@link #openAhead}.
+     *
+     * @param username Sauce user
+     * @param apiKey Access key of the user
+     * @param port Port of the tunnel
+     * @param options Command line options of Sauce Connect; may be null
+     * @param quietMode True to keep Sauce Connect from logging its output
+     * @return Lease to close once the tunnel is no longer needed
+     * @throws IOException If the tunnel could not be opened
+     */
+    public Lease acquire(String username, String apiKey, int port, String options, boolean quietMode)
+            throws IOException {
+        Tunnel tunnel;
+
+        synchronized (this) {
+            tunnel = getTunnel(username, apiKey, port, options, quietMode);
+            tunnel.leases++;
+        }
+
+        try {
+            //opens the tunnel in this thread unless someone else already did (or is doing it)
+            tunnel.open();
+        }
+        catch (IOException e) {
+            release(tunnel);
+            throw e;
+        }
+
+        return new Lease(tunnel);
+    }
+
+    /**
+     * Starts opening a tunnel in the background, so drivers created later do not wait for Sauce Connect to start. The
+     * tunnel is subject to the idle timeout like any other tunnel without leases.
+     *
+     * @param username Sauce user
+     * @param apiKey Access key of the user
+     * @param port Port of the tunnel
+     * @param options Command line options of Sauce Connect; may be null
+     * @param quietMode True to keep Sauce Connect from logging its output
+     * @return Completes once the tunnel is open; fails if it could not be opened
+     */
+    public Future<?> openAhead(String username, String apiKey, int port, String options, boolean quietMode) {
+        final Tunnel tunnel;
+
+        synchronized (this) {
+            tunnel = getTunnel(username, apiKey, port, options, quietMode);
+        }
+
+        FutureTask<Void> rv = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                tunnel.open();
+                return null;
+            }
+        });
+
+        Thread t = new Thread(rv, "magicwand-sauce-tunnel-" + port);
+        t.setDaemon(true);
+        t.start();
+
+        return rv;
+    }
+
+    /**
+     * Closes the tunnels that have no leases and were not used within the idle timeout of this pool
+     *
+     * @return Number of tunnels closed
+     */
+    public int reapIdle() {
+        return reapIdle(System.currentTimeMillis());
+    }
+
+    int reapIdle(long now) {
+        if (this.idleTimeout <= 0) {
+            return 0;
+        }
+
+        List<Tunnel> idle = new ArrayList<>();
+
+        synchronized (this) {
+            for (Tunnel tunnel : new ArrayList<>(this.tunnels.values())) {
+                if (0 == tunnel.leases && tunnel.isSettled() && now - tunnel.lastUsed >= this.idleTimeout) {
+                    this.tunnels.remove(tunnel.key);
+                    idle.add(tunnel);
+                }
+            }
+        }
+
+        for (Tunnel tunnel : idle) {
+            LOG.info("Closing Sauce Connect tunnel {}, idle for {} ms", tunnel.key, now - tunnel.lastUsed);
+            tunnel.close();
+        }
+
+        return idle.size();
+    }
+
+    /**
+     * Closes every tunnel of this pool, leased or not, waiting for the ones still being opened
+     */
+    public void shutdown() {
+        List<Tunnel> all;
+
+        synchronized (this) {
+            all = new ArrayList<>(this.tunnels.values());
+            this.tunnels.clear();
+        }
+
+        for (Tunnel tunnel : all) {
+            LOG.debug("Closing Sauce Connect tunnel {}", tunnel.key);
+            tunnel.close();
+        }
+    }
+
+    /**
+     * Gets the number of tunnels in this pool, including the ones still being opened
+     *
+     * @return Number of tunnels
+     */
+    public synchronized int size() {
+        return this.tunnels.size();
+    }
+
+    /**
+     * Creates the manager a tunnel is opened and closed with
+     *
+     * @param quietMode True to keep Sauce Connect from logging its output
+     * @return Tunnel manager
+     */
+    protected SauceTunnelManager createManager(boolean quietMode) {
+        return new SauceConnectFourManager(quietMode);
+    }
+
+    private Tunnel getTunnel(String username, String apiKey, int port, String options, boolean quietMode) {
+        //the logging mode is a process option as well, so it is part of the key
+        String key = username + "@" + port + ((null == options) ? "" : " " + options)
+                + (quietMode ? "" : " (verbose)");
+        Tunnel rv = this.tunnels.get(key);
+
+        if (null == rv) {
+            rv = new Tunnel(key, username, apiKey, port, options, createManager(quietMode));
+            this.tunnels.put(key, rv);
+        }
+
+        return rv;
+    }
+
+    private synchronized void release(Tunnel tunnel) {
+        tunnel.leases--;
+        tunnel.lastUsed = System.currentTimeMillis();
+
+        //a tunnel that failed to open is dropped so the next driver tries again
+        if (tunnel.isSettled() && !tunnel.isOpen() && this.tunnels.get(tunnel.key) == tunnel) {
+            this.tunnels.remove(tunnel.key);
+        }
+    }
+
+    /**
+     * A driver's share of a tunnel, returned to the pool by {@link #close()}
+     */
+    public final class Lease implements Closeable {
+        private final Tunnel tunnel;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(Tunnel tunnel) {
+            this.tunnel = tunnel;
+        }
+
+        /**
+         * @return Port of the tunnel
+         */
+        public int getPort() {
+            return this.tunnel.port;
+        }
+
+        /**
+         * Releases the tunnel; closing a lease more than once has no effect
+         */
+        @Override
+        public void close() {
+            if (this.released.compareAndSet(false, true)) {
+                release(this.tunnel);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Lease [" + this.tunnel.key + "]";
+        }
+    }
+
+    private static final class Tunnel {
+        final String key;
+        final String username;
+        final String apiKey;
+        final int port;
+        final String options;
+        final SauceTunnelManager manager;
+        int leases;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        //guarded by this tunnel
+        private boolean started;
+        private boolean settled;
+        private boolean open;
+        private boolean closed;
+        private Exception failure;
+
+        Tunnel(String key, String username, String apiKey, int port, String options, SauceTunnelManager manager) {
+            this.key = key;
+            this.username = username;
+            this.apiKey = apiKey;
+            this.port = port;
+            this.options = options;
+            this.manager = manager;
+        }
+
+        /**
+         * Opens the tunnel unless another thread did (or is doing it), in which case it waits for that thread
+         */
+        void open() throws IOException {
+            synchronized (this) {
+                if (this.started) {
+                    awaitSettled();
+                    checkOpen();
+                    return;
+                }
+                if (this.closed) {
+                    throw new IOException("Sauce Connect tunnel " + this.key + " was closed");
+                }
+                this.started = true;
+            }
+
+            Exception error = null;
+            try {
+                LOG.info("Opening Sauce Connect tunnel {}", this.key);
+                this.manager.openConnection(this.username, this.apiKey, this.port, null, this.options, null, false,
+                        null);
+                //the idle timeout of a tunnel opened ahead of time starts once it is open
+                this.lastUsed = System.currentTimeMillis();
+            }
+            catch (IOException | RuntimeException e) {
+                error = e;
+            }
+
+            synchronized (this) {
+                this.failure = error;
+                this.open = (null == error);
+                this.settled = true;
+                notifyAll();
+                checkOpen();
+            }
+        }
+
+        synchronized boolean isSettled() {
+            return this.settled;
+        }
+
+        synchronized boolean isOpen() {
+            return this.open && !this.closed;
+        }
+
+        /**
+         * Closes the tunnel; one that is still being opened is closed once it is open, so its process does not
+         * outlive the pool
+         */
+        void close() {
+            synchronized (this) {
+                this.closed = true;
+
+                //nobody started opening it, and nobody will
+                if (!this.started) {
+                    return;
+                }
+
+                try {
+                    awaitSettled();
+                }
+                catch (IOException e) {
+                    LOG.warn("Interrupted while waiting for Sauce Connect tunnel {} to open", this.key);
+                    return;
+                }
+
+                if (!this.open) {
+                    return;
+                }
+                this.open = false;
+            }
+
+            try {
+                this.manager.closeTunnelsForPlan(this.username, this.options, null);
+            }
+            catch (RuntimeException e) {
+                LOG.warn("Unable to close Sauce Connect tunnel {}: {}", this.key, e.toString());
+            }
+        }
+
+        private void awaitSettled() throws IOException {
+            while (!this.settled) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the Sauce Connect tunnel " + this.key, e);
+                }
+            }
+        }
+
+        private void checkOpen() throws IOException {
+            if (null != this.failure) {
+                throw new IOException("Unable to open the Sauce Connect tunnel " + this.key, this.failure);
+            }
+            if (this.closed) {
+                throw new IOException("Sauce Connect tunnel " + this.key + " was closed while opening");
+            }
+        }
+    }
+}
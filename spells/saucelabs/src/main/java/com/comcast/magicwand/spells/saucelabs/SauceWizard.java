@@ -40,7 +40,15 @@ public class SauceWizard extends AbstractWizard {
      */
     @Override
     public PhoenixDriver createDriver() throws SauceException, FlyingPhoenixException {
-        SauceProvider sauceDriverProvider = new SauceProvider(this.ingredients, this.ingredients.getDriverCapabilities());
-        return sauceDriverProvider.buildDriver();
+        PhoenixDriver driver = null;
+
+        try {
+            SauceProvider sauceDriverProvider = new SauceProvider(this.ingredients, this.customCapabilities);
+            driver = sauceDriverProvider.buildDriver();
+        } finally {
+            attachSessionProxy(driver);
+        }
+
+        return driver;
     }
 }
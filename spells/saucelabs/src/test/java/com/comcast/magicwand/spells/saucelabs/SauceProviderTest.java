@@ -20,25 +20,37 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.fail;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.comcast.cookie.CookieHandler;
 import com.comcast.cookie.handlers.GeneralCookieHandler;
-import com.comcast.drivethru.api.HTTPRequestManager;
-import com.comcast.drivethru.model.ResponseContainer;
 import com.comcast.magicwand.builders.PhoenixDriverIngredients;
 import com.comcast.magicwand.drivers.PhoenixDriver;
 import com.comcast.magicwand.exceptions.FlyingPhoenixException;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
@@ -46,14 +58,129 @@ import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
 
 
 public class SauceProviderTest {
 
+    //stand-in for the Sauce storage REST API, keeping the uploaded files in memory
+    private static class StorageStandIn implements Closeable, HttpHandler {
+        final Map<String, byte[]> files = new ConcurrentHashMap<String, byte[]>();
+        final AtomicInteger uploads = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        private final HttpServer server;
+        private volatile int status;
+        private volatile String body;
+        private volatile long uploadDelay;
+        private volatile boolean upperCaseMd5;
+
+        StorageStandIn() throws IOException {
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            this.server.createContext("/storage", this);
+            this.server.setExecutor(this.executor);
+            this.server.start();
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/storage";
+        }
+
+        //answers every request with the given status and body instead of acting as storage; 0 to act as storage
+        void answer(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        void store(String name, String content) {
+            this.files.put(name, content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void slowUploads(long delay) {
+            this.uploadDelay = delay;
+        }
+
+        void upperCaseMd5() {
+            this.upperCaseMd5 = true;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (0 != this.status) {
+                respond(exchange, this.status, this.body);
+                return;
+            }
+
+            //paths are /storage/:user and /storage/:user/:file
+            String[] path = exchange.getRequestURI().getPath().split("/");
+
+            if ("GET".equals(exchange.getRequestMethod())) {
+                StringBuilder sb = new StringBuilder("{\"files\": [");
+                for (Map.Entry<String, byte[]> file : this.files.entrySet()) {
+                    if (sb.length() > 11) {
+                        sb.append(", ");
+                    }
+                    sb.append(describe(file.getKey(), file.getValue()));
+                }
+                respond(exchange, 200, sb.append("]}").toString());
+                return;
+            }
+
+            int now = this.active.incrementAndGet();
+            byte[] content;
+            try {
+                int max;
+                do {
+                    max = this.maxActive.get();
+                } while (now > max && !this.maxActive.compareAndSet(max, now));
+                Thread.sleep(this.uploadDelay);
+
+                try (InputStream in = exchange.getRequestBody()) {
+                    content = IOUtils.toByteArray(in);
+                }
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            finally {
+                this.active.decrementAndGet();
+            }
+
+            this.files.put(path[path.length - 1], content);
+            this.uploads.incrementAndGet();
+            respond(exchange, 200, describe(path[path.length - 1], content));
+        }
+
+        private String describe(String name, byte[] content) {
+            String md5 = DigestUtils.md5Hex(content);
+            return String.format("{\"name\": \"%s\", \"size\": %d, \"md5\": \"%s\"}", name, content.length,
+                    this.upperCaseMd5 ? md5.toUpperCase(Locale.ENGLISH) : md5);
+        }
+
+        private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+            byte[] bytes = (null == body) ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, (0 == bytes.length) ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() {
+            this.server.stop(0);
+            this.executor.shutdownNow();
+        }
+    }
+
     private class TestData {
         private SauceResponse fileUploadResponse;
         private String exceptionMsg;
-        private ResponseContainer mockResponse;
+        private int storageStatus;
+        private String storageBody;
         private PhoenixDriverIngredients ingridients = new PhoenixDriverIngredients();
         private DesiredCapabilities capabilities = new DesiredCapabilities();
 
@@ -97,8 +224,9 @@ public class SauceProviderTest {
             return this;
         }
 
-        public TestData mockResponse(ResponseContainer mockResponse) {
-            this.mockResponse = mockResponse;
+        public TestData storageAnswer(int status, String body) {
+            this.storageStatus = status;
+            this.storageBody = body;
             return this;
         }
 
@@ -212,16 +340,12 @@ public class SauceProviderTest {
         statusMap.put("testFileUpload.txt", true);
         URL path = getClass().getResource("/testFileUpload.txt");
         files.add(path.toURI().getPath());
-        ResponseContainer mockResponse = mock(ResponseContainer.class);
-        when(mockResponse.getStatusCode()).thenReturn(200);
-        when(mockResponse.getResponseBody()).thenReturn(
-                "{size: 58, md5: 7a9e9f1c502191311a5b2f25f5e3567e, filename: testFileUpload.txt}");
         SauceResponse sauceResponse = new SauceResponse();
         sauceResponse.setSuccess(true);
         sauceResponse.setFailureReason("");
         sauceResponse.setResponseObject(statusMap);
         inputParams.add(new Object[] {
-            new TestData().uploadFiles(files).mockResponse(mockResponse).fileUploadResponse(sauceResponse)
+            new TestData().uploadFiles(files).fileUploadResponse(sauceResponse)
         });
 
         // Case:2 Non-existing file
@@ -241,14 +365,11 @@ public class SauceProviderTest {
         files.add(path.toURI().getPath());
         statusMap = new HashMap<String, Boolean>();
         statusMap.put("testFileUpload.txt", false);
-        mockResponse = mock(ResponseContainer.class);
-        when(mockResponse.getStatusCode()).thenReturn(500);
-        when(mockResponse.getResponseBody()).thenReturn(null);
         sauceResponse = new SauceResponse();
         sauceResponse.setFailureReason("Failed uploading file testFileUpload.txt");
         sauceResponse.setResponseObject(statusMap);
         inputParams.add(new Object[] {
-            new TestData().uploadFiles(files).mockResponse(mockResponse).fileUploadResponse(sauceResponse)
+            new TestData().uploadFiles(files).storageAnswer(500, null).fileUploadResponse(sauceResponse)
         });
 
         // Case:4 Valid file; but file upload failed with response contains param size 0
@@ -256,15 +377,12 @@ public class SauceProviderTest {
         files.add(path.toURI().getPath());
         statusMap = new HashMap<String, Boolean>();
         statusMap.put("testFileUpload.txt", false);
-        mockResponse = mock(ResponseContainer.class);
-        when(mockResponse.getStatusCode()).thenReturn(200);
-        when(mockResponse.getResponseBody()).thenReturn(
-                "{size: 0, md5: 7a9e9f1c502191311a5b2f25f5e3567e, filename: testFileUpload.txt}");
         sauceResponse = new SauceResponse();
         sauceResponse.setFailureReason("Failed uploading file testFileUpload.txt");
         sauceResponse.setResponseObject(statusMap);
         inputParams.add(new Object[] {
-            new TestData().uploadFiles(files).mockResponse(mockResponse).fileUploadResponse(sauceResponse)
+            new TestData().uploadFiles(files).storageAnswer(200, "{size: 0, filename: testFileUpload.txt}")
+                .fileUploadResponse(sauceResponse)
         });
 
         // Case:5 Driver ingredient sauceFilesUpload holds invalid data type String; instead of List
@@ -284,15 +402,11 @@ public class SauceProviderTest {
         files.add(new Object());
         statusMap = new HashMap<String, Boolean>();
         statusMap.put("testFileUpload.txt", true);
-        mockResponse = mock(ResponseContainer.class);
-        when(mockResponse.getStatusCode()).thenReturn(200);
-        when(mockResponse.getResponseBody()).thenReturn(
-                "{size: 58, md5: 7a9e9f1c502191311a5b2f25f5e3567e, filename: testFileUpload.txt}");
         sauceResponse = new SauceResponse();
         sauceResponse.setFailureReason("Invalid data type: java.lang.Object not a file name");
         sauceResponse.setResponseObject(statusMap);
         inputParams.add(new Object[] {
-            new TestData().uploadFiles(files).mockResponse(mockResponse).fileUploadResponse(sauceResponse)
+            new TestData().uploadFiles(files).fileUploadResponse(sauceResponse)
         });
 
         // Case:7 Empty file list
@@ -313,14 +427,15 @@ public class SauceProviderTest {
      * @param testData TestData holds data for test
      */
     @Test(dataProvider = "sauceUpload")
-    public void testFileUpload(final TestData testData) {
-        SauceProvider sauceProvider = new SauceProvider(testData.ingridients, testData.capabilities) {
-            @Override
-            protected ResponseContainer doSendRequest(HTTPRequestManager requestManager) throws IOException {
-                return testData.mockResponse;
-            }
-        };
-        SauceResponse actualResponse = sauceProvider.uploadFilesToSauceStorage();
+    public void testFileUpload(final TestData testData) throws IOException {
+        SauceResponse actualResponse;
+        try (StorageStandIn storage = new StorageStandIn()) {
+            storage.answer(testData.storageStatus, testData.storageBody);
+            testData.addToIngridients(SauceProvider.SAUCE_STOTAGE_URL, storage.getUrl());
+
+            SauceProvider sauceProvider = new SauceProvider(testData.ingridients, testData.capabilities);
+            actualResponse = sauceProvider.uploadFilesToSauceStorage();
+        }
         Assert.assertEquals(actualResponse.isSuccess(), testData.fileUploadResponse.isSuccess(), "Unexpected status");
         Assert.assertTrue(actualResponse.getFailureReason().contains(testData.fileUploadResponse.getFailureReason()));
         Map<String, Boolean> responseMap = (Map<String, Boolean>) actualResponse.getResponseObject();
@@ -332,4 +447,90 @@ public class SauceProviderTest {
                     ((Map<String, Boolean>) testData.fileUploadResponse.getResponseObject()).get(key));
         }
     }
+
+    private static File tempFile(String content) throws IOException {
+        File rv = File.createTempFile("sauce-upload", ".apk");
+        rv.deleteOnExit();
+        FileUtils.writeStringToFile(rv, content, StandardCharsets.UTF_8);
+        return rv;
+    }
+
+    private static SauceProvider uploader(StorageStandIn storage, int threads, File... files) {
+        List<String> paths = new ArrayList<String>();
+        for (File file : files) {
+            paths.add(file.getAbsolutePath());
+        }
+
+        // @formatter:off
+        PhoenixDriverIngredients pdi = new PhoenixDriverIngredients()
+            .addCustomDriverConfiguration(SauceProvider.USERNAME, "user")
+            .addCustomDriverConfiguration(SauceProvider.API_KEY, "key")
+            .addCustomDriverConfiguration(SauceProvider.SAUCE_STOTAGE_URL, storage.getUrl())
+            .addCustomDriverConfiguration(SauceProvider.SAUCE_UPLOAD_THREADS, threads)
+            .addCustomDriverConfiguration(SauceProvider.SAUCE_FILES_UPLOAD, paths);
+        // @formatter:on
+
+        return new SauceProvider(pdi, new DesiredCapabilities());
+    }
+
+    @Test
+    public void testUnchangedFilesSkipped() throws IOException {
+        File file = tempFile("unchanged");
+
+        try (StorageStandIn storage = new StorageStandIn()) {
+            storage.store(file.getName(), "unchanged");
+
+            SauceResponse response = uploader(storage, 4, file).uploadFilesToSauceStorage();
+
+            Assert.assertTrue(response.isSuccess(), response.getFailureReason());
+            Assert.assertEquals(storage.uploads.get(), 0);
+        }
+    }
+
+    @Test
+    public void testChangedFilesUploaded() throws IOException {
+        File file = tempFile("changed");
+
+        try (StorageStandIn storage = new StorageStandIn()) {
+            storage.store(file.getName(), "original");
+
+            SauceResponse response = uploader(storage, 4, file).uploadFilesToSauceStorage();
+
+            Assert.assertTrue(response.isSuccess(), response.getFailureReason());
+            Assert.assertEquals(storage.uploads.get(), 1);
+            Assert.assertEquals(new String(storage.files.get(file.getName()), StandardCharsets.UTF_8), "changed");
+        }
+    }
+
+    @Test
+    public void testMd5CaseIgnored() throws IOException {
+        File unchanged = tempFile("unchanged");
+        File changed = tempFile("changed");
+
+        try (StorageStandIn storage = new StorageStandIn()) {
+            storage.upperCaseMd5();
+            storage.store(unchanged.getName(), "unchanged");
+
+            SauceResponse response = uploader(storage, 4, unchanged, changed).uploadFilesToSauceStorage();
+
+            Assert.assertTrue(response.isSuccess(), response.getFailureReason());
+            Assert.assertEquals(storage.uploads.get(), 1);
+        }
+    }
+
+    @Test
+    public void testUploadsRunConcurrently() throws IOException {
+        File[] files = { tempFile("a"), tempFile("b"), tempFile("c"), tempFile("d") };
+
+        try (StorageStandIn storage = new StorageStandIn()) {
+            storage.slowUploads(300);
+
+            SauceResponse response = uploader(storage, 2, files).uploadFilesToSauceStorage();
+
+            Assert.assertTrue(response.isSuccess(), response.getFailureReason());
+            Assert.assertEquals(storage.uploads.get(), 4);
+            Assert.assertEquals(storage.maxActive.get(), 2);
+            Assert.assertEquals(((Map<?, ?>) response.getResponseObject()).size(), 4);
+        }
+    }
 }
@@ -0,0 +1,234 @@
+/**
+ * Copyright 2015 Comcast Cable Communications Management, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.comcast.magicwand.spells.saucelabs;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.saucelabs.ci.sauceconnect.SauceTunnelManager;
+
+public class SauceTunnelPoolTest {
+
+    private static final long IDLE = 1000;
+
+    private List<SauceTunnelManager> managers;
+    private SauceTunnelPool pool;
+
+    @BeforeMethod
+    public void setUp() {
+        this.managers = new ArrayList<>();
+        this.pool = new SauceTunnelPool(IDLE) {
+            @Override
+            protected SauceTunnelManager createManager(boolean quietMode) {
+                SauceTunnelManager rv = mock(SauceTunnelManager.class);
+                SauceTunnelPoolTest.this.managers.add(rv);
+                return rv;
+            }
+        };
+    }
+
+    //the call the pool opens tunnels of "user" with
+    private static Process open(SauceTunnelManager manager, int port, String options) throws IOException {
+        return manager.openConnection("user", "key", port, null, options, null, false, null);
+    }
+
+    @Test
+    public void testTunnelShared() throws IOException {
+        SauceTunnelPool.Lease first = this.pool.acquire("user", "key", 4445, "-v", true);
+        SauceTunnelPool.Lease second = this.pool.acquire("user", "key", 4445, "-v", true);
+
+        Assert.assertEquals(this.managers.size(), 1);
+        Assert.assertEquals(this.pool.size(), 1);
+        open(verify(this.managers.get(0), times(1)), 4445, "-v");
+
+        first.close();
+        first.close();
+        Assert.assertEquals(this.pool.reapIdle(System.currentTimeMillis() + IDLE), 0, "Tunnel still leased");
+
+        second.close();
+        Assert.assertEquals(this.pool.reapIdle(System.currentTimeMillis()), 0, "Tunnel within its grace period");
+        Assert.assertEquals(this.pool.reapIdle(System.currentTimeMillis() + IDLE), 1);
+
+        verify(this.managers.get(0), times(1)).closeTunnelsForPlan("user", "-v", null);
+        Assert.assertEquals(this.pool.size(), 0);
+    }
+
+    @Test
+    public void testTunnelsKeyedByPortAndOptions() throws IOException {
+        this.pool.acquire("user", "key", 4445, null, true);
+        this.pool.acquire("user", "key", 4446, null, true);
+        this.pool.acquire("user", "key", 4446, "-v", true);
+        this.pool.acquire("other", "key", 4446, "-v", true);
+
+        Assert.assertEquals(this.pool.size(), 4);
+    }
+
+    @Test
+    public void testReusedWithinGracePeriod() throws IOException {
+        this.pool.acquire("user", "key", 4445, null, true).close();
+        this.pool.acquire("user", "key", 4445, null, true).close();
+
+        Assert.assertEquals(this.managers.size(), 1);
+        open(verify(this.managers.get(0), times(1)), 4445, null);
+    }
+
+    //pool whose tunnels take until release is counted down to open
+    private SauceTunnelPool blockingPool(final CountDownLatch entered, final CountDownLatch release) {
+        return new SauceTunnelPool(IDLE) {
+            @Override
+            protected SauceTunnelManager createManager(boolean quietMode) {
+                SauceTunnelManager rv = mock(SauceTunnelManager.class);
+                try {
+                    open(doAnswer(new Answer<Process>() {
+                        @Override
+                        public Process answer(InvocationOnMock invocation) throws InterruptedException {
+                            entered.countDown();
+                            release.await(10, TimeUnit.SECONDS);
+                            return null;
+                        }
+                    }).when(rv), 4445, null);
+                }
+                catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                SauceTunnelPoolTest.this.managers.add(rv);
+                return rv;
+            }
+        };
+    }
+
+    @Test
+    public void testOpenedAhead() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        this.pool = blockingPool(new CountDownLatch(1), release);
+
+        Future<?> opening = this.pool.openAhead("user", "key", 4445, null, true);
+        Assert.assertFalse(opening.isDone());
+        Assert.assertEquals(this.pool.reapIdle(System.currentTimeMillis() + IDLE), 0, "Tunnel still opening");
+
+        release.countDown();
+        SauceTunnelPool.Lease lease = this.pool.acquire("user", "key", 4445, null, true);
+
+        //the lease only waits for the tunnel, the future may complete a moment later
+        opening.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(this.managers.size(), 1);
+        open(verify(this.managers.get(0), times(1)), 4445, null);
+        lease.close();
+    }
+
+    @Test
+    public void testFailedTunnelRetried() throws IOException {
+        this.pool = new SauceTunnelPool(IDLE) {
+            @Override
+            protected SauceTunnelManager createManager(boolean quietMode) {
+                SauceTunnelManager rv = mock(SauceTunnelManager.class);
+                if (SauceTunnelPoolTest.this.managers.isEmpty()) {
+                    try {
+                        when(open(rv, 4445, null)).thenThrow(new IOException("port in use"));
+                    }
+                    catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                SauceTunnelPoolTest.this.managers.add(rv);
+                return rv;
+            }
+        };
+
+        try {
+            this.pool.acquire("user", "key", 4445, null, true);
+            Assert.fail("Opening the tunnel should have failed");
+        }
+        catch (IOException e) {
+            Assert.assertEquals(e.getCause().getMessage(), "port in use");
+        }
+        Assert.assertEquals(this.pool.size(), 0);
+
+        this.pool.acquire("user", "key", 4445, null, true);
+        Assert.assertEquals(this.managers.size(), 2);
+        verify(this.managers.get(0), never()).closeTunnelsForPlan("user", null, null);
+    }
+
+    @Test
+    public void testShutdownWhileOpening() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        this.pool = blockingPool(entered, release);
+
+        Future<?> opening = this.pool.openAhead("user", "key", 4445, null, true);
+        Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+        Thread shutdown = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SauceTunnelPoolTest.this.pool.shutdown();
+            }
+        });
+        shutdown.start();
+        shutdown.join(200);
+        Assert.assertTrue(shutdown.isAlive(), "Shutdown should wait for the tunnel being opened");
+
+        release.countDown();
+        shutdown.join(10000);
+        Assert.assertFalse(shutdown.isAlive());
+
+        verify(this.managers.get(0), times(1)).closeTunnelsForPlan("user", null, null);
+        try {
+            opening.get();
+            Assert.fail("A tunnel closed while opening should not be reported as open");
+        }
+        catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testTunnelsKeyedByQuietMode() throws IOException {
+        this.pool.acquire("user", "key", 4445, null, true);
+        this.pool.acquire("user", "key", 4445, null, false);
+
+        Assert.assertEquals(this.pool.size(), 2);
+    }
+
+    @Test
+    public void testShutdownClosesLeasedTunnels() throws IOException {
+        SauceTunnelPool.Lease lease = this.pool.acquire("user", "key", 4445, null, true);
+
+        this.pool.shutdown();
+
+        verify(this.managers.get(0), times(1)).closeTunnelsForPlan("user", null, null);
+        Assert.assertEquals(this.pool.size(), 0);
+        lease.close();
+    }
+}